@@ -85,6 +85,7 @@ public abstract class AbstractContainerIdentifier implements ContainerIdentifier
         final ContainerSignatureMatchCollection matches = new ContainerSignatureMatchCollection(
             getContainerSignatures(),
             init.getUniqueFileEntries(),
+            init.getFileEntryIndex(),
             maxBytesToScan);
 
         process(request, matches);
@@ -47,6 +47,7 @@ public class ContainerIdentifierInit {
     
     private List<String> uniqueFileEntries = new ArrayList<>();
     private List<ContainerSignature> containerSignatures = new ArrayList<ContainerSignature>();
+    private volatile Map<String, int[]> fileEntryIndex;
     
     /**
      * @param defs The definitions from the container signature
@@ -88,6 +89,7 @@ public class ContainerIdentifierInit {
      */
     public void addContainerSignature(final ContainerSignature containerSignature) {
         containerSignatures.add(containerSignature);
+        fileEntryIndex = null;
     }
 
     /**
@@ -106,5 +108,20 @@ public class ContainerIdentifierInit {
      */
     public List<String> getUniqueFileEntries() {
         return uniqueFileEntries;
-    }   
+    }
+
+    /**
+     * Get the positions of the container signatures which use each file entry.
+     * The index is built the first time it is needed after the signatures change.
+     *
+     * @return the file entry index
+     */
+    public Map<String, int[]> getFileEntryIndex() {
+        Map<String, int[]> index = fileEntryIndex;
+        if (index == null) {
+            index = ContainerSignatureMatchCollection.indexFileEntries(containerSignatures);
+            fileEntryIndex = index;
+        }
+        return index;
+    }
 }
@@ -49,6 +49,8 @@ public class ContainerSignatureMatch {
     private long maxBytesToScan = -1;
 
     private Set<String> unmatchedFiles = new HashSet<>();
+    private boolean failed;
+    private ContainerSignatureMatchCollection collection;
 
     /**
      * Constructs a new Container signature match.
@@ -61,6 +63,17 @@ public class ContainerSignatureMatch {
         this.maxBytesToScan = maxBytesToScan;
     }
 
+    /**
+     * Constructs a new Container signature match, which tells its collection when it is decided.
+     * @param sig the signature to match against
+     * @param maxBytesToScan - the max bytes to binary match on, or negative meaning unlimited.
+     * @param collection the collection of matches this match belongs to.
+     */
+    ContainerSignatureMatch(ContainerSignature sig, long maxBytesToScan, ContainerSignatureMatchCollection collection) {
+        this(sig, maxBytesToScan);
+        this.collection = collection;
+    }
+
     /**
      *
      * @return The set of unmatched files.
@@ -77,6 +90,33 @@ public class ContainerSignatureMatch {
         return unmatchedFiles.isEmpty();
     }
 
+    /**
+     *
+     * @return true if a file the signature needs is missing or did not match its binary signature,
+     *         so the signature can never match; false otherwise
+     */
+    public boolean isFailed() {
+        return failed;
+    }
+
+    /**
+     *
+     * @return true if the signature is neither matched nor failed yet, so matching more files could change it.
+     */
+    public boolean isLive() {
+        return !failed && !unmatchedFiles.isEmpty();
+    }
+
+    /**
+     * Fails the signature if it needs a file entry which the container does not have.
+     * @param entryName the name of a file entry missing from the container
+     */
+    public void failFileEntry(String entryName) {
+        if (isLive() && unmatchedFiles.contains(entryName)) {
+            fail();
+        }
+    }
+
     /**
      * Matches a file entry name against the signature.
      * If there are no signatures defined, just having the
@@ -84,10 +124,10 @@ public class ContainerSignatureMatch {
      * @param entryName the name of the container file entry
      */
     public void matchFileEntry(String entryName) {
-        if (unmatchedFiles.contains(entryName)) {
+        if (!failed && unmatchedFiles.contains(entryName)) {
             InternalSignatureCollection binSigs = signature.getFiles().get(entryName).getCompiledBinarySignatures();
             if (binSigs == null) {
-                unmatchedFiles.remove(entryName);
+                removeUnmatchedFile(entryName);
             }
         }
     }
@@ -99,7 +139,7 @@ public class ContainerSignatureMatch {
      */
     public boolean needsBinaryMatch(String entryName) {
         boolean needsMatch = false;
-        if (unmatchedFiles.contains(entryName)) {
+        if (!failed && unmatchedFiles.contains(entryName)) {
             InternalSignatureCollection binarySigs = signature.getFiles().get(entryName).getCompiledBinarySignatures();
             needsMatch = binarySigs != null;
         }
@@ -111,24 +151,41 @@ public class ContainerSignatureMatch {
      * If there is no binary signature defined for the file,
      * then merely matching the name will cause a match,
      * otherwise, the match depends on whether the binary
-     * signature matche
+     * signature matche.  Each entry is only read once, so if
+     * the binary signature does not match, the signature fails.
      * @param entryName the name of a container entry
      * @param content the content to me matched against a text signature
      */
     public void matchBinaryContent(String entryName, ByteReader content) {
         boolean matched = true;
-        if (unmatchedFiles.contains(entryName)) {
+        if (!failed && unmatchedFiles.contains(entryName)) {
             Map<String, ContainerFile> sigFiles = signature.getFiles();
             InternalSignatureCollection binSigs = sigFiles.get(entryName).getCompiledBinarySignatures();
             if (binSigs != null) {
                 matched = binSigs.getMatchingSignatures(content, maxBytesToScan).size() > 0;
             }
             if (matched) {
-                unmatchedFiles.remove(entryName);
+                removeUnmatchedFile(entryName);
+            } else {
+                fail();
             }
         }
     }
 
+    private void removeUnmatchedFile(String entryName) {
+        unmatchedFiles.remove(entryName);
+        if (unmatchedFiles.isEmpty() && collection != null) {
+            collection.signatureDecided();
+        }
+    }
+
+    private void fail() {
+        failed = true;
+        if (collection != null) {
+            collection.signatureDecided();
+        }
+    }
+
     /**
      * @return the signature
      */
@@ -32,7 +32,10 @@
 package uk.gov.nationalarchives.droid.container;
 
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 /**
  * @author a-mpalmer
@@ -42,6 +45,8 @@ public class ContainerSignatureMatchCollection {
 
     private final List<ContainerSignatureMatch> matches = new ArrayList<ContainerSignatureMatch>();
     private final List<String> allFileEntries; 
+    private final Map<String, int[]> fileEntryIndex;
+    private int liveCount;
     
     /**
      * 
@@ -51,11 +56,49 @@ public class ContainerSignatureMatchCollection {
      */
     public ContainerSignatureMatchCollection(final List<ContainerSignature> signatures, 
         final List<String> allFileEntries, final long maxBytesToScan) {
+        this(signatures, allFileEntries, indexFileEntries(signatures), maxBytesToScan);
+    }
+
+    /**
+     *
+     * @param signatures     The signatures from which to contruct our match objects.
+     * @param allFileEntries A list of all the unique file entries used in the signatures.
+     * @param fileEntryIndex The positions in the signatures of the signatures which use each file entry,
+     *                       as built by {@link #indexFileEntries(List)}.
+     * @param maxBytesToScan - the max bytes to binary match on, or negative meaning unlimited.
+     */
+    public ContainerSignatureMatchCollection(final List<ContainerSignature> signatures,
+        final List<String> allFileEntries, final Map<String, int[]> fileEntryIndex, final long maxBytesToScan) {
         for (ContainerSignature sig : signatures) {
-            ContainerSignatureMatch match = new ContainerSignatureMatch(sig, maxBytesToScan);
+            ContainerSignatureMatch match = new ContainerSignatureMatch(sig, maxBytesToScan, this);
             matches.add(match);
+            if (match.isLive()) {
+                liveCount++;
+            }
         }
         this.allFileEntries = allFileEntries;
+        this.fileEntryIndex = fileEntryIndex;
+    }
+
+    /**
+     * Indexes the signatures by the file entries they use, so each entry of a container can be
+     * resolved to the signatures which use it without asking every signature in turn.
+     *
+     * @param signatures The signatures to index.
+     * @return A map of file entry names to the positions in the signatures of the signatures which use them.
+     */
+    public static Map<String, int[]> indexFileEntries(final List<ContainerSignature> signatures) {
+        final Map<String, List<Integer>> positions = new HashMap<>();
+        for (int i = 0; i < signatures.size(); i++) {
+            for (String entryName : signatures.get(i).getFiles().keySet()) {
+                positions.computeIfAbsent(entryName, k -> new ArrayList<>()).add(i);
+            }
+        }
+        final Map<String, int[]> index = new HashMap<>(positions.size() * 2);
+        for (Map.Entry<String, List<Integer>> entry : positions.entrySet()) {
+            index.put(entry.getKey(), entry.getValue().stream().mapToInt(Integer::intValue).toArray());
+        }
+        return Collections.unmodifiableMap(index);
     }
     
     /**
@@ -73,5 +116,61 @@ public class ContainerSignatureMatchCollection {
     public List<ContainerSignatureMatch> getContainerSignatureMatches() {
         return matches;
     }
+
+    /**
+     *
+     * @param entryName the name of a container file entry.
+     * @return The container signature match objects whose signatures use the file entry,
+     *         or an empty list if none of them do.
+     */
+    public List<ContainerSignatureMatch> getContainerSignatureMatches(String entryName) {
+        final int[] positions = fileEntryIndex.get(entryName);
+        if (positions == null) {
+            return Collections.emptyList();
+        }
+        final List<ContainerSignatureMatch> entryMatches = new ArrayList<>(positions.length);
+        for (int position : positions) {
+            entryMatches.add(matches.get(position));
+        }
+        return entryMatches;
+    }
+
+    /**
+     *
+     * @param entryName the name of a container file entry.
+     * @return The container signature match objects which are still live and still need the file entry,
+     *         or an empty list if none of them do.
+     */
+    public List<ContainerSignatureMatch> getLiveContainerSignatureMatches(String entryName) {
+        final int[] positions = fileEntryIndex.get(entryName);
+        if (positions == null || liveCount == 0) {
+            return Collections.emptyList();
+        }
+        final List<ContainerSignatureMatch> entryMatches = new ArrayList<>(positions.length);
+        for (int position : positions) {
+            final ContainerSignatureMatch match = matches.get(position);
+            if (match.isLive() && match.getUnmatchedFiles().contains(entryName)) {
+                entryMatches.add(match);
+            }
+        }
+        return entryMatches;
+    }
+
+    /**
+     * Once no signatures are live, every signature has either matched or failed,
+     * so there is no need to look at any more entries in the container.
+     *
+     * @return true if any signature has neither matched nor failed yet.
+     */
+    public boolean hasLiveSignatures() {
+        return liveCount > 0;
+    }
+
+    /**
+     * Called by a match in this collection when it has matched or failed.
+     */
+    void signatureDecided() {
+        liveCount--;
+    }
     
 }
@@ -31,16 +31,37 @@
  */
 package uk.gov.nationalarchives.droid.container;
 
+import java.util.concurrent.atomic.LongAdder;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
 /**
+ * Matches text against regular expressions.  Callers which match the same expression
+ * repeatedly should compile it once and keep the pattern for as long as they need it.
+ *
  * @author rflitcroft
  *
  */
 public final class TextSignatureMatcher {
 
+    private static final int BYTE_MASK = 0xFF;
+    private static final String LENGTH = " length: ";
+
+    private static final LongAdder COMPILE_COUNT = new LongAdder();
+    private static final LongAdder MATCH_COUNT = new LongAdder();
+
     private TextSignatureMatcher() { }
+
+    /**
+     * Compiles a regular expression.
+     * Signatures can be compiled when they are loaded, so matching does not pay for it.
+     * @param controlRegExp the regular expression
+     * @return the compiled pattern
+     */
+    public static Pattern compile(String controlRegExp) {
+        COMPILE_COUNT.increment();
+        return Pattern.compile(controlRegExp);
+    }
     
     /**
      * Matches a String against a reglular expression.
@@ -49,8 +70,91 @@ public final class TextSignatureMatcher {
      * @return true if the string matched, false otherwise
      */
     public static boolean matches(String controlRegExp, String actual) {
-        Pattern p = Pattern.compile(controlRegExp);
-        Matcher m = p.matcher(actual);
+        return matches(compile(controlRegExp), actual);
+    }
+
+    /**
+     * Matches text against a compiled regular expression.
+     * @param pattern the compiled regular expression
+     * @param actual the text to match
+     * @return true if the text matched, false otherwise
+     */
+    public static boolean matches(Pattern pattern, CharSequence actual) {
+        MATCH_COUNT.increment();
+        Matcher m = pattern.matcher(actual);
         return m.matches();
     }
+
+    /**
+     * Matches bytes of single byte text, such as ASCII XML, against a compiled regular expression,
+     * without decoding them into a String first.  Each byte is read as one ISO-8859-1 character.
+     * @param pattern the compiled regular expression
+     * @param bytes the bytes of the text
+     * @param offset the position of the text in the bytes
+     * @param length the length of the text
+     * @return true if the text matched, false otherwise
+     */
+    public static boolean matches(Pattern pattern, byte[] bytes, int offset, int length) {
+        return matches(pattern, new SingleByteText(bytes, offset, length));
+    }
+
+    /**
+     * @return the number of regular expressions compiled.
+     */
+    public static long getCompileCount() {
+        return COMPILE_COUNT.sum();
+    }
+
+    /**
+     * @return the number of times text was matched.
+     */
+    public static long getMatchCount() {
+        return MATCH_COUNT.sum();
+    }
+
+    /**
+     * A view of bytes as characters, one byte per character.
+     */
+    private static final class SingleByteText implements CharSequence {
+
+        private final byte[] bytes;
+        private final int offset;
+        private final int length;
+
+        SingleByteText(byte[] bytes, int offset, int length) {
+            this.bytes = bytes;
+            this.offset = offset;
+            this.length = length;
+        }
+
+        @Override
+        public int length() {
+            return length;
+        }
+
+        @Override
+        public char charAt(int index) {
+            if (index < 0 || index >= length) {
+                throw new IndexOutOfBoundsException("Index: " + index + LENGTH + length);
+            }
+            return (char) (bytes[offset + index] & BYTE_MASK);
+        }
+
+        @Override
+        public CharSequence subSequence(int start, int end) {
+            if (start < 0 || end > length || start > end) {
+                throw new IndexOutOfBoundsException("Start: " + start + " end: " + end + LENGTH + length);
+            }
+            return new SingleByteText(bytes, offset + start, end - start);
+        }
+
+        @Override
+        public String toString() {
+            final char[] chars = new char[length];
+            for (int i = 0; i < length; i++) {
+                chars[i] = charAt(i);
+            }
+            return new String(chars);
+        }
+    }
 }
@@ -0,0 +1,460 @@
+/*
+ * Copyright (c) 2016, The National Archives <pronom@nationalarchives.gov.uk>
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following
+ * conditions are met:
+ *
+ *  * Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ *
+ *  * Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ *
+ *  * Neither the name of the The National Archives nor the
+ *    names of its contributors may be used to endorse or promote products
+ *    derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package uk.gov.nationalarchives.droid.container.ole2;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Deque;
+import java.util.List;
+
+import net.byteseek.io.reader.WindowReader;
+
+import uk.gov.nationalarchives.droid.core.interfaces.archive.ArchiveFileUtils;
+
+/**
+ * Reads the directory and streams of an OLE2 compound file directly from a WindowReader.
+ *
+ * <p>Only the header and the DIFAT are read when the file is opened.  Directory entries, FAT and mini FAT entries
+ * and stream sectors are read from the WindowReader as they are needed, so memory use does not grow with the
+ * size of the file, and streams which are never opened are never read.  Unlike a POIFSFileSystem, the whole
+ * file is not loaded into memory first.</p>
+ */
+public final class Ole2CompoundFile {
+
+    private static final byte[] SIGNATURE = {
+        (byte) 0xD0, (byte) 0xCF, (byte) 0x11, (byte) 0xE0, (byte) 0xA1, (byte) 0xB1, (byte) 0x1A, (byte) 0xE1};
+
+    private static final int HEADER_SIZE = 512;
+    private static final int MAJOR_VERSION_OFFSET = 0x1A;
+    private static final int SECTOR_SHIFT_OFFSET = 0x1E;
+    private static final int MINI_SECTOR_SHIFT_OFFSET = 0x20;
+    private static final int FAT_SECTOR_COUNT_OFFSET = 0x2C;
+    private static final int FIRST_DIRECTORY_SECTOR_OFFSET = 0x30;
+    private static final int MINI_STREAM_CUTOFF_OFFSET = 0x38;
+    private static final int FIRST_MINI_FAT_SECTOR_OFFSET = 0x3C;
+    private static final int FIRST_DIFAT_SECTOR_OFFSET = 0x44;
+    private static final int HEADER_DIFAT_OFFSET = 0x4C;
+    private static final int HEADER_DIFAT_ENTRIES = 109;
+
+    private static final int VERSION_3 = 3;
+    private static final int VERSION_3_SECTOR_SHIFT = 9;
+    private static final int VERSION_4_SECTOR_SHIFT = 12;
+
+    private static final int DIRECTORY_ENTRY_SIZE = 128;
+    private static final int NAME_LENGTH_OFFSET = 0x40;
+    private static final int MAX_NAME_LENGTH = 64;
+    private static final int OBJECT_TYPE_OFFSET = 0x42;
+    private static final int LEFT_SIBLING_OFFSET = 0x44;
+    private static final int RIGHT_SIBLING_OFFSET = 0x48;
+    private static final int CHILD_OFFSET = 0x4C;
+    private static final int START_SECTOR_OFFSET = 0x74;
+    private static final int STREAM_SIZE_OFFSET = 0x78;
+
+    private static final int STORAGE_OBJECT = 1;
+    private static final int STREAM_OBJECT = 2;
+    private static final int ROOT_OBJECT = 5;
+
+    private static final int NO_STREAM = -1;
+    private static final int INT_SIZE = 4;
+    private static final int BYTE_MASK = 0xFF;
+    private static final long INT_MASK = 0xFFFFFFFFL;
+    private static final int INITIAL_CHAIN_CAPACITY = 16;
+    private static final String CHAIN_ENDS_BEFORE_SECTOR = "OLE2 sector chain ends before sector ";
+
+    private final WindowReader reader;
+    private final int version;
+    private final int sectorShift;
+    private final int sectorSize;
+    private final int miniSectorShift;
+    private final long miniStreamCutoff;
+    private final int[] fatSectors;
+    private final SectorChain directoryChain;
+    private final SectorChain miniFatChain;
+    private final Entry root;
+    private final SectorChain miniStreamChain;
+
+    private Ole2CompoundFile(WindowReader reader) throws IOException {
+        this.reader = reader;
+        final byte[] header = readFully(0, HEADER_SIZE);
+        if (!Arrays.equals(SIGNATURE, Arrays.copyOf(header, SIGNATURE.length))) {
+            throw new IOException("Not an OLE2 compound file: the header signature is missing.");
+        }
+        version = getShort(header, MAJOR_VERSION_OFFSET);
+        sectorShift = getShort(header, SECTOR_SHIFT_OFFSET);
+        if (sectorShift != VERSION_3_SECTOR_SHIFT && sectorShift != VERSION_4_SECTOR_SHIFT) {
+            throw new IOException("Unsupported OLE2 sector shift: " + sectorShift);
+        }
+        sectorSize = 1 << sectorShift;
+        miniSectorShift = getShort(header, MINI_SECTOR_SHIFT_OFFSET);
+        if (miniSectorShift <= 0 || miniSectorShift >= sectorShift) {
+            throw new IOException("Unsupported OLE2 mini sector shift: " + miniSectorShift);
+        }
+        miniStreamCutoff = getInt(header, MINI_STREAM_CUTOFF_OFFSET) & INT_MASK;
+        fatSectors = readDifat(header);
+        final int maxSectors = (int) Math.min(Integer.MAX_VALUE, (reader.length() >> sectorShift) + 1);
+        directoryChain = new SectorChain(getInt(header, FIRST_DIRECTORY_SECTOR_OFFSET), false, maxSectors);
+        miniFatChain = new SectorChain(getInt(header, FIRST_MINI_FAT_SECTOR_OFFSET), false, maxSectors);
+        root = readEntry(0);
+        if (root.type != ROOT_OBJECT) {
+            throw new IOException("The first OLE2 directory entry is not the root entry.");
+        }
+        miniStreamChain = new SectorChain(root.startSector, false, maxSectors);
+    }
+
+    /**
+     * Opens a compound file, reading its header.
+     *
+     * @param reader The reader for the bytes of the compound file.
+     * @return The compound file.
+     * @throws IOException If the bytes are not a compound file, or could not be read.
+     */
+    public static Ole2CompoundFile open(WindowReader reader) throws IOException {
+        return new Ole2CompoundFile(reader);
+    }
+
+    /**
+     * @return The root storage of the compound file.
+     */
+    public Entry getRoot() {
+        return root;
+    }
+
+    /**
+     * Lists the children of a storage, reading their directory entries.
+     *
+     * @param storage The storage (or the root).
+     * @return The entries directly inside the storage, or an empty list if it is not a storage.
+     * @throws IOException If the directory could not be read.
+     */
+    public List<Entry> getChildren(Entry storage) throws IOException {
+        final List<Entry> children = new ArrayList<>();
+        if (storage.isStorage() && storage.child != NO_STREAM) {
+            // The children are a tree of siblings: visit each entry in it once, even if the tree is corrupt.
+            final BitSet visited = new BitSet();
+            final Deque<Integer> toVisit = new ArrayDeque<>();
+            toVisit.push(storage.child);
+            while (!toVisit.isEmpty()) {
+                final int id = toVisit.pop();
+                if (id >= 0 && !visited.get(id)) {
+                    visited.set(id);
+                    final Entry entry = readEntry(id);
+                    if (entry.type == STREAM_OBJECT || entry.type == STORAGE_OBJECT) {
+                        children.add(entry);
+                    }
+                    toVisit.push(entry.rightSibling);
+                    toVisit.push(entry.leftSibling);
+                }
+            }
+        }
+        return children;
+    }
+
+    /**
+     * Opens a stream of the compound file.  Its sectors are read from the WindowReader as the stream is read.
+     *
+     * @param stream The stream entry to open.
+     * @return An input stream over the bytes of the stream.
+     * @throws IOException If the entry is not a stream.
+     */
+    public InputStream getInputStream(Entry stream) throws IOException {
+        if (!stream.isStream()) {
+            throw new IOException("The OLE2 entry is not a stream: " + stream.getName());
+        }
+        if (stream.size < miniStreamCutoff) {
+            final int maxMiniSectors = (int) Math.min(Integer.MAX_VALUE, (root.size >> miniSectorShift) + 1);
+            return new EntryInputStream(new SectorChain(stream.startSector, true, maxMiniSectors), stream.size);
+        }
+        final int maxSectors = (int) Math.min(Integer.MAX_VALUE, (reader.length() >> sectorShift) + 1);
+        return new EntryInputStream(new SectorChain(stream.startSector, false, maxSectors), stream.size);
+    }
+
+    private int[] readDifat(byte[] header) throws IOException {
+        final int fatSectorCount = getInt(header, FAT_SECTOR_COUNT_OFFSET);
+        final long maxFatSectors = (reader.length() >> sectorShift) + 1;
+        if (fatSectorCount < 0 || fatSectorCount > maxFatSectors) {
+            throw new IOException("Invalid number of OLE2 FAT sectors: " + fatSectorCount);
+        }
+        final int[] sectors = new int[fatSectorCount];
+        final int inHeader = Math.min(fatSectorCount, HEADER_DIFAT_ENTRIES);
+        for (int i = 0; i < inHeader; i++) {
+            sectors[i] = getInt(header, HEADER_DIFAT_OFFSET + i * INT_SIZE);
+        }
+        // Each DIFAT sector lists more FAT sectors, followed by the next DIFAT sector:
+        final int entriesPerDifatSector = sectorSize / INT_SIZE - 1;
+        int difatSector = getInt(header, FIRST_DIFAT_SECTOR_OFFSET);
+        int count = inHeader;
+        while (count < fatSectorCount) {
+            if (difatSector < 0) {
+                throw new IOException("The OLE2 DIFAT chain ends before all the FAT sectors are listed.");
+            }
+            final byte[] difat = readFully(sectorPosition(difatSector), sectorSize);
+            for (int i = 0; i < entriesPerDifatSector && count < fatSectorCount; i++) {
+                sectors[count++] = getInt(difat, i * INT_SIZE);
+            }
+            difatSector = getInt(difat, entriesPerDifatSector * INT_SIZE);
+        }
+        return sectors;
+    }
+
+    private Entry readEntry(int id) throws IOException {
+        final int entriesPerSector = sectorSize / DIRECTORY_ENTRY_SIZE;
+        final long position = sectorPosition(directoryChain.get(id / entriesPerSector))
+                + (long) (id % entriesPerSector) * DIRECTORY_ENTRY_SIZE;
+        final byte[] bytes = readFully(position, DIRECTORY_ENTRY_SIZE);
+        final int nameLength = Math.min(getShort(bytes, NAME_LENGTH_OFFSET), MAX_NAME_LENGTH);
+        // The name length includes a terminating null character:
+        final String name = nameLength < 2 ? "" : new String(bytes, 0, nameLength - 2, StandardCharsets.UTF_16LE);
+        long size = getLong(bytes, STREAM_SIZE_OFFSET);
+        if (version == VERSION_3) {
+            size &= INT_MASK; // the high bytes may not be zero in version 3 files.
+        }
+        return new Entry(name, bytes[OBJECT_TYPE_OFFSET], getInt(bytes, LEFT_SIBLING_OFFSET),
+                getInt(bytes, RIGHT_SIBLING_OFFSET), getInt(bytes, CHILD_OFFSET),
+                getInt(bytes, START_SECTOR_OFFSET), size);
+    }
+
+    private int nextSector(int sector) throws IOException {
+        final int entriesPerSector = sectorSize / INT_SIZE;
+        final int fatIndex = sector / entriesPerSector;
+        if (fatIndex >= fatSectors.length) {
+            throw new IOException("OLE2 sector " + sector + " is not covered by the FAT.");
+        }
+        return readInt(sectorPosition(fatSectors[fatIndex]) + (long) (sector % entriesPerSector) * INT_SIZE);
+    }
+
+    private int nextMiniSector(int miniSector) throws IOException {
+        final long fatPosition = (long) miniSector * INT_SIZE;
+        return readInt(sectorPosition(miniFatChain.get((int) (fatPosition >> sectorShift)))
+                + (fatPosition & (sectorSize - 1)));
+    }
+
+    private long sectorPosition(int sector) throws IOException {
+        if (sector < 0) {
+            throw new IOException("Invalid OLE2 sector: " + (sector & INT_MASK));
+        }
+        return ((long) sector + 1) << sectorShift;
+    }
+
+    private byte[] readFully(long position, int length) throws IOException {
+        final byte[] bytes = new byte[length];
+        if (ArchiveFileUtils.copyToBuffer(reader, position, bytes, 0, length) < length) {
+            throw new IOException("Unexpected end of OLE2 file reading " + length + " bytes at " + position);
+        }
+        return bytes;
+    }
+
+    private int readInt(long position) throws IOException {
+        return getInt(readFully(position, INT_SIZE), 0);
+    }
+
+    // OLE2 compound files are little endian.
+    private static ByteBuffer littleEndian(byte[] bytes) {
+        return ByteBuffer.wrap(bytes).order(ByteOrder.LITTLE_ENDIAN);
+    }
+
+    private static int getShort(byte[] bytes, int offset) {
+        return Short.toUnsignedInt(littleEndian(bytes).getShort(offset));
+    }
+
+    private static int getInt(byte[] bytes, int offset) {
+        return littleEndian(bytes).getInt(offset);
+    }
+
+    private static long getLong(byte[] bytes, int offset) {
+        return littleEndian(bytes).getLong(offset);
+    }
+
+    /**
+     * An entry in the directory of a compound file.
+     */
+    public static final class Entry {
+
+        private final String name;
+        private final int type;
+        private final int leftSibling;
+        private final int rightSibling;
+        private final int child;
+        private final int startSector;
+        private final long size;
+
+        private Entry(String name, int type, int leftSibling, int rightSibling, int child,
+                      int startSector, long size) {
+            this.name = name;
+            this.type = type;
+            this.leftSibling = leftSibling;
+            this.rightSibling = rightSibling;
+            this.child = child;
+            this.startSector = startSector;
+            this.size = size;
+        }
+
+        /**
+         * @return The name of the entry.
+         */
+        public String getName() {
+            return name;
+        }
+
+        /**
+         * @return True if the entry is a storage (or the root), which contains other entries.
+         */
+        public boolean isStorage() {
+            return type == STORAGE_OBJECT || type == ROOT_OBJECT;
+        }
+
+        /**
+         * @return True if the entry is a stream of bytes.
+         */
+        public boolean isStream() {
+            return type == STREAM_OBJECT;
+        }
+
+        /**
+         * @return The size of the stream in bytes.
+         */
+        public long getSize() {
+            return size;
+        }
+    }
+
+    /**
+     * The sectors of a chain in the FAT or mini FAT, which are followed as they are needed.
+     * The number of sectors is limited, so a chain which loops back on itself can't be followed forever.
+     */
+    private final class SectorChain {
+
+        private final boolean mini;
+        private final int maxLength;
+        private int[] sectors = new int[INITIAL_CHAIN_CAPACITY];
+        private int length;
+
+        SectorChain(int startSector, boolean mini, int maxLength) {
+            this.mini = mini;
+            this.maxLength = maxLength;
+            sectors[0] = startSector;
+            length = 1;
+        }
+
+        int get(int index) throws IOException {
+            while (length <= index) {
+                if (length >= maxLength) {
+                    throw new IOException("OLE2 sector chain is longer than the file.");
+                }
+                final int previous = sectors[length - 1];
+                if (previous < 0) {
+                    throw new IOException(CHAIN_ENDS_BEFORE_SECTOR + index);
+                }
+                if (length == sectors.length) {
+                    sectors = Arrays.copyOf(sectors, Math.min(sectors.length * 2, maxLength));
+                }
+                sectors[length++] = mini ? nextMiniSector(previous) : nextSector(previous);
+            }
+            if (sectors[index] < 0) {
+                throw new IOException(CHAIN_ENDS_BEFORE_SECTOR + index);
+            }
+            return sectors[index];
+        }
+    }
+
+    /**
+     * Reads the bytes of a stream, sector by sector, from the file or from the mini stream.
+     */
+    private final class EntryInputStream extends InputStream {
+
+        private final SectorChain chain;
+        private final long size;
+        private final int shift;
+        private long position;
+
+        EntryInputStream(SectorChain chain, long size) {
+            this.chain = chain;
+            this.size = size;
+            this.shift = chain.mini ? miniSectorShift : sectorShift;
+        }
+
+        @Override
+        public int read() throws IOException {
+            final byte[] single = new byte[1];
+            return read(single, 0, 1) == 1 ? single[0] & BYTE_MASK : -1;
+        }
+
+        @Override
+        public int read(byte[] buffer, int offset, int length) throws IOException {
+            if (position >= size) {
+                return -1;
+            }
+            if (length == 0) {
+                return 0;
+            }
+            final int sector = chain.get((int) (position >> shift));
+            final int offsetInSector = (int) (position & ((1 << shift) - 1));
+            final long remaining = Math.min((1 << shift) - offsetInSector, size - position);
+            final int toRead = (int) Math.min(length, remaining);
+            final int bytesRead = ArchiveFileUtils.copyToBuffer(reader, filePosition(sector, offsetInSector),
+                    buffer, offset, toRead);
+            if (bytesRead <= 0) {
+                throw new IOException("Unexpected end of OLE2 file reading sector " + sector);
+            }
+            position += bytesRead;
+            return bytesRead;
+        }
+
+        @Override
+        public long skip(long n) {
+            final long skipped = Math.max(0, Math.min(n, size - position));
+            position += skipped;
+            return skipped;
+        }
+
+        @Override
+        public int available() {
+            return (int) Math.min(Integer.MAX_VALUE, size - position);
+        }
+
+        private long filePosition(int sector, int offsetInSector) throws IOException {
+            if (!chain.mini) {
+                return sectorPosition(sector) + offsetInSector;
+            }
+            // Mini sectors are stored in the mini stream, which is itself a chain of sectors:
+            final long miniStreamPosition = ((long) sector << miniSectorShift) + offsetInSector;
+            return sectorPosition(miniStreamChain.get((int) (miniStreamPosition >> sectorShift)))
+                    + (miniStreamPosition & (sectorSize - 1));
+        }
+    }
+}
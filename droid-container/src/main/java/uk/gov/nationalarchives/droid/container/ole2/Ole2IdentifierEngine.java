@@ -38,20 +38,13 @@ import java.util.Iterator;
 import java.util.List;
 import java.util.NoSuchElementException;
 
-import org.apache.poi.poifs.filesystem.DirectoryNode;
-import org.apache.poi.poifs.filesystem.DocumentNode;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
-import org.apache.poi.poifs.filesystem.DirectoryEntry;
-import org.apache.poi.poifs.filesystem.DocumentInputStream;
-import org.apache.poi.poifs.filesystem.Entry;
-import org.apache.poi.poifs.filesystem.POIFSFileSystem;
 
 import uk.gov.nationalarchives.droid.container.AbstractIdentifierEngine;
 import uk.gov.nationalarchives.droid.container.ContainerSignatureMatch;
 import uk.gov.nationalarchives.droid.container.ContainerSignatureMatchCollection;
 import uk.gov.nationalarchives.droid.core.interfaces.IdentificationRequest;
-import uk.gov.nationalarchives.droid.core.interfaces.resource.FileSystemIdentificationRequest;
 import uk.gov.nationalarchives.droid.core.signature.ByteReader;
 
 /**
@@ -60,84 +53,58 @@ import uk.gov.nationalarchives.droid.core.signature.ByteReader;
  */
 public class Ole2IdentifierEngine extends AbstractIdentifierEngine {
 
-    private static final String NO_READER_ERROR =
-            "No reader was obtained for %s. This may be due to low memory conditions. "
-                    + "Try running with a larger heap size!";
     private final Logger log = LoggerFactory.getLogger(Ole2IdentifierEngine.class);
 
-    //CHECKSTYLE:OFF - cyclomatic complexity too high.
     @Override
     public void process(IdentificationRequest request, ContainerSignatureMatchCollection matches) throws IOException {
-        //CHECKSTYLE:ON
-        InputStream in = null;
-        POIFSFileSystem reader = null;
         try {
-            if (FileSystemIdentificationRequest.class.isAssignableFrom(request.getClass())) {
-                FileSystemIdentificationRequest req = FileSystemIdentificationRequest.class.cast(request);
-                reader = new POIFSFileSystem(req.getFile().toFile());
-            } else {
-                try {
-                    in = request.getSourceInputStream();
-                    reader = new POIFSFileSystem(in);
-                } finally {
-                    // We can get Out Of Memory errors when attempting to instantiate the POIFSFileSystem.  However, these
-                    // are handled internally by POIFS and not propogated to the calling code.  Therefore we check here
-                    // whether the reader has been assigned - if not, this is probably due to an Out Of Memory error,
-                    // possibly caused by a low heap size.
-                    if (reader == null) {
-                        //request.getIdentifier() is null when running in command line 'no profile' mode.
-                        String identifier = request.getIdentifier() != null
-                                ? request.getIdentifier().getUri().toString() : "the current container file";
-                        throw new IOException(String.format(NO_READER_ERROR, identifier));
-                    }
-                }
+            // Reads the directory and streams on demand from the request, rather than loading the whole file:
+            Ole2CompoundFile compoundFile = Ole2CompoundFile.open(request.getWindowReader());
+            OLE2Walker iterator = new OLE2Walker(compoundFile, true);
+            // Stop as soon as every signature has either matched or failed:
+            while (matches.hasLiveSignatures() && iterator.hasNext()) {
+                matchEntry(compoundFile, iterator.next(), matches);
             }
+        } catch (IOException e) {
+            log.error(e.getMessage());
+        }
+    }
 
-            DirectoryEntry root = reader.getRoot();
-            Iterator<EntryInfo> iterator = new OLE2Walker((DirectoryNode) root, true);
-            while (iterator.hasNext()) {
-                EntryInfo info = iterator.next();
-                Entry entry = info.getEntry();
-                String entryName = info.getPath();
-                DirectoryNode parent = info.getParent();
-
-                boolean needsBinaryMatch = false;
+    private void matchEntry(Ole2CompoundFile compoundFile, EntryInfo info,
+                            ContainerSignatureMatchCollection matches) throws IOException {
+        String entryName = info.getPath();
+
+        // Only the live signatures which use this entry need to look at it:
+        List<ContainerSignatureMatch> entryMatches = matches.getLiveContainerSignatureMatches(entryName);
+        boolean needsBinaryMatch = false;
+        for (ContainerSignatureMatch match : entryMatches) {
+            match.matchFileEntry(entryName);
+            if (match.needsBinaryMatch(entryName)) {
+                needsBinaryMatch = true;
+            }
+        }
 
-                for (ContainerSignatureMatch match : matches.getContainerSignatureMatches()) {
-                    match.matchFileEntry(entryName);
-                    if (match.needsBinaryMatch(entryName)) {
-                        needsBinaryMatch = true;
-                    }
-                }
+        if (needsBinaryMatch && info.getEntry().isStream()) {
+            matchBinaryContent(compoundFile, info, entryMatches);
+        }
+    }
 
-                if (needsBinaryMatch && entry instanceof DocumentNode) {
-                    DocumentInputStream docIn = null;
-                    ByteReader byteReader = null;
-                    try {
-                        docIn = parent.createDocumentInputStream(entry.getName());
-                        byteReader = newByteReader(docIn);
-                        for (ContainerSignatureMatch match : matches.getContainerSignatureMatches()) {
-                            match.matchBinaryContent(entryName, byteReader);
-                        }
-                    } finally {
-                        if (byteReader != null) {
-                            byteReader.close();
-                        }
-                        if (docIn != null) {
-                            docIn.close();
-                        }
-                    }
-                }
+    private void matchBinaryContent(Ole2CompoundFile compoundFile, EntryInfo info,
+                                    List<ContainerSignatureMatch> entryMatches) throws IOException {
+        InputStream docIn = null;
+        ByteReader byteReader = null;
+        try {
+            docIn = compoundFile.getInputStream(info.getEntry());
+            byteReader = newByteReader(docIn);
+            for (ContainerSignatureMatch match : entryMatches) {
+                match.matchBinaryContent(info.getPath(), byteReader);
             }
-        } catch (IOException e) {
-            log.error(e.getMessage());
         } finally {
-            if (reader != null) {
-                reader.close();
+            if (byteReader != null) {
+                byteReader.close();
             }
-
-            if (in != null) {
-                in.close();
+            if (docIn != null) {
+                docIn.close();
             }
         }
     }
@@ -146,20 +113,23 @@ public class Ole2IdentifierEngine extends AbstractIdentifierEngine {
      * A class which iterates over all the file entries in an OLE2 file.
      * It can optionally process children in sub folders, or just do the immediate children of the root.
      * It returns an EntryInfo on next(), which wraps the Entry, and the path to the entry.
+     * The entries of each folder are only read from the directory when the folder is reached.
      */
-    private static class OLE2Walker implements Iterator<EntryInfo> {
+    private static class OLE2Walker {
 
+        private final Ole2CompoundFile compoundFile;
         private final List<PathIterator> entries = new ArrayList<>();
         private final boolean processSubFolders;
         private EntryInfo nextEntry;
 
-        public OLE2Walker(DirectoryNode rootEntry, boolean processSubFolders) {
-            entries.add(new PathIterator(rootEntry, "", rootEntry.getEntries()));
+        OLE2Walker(Ole2CompoundFile compoundFile, boolean processSubFolders) throws IOException {
+            this.compoundFile = compoundFile;
+            final Ole2CompoundFile.Entry rootEntry = compoundFile.getRoot();
+            entries.add(new PathIterator("", compoundFile.getChildren(rootEntry).iterator()));
             this.processSubFolders = processSubFolders;
         }
 
-        @Override
-        public boolean hasNext() {
+        public boolean hasNext() throws IOException {
             if (nextEntry == null) {
                 while (!entries.isEmpty()) {
                     // We get the last entry so that removing it after processing doesn't cause the whole array to shift.
@@ -167,14 +137,13 @@ public class Ole2IdentifierEngine extends AbstractIdentifierEngine {
                     int posToProcess = entries.size() - 1;
                     PathIterator currentEntries = entries.get(posToProcess);
                     if (currentEntries.getIterator().hasNext()) {
-                        Entry entry = currentEntries.getIterator().next();
+                        Ole2CompoundFile.Entry entry = currentEntries.getIterator().next();
                         String entryName = entry.getName().trim();
                         String entryPath = currentEntries.getPath() + entryName;
-                        if (processSubFolders && entry.isDirectoryEntry()) {
-                            entries.add(new PathIterator((DirectoryNode) entry,
-                                    entryPath + '/', ((DirectoryEntry) entry).getEntries()));
+                        if (processSubFolders && entry.isStorage()) {
+                            entries.add(new PathIterator(entryPath + '/', compoundFile.getChildren(entry).iterator()));
                         }
-                        nextEntry = new EntryInfo(currentEntries.getParent(), entryPath, entry);
+                        nextEntry = new EntryInfo(entryPath, entry);
                         return true;
                     }
                     entries.remove(posToProcess); // remove the current entry iterator from the list of entries.
@@ -183,8 +152,7 @@ public class Ole2IdentifierEngine extends AbstractIdentifierEngine {
             return nextEntry != null;
         }
 
-        @Override
-        public EntryInfo next() {
+        public EntryInfo next() throws IOException {
             if (hasNext()) {
                 EntryInfo toReturn = nextEntry;
                 nextEntry = null;
@@ -197,51 +165,39 @@ public class Ole2IdentifierEngine extends AbstractIdentifierEngine {
          * A record of an Entry iterator to process and the path for the files in that iterator.
          */
         private static class PathIterator {
-            private final DirectoryNode parent;
             private final String path;
-            private final Iterator<Entry> iterator;
-            PathIterator(DirectoryNode parent, String path, Iterator<Entry> iterator) {
-                this.parent = parent;
+            private final Iterator<Ole2CompoundFile.Entry> iterator;
+            PathIterator(String path, Iterator<Ole2CompoundFile.Entry> iterator) {
                 this.path = path;
                 this.iterator = iterator;
             }
 
-            public DirectoryNode getParent() {
-                return parent;
-            }
-
             public String getPath() {
                 return path;
             }
 
-            public Iterator<Entry> getIterator() {
+            public Iterator<Ole2CompoundFile.Entry> getIterator() {
                 return iterator;
             }
         }
     }
 
     /**
-     * A wrapper for an OLE2 file entry object and its path and directory entry parent.
+     * A wrapper for an OLE2 file entry object and its path.
      */
     private static class EntryInfo {
-        private final DirectoryNode parent;
         private final String path;
-        private final Entry entry;
-        public EntryInfo(DirectoryNode parent, String path, Entry entry) {
-            this.parent = parent;
+        private final Ole2CompoundFile.Entry entry;
+        public EntryInfo(String path, Ole2CompoundFile.Entry entry) {
             this.path = path;
             this.entry = entry;
         }
 
-        public DirectoryNode getParent() {
-            return parent;
-        }
-
         public String getPath() {
             return path;
         }
 
-        public Entry getEntry() {
+        public Ole2CompoundFile.Entry getEntry() {
             return entry;
         }
     }
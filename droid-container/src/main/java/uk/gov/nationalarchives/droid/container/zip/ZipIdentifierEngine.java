@@ -31,13 +31,12 @@
  */
 package uk.gov.nationalarchives.droid.container.zip;
 
-import net.java.truevfs.comp.zip.ZipEntry;
-import net.java.truevfs.comp.zip.ZipFile;
 import uk.gov.nationalarchives.droid.container.AbstractIdentifierEngine;
 import uk.gov.nationalarchives.droid.container.ContainerSignatureMatch;
 import uk.gov.nationalarchives.droid.container.ContainerSignatureMatchCollection;
 import uk.gov.nationalarchives.droid.core.interfaces.IdentificationRequest;
-import uk.gov.nationalarchives.droid.core.interfaces.archive.ByteseekWindowWrapper;
+import uk.gov.nationalarchives.droid.core.interfaces.archive.ParsedContainerCache;
+import uk.gov.nationalarchives.droid.core.interfaces.archive.ParsedZipFile;
 import uk.gov.nationalarchives.droid.core.signature.ByteReader;
 
 import java.io.IOException;
@@ -52,20 +51,30 @@ public class ZipIdentifierEngine extends AbstractIdentifierEngine {
 
     @Override
     public void process(IdentificationRequest request, ContainerSignatureMatchCollection matches) throws IOException {
-        ZipFile zipFile = new ZipFile(new ByteseekWindowWrapper(request.getWindowReader()), ZipFile.DEFAULT_CHARSET, true, false);
+        // If the zip file is also expanded as an archive, it shares the entries parsed here:
+        ParsedZipFile zipFile = ParsedContainerCache.getDefault().getZipFile(request);
 
         try {
-            // For each entry:
+            // For each entry, until every signature has either matched or failed:
             for (String entryName : matches.getAllFileEntries()) {
-                final ZipEntry entry = zipFile.entry(entryName);
-                if (entry != null) {
+                if (!matches.hasLiveSignatures()) {
+                    break;
+                }
+                final List<ContainerSignatureMatch> matchList = matches.getLiveContainerSignatureMatches(entryName);
+                if (matchList.isEmpty()) {
+                    continue;
+                }
+                if (!zipFile.hasEntry(entryName)) {
+                    // The signatures which need a missing entry can never match:
+                    for (ContainerSignatureMatch match : matchList) {
+                        match.failFileEntry(entryName);
+                    }
+                } else {
                     // Get a stream for the entry and a byte reader over the stream:
-                    InputStream stream = zipFile.getInputStream(entry.getName());
+                    InputStream stream = zipFile.getInputStream(entryName);
                     ByteReader reader = null;
                     try {
                         reader = newByteReader(stream);
-                        // For each signature to match:
-                        List<ContainerSignatureMatch> matchList = matches.getContainerSignatureMatches();
                         for (ContainerSignatureMatch match : matchList) {
                             match.matchBinaryContent(entryName, reader);
                         }
@@ -0,0 +1,139 @@
+/*
+ * Copyright (c) 2016, The National Archives <pronom@nationalarchives.gov.uk>
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following
+ * conditions are met:
+ *
+ *  * Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ *
+ *  * Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ *
+ *  * Neither the name of the The National Archives nor the
+ *    names of its contributors may be used to endorse or promote products
+ *    derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package uk.gov.nationalarchives.droid.container;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import org.junit.Test;
+import uk.gov.nationalarchives.droid.core.signature.ByteReader;
+import uk.gov.nationalarchives.droid.core.signature.droid6.InternalSignatureCollection;
+
+public class ContainerSignatureMatchCollectionTest {
+
+    @Test
+    public void testEntriesResolveToTheSignaturesWhichUseThem() {
+        ContainerSignature word = newSignature("WordDocument", "CompObj");
+        ContainerSignature excel = newSignature("Workbook", "CompObj");
+        List<ContainerSignature> signatures = Arrays.asList(word, excel);
+
+        ContainerSignatureMatchCollection matches = new ContainerSignatureMatchCollection(signatures,
+                Arrays.asList("WordDocument", "Workbook", "CompObj"), -1L);
+
+        List<ContainerSignatureMatch> wordMatches = matches.getContainerSignatureMatches("WordDocument");
+        assertEquals(1, wordMatches.size());
+        assertSame(word, wordMatches.get(0).getSignature());
+
+        List<ContainerSignatureMatch> sharedMatches = matches.getContainerSignatureMatches("CompObj");
+        assertEquals(2, sharedMatches.size());
+        assertSame(matches.getContainerSignatureMatches().get(0), sharedMatches.get(0));
+        assertSame(matches.getContainerSignatureMatches().get(1), sharedMatches.get(1));
+
+        assertTrue(matches.getContainerSignatureMatches("__substg1.0_0037001F").isEmpty());
+    }
+
+    @Test
+    public void testIndexIsSharedAcrossCollections() {
+        List<ContainerSignature> signatures = Arrays.asList(newSignature("mimetype"));
+        Map<String, int[]> index = ContainerSignatureMatchCollection.indexFileEntries(signatures);
+
+        ContainerSignatureMatchCollection first = new ContainerSignatureMatchCollection(signatures,
+                Arrays.asList("mimetype"), index, -1L);
+        ContainerSignatureMatchCollection second = new ContainerSignatureMatchCollection(signatures,
+                Arrays.asList("mimetype"), index, -1L);
+
+        first.getContainerSignatureMatches("mimetype").get(0).matchFileEntry("mimetype");
+        assertTrue(first.getContainerSignatureMatches().get(0).isMatch());
+        assertEquals(1, second.getContainerSignatureMatches().get(0).getUnmatchedFiles().size());
+    }
+
+    @Test
+    public void testSignaturesAreNoLongerLiveOnceMatchedOrFailed() {
+        ContainerSignature odt = newSignature("mimetype", "content.xml");
+        ContainerSignature ods = newSignature("mimetype", "META-INF/manifest.xml");
+        List<ContainerSignature> signatures = Arrays.asList(odt, ods);
+        InternalSignatureCollection noMatch = mock(InternalSignatureCollection.class);
+        when(noMatch.getMatchingSignatures(any(ByteReader.class), anyLong())).thenReturn(Collections.emptyList());
+        ods.getFiles().get("mimetype").setBinarySignatures(noMatch);
+
+        ContainerSignatureMatchCollection matches = new ContainerSignatureMatchCollection(signatures,
+                Arrays.asList("mimetype", "content.xml", "META-INF/manifest.xml"), -1L);
+        assertTrue(matches.hasLiveSignatures());
+
+        for (ContainerSignatureMatch match : matches.getLiveContainerSignatureMatches("mimetype")) {
+            match.matchBinaryContent("mimetype", mock(ByteReader.class));
+        }
+        ContainerSignatureMatch odsMatch = matches.getContainerSignatureMatches().get(1);
+        assertTrue(odsMatch.isFailed());
+        assertTrue(matches.getLiveContainerSignatureMatches("META-INF/manifest.xml").isEmpty());
+        assertTrue(matches.hasLiveSignatures());
+
+        for (ContainerSignatureMatch match : matches.getLiveContainerSignatureMatches("content.xml")) {
+            match.failFileEntry("content.xml");
+        }
+        assertFalse(matches.hasLiveSignatures());
+        assertFalse(matches.getContainerSignatureMatches().get(0).isMatch());
+    }
+
+    @Test
+    public void testMatchedSignatureIsNoLongerLive() {
+        ContainerSignatureMatchCollection matches = new ContainerSignatureMatchCollection(
+                Arrays.asList(newSignature("WordDocument")), Arrays.asList("WordDocument"), -1L);
+
+        matches.getLiveContainerSignatureMatches("WordDocument").get(0).matchFileEntry("WordDocument");
+
+        assertTrue(matches.getContainerSignatureMatches().get(0).isMatch());
+        assertFalse(matches.hasLiveSignatures());
+    }
+
+    private static ContainerSignature newSignature(String... entryNames) {
+        Map<String, ContainerFile> files = new HashMap<String, ContainerFile>();
+        for (String entryName : entryNames) {
+            files.put(entryName, new ContainerFile());
+        }
+        ContainerSignature sig = mock(ContainerSignature.class);
+        when(sig.getFiles()).thenReturn(files);
+        return sig;
+    }
+}
@@ -0,0 +1,73 @@
+/*
+ * Copyright (c) 2016, The National Archives <pronom@nationalarchives.gov.uk>
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following
+ * conditions are met:
+ *
+ *  * Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ *
+ *  * Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ *
+ *  * Neither the name of the The National Archives nor the
+ *    names of its contributors may be used to endorse or promote products
+ *    derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package uk.gov.nationalarchives.droid.container;
+
+import java.nio.charset.StandardCharsets;
+import java.util.regex.Pattern;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+public class TextSignatureMatcherTest {
+
+    private static final String MEDIA_TYPE = ".*manifest:media-type=\"application/vnd.oasis.opendocument.text\".*";
+
+    @Test
+    public void testCompiledPatternsAreNotCompiledAgainToMatch() {
+        Pattern pattern = TextSignatureMatcher.compile(MEDIA_TYPE);
+        long compiled = TextSignatureMatcher.getCompileCount();
+
+        assertTrue(TextSignatureMatcher.matches(pattern,
+                "<manifest:file-entry manifest:media-type=\"application/vnd.oasis.opendocument.text\"/>"));
+        assertFalse(TextSignatureMatcher.matches(pattern, "<manifest:file-entry/>"));
+        assertEquals(compiled, TextSignatureMatcher.getCompileCount());
+
+        assertTrue(TextSignatureMatcher.matches(MEDIA_TYPE,
+                "<manifest:file-entry manifest:media-type=\"application/vnd.oasis.opendocument.text\"/>"));
+        assertEquals(compiled + 1, TextSignatureMatcher.getCompileCount());
+    }
+
+    @Test
+    public void testMatchesBytesWithoutDecodingThem() {
+        Pattern pattern = TextSignatureMatcher.compile(MEDIA_TYPE);
+        byte[] bytes = ("xx<manifest:file-entry manifest:media-type=\"application/vnd.oasis.opendocument.text\"/>yy")
+                .getBytes(StandardCharsets.US_ASCII);
+        long matched = TextSignatureMatcher.getMatchCount();
+
+        assertTrue(TextSignatureMatcher.matches(pattern, bytes, 2, bytes.length - 4));
+        assertFalse(TextSignatureMatcher.matches(pattern, bytes, 0, 20));
+        assertEquals(matched + 2, TextSignatureMatcher.getMatchCount());
+    }
+}
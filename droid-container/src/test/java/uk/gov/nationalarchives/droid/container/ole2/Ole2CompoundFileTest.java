@@ -0,0 +1,108 @@
+/*
+ * Copyright (c) 2016, The National Archives <pronom@nationalarchives.gov.uk>
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following
+ * conditions are met:
+ *
+ *  * Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ *
+ *  * Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ *
+ *  * Neither the name of the The National Archives nor the
+ *    names of its contributors may be used to endorse or promote products
+ *    derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package uk.gov.nationalarchives.droid.container.ole2;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+import net.byteseek.io.reader.FileReader;
+import net.byteseek.io.reader.WindowReader;
+import org.apache.commons.io.IOUtils;
+import org.junit.Test;
+
+public class Ole2CompoundFileTest {
+
+    @Test
+    public void testListsTheRootStreamsOfAWordDocument() throws Exception {
+        try (WindowReader reader = new FileReader(getFile("word97.doc"))) {
+            Ole2CompoundFile compoundFile = Ole2CompoundFile.open(reader);
+            assertTrue(compoundFile.getRoot().isStorage());
+
+            List<Ole2CompoundFile.Entry> children = compoundFile.getChildren(compoundFile.getRoot());
+            assertNotNull(find(children, "WordDocument"));
+            assertNotNull(find(children, "CompObj"));
+        }
+    }
+
+    @Test
+    public void testReadsStreamsFromSectorsAndMiniSectors() throws Exception {
+        try (WindowReader reader = new FileReader(getFile("word97.doc"))) {
+            Ole2CompoundFile compoundFile = Ole2CompoundFile.open(reader);
+            List<Ole2CompoundFile.Entry> children = compoundFile.getChildren(compoundFile.getRoot());
+
+            // The WordDocument stream is big enough to be in normal sectors, CompObj is in the mini stream.
+            for (String name : new String[] {"WordDocument", "CompObj"}) {
+                Ole2CompoundFile.Entry entry = find(children, name);
+                try (InputStream in = compoundFile.getInputStream(entry)) {
+                    assertEquals(name, entry.getSize(), IOUtils.toByteArray(in).length);
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testListsEntriesInsideStorages() throws Exception {
+        try (WindowReader reader = new FileReader(getFile("OmniPagePro18-Sample2.opd"))) {
+            Ole2CompoundFile compoundFile = Ole2CompoundFile.open(reader);
+            Ole2CompoundFile.Entry document = find(compoundFile.getChildren(compoundFile.getRoot()), "Document");
+            assertNotNull(document);
+            assertTrue(document.isStorage());
+            assertNotNull(find(compoundFile.getChildren(document), "Page1"));
+        }
+    }
+
+    @Test(expected = IOException.class)
+    public void testRejectsFilesWhichAreNotCompoundFiles() throws Exception {
+        try (WindowReader reader = new FileReader(getFile("odf_text.odt"))) {
+            Ole2CompoundFile.open(reader);
+        }
+    }
+
+    private File getFile(String resource) throws Exception {
+        return new File(getClass().getClassLoader().getResource(resource).toURI());
+    }
+
+    private static Ole2CompoundFile.Entry find(List<Ole2CompoundFile.Entry> entries, String name) {
+        for (Ole2CompoundFile.Entry entry : entries) {
+            if (entry.getName().trim().equals(name)) {
+                return entry;
+            }
+        }
+        return null;
+    }
+}
@@ -47,6 +47,7 @@ import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
+import net.byteseek.io.reader.InputStreamReader;
 import org.junit.Before;
 import org.junit.Ignore;
 import org.junit.Test;
@@ -107,7 +108,7 @@ public class Ole2RootFileTest {
         
         RequestMetaData metaData = mock(RequestMetaData.class);
         IdentificationRequest request = mock(IdentificationRequest.class);
-        when(request.getSourceInputStream()).thenReturn(word97Stream);
+        when(request.getWindowReader()).thenReturn(new InputStreamReader(word97Stream));
         when(request.getRequestMetaData()).thenReturn(metaData);
         RequestIdentifier requestIdentifier = mock(RequestIdentifier.class);
         when(request.getIdentifier()).thenReturn(requestIdentifier);
@@ -147,7 +148,7 @@ public class Ole2RootFileTest {
         
         RequestMetaData metaData = mock(RequestMetaData.class);
         IdentificationRequest request = mock(IdentificationRequest.class);
-        when(request.getSourceInputStream()).thenReturn(word97Stream);
+        when(request.getWindowReader()).thenReturn(new InputStreamReader(word97Stream));
         when(request.getRequestMetaData()).thenReturn(metaData);
         RequestIdentifier requestIdentifier = mock(RequestIdentifier.class);
         when(request.getIdentifier()).thenReturn(requestIdentifier);
@@ -203,7 +204,7 @@ public class Ole2RootFileTest {
         
         RequestMetaData metaData = mock(RequestMetaData.class);
         IdentificationRequest request = mock(IdentificationRequest.class);
-        when(request.getSourceInputStream()).thenReturn(word97Stream);
+        when(request.getWindowReader()).thenReturn(new InputStreamReader(word97Stream));
         when(request.getRequestMetaData()).thenReturn(metaData);
         RequestIdentifier requestIdentifier = mock(RequestIdentifier.class);
         when(request.getIdentifier()).thenReturn(requestIdentifier);
@@ -245,7 +246,7 @@ public class Ole2RootFileTest {
 
         RequestMetaData metaData = mock(RequestMetaData.class);
         IdentificationRequest request = mock(IdentificationRequest.class);
-        when(request.getSourceInputStream()).thenReturn(omnipageStream);
+        when(request.getWindowReader()).thenReturn(new InputStreamReader(omnipageStream));
         when(request.getRequestMetaData()).thenReturn(metaData);
         RequestIdentifier requestIdentifier = mock(RequestIdentifier.class);
         when(request.getIdentifier()).thenReturn(requestIdentifier);
@@ -34,6 +34,7 @@ package uk.gov.nationalarchives.droid.core.interfaces;
 import java.io.IOException;
 import java.util.concurrent.Future;
 
+import uk.gov.nationalarchives.droid.core.interfaces.archive.ArchiveExpansion;
 import uk.gov.nationalarchives.droid.core.interfaces.filter.Filter;
 
 
@@ -50,6 +51,35 @@ public interface AsynchDroid {
      */
     Future<IdentificationResultCollection> submit(IdentificationRequest request);
 
+    /**
+     * Submits a job which has not been opened yet.  The opener opens it before it is identified,
+     * which may be on another thread so that submitting does not wait for slow storage.
+     * If it cannot be opened, the opener is told why and the job is not identified.
+     * By default, the job is opened on the calling thread and then submitted.
+     *
+     * @param request the request to submit
+     * @param opener opens the request
+     */
+    default void submit(IdentificationRequest request, RequestOpener opener) {
+        try {
+            opener.open();
+        } catch (IOException e) {
+            opener.failed(e);
+            return;
+        }
+        submit(request);
+    }
+
+    /**
+     * Returns the statistics which the archives expanded for this droid's jobs are added to,
+     * so that each profile counts only its own archives.  By default, they are not counted.
+     *
+     * @return the archive expansion statistics, or null if they are not counted.
+     */
+    default ArchiveExpansion.Statistics getArchiveStatistics() {
+        return null;
+    }
+
     /**
      * Waits until in-flight jobs have finished.
      * @throws InterruptedException if the calling thread was interrupted.
@@ -57,6 +57,7 @@ public class BlockingThreadPoolExecutorFactory {
     private int corePoolSize = DEFAULT_CORE_POOL_SIZE;
     private int maxPoolSize = DEFAULT_MAX_CORE_POOL_SIZE;
     private long keepAliveTimeMillis = DEFAULT_KEEP_ALIVE_TIME_MILLIS;
+    private String threadNamePrefix = "core-thread-";
     
     /**
      * Returns a new instance of a BlockingThreadPoolExecutor.
@@ -67,7 +68,7 @@ public class BlockingThreadPoolExecutorFactory {
         final BlockingQueue<Runnable> workQueue = new SynchronousQueue<Runnable>();
         RejectedExecutionHandler rejectedExecutionHandler = new CallerRunsUnlessPoolShutdownPolicy();
         
-        ThreadFactory tf = new MyThreadFactory();
+        ThreadFactory tf = new MyThreadFactory(threadNamePrefix);
         
         ThreadPoolExecutor executor = new ThreadPoolExecutor(
                 corePoolSize, maxPoolSize, keepAliveTimeMillis, TimeUnit.MILLISECONDS, 
@@ -93,10 +94,10 @@ public class BlockingThreadPoolExecutorFactory {
         private final AtomicInteger threadNumber = new AtomicInteger(1);
         private final String namePrefix;
 
-        private MyThreadFactory() {
+        private MyThreadFactory(String namePrefix) {
             SecurityManager s = System.getSecurityManager();
             group = (s != null) ? s.getThreadGroup() : Thread.currentThread().getThreadGroup();
-            namePrefix = "core-thread-";
+            this.namePrefix = namePrefix;
         }
 
         public Thread newThread(Runnable r) {
@@ -128,6 +129,13 @@ public class BlockingThreadPoolExecutorFactory {
         this.maxPoolSize = maxPoolSize;
     }
 
+    /**
+     * @param threadNamePrefix the prefix of the names given to the pool's threads
+     */
+    public void setThreadNamePrefix(String threadNamePrefix) {
+        this.threadNamePrefix = threadNamePrefix;
+    }
+
     /**
      * @param keepAliveTimeMillis the keepAliveTimeMillis to set
      */
@@ -0,0 +1,135 @@
+/*
+ * Copyright (c) 2016, The National Archives <pronom@nationalarchives.gov.uk>
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following
+ * conditions are met:
+ *
+ *  * Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ *
+ *  * Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ *
+ *  * Neither the name of the The National Archives nor the
+ *    names of its contributors may be used to endorse or promote products
+ *    derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package uk.gov.nationalarchives.droid.core.interfaces;
+
+import java.util.Locale;
+import java.util.concurrent.ExecutorService;
+
+/**
+ * Creates the executor service which identification requests are run on.
+ *
+ * <p>The default scheduler is the blocking scheduler: the original fixed size thread pool, which runs
+ * tasks on the submitting thread when it is busy.  The work-stealing scheduler is a pool sized from the
+ * number of available processors, which makes the submitting thread wait when too many tasks are
+ * in flight.</p>
+ *
+ * <p>It also creates the optional pool which opens files and reads their first and last windows
+ * before they are matched.  Reads from slow or network storage spend most of their time waiting,
+ * so this pool can have many more threads than there are processors.  There is no I/O pool unless
+ * a number of I/O threads is set.</p>
+ */
+public class IdentificationExecutorFactory {
+
+    /**
+     * The name of the work-stealing scheduler.
+     */
+    public static final String WORK_STEALING = "workstealing";
+
+    /**
+     * The name of the blocking thread pool scheduler.
+     */
+    public static final String BLOCKING = "blocking";
+
+    private static final int DEFAULT_QUEUE_CAPACITY_PER_THREAD = 4;
+
+    private static final String NULL = "null";
+
+    private String scheduler = BLOCKING;
+    private int parallelism;
+    private int queueCapacity;
+    private int ioThreads;
+
+    /**
+     * Returns a new executor service for the configured scheduler.
+     * @return a new executor service.
+     */
+    public ExecutorService newInstance() {
+        if (!WORK_STEALING.equals(scheduler)) {
+            return new BlockingThreadPoolExecutorFactory().newInstance();
+        }
+        final int threads = parallelism > 0 ? parallelism : Runtime.getRuntime().availableProcessors();
+        final int capacity = queueCapacity > 0 ? queueCapacity : threads * DEFAULT_QUEUE_CAPACITY_PER_THREAD;
+        return new WorkStealingExecutorService(threads, capacity);
+    }
+
+    /**
+     * Returns a new executor service for the I/O stage which runs before signatures are matched,
+     * or null if there is no separate I/O stage.  When all its threads are busy, the submitting
+     * thread does the I/O itself.
+     *
+     * @return a new executor service for the I/O stage, or null if there are no I/O threads.
+     */
+    public ExecutorService newIoInstance() {
+        if (ioThreads <= 0) {
+            return null;
+        }
+        final BlockingThreadPoolExecutorFactory ioFactory = new BlockingThreadPoolExecutorFactory();
+        ioFactory.setCorePoolSize(ioThreads);
+        ioFactory.setMaxPoolSize(ioThreads);
+        ioFactory.setThreadNamePrefix("io-thread-");
+        return ioFactory.newInstance();
+    }
+
+    /**
+     * @param scheduler the name of the scheduler to use: blocking (the default) or workstealing.
+     *                  A missing, empty or "null" name, as written for profiles saved before the scheduler
+     *                  could be chosen, uses the blocking scheduler.
+     */
+    public void setScheduler(String scheduler) {
+        final String name = scheduler == null ? "" : scheduler.trim().toLowerCase(Locale.ENGLISH);
+        this.scheduler = name.isEmpty() || NULL.equals(name) ? BLOCKING : name;
+    }
+
+    /**
+     * @param parallelism the number of threads for the work-stealing scheduler,
+     *                    or zero or less to use the number of available processors.
+     */
+    public void setParallelism(int parallelism) {
+        this.parallelism = parallelism;
+    }
+
+    /**
+     * @param queueCapacity the most tasks which can be in flight in the work-stealing scheduler,
+     *                      or zero or less for four times the number of threads.
+     */
+    public void setQueueCapacity(int queueCapacity) {
+        this.queueCapacity = queueCapacity;
+    }
+
+    /**
+     * @param ioThreads the number of threads in the I/O stage, or zero or less to read files on
+     *                  the threads which match signatures.
+     */
+    public void setIoThreads(int ioThreads) {
+        this.ioThreads = ioThreads;
+    }
+}
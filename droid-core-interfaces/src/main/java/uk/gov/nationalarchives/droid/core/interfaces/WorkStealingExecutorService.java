@@ -0,0 +1,367 @@
+/*
+ * Copyright (c) 2016, The National Archives <pronom@nationalarchives.gov.uk>
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following
+ * conditions are met:
+ *
+ *  * Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ *
+ *  * Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ *
+ *  * Neither the name of the The National Archives nor the
+ *    names of its contributors may be used to endorse or promote products
+ *    derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package uk.gov.nationalarchives.droid.core.interfaces;
+
+import java.util.List;
+import java.util.concurrent.AbstractExecutorService;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * An executor service backed by a work-stealing fork join pool, with a bounded number of tasks in flight.
+ *
+ * <p>Tasks submitted from outside the pool take up some of its capacity until they finish.
+ * When there is no capacity left, submitting threads wait until a task finishes, so the work
+ * is never run on the submitting thread.  Tasks submitted from the pool's own threads, such as the
+ * entries of an archive being expanded, are queued on that thread without waiting, where idle threads
+ * can steal them.  Waiting on its own threads could otherwise deadlock the pool.</p>
+ *
+ * <p>Identification tasks spend much of their time blocked reading files, so every task is run as a
+ * {@link ForkJoinPool.ManagedBlocker}.  While a task blocks the pool can start a spare thread to keep
+ * the other tasks running, rather than leaving a processor idle.  The number of threads is still bounded
+ * by the number of tasks in flight.</p>
+ */
+public class WorkStealingExecutorService extends AbstractExecutorService implements ExecutorBackPressure {
+
+    private static final long NANOS_PER_MILLI = 1000000L;
+
+    private final Logger log = LoggerFactory.getLogger(getClass());
+
+    private final ForkJoinPool pool;
+    private final int queueCapacity;
+    private final Semaphore capacity;
+    private final AtomicLong submittedCount = new AtomicLong();
+    private final AtomicLong workerSubmittedCount = new AtomicLong();
+    private final AtomicLong capacityWaitCount = new AtomicLong();
+    private final AtomicLong capacityWaitNanos = new AtomicLong();
+    private final AtomicInteger peakInFlightCount = new AtomicInteger();
+
+    /**
+     * Constructs a work-stealing executor service.
+     *
+     * @param parallelism The number of threads to run tasks on.
+     * @param queueCapacity The most tasks submitted from outside the pool which can be in flight at once.
+     */
+    public WorkStealingExecutorService(int parallelism, int queueCapacity) {
+        this.pool = new ForkJoinPool(parallelism, new CoreThreadFactory(), null, true);
+        this.queueCapacity = queueCapacity;
+        this.capacity = new Semaphore(queueCapacity);
+    }
+
+    @Override
+    public void execute(Runnable command) {
+        if (command == null) {
+            throw new NullPointerException("Cannot execute a null task.");
+        }
+        if (pool.isShutdown()) {
+            throw new RejectedExecutionException("Executor has been shut down.");
+        }
+        if (isPoolThread()) {
+            workerSubmittedCount.incrementAndGet();
+            pool.execute(new BlockingTask(command));
+        } else {
+            acquireCapacity();
+            try {
+                pool.execute(new CapacityReleasingTask(command));
+            } catch (RejectedExecutionException e) {
+                capacity.release();
+                throw e;
+            }
+            submittedCount.incrementAndGet();
+            peakInFlightCount.accumulateAndGet(getInFlightCount(), Math::max);
+        }
+    }
+
+    @Override
+    public void awaitCapacity() throws InterruptedException {
+        if (!isPoolThread()) {
+            if (capacity.tryAcquire()) {
+                capacity.release();
+            } else {
+                final long start = System.nanoTime();
+                try {
+                    capacity.acquire();
+                    capacity.release();
+                } finally {
+                    recordWait(start);
+                }
+            }
+        }
+    }
+
+    @Override
+    public void shutdown() {
+        pool.shutdown();
+        logStatistics();
+    }
+
+    @Override
+    public List<Runnable> shutdownNow() {
+        final List<Runnable> notRun = pool.shutdownNow();
+        logStatistics();
+        return notRun;
+    }
+
+    @Override
+    public boolean isShutdown() {
+        return pool.isShutdown();
+    }
+
+    @Override
+    public boolean isTerminated() {
+        return pool.isTerminated();
+    }
+
+    @Override
+    public boolean awaitTermination(long timeout, TimeUnit unit) throws InterruptedException {
+        return pool.awaitTermination(timeout, unit);
+    }
+
+    /**
+     * @return The number of threads tasks are run on.
+     */
+    public int getParallelism() {
+        return pool.getParallelism();
+    }
+
+    /**
+     * @return An estimate of the number of threads currently running tasks.
+     */
+    public int getActiveThreadCount() {
+        return pool.getActiveThreadCount();
+    }
+
+    /**
+     * @return An estimate of the number of tasks waiting to run.
+     */
+    public long getQueuedTaskCount() {
+        return pool.getQueuedTaskCount() + pool.getQueuedSubmissionCount();
+    }
+
+    /**
+     * @return An estimate of the number of tasks stolen by one thread from another.
+     */
+    public long getStealCount() {
+        return pool.getStealCount();
+    }
+
+    /**
+     * @return The most tasks submitted from outside the pool which can be in flight at once.
+     */
+    public int getQueueCapacity() {
+        return queueCapacity;
+    }
+
+    /**
+     * @return The number of tasks submitted from outside the pool which have not yet finished.
+     */
+    public int getInFlightCount() {
+        return queueCapacity - capacity.availablePermits();
+    }
+
+    /**
+     * @return The most tasks submitted from outside the pool which were in flight at once.
+     */
+    public int getPeakInFlightCount() {
+        return peakInFlightCount.get();
+    }
+
+    /**
+     * @return How saturated the pool is, from 0.0 with no tasks in flight to 1.0 when it is at capacity.
+     */
+    public double getSaturation() {
+        return (double) getInFlightCount() / queueCapacity;
+    }
+
+    /**
+     * @return The number of tasks submitted from outside the pool.
+     */
+    public long getSubmittedCount() {
+        return submittedCount.get();
+    }
+
+    /**
+     * @return The number of tasks submitted by tasks already running in the pool.
+     */
+    public long getWorkerSubmittedCount() {
+        return workerSubmittedCount.get();
+    }
+
+    /**
+     * @return The number of times a thread had to wait for the pool to have capacity.
+     */
+    public long getCapacityWaitCount() {
+        return capacityWaitCount.get();
+    }
+
+    /**
+     * @return The total time threads spent waiting for the pool to have capacity, in milliseconds.
+     */
+    public long getCapacityWaitMillis() {
+        return capacityWaitNanos.get() / NANOS_PER_MILLI;
+    }
+
+    @Override
+    public String toString() {
+        return getClass().getSimpleName() + "[parallelism:" + getParallelism()
+                + " active:" + getActiveThreadCount()
+                + " queued:" + getQueuedTaskCount()
+                + " inFlight:" + getInFlightCount() + '/' + queueCapacity
+                + " peakInFlight:" + getPeakInFlightCount()
+                + " submitted:" + getSubmittedCount()
+                + " workerSubmitted:" + getWorkerSubmittedCount()
+                + " steals:" + getStealCount()
+                + " capacityWaits:" + getCapacityWaitCount()
+                + " capacityWaitMillis:" + getCapacityWaitMillis() + ']';
+    }
+
+    private boolean isPoolThread() {
+        final Thread thread = Thread.currentThread();
+        return thread instanceof ForkJoinWorkerThread && ((ForkJoinWorkerThread) thread).getPool() == pool;
+    }
+
+    private void acquireCapacity() {
+        if (!capacity.tryAcquire()) {
+            final long start = System.nanoTime();
+            try {
+                capacity.acquire();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new RejectedExecutionException("Interrupted waiting for capacity to run a task.", e);
+            } finally {
+                recordWait(start);
+            }
+        }
+    }
+
+    private void recordWait(long start) {
+        capacityWaitCount.incrementAndGet();
+        capacityWaitNanos.addAndGet(System.nanoTime() - start);
+    }
+
+    private void logStatistics() {
+        log.info("Identification executor statistics: " + this);
+    }
+
+    /**
+     * Runs a task, then releases the capacity it took up.
+     */
+    private final class CapacityReleasingTask implements Runnable {
+
+        private final Runnable task;
+
+        CapacityReleasingTask(Runnable task) {
+            this.task = task;
+        }
+
+        @Override
+        public void run() {
+            try {
+                new BlockingTask(task).run();
+            } finally {
+                capacity.release();
+            }
+        }
+    }
+
+    /**
+     * Runs a task which may block on I/O, letting the pool compensate for the blocked thread.
+     */
+    private static final class BlockingTask implements Runnable, ForkJoinPool.ManagedBlocker {
+
+        private final Runnable task;
+        private boolean done;
+
+        BlockingTask(Runnable task) {
+            this.task = task;
+        }
+
+        @Override
+        public void run() {
+            try {
+                ForkJoinPool.managedBlock(this);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+
+        @Override
+        public boolean block() {
+            try {
+                task.run();
+            } finally {
+                done = true;
+            }
+            return true;
+        }
+
+        @Override
+        public boolean isReleasable() {
+            return done;
+        }
+    }
+
+    /**
+     * Creates pool threads named like the other core threads, which load classes
+     * in the same way as the thread which created the pool.
+     */
+    private static final class CoreThreadFactory implements ForkJoinPool.ForkJoinWorkerThreadFactory {
+
+        private final AtomicInteger threadNumber = new AtomicInteger(1);
+        private final ClassLoader contextClassLoader = Thread.currentThread().getContextClassLoader();
+
+        @Override
+        public ForkJoinWorkerThread newThread(ForkJoinPool forkJoinPool) {
+            final ForkJoinWorkerThread thread = new CoreWorkerThread(forkJoinPool);
+            thread.setName("core-thread-" + threadNumber.getAndIncrement());
+            thread.setContextClassLoader(contextClassLoader);
+            return thread;
+        }
+    }
+
+    /**
+     * A fork join worker thread which can be constructed by the thread factory.
+     */
+    private static final class CoreWorkerThread extends ForkJoinWorkerThread {
+        CoreWorkerThread(ForkJoinPool forkJoinPool) {
+            super(forkJoinPool);
+        }
+    }
+}
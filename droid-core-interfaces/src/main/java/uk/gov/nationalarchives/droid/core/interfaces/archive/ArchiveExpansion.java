@@ -0,0 +1,418 @@
+/*
+ * Copyright (c) 2016, The National Archives <pronom@nationalarchives.gov.uk>
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following
+ * conditions are met:
+ *
+ *  * Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ *
+ *  * Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ *
+ *  * Neither the name of the The National Archives nor the
+ *    names of its contributors may be used to endorse or promote products
+ *    derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package uk.gov.nationalarchives.droid.core.interfaces.archive;
+
+import java.io.IOException;
+import java.net.URI;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import uk.gov.nationalarchives.droid.core.interfaces.AsynchDroid;
+import uk.gov.nationalarchives.droid.core.interfaces.IdentificationErrorType;
+import uk.gov.nationalarchives.droid.core.interfaces.IdentificationException;
+import uk.gov.nationalarchives.droid.core.interfaces.IdentificationRequest;
+import uk.gov.nationalarchives.droid.core.interfaces.IdentificationResultCollection;
+import uk.gov.nationalarchives.droid.core.interfaces.RequestOpener;
+import uk.gov.nationalarchives.droid.core.interfaces.ResultHandler;
+
+/**
+ * Submits the entries found while expanding one archive, and counts how quickly they were submitted.
+ *
+ * <p>Entries which can be read independently of each other, such as those of zip files and ISO images
+ * on disk, are submitted with an opener, so that several I/O threads can read them at once instead of
+ * the thread walking the archive reading them one by one.</p>
+ *
+ * <p>Entries of stream formats, such as tar and 7z, must be read in order by the thread walking the archive.
+ * The thread hands them off to be identified, but it waits once a limited number of them are still waiting
+ * to be identified, so a huge archive does not fill the memory with opened entries faster than they
+ * can be identified.  It waits until one of them has been identified, however long that takes, so the limit
+ * always holds.  The thread waits as a managed blocker, so a work-stealing pool can run other work in its
+ * place.  If the thread is interrupted, because the profile is being stopped, it stops waiting.</p>
+ *
+ * <p>Handlers which decode entries, such as those of solid 7z and RAR archives, also count the bytes
+ * they decoded, and the compressed bytes they read, so decoding which is wasted or repeated shows up
+ * against the bytes of the entries submitted.  When the expansion finishes, its counts are added to the
+ * {@link AsynchDroid#getArchiveStatistics() statistics} of the droid it submitted entries to.</p>
+ */
+public final class ArchiveExpansion {
+
+    /**
+     * The default number of stream entries which can wait to be identified before the archive walk waits.
+     */
+    public static final int DEFAULT_MAX_PENDING_ENTRIES = 256;
+
+    private final Logger log = LoggerFactory.getLogger(getClass());
+
+    private final AsynchDroid droid;
+    private final ResultHandler resultHandler;
+    private final URI archiveUri;
+    private final int maxPendingEntries;
+    private final Deque<Future<IdentificationResultCollection>> pending = new ArrayDeque<>();
+    private final long startTime = System.nanoTime();
+    private final AtomicLong entryCount = new AtomicLong();
+    private final AtomicLong byteCount = new AtomicLong();
+    private final AtomicLong decodedByteCount = new AtomicLong();
+    private final AtomicLong compressedByteCount = new AtomicLong();
+    private long handOffWaitCount;
+    private long handOffWaitNanos;
+    private long elapsedNanos = -1;
+
+    /**
+     * Starts expanding an archive.
+     *
+     * @param droid The droid to submit entries to.
+     * @param resultHandler The result handler to report entries which could not be opened to.
+     * @param archiveUri The URI of the archive being expanded.
+     */
+    public ArchiveExpansion(AsynchDroid droid, ResultHandler resultHandler, URI archiveUri) {
+        this(droid, resultHandler, archiveUri, DEFAULT_MAX_PENDING_ENTRIES);
+    }
+
+    /**
+     * Starts expanding an archive.
+     *
+     * @param droid The droid to submit entries to.
+     * @param resultHandler The result handler to report entries which could not be opened to.
+     * @param archiveUri The URI of the archive being expanded.
+     * @param maxPendingEntries The number of opened entries which can wait to be identified before
+     *                          submitting another one waits.
+     */
+    public ArchiveExpansion(AsynchDroid droid, ResultHandler resultHandler, URI archiveUri, int maxPendingEntries) {
+        this.droid = droid;
+        this.resultHandler = resultHandler;
+        this.archiveUri = archiveUri;
+        this.maxPendingEntries = maxPendingEntries;
+    }
+
+    /**
+     * Submits an entry which has already been opened, waiting first if too many entries
+     * submitted before it are still waiting to be identified.
+     *
+     * @param request The opened entry.
+     */
+    public void submit(IdentificationRequest request) {
+        awaitHandOff();
+        count(request);
+        final Future<IdentificationResultCollection> future = droid.submit(request);
+        if (future != null) {
+            pending.addLast(future);
+        }
+    }
+
+    /**
+     * Submits an entry which has not been opened yet, so it can be opened on another thread.
+     * Nothing the opener uses may be closed until the entry has been identified.
+     * If the entry can't be opened, an error is reported for it.
+     *
+     * @param request The entry to submit.
+     * @param opener Opens the entry.
+     */
+    public void submit(IdentificationRequest request, EntryOpener opener) {
+        count(request);
+        droid.submit(request, new RequestOpener() {
+            @Override
+            public void open() throws IOException {
+                opener.open();
+            }
+
+            @Override
+            public void failed(IOException e) {
+                resultHandler.handleError(new IdentificationException(request, IdentificationErrorType.OTHER, e));
+            }
+        });
+    }
+
+    /**
+     * Finishes expanding the archive, adding its statistics to those of the droid.
+     */
+    public void finish() {
+        if (elapsedNanos < 0) {
+            elapsedNanos = System.nanoTime() - startTime;
+            pending.clear();
+            final Statistics statistics = droid.getArchiveStatistics();
+            if (statistics != null) {
+                statistics.add(this);
+            }
+            if (log.isDebugEnabled()) {
+                log.debug("Expanded archive " + archiveUri + ": " + this);
+            }
+        }
+    }
+
+    /**
+     * @return The number of entries submitted.
+     */
+    public long getEntryCount() {
+        return entryCount.get();
+    }
+
+    /**
+     * @return The total size of the entries submitted, where their sizes are known.
+     */
+    public long getByteCount() {
+        return byteCount.get();
+    }
+
+    /**
+     * Counts bytes decoded from the archive, whether they were submitted in an entry or not.
+     *
+     * @param bytes The number of bytes decoded.
+     */
+    public void addDecodedBytes(long bytes) {
+        decodedByteCount.addAndGet(bytes);
+    }
+
+    /**
+     * Counts compressed bytes read from the archive to decode its entries.
+     *
+     * @param bytes The number of compressed bytes read.
+     */
+    public void addCompressedBytes(long bytes) {
+        compressedByteCount.addAndGet(bytes);
+    }
+
+    /**
+     * @return The number of bytes decoded from the archive, if the handler counts them.
+     */
+    public long getDecodedByteCount() {
+        return decodedByteCount.get();
+    }
+
+    /**
+     * @return The number of compressed bytes read from the archive, if the handler counts them.
+     */
+    public long getCompressedByteCount() {
+        return compressedByteCount.get();
+    }
+
+    /**
+     * @return The number of times submitting an entry waited for earlier entries to be identified.
+     */
+    public long getHandOffWaitCount() {
+        return handOffWaitCount;
+    }
+
+    /**
+     * @return The time spent waiting for earlier entries to be identified, in milliseconds.
+     */
+    public long getHandOffWaitMillis() {
+        return TimeUnit.NANOSECONDS.toMillis(handOffWaitNanos);
+    }
+
+    /**
+     * @return The time taken to expand the archive so far, or in total once it is finished, in milliseconds.
+     */
+    public long getElapsedMillis() {
+        return TimeUnit.NANOSECONDS.toMillis(getElapsedNanos());
+    }
+
+    @Override
+    public String toString() {
+        return formatThroughput(getEntryCount(), getByteCount(), getElapsedNanos(), handOffWaitCount, handOffWaitNanos)
+                + formatDecoding(getDecodedByteCount(), getCompressedByteCount());
+    }
+
+    private long getElapsedNanos() {
+        return elapsedNanos < 0 ? System.nanoTime() - startTime : elapsedNanos;
+    }
+
+    private void count(IdentificationRequest request) {
+        entryCount.incrementAndGet();
+        final Long size = request.getRequestMetaData() == null ? null : request.getRequestMetaData().getSize();
+        if (size != null && size > 0) {
+            byteCount.addAndGet(size);
+        }
+    }
+
+    private void awaitHandOff() {
+        pending.removeIf(Future::isDone);
+        if (pending.size() >= maxPendingEntries) {
+            final long waitStart = System.nanoTime();
+            handOffWaitCount++;
+            try {
+                while (pending.size() >= maxPendingEntries) {
+                    ForkJoinPool.managedBlock(new FutureBlocker(pending.peekFirst()));
+                    pending.removeIf(Future::isDone);
+                }
+            } catch (InterruptedException e) {
+                // The profile is being stopped, so the entries may never be identified: stop waiting.
+                Thread.currentThread().interrupt();
+            }
+            handOffWaitNanos += System.nanoTime() - waitStart;
+        }
+    }
+
+    private static String formatThroughput(long entries, long bytes, long nanos, long waits, long waitNanos) {
+        final double seconds = Math.max(nanos, 1) / (double) TimeUnit.SECONDS.toNanos(1);
+        return String.format("entries:%d bytes:%d time:%d ms (%.1f entries/s, %.1f bytes/s) hand-off waits:%d (%d ms)",
+                entries, bytes, TimeUnit.NANOSECONDS.toMillis(nanos), entries / seconds, bytes / seconds,
+                waits, TimeUnit.NANOSECONDS.toMillis(waitNanos));
+    }
+
+    private static String formatDecoding(long decoded, long compressed) {
+        if (decoded == 0 && compressed == 0) {
+            return "";
+        }
+        return " decoded bytes:" + decoded + " compressed bytes read:" + compressed;
+    }
+
+    /**
+     * Opens an archive entry.
+     */
+    @FunctionalInterface
+    public interface EntryOpener {
+
+        /**
+         * Opens the entry.
+         * @throws IOException if the entry could not be opened.
+         */
+        void open() throws IOException;
+    }
+
+    /**
+     * Waits for an entry to be identified.
+     */
+    private static final class FutureBlocker implements ForkJoinPool.ManagedBlocker {
+
+        private final Future<?> future;
+
+        FutureBlocker(Future<?> future) {
+            this.future = future;
+        }
+
+        @Override
+        public boolean block() throws InterruptedException {
+            try {
+                future.get();
+            } catch (ExecutionException | CancellationException e) {
+                // The entry has failed or been cancelled: it is no longer pending either way.
+            }
+            return true;
+        }
+
+        @Override
+        public boolean isReleasable() {
+            return future.isDone();
+        }
+    }
+
+    /**
+     * The throughput of all the archives expanded for one droid.
+     */
+    public static final class Statistics {
+
+        private final AtomicLong archiveCount = new AtomicLong();
+        private final AtomicLong entryCount = new AtomicLong();
+        private final AtomicLong byteCount = new AtomicLong();
+        private final AtomicLong expansionNanos = new AtomicLong();
+        private final AtomicLong handOffWaitCount = new AtomicLong();
+        private final AtomicLong handOffWaitNanos = new AtomicLong();
+        private final AtomicLong decodedByteCount = new AtomicLong();
+        private final AtomicLong compressedByteCount = new AtomicLong();
+
+        /**
+         * Constructs empty statistics.
+         */
+        public Statistics() {
+        }
+
+        private void add(ArchiveExpansion expansion) {
+            archiveCount.incrementAndGet();
+            entryCount.addAndGet(expansion.getEntryCount());
+            byteCount.addAndGet(expansion.getByteCount());
+            expansionNanos.addAndGet(expansion.getElapsedNanos());
+            handOffWaitCount.addAndGet(expansion.handOffWaitCount);
+            handOffWaitNanos.addAndGet(expansion.handOffWaitNanos);
+            decodedByteCount.addAndGet(expansion.getDecodedByteCount());
+            compressedByteCount.addAndGet(expansion.getCompressedByteCount());
+        }
+
+        /**
+         * @return The number of archives expanded.
+         */
+        public long getArchiveCount() {
+            return archiveCount.get();
+        }
+
+        /**
+         * @return The number of entries submitted.
+         */
+        public long getEntryCount() {
+            return entryCount.get();
+        }
+
+        /**
+         * @return The total size of the entries submitted, where their sizes are known.
+         */
+        public long getByteCount() {
+            return byteCount.get();
+        }
+
+        /**
+         * @return The number of times submitting an entry waited for earlier entries to be identified.
+         */
+        public long getHandOffWaitCount() {
+            return handOffWaitCount.get();
+        }
+
+        /**
+         * @return The number of bytes decoded from the archives whose handlers count them.
+         */
+        public long getDecodedByteCount() {
+            return decodedByteCount.get();
+        }
+
+        /**
+         * @return The number of compressed bytes read from the archives whose handlers count them.
+         */
+        public long getCompressedByteCount() {
+            return compressedByteCount.get();
+        }
+
+        @Override
+        public String toString() {
+            return "archives:" + getArchiveCount() + ' '
+                    + formatThroughput(getEntryCount(), getByteCount(), expansionNanos.get(),
+                            getHandOffWaitCount(), handOffWaitNanos.get())
+                    + formatDecoding(getDecodedByteCount(), getCompressedByteCount());
+        }
+    }
+}
@@ -34,13 +34,19 @@ package uk.gov.nationalarchives.droid.core.interfaces.archive;
 import java.io.IOException;
 import java.io.InputStream;
 import java.net.URI;
+import java.nio.file.Path;
 import java.util.zip.GZIPInputStream;
 
 import org.apache.commons.io.FilenameUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 import uk.gov.nationalarchives.droid.core.interfaces.AsynchDroid;
 import uk.gov.nationalarchives.droid.core.interfaces.IdentificationRequest;
 import uk.gov.nationalarchives.droid.core.interfaces.RequestIdentifier;
+import uk.gov.nationalarchives.droid.core.interfaces.resource.FileSystemIdentificationRequest;
+import uk.gov.nationalarchives.droid.core.interfaces.resource.GZipMemberIndex;
+import uk.gov.nationalarchives.droid.core.interfaces.resource.RandomAccessGZipIdentificationRequest;
 import uk.gov.nationalarchives.droid.core.interfaces.resource.RequestMetaData;
 
 /**
@@ -49,8 +55,16 @@ import uk.gov.nationalarchives.droid.core.interfaces.resource.RequestMetaData;
  */
 public class GZipArchiveHandler implements ArchiveHandler {
 
+    /**
+     * The most bytes inflated from the first member of a gzip file to find out whether it has more members.
+     */
+    private static final long MAX_PROBED_MEMBER_LENGTH = 1024 * 1024;
+
     private IdentificationRequestFactory factory;
     private AsynchDroid droid;
+    private boolean randomAccessMembers = true;
+
+    private final Logger log = LoggerFactory.getLogger(getClass());
 
     /**
      * Empty bean constructor.
@@ -71,6 +85,9 @@ public class GZipArchiveHandler implements ArchiveHandler {
 
     @Override
     public final void handle(IdentificationRequest request) throws IOException {
+        if (handleInPlace(request)) {
+            return;
+        }
         IdentificationRequest<InputStream> archiveRequest = null;
         InputStream in = request.getSourceInputStream();
         boolean submitRequest;
@@ -109,6 +126,68 @@ public class GZipArchiveHandler implements ArchiveHandler {
         }
     }
     
+    /*
+     * Gzip files on disk with many members, such as compressed web archives, are read in place through
+     * an index of their members, so reads near the end only inflate the last members.
+     *
+     * Gzip files with a single member are out of scope: whatever their size, they are inflated to a stream
+     * reader as before, as the JDK inflater can only enter a deflate stream at its start.  So are gzip files
+     * whose first member is longer than MAX_PROBED_MEMBER_LENGTH, which are taken to have a single member
+     * rather than inflating it twice, and gzip files nested in other archives.
+     */
+    private boolean handleInPlace(IdentificationRequest request) throws IOException {
+        final GZipMemberIndex index = indexMembers(request);
+        if (index == null) {
+            return false;
+        }
+        final Path gzipFile = ((FileSystemIdentificationRequest) request).getFile();
+        final URI uri = ArchiveFileUtils.toGZipUri(request.getIdentifier().getUri());
+        final String fileName = FilenameUtils.getName(uri.getSchemeSpecificPart());
+        final RequestMetaData metaData = new RequestMetaData(index.getUncompressedLength(), null, fileName);
+
+        RequestIdentifier identifier = new RequestIdentifier(uri);
+        identifier.setAncestorId(request.getIdentifier().getAncestorId());
+        identifier.setParentId(request.getIdentifier().getNodeId());
+
+        final RandomAccessGZipIdentificationRequest archiveRequest =
+                ((GZipRequestFactory) factory).newRandomAccessRequest(metaData, identifier, index);
+        if (droid.passesIdentificationFilter(archiveRequest)) {
+            archiveRequest.open(gzipFile);
+            droid.submit(archiveRequest);
+        }
+        return true;
+    }
+
+    /*
+     * Returns the index of the members of a gzip file on disk with many members, or null if it is not
+     * to be read in place.
+     */
+    private GZipMemberIndex indexMembers(IdentificationRequest request) {
+        GZipMemberIndex index = null;
+        if (randomAccessMembers && request instanceof FileSystemIdentificationRequest
+                && factory instanceof GZipRequestFactory) {
+            final Path gzipFile = ((FileSystemIdentificationRequest) request).getFile();
+            try {
+                if (GZipMemberIndex.hasManyMembers(gzipFile, MAX_PROBED_MEMBER_LENGTH)) {
+                    index = GZipMemberIndex.build(gzipFile);
+                }
+            } catch (IOException e) {
+                log.debug(String.format("Could not index gzip members in [%s], inflating it from a stream: %s",
+                        request.getIdentifier().getUri(), e.getMessage()), e);
+            }
+        }
+        return index;
+    }
+
+    /**
+     * @param randomAccessMembers whether to read gzip files on disk with many members in place,
+     *                            through an index of their members, rather than inflating them to a stream reader.
+     *                            Gzip files with a single member are always inflated to a stream reader.
+     */
+    public final void setRandomAccessMembers(boolean randomAccessMembers) {
+        this.randomAccessMembers = randomAccessMembers;
+    }
+
     /**
      * @param factory factory for generating identification requests.
      */
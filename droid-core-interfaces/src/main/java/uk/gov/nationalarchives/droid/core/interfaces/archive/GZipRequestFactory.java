@@ -36,6 +36,8 @@ import java.io.InputStream;
 import uk.gov.nationalarchives.droid.core.interfaces.IdentificationRequest;
 import uk.gov.nationalarchives.droid.core.interfaces.RequestIdentifier;
 import uk.gov.nationalarchives.droid.core.interfaces.resource.GZipIdentificationRequest;
+import uk.gov.nationalarchives.droid.core.interfaces.resource.GZipMemberIndex;
+import uk.gov.nationalarchives.droid.core.interfaces.resource.RandomAccessGZipIdentificationRequest;
 import uk.gov.nationalarchives.droid.core.interfaces.resource.RequestMetaData;
 
 /**
@@ -53,4 +55,17 @@ public class GZipRequestFactory extends AbstractArchiveRequestFactory<InputStrea
         return new GZipIdentificationRequest(metaData, identifier, getTempDirLocation());
     }
 
+    /**
+     * Creates a request for the contents of a gzip file on disk with many members,
+     * which inflates only the members it reads from rather than inflating the whole file.
+     * @param metaData meta data about the request.
+     * @param identifier the request's identifier
+     * @param index the index of the members of the gzip file.
+     * @return A request to be opened on the gzip file.
+     */
+    public final RandomAccessGZipIdentificationRequest newRandomAccessRequest(RequestMetaData metaData,
+            RequestIdentifier identifier, GZipMemberIndex index) {
+        return new RandomAccessGZipIdentificationRequest(metaData, identifier, index);
+    }
+
 }
@@ -99,7 +99,7 @@ public class ISOImageArchiveHandler implements ArchiveHandler {
         // This would allow us to process ISO files no matter where they came from (e.g. in a zip file).
         // TODO: alternatively - DROID could fork the ISO code if the project has stopped making new releases.
         // The last release was back in 2015, so it may be that the project is now basically inactive.
-        if (request.getClass().isAssignableFrom(FileSystemIdentificationRequest.class)) {
+        if (request instanceof FileSystemIdentificationRequest) {
 
             FileSystemIdentificationRequest req = (FileSystemIdentificationRequest) request;
 
@@ -107,7 +107,11 @@ public class ISOImageArchiveHandler implements ArchiveHandler {
 
             ISOImageArchiveWalker walker = new ISOImageArchiveWalker(droid, factory, resultHandler,
                     fileSystem, request.getIdentifier());
-            walker.walk(fileSystem);
+            try {
+                walker.walk(fileSystem);
+            } finally {
+                walker.getExpansion().finish();
+            }
         } else {
             log.info("Identification request for ISO image ignored due to limited support.");
         }
@@ -129,6 +133,7 @@ public class ISOImageArchiveHandler implements ArchiveHandler {
         private final long originatorNodeId;
 
         private final Map<String, ResourceId> directories = new HashMap<String, ResourceId>();
+        private final ArchiveExpansion expansion;
         private final Logger log = LoggerFactory.getLogger(this.getClass());
 
 
@@ -151,9 +156,17 @@ public class ISOImageArchiveHandler implements ArchiveHandler {
             this.rootParentId = requestIdentifier.getResourceId();
             this.isoFileUri = requestIdentifier.getUri();
             this.originatorNodeId = requestIdentifier.getNodeId();
+            this.expansion = new ArchiveExpansion(droid, resultHandler, isoFileUri);
             directories.put("", rootParentId);  //Rood directory
         }
 
+        /**
+         * @return The expansion of the ISO image, counting the entries submitted.
+         */
+        public ArchiveExpansion getExpansion() {
+            return expansion;
+        }
+
 
         private void submitFile(Iso9660FileEntry entry) throws IOException, URISyntaxException {
             String path = FilenameUtils.getPath(entry.getPath());
@@ -166,20 +179,24 @@ public class ISOImageArchiveHandler implements ArchiveHandler {
             }
 
 
-            InputStream entryInputStream = fileSystem.getInputStream(entry);
-            try {
-                RequestIdentifier identifier = new RequestIdentifier(ArchiveFileUtils.toIsoImageUri(isoFileUri, path + name));
-                identifier.setAncestorId(originatorNodeId);
-                identifier.setParentResourceId(correlationId);
+            RequestIdentifier identifier = new RequestIdentifier(ArchiveFileUtils.toIsoImageUri(isoFileUri, path + name));
+            identifier.setAncestorId(originatorNodeId);
+            identifier.setParentResourceId(correlationId);
 
-                RequestMetaData metaData = new RequestMetaData(entry.getSize(),
-                        entry.getLastModifiedTime(), name);
+            RequestMetaData metaData = new RequestMetaData(entry.getSize(),
+                    entry.getLastModifiedTime(), name);
 
-                IdentificationRequest<InputStream> request = factory.newRequest(metaData, identifier);
-                if (droid.passesIdentificationFilter(request)) {
-                    request.open(entryInputStream);
-                    droid.submit(request);
-                }
+            IdentificationRequest<InputStream> request = factory.newRequest(metaData, identifier);
+            if (droid.passesIdentificationFilter(request)) {
+                // Entries are read from the image independently, so they can be opened on several threads.
+                expansion.submit(request, () -> openEntry(request, entry));
+            }
+        }
+
+        private void openEntry(IdentificationRequest<InputStream> request, Iso9660FileEntry entry) throws IOException {
+            InputStream entryInputStream = fileSystem.getInputStream(entry);
+            try {
+                request.open(entryInputStream);
             } finally {
                 try {
                     if (entryInputStream != null) {
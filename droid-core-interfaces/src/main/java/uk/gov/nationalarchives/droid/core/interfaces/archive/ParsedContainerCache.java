@@ -0,0 +1,182 @@
+/*
+ * Copyright (c) 2016, The National Archives <pronom@nationalarchives.gov.uk>
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following
+ * conditions are met:
+ *
+ *  * Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ *
+ *  * Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ *
+ *  * Neither the name of the The National Archives nor the
+ *    names of its contributors may be used to endorse or promote products
+ *    derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package uk.gov.nationalarchives.droid.core.interfaces.archive;
+
+import java.io.IOException;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+import uk.gov.nationalarchives.droid.core.interfaces.IdentificationRequest;
+import uk.gov.nationalarchives.droid.core.interfaces.resource.CountSnapshot;
+import uk.gov.nationalarchives.droid.core.interfaces.resource.StreamMemoryBudget;
+
+/**
+ * Holds the containers parsed for identification requests, so that container identification and archive
+ * expansion of the same request share one parse of its container.
+ *
+ * <p>Containers are only shared for requests which have been attached to the cache, by whoever controls
+ * the lifetime of the request, and they stay open until the request is released.  Containers of requests
+ * which are not attached are parsed afresh each time, and closed by whoever asked for them.</p>
+ *
+ * <p>The default cache is shared by every profile in the process.  Containers are held against the request
+ * object they were parsed for, so profiles never see each other's containers, and the entries they inflate
+ * are reserved from the one {@link StreamMemoryBudget#getDefault() memory budget} of the heap they share.</p>
+ */
+public final class ParsedContainerCache {
+
+    /**
+     * The counter of times a container was parsed.
+     */
+    public static final String PARSED = "parsed";
+
+    /**
+     * The counter of times a container was shared instead of being parsed again.
+     */
+    public static final String REUSED = "reused";
+
+    private static final String[] COUNTERS = {PARSED, REUSED};
+
+    private static final ParsedContainerCache DEFAULT_CACHE = new ParsedContainerCache(StreamMemoryBudget.getDefault());
+
+    private final StreamMemoryBudget budget;
+    private final Map<IdentificationRequest, Holder> zipFiles = new ConcurrentHashMap<>();
+    private final LongAdder parsed = new LongAdder();
+    private final LongAdder reused = new LongAdder();
+
+    /**
+     * Constructs a parsed container cache.
+     *
+     * @param budget The memory budget to reserve inflated entries from.
+     */
+    public ParsedContainerCache(StreamMemoryBudget budget) {
+        this.budget = budget;
+    }
+
+    /**
+     * @return The cache shared by the identification requests, reserving from the default stream memory budget.
+     */
+    public static ParsedContainerCache getDefault() {
+        return DEFAULT_CACHE;
+    }
+
+    /**
+     * Shares the containers parsed for a request until it is released.
+     *
+     * @param request The request to share containers for.
+     */
+    public void attach(IdentificationRequest request) {
+        zipFiles.putIfAbsent(request, new Holder());
+    }
+
+    /**
+     * Releases the containers parsed for a request, closing them.
+     *
+     * @param request The request to release.
+     * @throws IOException If a container could not be closed.
+     */
+    public void release(IdentificationRequest request) throws IOException {
+        final Holder holder = zipFiles.remove(request);
+        if (holder != null) {
+            synchronized (holder) {
+                if (holder.zipFile != null) {
+                    holder.zipFile.release();
+                }
+            }
+        }
+    }
+
+    /**
+     * Returns the zip file which is the source of a request, parsing it if it has not been parsed yet.
+     * The zip file must be closed once it has been used; if it is shared, closing it does nothing.
+     *
+     * @param request The request for the zip file.
+     * @return The parsed zip file.
+     * @throws IOException If the zip file could not be read.
+     */
+    public ParsedZipFile getZipFile(IdentificationRequest request) throws IOException {
+        final Holder holder = zipFiles.get(request);
+        if (holder == null) {
+            parsed.increment();
+            return ParsedZipFile.parse(request, false, budget);
+        }
+        synchronized (holder) {
+            if (holder.zipFile == null) {
+                parsed.increment();
+                holder.zipFile = ParsedZipFile.parse(request, true, budget);
+            } else {
+                reused.increment();
+            }
+            return holder.zipFile;
+        }
+    }
+
+    /**
+     * @return The number of requests currently attached.
+     */
+    public int getAttachedCount() {
+        return zipFiles.size();
+    }
+
+    /**
+     * @return The number of times a container was parsed.
+     */
+    public long getParsedCount() {
+        return parsed.sum();
+    }
+
+    /**
+     * @return The number of times a container was shared instead of being parsed again.
+     */
+    public long getReusedCount() {
+        return reused.sum();
+    }
+
+    /**
+     * @return The number of times containers were {@link #PARSED} and {@link #REUSED} so far.
+     */
+    public CountSnapshot snapshot() {
+        return new CountSnapshot(COUNTERS, getParsedCount(), getReusedCount());
+    }
+
+    @Override
+    public String toString() {
+        return snapshot() + " attached:" + getAttachedCount();
+    }
+
+    /**
+     * Holds the zip file parsed for a request, once it has been parsed.
+     */
+    private static final class Holder {
+        private ParsedZipFile zipFile;
+    }
+}
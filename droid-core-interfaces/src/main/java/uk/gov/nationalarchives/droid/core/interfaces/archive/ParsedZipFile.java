@@ -0,0 +1,252 @@
+/*
+ * Copyright (c) 2016, The National Archives <pronom@nationalarchives.gov.uk>
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following
+ * conditions are met:
+ *
+ *  * Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ *
+ *  * Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ *
+ *  * Neither the name of the The National Archives nor the
+ *    names of its contributors may be used to endorse or promote products
+ *    derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package uk.gov.nationalarchives.droid.core.interfaces.archive;
+
+import java.io.ByteArrayInputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.Map;
+
+import net.java.truevfs.comp.zip.ZipEntry;
+import net.java.truevfs.comp.zip.ZipFile;
+import org.apache.commons.io.IOUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import uk.gov.nationalarchives.droid.core.interfaces.IdentificationRequest;
+import uk.gov.nationalarchives.droid.core.interfaces.resource.FileSystemIdentificationRequest;
+import uk.gov.nationalarchives.droid.core.interfaces.resource.StreamMemoryBudget;
+
+/**
+ * The central directory of a zip file, and the small entries inflated from it so far.
+ *
+ * <p>A parsed zip file can be shared by the container identification and the archive expansion of the
+ * same identification request, so the central directory is only parsed once, and entries such as
+ * <code>[Content_Types].xml</code> or <code>mimetype</code>, which are read to match container signatures,
+ * are only inflated once.  Closing a shared zip file does nothing: it is closed when it is released
+ * from the {@link ParsedContainerCache}.</p>
+ *
+ * <p>Zip files on disk are indexed by commons-compress, whose index also gives the offsets of the entries'
+ * data, so archive expansion can read them in place.  Other zip files, and zip files on disk which
+ * commons-compress can't read, are parsed by TrueVfs from the request's window reader.</p>
+ */
+public final class ParsedZipFile implements Closeable {
+
+    /**
+     * The largest entry which is kept in memory once it has been inflated.
+     */
+    public static final int MAX_CACHED_ENTRY_SIZE = 64 * 1024;
+
+    /**
+     * The most bytes of inflated entries kept in memory for one zip file.
+     */
+    public static final int MAX_CACHED_BYTES = 1024 * 1024;
+
+    private static final Logger LOG = LoggerFactory.getLogger(ParsedZipFile.class);
+
+    private final ZipFile zipFile;
+    private final ZipEntryIndex entryIndex;
+    private final boolean shared;
+    private final StreamMemoryBudget budget;
+    private final Map<String, byte[]> cachedEntries = new HashMap<>();
+    private long cachedBytes;
+
+    private ParsedZipFile(ZipFile zipFile, ZipEntryIndex entryIndex, boolean shared, StreamMemoryBudget budget) {
+        this.zipFile = zipFile;
+        this.entryIndex = entryIndex;
+        this.shared = shared;
+        this.budget = budget;
+    }
+
+    /**
+     * Parses the central directory of the zip file which is the source of a request.
+     *
+     * @param request The request for the zip file.
+     * @param shared Whether the zip file is shared, and so is only closed when it is released.
+     * @param budget The memory budget to reserve inflated entries from.
+     * @return The parsed zip file.
+     * @throws IOException If the zip file could not be read.
+     */
+    static ParsedZipFile parse(IdentificationRequest request, boolean shared, StreamMemoryBudget budget)
+        throws IOException {
+        final ZipEntryIndex entryIndex = indexOnDisk(request);
+        if (entryIndex != null) {
+            return new ParsedZipFile(null, entryIndex, shared, budget);
+        }
+        final ZipFile zipFile = new ZipFile(new ByteseekWindowWrapper(request.getWindowReader()),
+                ZipFile.DEFAULT_CHARSET, true, false);
+        return new ParsedZipFile(zipFile, null, shared, budget);
+    }
+
+    /*
+     * Only zip files on disk are indexed, as their entries are read in place from the file after
+     * the request for the zip file is closed.
+     */
+    private static ZipEntryIndex indexOnDisk(IdentificationRequest request) {
+        ZipEntryIndex entryIndex = null;
+        if (request instanceof FileSystemIdentificationRequest) {
+            try {
+                entryIndex = ZipEntryIndex.open(((FileSystemIdentificationRequest) request).getFile());
+            } catch (IOException e) {
+                LOG.debug(String.format("Could not index zip entries in [%s], parsing them with TrueVfs: %s",
+                        request.getIdentifier().getUri(), e.getMessage()), e);
+            }
+        }
+        return entryIndex;
+    }
+
+    /**
+     * @param name The name of an entry.
+     * @return Whether there is an entry with that name.
+     */
+    public boolean hasEntry(String name) {
+        return entryIndex != null ? entryIndex.getEntry(name) != null : zipFile.entry(name) != null;
+    }
+
+    /**
+     * @return The index of a zip file on disk, or null if the zip file was parsed by TrueVfs.
+     */
+    ZipEntryIndex getEntryIndex() {
+        return entryIndex;
+    }
+
+    /**
+     * @return The entries of a zip file parsed by TrueVfs, in the order of its central directory.
+     * @throws IllegalStateException If the zip file was indexed instead; its entries are listed by its index.
+     */
+    Enumeration<? extends ZipEntry> entries() {
+        if (zipFile == null) {
+            throw new IllegalStateException("The zip file was indexed: list its entries from its index");
+        }
+        return zipFile.entries();
+    }
+
+    /**
+     * Returns a stream of the inflated bytes of an entry.  Entries no bigger than
+     * {@link #MAX_CACHED_ENTRY_SIZE} are inflated fully and kept in memory, while there is room for
+     * them in this zip file and in the memory budget, so reading them again does not inflate them again.
+     *
+     * @param name The name of the entry.
+     * @return A stream of the entry, or null if there is no entry with that name.
+     * @throws IOException If the entry could not be read.
+     */
+    public synchronized InputStream getInputStream(String name) throws IOException {
+        final byte[] cached = cachedEntries.get(name);
+        InputStream stream = cached == null ? null : new ByteArrayInputStream(cached);
+        if (stream == null && hasEntry(name)) {
+            final long size = getSize(name);
+            stream = canCache(size) ? new ByteArrayInputStream(readAndCache(name, size)) : openEntry(name);
+        }
+        return stream;
+    }
+
+    /*
+     * The size has already been reserved from the budget, and is released again if the entry isn't kept.
+     */
+    private byte[] readAndCache(String name, long size) throws IOException {
+        final byte[] bytes;
+        try (InputStream in = openEntry(name)) {
+            bytes = IOUtils.toByteArray(in);
+        } catch (IOException e) {
+            budget.release(size);
+            throw e;
+        }
+        if (bytes.length == size) {
+            cachedEntries.put(name, bytes);
+            cachedBytes += size;
+        } else {
+            budget.release(size); // the header lied about the size: don't keep it.
+        }
+        return bytes;
+    }
+
+    private long getSize(String name) {
+        return entryIndex != null ? entryIndex.getEntry(name).getSize() : zipFile.entry(name).getSize();
+    }
+
+    private InputStream openEntry(String name) throws IOException {
+        return entryIndex != null ? entryIndex.getInputStream(entryIndex.getEntry(name)) : zipFile.getInputStream(name);
+    }
+
+    /**
+     * @return The number of bytes of inflated entries kept in memory.
+     */
+    public synchronized long getCachedBytes() {
+        return cachedBytes;
+    }
+
+    /**
+     * @return Whether the zip file is shared, and so is only closed when it is released.
+     */
+    public boolean isShared() {
+        return shared;
+    }
+
+    /**
+     * Closes the zip file, unless it is shared.
+     *
+     * @throws IOException If the zip file could not be closed.
+     */
+    @Override
+    public void close() throws IOException {
+        if (!shared) {
+            release();
+        }
+    }
+
+    /**
+     * Closes the zip file and releases the memory of the inflated entries.
+     *
+     * @throws IOException If the zip file could not be closed.
+     */
+    synchronized void release() throws IOException {
+        cachedEntries.clear();
+        budget.release(cachedBytes);
+        cachedBytes = 0;
+        if (entryIndex != null) {
+            entryIndex.close();
+        } else {
+            zipFile.close();
+        }
+    }
+
+    /*
+     * Only entries whose size is known are cached, and only if their size can be reserved from the budget.
+     */
+    private boolean canCache(long size) {
+        return size >= 0 && size <= MAX_CACHED_ENTRY_SIZE && cachedBytes + size <= MAX_CACHED_BYTES
+                && budget.tryReserve(size);
+    }
+}
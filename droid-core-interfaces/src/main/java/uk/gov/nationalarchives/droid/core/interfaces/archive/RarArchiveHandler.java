@@ -41,10 +41,10 @@ import java.util.HashMap;
 import java.util.Map;
 
 import org.apache.commons.io.FilenameUtils;
+import org.apache.commons.io.IOUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import com.github.junrar.volume.VolumeManager;
 import com.github.junrar.Archive;
 import com.github.junrar.exception.RarException;
 import com.github.junrar.rarfile.FileHeader;
@@ -97,17 +97,21 @@ public final class RarArchiveHandler implements ArchiveHandler {
 
     @Override
     public void handle(IdentificationRequest request) throws IOException {
-        VolumeManager readerVolume = new RarReader(request.getWindowReader());
+        RarReader readerVolume = new RarReader(request.getWindowReader());
+        ArchiveExpansion expansion = new ArchiveExpansion(droid, resultHandler, request.getIdentifier().getUri());
         try {
             try (Archive archive = new Archive(readerVolume, null, null)) {
                 if (archive.isEncrypted()) {
                     throw new RuntimeException("Encrypted archive");
                 }
-                RarWalker walker = new RarWalker(archive, request.getIdentifier());
+                RarWalker walker = new RarWalker(archive, request.getIdentifier(), expansion);
                 walker.walk(archive.getFileHeaders());
             }
         } catch (RarException ex) {
             throw new RuntimeException("Rar processing failed :", ex);
+        } finally {
+            expansion.addCompressedBytes(readerVolume.getBytesRead());
+            expansion.finish();
         }
     }
 
@@ -140,14 +144,18 @@ public final class RarArchiveHandler implements ArchiveHandler {
         private final Map<String, ResourceId> directories = new HashMap<String, ResourceId>();
         private final Logger log = LoggerFactory.getLogger(this.getClass());
         private final Archive archive;
+        private final boolean solid;
         private final ResourceId rootParentId;
+        private final ArchiveExpansion expansion;
 
         private final URI parentURI;
         private final long originatorNodeId;
 
 
-        private RarWalker(Archive archive, RequestIdentifier requestIdentifier) {
+        private RarWalker(Archive archive, RequestIdentifier requestIdentifier, ArchiveExpansion expansion) {
             this.archive = archive;
+            this.solid = archive.getMainHeader() != null && archive.getMainHeader().isSolid();
+            this.expansion = expansion;
             this.parentURI = requestIdentifier.getUri();
             originatorNodeId = requestIdentifier.getNodeId();
             this.rootParentId = requestIdentifier.getResourceId();
@@ -198,21 +206,29 @@ public final class RarArchiveHandler implements ArchiveHandler {
             if (correlationId == null) {
                 correlationId = submitDirectory(path, entry.getMTime());
             }
+            RequestIdentifier identifier = new RequestIdentifier(ArchiveFileUtils.toRarUri(parentURI, path + name));
+            identifier.setAncestorId(originatorNodeId);
+            identifier.setParentResourceId(correlationId);
+
+            RequestMetaData metaData = new RequestMetaData(entry.getUnpSize(),
+                    entry.getMTime().getTime(), name);
+
+            IdentificationRequest<InputStream> request = identificationRequestFactory.newRequest(metaData, identifier);
+            final boolean identify = droid.passesIdentificationFilter(request);
+            if (!identify && !solid) {
+                return; // entries of archives which are not solid can be skipped without decoding them.
+            }
             InputStream entryInputStream = null;
             try {
                 entryInputStream = archive.getInputStream(entry);
-
-                RequestIdentifier identifier = new RequestIdentifier(ArchiveFileUtils.toRarUri(parentURI, path + name));
-                identifier.setAncestorId(originatorNodeId);
-                identifier.setParentResourceId(correlationId);
-
-                RequestMetaData metaData = new RequestMetaData(entry.getUnpSize(),
-                        entry.getMTime().getTime(), name);
-
-                IdentificationRequest<InputStream> request = identificationRequestFactory.newRequest(metaData, identifier);
-                if (droid.passesIdentificationFilter(request)) {
+                if (identify) {
                     request.open(entryInputStream);
-                    droid.submit(request);
+                    expansion.addDecodedBytes(request.size());
+                    expansion.submit(request);
+                } else {
+                    // Each entry of a solid archive is decoded from the state the entries before it left, so
+                    // entries which are not identified are still decoded, once and in order, then thrown away.
+                    expansion.addDecodedBytes(IOUtils.consume(entryInputStream));
                 }
             } finally {
                 if (entryInputStream != null) {
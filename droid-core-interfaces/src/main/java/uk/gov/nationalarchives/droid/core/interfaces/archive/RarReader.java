@@ -54,6 +54,7 @@ public class RarReader implements VolumeManager {
 
     private final Logger log = LoggerFactory.getLogger(this.getClass());
     private final WindowReader reader;
+    private long bytesRead;
 
     /**
      * Construct a RarReader.
@@ -70,6 +71,13 @@ public class RarReader implements VolumeManager {
         return lastVolume == null ? new ReaderVolume(archive) : null;
     }
 
+    /**
+     * @return The number of bytes read from the archive so far, counting bytes read more than once each time.
+     */
+    public long getBytesRead() {
+        return bytesRead;
+    }
+
     @Override
     public String toString() {
         return this.getClass().getSimpleName() + "(" + reader + ")";
@@ -126,13 +134,20 @@ public class RarReader implements VolumeManager {
 
             @Override
             public int read() throws IOException {
-                return reader.readByte(position++);
+                final int result = reader.readByte(position++);
+                if (result >= 0) {
+                    bytesRead++;
+                }
+                return result;
             }
 
             @Override
             public int read(byte[] buffer, int off, int count) throws IOException {
                 final int bytesCopied = ArchiveFileUtils.copyToBuffer(reader, position, buffer, off, count);
                 position += bytesCopied;
+                if (bytesCopied > 0) {
+                    bytesRead += bytesCopied;
+                }
                 return bytesCopied;
             }
 
@@ -34,7 +34,6 @@ package uk.gov.nationalarchives.droid.core.interfaces.archive;
 import java.io.IOException;
 import java.io.InputStream;
 import java.net.URI;
-import java.nio.channels.SeekableByteChannel;
 import java.util.Date;
 import java.util.HashMap;
 import java.util.List;
@@ -83,11 +82,18 @@ public class SevenZipArchiveHandler implements ArchiveHandler {
 
     @Override
     public void handle(IdentificationRequest request) throws IOException {
-        SeekableByteChannel     sevenZipReader = new SevenZipReader(request.getWindowReader());
+        SevenZipReader          sevenZipReader = new SevenZipReader(request.getWindowReader());
         SevenZFile              sevenZFile     = new SevenZFile(sevenZipReader);
         SevenZipIteratorAdapter sevenZIterator = new SevenZipIteratorAdapter(sevenZFile);
         SevenZArchiveWalker     walker         = new SevenZArchiveWalker(droid, factory, request.getIdentifier(), resultHandler);
-        walker.walk(sevenZIterator);
+        try {
+            walker.walk(sevenZIterator);
+        } finally {
+            // Entries are read in order, so each solid block is decoded once, as its entries are submitted.
+            walker.getExpansion().addDecodedBytes(sevenZIterator.getBytesRead());
+            walker.getExpansion().addCompressedBytes(sevenZipReader.getBytesRead());
+            walker.getExpansion().finish();
+        }
     }
 
     /**
@@ -134,6 +140,7 @@ public class SevenZipArchiveHandler implements ArchiveHandler {
         private final long originatorNodeId;
         private final Map<String, ResourceId> directories = new HashMap<String, ResourceId>();
         private final ResultHandler resultHandler;
+        private final ArchiveExpansion expansion;
 
 
         /**
@@ -153,6 +160,14 @@ public class SevenZipArchiveHandler implements ArchiveHandler {
             this.parentName = parent.getUri();
             this.originatorNodeId = parent.getAncestorId();
             this.resultHandler = resultHandler;
+            this.expansion = new ArchiveExpansion(droid, resultHandler, parentName);
+        }
+
+        /**
+         * @return The expansion of the 7z archive, counting the entries submitted.
+         */
+        public ArchiveExpansion getExpansion() {
+            return expansion;
         }
 
         @Override
@@ -208,7 +223,7 @@ public class SevenZipArchiveHandler implements ArchiveHandler {
             IdentificationRequest<InputStream> request = factory.newRequest(metaData, identifier);
             if (droid.passesIdentificationFilter(request)) {
                 request.open(info.stream);
-                droid.submit(request);
+                expansion.submit(request);
             } // Seven zip entry stream should not be closed whether opened or not - see SevenZipIteratorAdapter class.
         }
 
@@ -50,6 +50,7 @@ public class SevenZipIteratorAdapter implements Iterable<SevenZipArchiveHandler.
     private static final int BYTE_TO_INT = 0xFF;
 
     private final SevenZFile zipFile;
+    private long bytesRead;
 
     /**
      * Construct a SevenZipIteratorAdapter.
@@ -65,6 +66,13 @@ public class SevenZipIteratorAdapter implements Iterable<SevenZipArchiveHandler.
         return new SevenZipIterator();
     }
 
+    /**
+     * @return The number of decoded bytes read from the entry streams so far.
+     */
+    public long getBytesRead() {
+        return bytesRead;
+    }
+
 
     /**
      * An Iterator over SevenZEntryInfo classes, which wrap a SevenZArchiveEntry and an InputStream
@@ -111,14 +119,18 @@ public class SevenZipIteratorAdapter implements Iterable<SevenZipArchiveHandler.
 
         @Override
         public int read(byte[] b, int off, int len) throws IOException {
-            return zipFile.read(b, off, len);
+            final int read = zipFile.read(b, off, len);
+            if (read > 0) {
+                bytesRead += read;
+            }
+            return read;
         }
 
         @Override
         public int read() throws IOException {
             final byte[] aByte = oneByte;
-            final int bytesRead = read(aByte, 0, 1);
-            return bytesRead < 1 ? -1 : aByte[0] & BYTE_TO_INT;
+            final int count = read(aByte, 0, 1);
+            return count < 1 ? -1 : aByte[0] & BYTE_TO_INT;
         }
 
         @Override
@@ -48,6 +48,7 @@ public class SevenZipReader implements SeekableByteChannel {
 
     private final WindowReader reader;
     private long position;
+    private long bytesRead;
     private boolean isOpen = true;
 
     /**
@@ -64,11 +65,21 @@ public class SevenZipReader implements SeekableByteChannel {
         if (isOpen) {
             final int bytesCopied = ArchiveFileUtils.copyToBuffer(reader, position, dst);
             position += bytesCopied;
+            if (bytesCopied > 0) {
+                bytesRead += bytesCopied;
+            }
             return bytesCopied;
         }
         return -1;
     }
 
+    /**
+     * @return The number of bytes read from the archive so far, counting bytes read more than once each time.
+     */
+    public long getBytesRead() {
+        return bytesRead;
+    }
+
     @Override
     public int write(ByteBuffer src) throws IOException {
         throw new NonWritableChannelException();
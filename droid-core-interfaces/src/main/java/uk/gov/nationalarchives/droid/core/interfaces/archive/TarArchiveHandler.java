@@ -89,6 +89,7 @@ public class TarArchiveHandler implements ArchiveHandler {
         InputStream tarIn = request.getSourceInputStream(); 
         try {
             final TarArchiveInputStream in = new TarArchiveInputStream(tarIn);
+            final TarArchiveWalker walker = new TarArchiveWalker(request.getIdentifier(), in);
             try {                
                 Iterable<TarArchiveEntry> iterable = new Iterable<TarArchiveEntry>() {
                     @Override
@@ -97,9 +98,9 @@ public class TarArchiveHandler implements ArchiveHandler {
                     }
                 };
                 
-                TarArchiveWalker walker = new TarArchiveWalker(request.getIdentifier(), in);
                 walker.walk(iterable);
             } finally {
+                walker.expansion.finish();
                 if (in != null) {
                     in.close();
                 }
@@ -141,10 +142,12 @@ public class TarArchiveHandler implements ArchiveHandler {
      * @param in the archive input stream
      * @param correlationId the correlation iod for the request
      * @param originatorNodeId the ID of the originator node
+     * @param expansion the expansion of the tar file to submit the entry to
      * @throws IOException if the input stream could not be read
      */
     final void submit(TarArchiveEntry entry, String entryName, URI parentName, 
-            ArchiveInputStream in, ResourceId correlationId, long originatorNodeId) throws IOException {
+            ArchiveInputStream in, ResourceId correlationId, long originatorNodeId,
+            ArchiveExpansion expansion) throws IOException {
         long size = entry.getSize();
         Date time = entry.getModTime();
 
@@ -160,7 +163,7 @@ public class TarArchiveHandler implements ArchiveHandler {
         IdentificationRequest<InputStream> request = factory.newRequest(metaData, identifier);
         if (droidCore.passesIdentificationFilter(request)) {
             request.open(in);
-            droidCore.submit(request);
+            expansion.submit(request);
         } // Tar archive input stream should not be closed - it exists for entire archive, but behaves as if it contains bytes for each entry.
     }
     
@@ -225,10 +228,12 @@ public class TarArchiveHandler implements ArchiveHandler {
         private final long originatorNodeId;
         private final URI parentName;
         private final ArchiveInputStream in;
+        private final ArchiveExpansion expansion;
         private final Map<String, ResourceId> directories = new HashMap<String, ResourceId>();
         
         TarArchiveWalker(RequestIdentifier parent, ArchiveInputStream in) {
             this.in = in;
+            this.expansion = new ArchiveExpansion(droidCore, resultHandler, parent.getUri());
             this.parentId = parent.getResourceId();
             this.parentName = parent.getUri();
             this.originatorNodeId = parent.getAncestorId();
@@ -252,7 +257,7 @@ public class TarArchiveHandler implements ArchiveHandler {
             // If there is a file, submit the file:
             entryName = FilenameUtils.getName(entryName);
             if (!entryName.isEmpty()) {
-                submit(entry, entryName, parentName, in, correlationId, originatorNodeId);
+                submit(entry, entryName, parentName, in, correlationId, originatorNodeId, expansion);
             }
         }
         
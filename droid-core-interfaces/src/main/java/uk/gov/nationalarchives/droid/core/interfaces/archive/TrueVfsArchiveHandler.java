@@ -32,7 +32,7 @@
 package uk.gov.nationalarchives.droid.core.interfaces.archive;
 
 import net.java.truevfs.comp.zip.ZipEntry;
-import net.java.truevfs.comp.zip.ZipFile;
+import org.apache.commons.compress.archivers.zip.ZipArchiveEntry;
 import org.apache.commons.io.FilenameUtils;
 import uk.gov.nationalarchives.droid.core.interfaces.AsynchDroid;
 import uk.gov.nationalarchives.droid.core.interfaces.IdentificationRequest;
@@ -40,11 +40,13 @@ import uk.gov.nationalarchives.droid.core.interfaces.IdentificationResultImpl;
 import uk.gov.nationalarchives.droid.core.interfaces.RequestIdentifier;
 import uk.gov.nationalarchives.droid.core.interfaces.ResourceId;
 import uk.gov.nationalarchives.droid.core.interfaces.ResultHandler;
+import uk.gov.nationalarchives.droid.core.interfaces.resource.RandomAccessZipEntryIdentificationRequest;
 import uk.gov.nationalarchives.droid.core.interfaces.resource.RequestMetaData;
 
 import java.io.IOException;
 import java.io.InputStream;
 import java.net.URI;
+import java.nio.file.Path;
 import java.util.Enumeration;
 import java.util.HashMap;
 import java.util.Iterator;
@@ -59,6 +61,7 @@ public class TrueVfsArchiveHandler implements ArchiveHandler {
     private AsynchDroid droidCore;
     private IdentificationRequestFactory<InputStream> factory;
     private ResultHandler resultHandler;
+    private boolean randomAccessEntries = true;
 
     /**
      * Empty bean constructor.
@@ -82,45 +85,52 @@ public class TrueVfsArchiveHandler implements ArchiveHandler {
 
     @Override
     public void handle(IdentificationRequest request) throws IOException {
-        ZipFile zipFile = new ZipFile(new ByteseekWindowWrapper(request.getWindowReader()), ZipFile.DEFAULT_CHARSET, true, false);
-        try {
-            Iterable<ZipEntry> iterable = new Iterable<ZipEntry>() {
-                @Override
-                public Iterator<ZipEntry> iterator() {
-                    return new ZipFileIterator(zipFile);
-                }
-            };
-    
-            ZipArchiveWalker walker = new ZipArchiveWalker(request.getIdentifier(), zipFile);  
-            walker.walk(iterable);
-        } finally {
-            if (zipFile != null) {
-                zipFile.close();
+        final RequestIdentifier identifier = request.getIdentifier();
+        ArchiveExpansion expansion = new ArchiveExpansion(droidCore, resultHandler, identifier.getUri());
+        // Shares the central directory and small entries already parsed to match container signatures, if any:
+        try (ParsedZipFile zipFile = ParsedContainerCache.getDefault().getZipFile(request)) {
+            final ZipEntryIndex entryIndex = zipFile.getEntryIndex();
+            if (entryIndex != null) {
+                new IndexedZipArchiveWalker(identifier, entryIndex, readsInPlace(), expansion)
+                        .walk(entryIndex.entries());
+            } else {
+                Iterable<ZipEntry> iterable = new Iterable<ZipEntry>() {
+                    @Override
+                    public Iterator<ZipEntry> iterator() {
+                        return new ZipFileIterator(zipFile);
+                    }
+                };
+                new ParsedZipArchiveWalker(identifier, zipFile, expansion).walk(iterable);
             }
+        } finally {
+            expansion.finish();
         }
     }
 
+    /*
+     * Only zip files on disk are indexed, as they stay there after the request for the zip file is closed.
+     * Their entries are read in place if the factory can make requests for them.  Zip files nested in other
+     * archives are listed by TrueVfs and read from streams.
+     */
+    private boolean readsInPlace() {
+        return randomAccessEntries && factory instanceof ZipEntryRequestFactory;
+    }
+
     /**
      * @param parentName
-     * @param entry
+     * @param path the path of the directory in the zip file
      * @param entryName
      * @param correlationId
      * @return the resource id
      */
     private ResourceId submitDirectory(final URI parentName,
-            ZipEntry entry, String entryName, ResourceId correlationId) {
+            String path, String entryName, ResourceId correlationId) {
         IdentificationResultImpl result = new IdentificationResultImpl();
         
-        long size = entry.getSize();
-        long time = entry.getTime();
-        
-        RequestMetaData metaData = new RequestMetaData(
-                size != -1 ? size : null, 
-                time != -1 ? time : null,
-                entryName);
+        RequestMetaData metaData = new RequestMetaData(null, null, entryName);
         
         RequestIdentifier identifier = new RequestIdentifier(
-                ArchiveFileUtils.toZipUri(parentName, entry.getName()));
+                ArchiveFileUtils.toZipUri(parentName, path));
         
         result.setRequestMetaData(metaData);
         result.setIdentifier(identifier);
@@ -128,46 +138,38 @@ public class TrueVfsArchiveHandler implements ArchiveHandler {
     }
     
     /**
-     * Submits a request to droid.
-     * @param entry the zip entry to submit
-     * @param parentName the name of the parent file
-     * @param entryName the name of the Zip entry
-     * @param file the TrueVfs zipFile
-     * @param correlationId an ID to correlate this submission to
-     * @param originatorNodeId the ID of the originator node
-     * @throws IOException if there was an error accessing the input stream 'in'
+     * Submits a request to droid, opening it from a stream of the entry.
+     * @param metaData the metadata of the entry
+     * @param identifier the identifier of the entry
+     * @param opener opens a stream of the entry
+     * @param expansion the expansion of the zip file to submit the entry to
+     * @throws IOException if there was an error accessing the input stream of the entry
      */
-    final void submit(ZipEntry entry, String entryName, URI parentName, 
-            ZipFile file, ResourceId correlationId, long originatorNodeId)
-        throws IOException {
-        
-        long size = entry.getSize();
-        long time = entry.getTime();
-        
-        RequestMetaData metaData = new RequestMetaData(
-                size != -1 ? size : null, 
-                time != -1 ? time : null,
-                entryName);
-        
-        RequestIdentifier identifier = new RequestIdentifier(ArchiveFileUtils.toZipUri(parentName, entry.getName()));
-        identifier.setAncestorId(originatorNodeId);
-        identifier.setParentResourceId(correlationId);
-
+    private void submitStream(RequestMetaData metaData, RequestIdentifier identifier, EntryStreamOpener opener,
+                              ArchiveExpansion expansion) throws IOException {
         IdentificationRequest request = factory.newRequest(metaData, identifier);
         if (droidCore.passesIdentificationFilter(request)) {
-            InputStream in = null;
-            try {
-                in = file.getInputStream(entry.getName());
+            try (InputStream in = opener.open()) {
                 request.open(in);
-            } finally {
-                if (in != null) {
-                    in.close();
-                }
             }
-            droidCore.submit(request);
+            expansion.submit(request);
         }
     }
-    
+
+    /*
+     * Entries read in place are opened on the I/O threads if there are any, so several deflated
+     * entries can be inflated at once.
+     */
+    private void submitInPlace(RequestMetaData metaData, RequestIdentifier identifier,
+                               ZipArchiveEntry indexedEntry, Path zipFile, ArchiveExpansion expansion) {
+        final RandomAccessZipEntryIdentificationRequest request = ((ZipEntryRequestFactory) factory)
+                .newRandomAccessRequest(metaData, identifier, indexedEntry.getDataOffset(),
+                        indexedEntry.getCompressedSize(), indexedEntry.getMethod());
+        if (droidCore.passesIdentificationFilter(request)) {
+            expansion.submit(request, () -> request.open(zipFile));
+        }
+    }
+
     /**
      * @param factory the factory to set
      */
@@ -175,6 +177,14 @@ public class TrueVfsArchiveHandler implements ArchiveHandler {
         this.factory = factory;
     }
 
+    /**
+     * @param randomAccessEntries whether to read the stored and deflated entries of zip files on disk in place,
+     *                            rather than reading each entry from a stream before it is submitted.
+     */
+    public final void setRandomAccessEntries(boolean randomAccessEntries) {
+        this.randomAccessEntries = randomAccessEntries;
+    }
+
     /**
      * @param droidCore the droidCore to set
      */
@@ -191,7 +201,7 @@ public class TrueVfsArchiveHandler implements ArchiveHandler {
 
         private final Enumeration entries;
         
-        public ZipFileIterator(ZipFile fileToIterate) {
+        public ZipFileIterator(ParsedZipFile fileToIterate) {
             entries = fileToIterate.entries();
         }
         
@@ -220,27 +230,64 @@ public class TrueVfsArchiveHandler implements ArchiveHandler {
         }
     }
     
+    /**
+     * Opens a stream of an entry.
+     */
+    @FunctionalInterface
+    private interface EntryStreamOpener {
+
+        /**
+         * @return a stream of the entry
+         * @throws IOException if the entry could not be read
+         */
+        InputStream open() throws IOException;
+    }
+
     /**
      * Archive walker for zip files.
+     * @param <T> the type of the zip entries walked
      * @author rflitcroft
      *
      */
-    private final class ZipArchiveWalker extends ArchiveFileWalker<ZipEntry> {
+    private abstract class ZipArchiveWalker<T> extends ArchiveFileWalker<T> {
         
-        private final ZipFile zipFile;
+        private final ArchiveExpansion expansion;
         private final ResourceId parentId;
         private final long originatorNodeId;
         private final URI parentName;
         private final Map<String, ResourceId> directories = new HashMap<String, ResourceId>();
         
-        ZipArchiveWalker(RequestIdentifier identifier, ZipFile zipFile) {
-            this.zipFile = zipFile;
+        ZipArchiveWalker(RequestIdentifier identifier, ArchiveExpansion expansion) {
+            this.expansion = expansion;
             this.parentId = identifier.getResourceId();
             this.parentName = identifier.getUri();
             this.originatorNodeId = identifier.getAncestorId();
         }
 
-        
+        /**
+         * @param entry an entry of the zip file
+         * @return the path of the entry in the zip file
+         */
+        protected abstract String getName(T entry);
+
+        /**
+         * @param entry an entry of the zip file
+         * @param entryName the name of the entry
+         * @return the metadata of the entry
+         */
+        protected abstract RequestMetaData newMetaData(T entry, String entryName);
+
+        /**
+         * Submits a file entry.
+         * @param entry the entry to submit
+         * @param metaData the metadata of the entry
+         * @param identifier the identifier of the entry
+         * @param zipExpansion the expansion of the zip file to submit the entry to
+         * @throws IOException if the entry could not be read
+         */
+        protected abstract void submitEntry(T entry, RequestMetaData metaData, RequestIdentifier identifier,
+                                            ArchiveExpansion zipExpansion) throws IOException;
+
         /**
          * Finds the longest path which has been seen before (if any),
          * and adds all the subsequent folders which haven't been seen.
@@ -268,9 +315,8 @@ public class TrueVfsArchiveHandler implements ArchiveHandler {
             // Add any that haven't yet been processed (from shortest to longest)
             for (int pathIndex = longestSeenBefore - 1; pathIndex >= 0; pathIndex--) {
                 final String pathName = paths.get(pathIndex);
-                ZipEntry entry = new ZipEntry(pathName);
                 String dirName = FilenameUtils.getName(pathName.substring(0, pathName.length() - 1));
-                longestParentId = submitDirectory(parentName, entry, dirName, longestParentId);
+                longestParentId = submitDirectory(parentName, pathName, dirName, longestParentId);
                 directories.put(pathName, longestParentId);
             }
             
@@ -279,8 +325,9 @@ public class TrueVfsArchiveHandler implements ArchiveHandler {
         
         
         @Override
-        protected void handleEntry(ZipEntry entry) throws IOException {
-            String entryName = entry.getName();
+        protected void handleEntry(T entry) throws IOException {
+            final String path = getName(entry);
+            String entryName = path;
             final String prefixPath = FilenameUtils.getPath(entryName);
             ResourceId correlationId = parentId; // by default, files are correlated to the parent.
 
@@ -297,9 +344,88 @@ public class TrueVfsArchiveHandler implements ArchiveHandler {
             entryName = (entryName == null) ? null : entryName.trim();
             entryName = FilenameUtils.getName(entryName);
             if (!entryName.isEmpty()) {
-                submit(entry, entryName, parentName, zipFile, correlationId, originatorNodeId);
+                submitEntry(entry, newMetaData(entry, entryName), newIdentifier(path, correlationId), expansion);
             }
         }
+
+        private RequestIdentifier newIdentifier(String path, ResourceId correlationId) {
+            RequestIdentifier identifier = new RequestIdentifier(ArchiveFileUtils.toZipUri(parentName, path));
+            identifier.setAncestorId(originatorNodeId);
+            identifier.setParentResourceId(correlationId);
+            return identifier;
+        }
+    }
+
+    /**
+     * Walks the entries of a zip file listed by TrueVfs, reading each of them from a stream.
+     */
+    private final class ParsedZipArchiveWalker extends ZipArchiveWalker<ZipEntry> {
+
+        private final ParsedZipFile zipFile;
+
+        ParsedZipArchiveWalker(RequestIdentifier identifier, ParsedZipFile zipFile, ArchiveExpansion expansion) {
+            super(identifier, expansion);
+            this.zipFile = zipFile;
+        }
+
+        @Override
+        protected String getName(ZipEntry entry) {
+            return entry.getName();
+        }
+
+        @Override
+        protected RequestMetaData newMetaData(ZipEntry entry, String entryName) {
+            return newRequestMetaData(entry.getSize(), entry.getTime(), entryName);
+        }
+
+        @Override
+        protected void submitEntry(ZipEntry entry, RequestMetaData metaData, RequestIdentifier identifier,
+                                   ArchiveExpansion zipExpansion) throws IOException {
+            submitStream(metaData, identifier, () -> zipFile.getInputStream(entry.getName()), zipExpansion);
+        }
+    }
+
+    /**
+     * Walks the entries of a zip file on disk indexed by commons-compress, reading them in place where it can.
+     */
+    private final class IndexedZipArchiveWalker extends ZipArchiveWalker<ZipArchiveEntry> {
+
+        private final ZipEntryIndex entryIndex;
+        private final boolean inPlace;
+
+        IndexedZipArchiveWalker(RequestIdentifier identifier, ZipEntryIndex entryIndex, boolean inPlace,
+                                ArchiveExpansion expansion) {
+            super(identifier, expansion);
+            this.entryIndex = entryIndex;
+            this.inPlace = inPlace;
+        }
+
+        @Override
+        protected String getName(ZipArchiveEntry entry) {
+            return entry.getName();
+        }
+
+        @Override
+        protected RequestMetaData newMetaData(ZipArchiveEntry entry, String entryName) {
+            return newRequestMetaData(entry.getSize(), entry.getTime(), entryName);
+        }
+
+        @Override
+        protected void submitEntry(ZipArchiveEntry entry, RequestMetaData metaData, RequestIdentifier identifier,
+                                   ArchiveExpansion zipExpansion) throws IOException {
+            if (inPlace && ZipEntryIndex.canReadInPlace(entry)) {
+                submitInPlace(metaData, identifier, entry, entryIndex.getZipFile(), zipExpansion);
+            } else {
+                submitStream(metaData, identifier, () -> entryIndex.getInputStream(entry), zipExpansion);
+            }
+        }
+    }
+
+    private static RequestMetaData newRequestMetaData(long size, long time, String entryName) {
+        return new RequestMetaData(
+                size != -1 ? size : null,
+                time != -1 ? time : null,
+                entryName);
     }
 
     /**
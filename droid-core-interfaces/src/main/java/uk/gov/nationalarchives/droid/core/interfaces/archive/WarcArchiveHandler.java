@@ -35,6 +35,10 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.net.URI;
 import java.net.URL;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
 import java.util.Iterator;
 import java.util.Map;
 import java.util.HashMap;
@@ -44,12 +48,14 @@ import org.jwat.warc.WarcHeader;
 import org.jwat.warc.WarcReader;
 import org.jwat.warc.WarcReaderFactory;
 import org.jwat.warc.WarcRecord;
+import net.byteseek.io.reader.WindowReader;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import uk.gov.nationalarchives.droid.core.interfaces.ResourceId;
 import uk.gov.nationalarchives.droid.core.interfaces.RequestIdentifier;
 import uk.gov.nationalarchives.droid.core.interfaces.IdentificationRequest;
+import uk.gov.nationalarchives.droid.core.interfaces.resource.FileSystemIdentificationRequest;
 import uk.gov.nationalarchives.droid.core.interfaces.resource.RequestMetaData;
 
 
@@ -64,13 +70,21 @@ public class WarcArchiveHandler extends WebArchiveHandler implements ArchiveHand
      */
     protected static final String WEB_ARCHIVE_TYPE = "warc";
 
+    private static final int RECORD_BUFFER_SIZE = 8192;
+
     private final Logger log = LoggerFactory.getLogger(getClass());
 
+    private boolean randomAccessPayloads = true;
+
     /**
      * {@inheritDoc}
      */
     @Override
     public final void handle(IdentificationRequest request) throws IOException {
+        if (canReadInPlace(request)) {
+            handleInPlace((FileSystemIdentificationRequest) request);
+            return;
+        }
 
         final InputStream arcIn = request.getSourceInputStream();
         try {
@@ -90,7 +104,39 @@ public class WarcArchiveHandler extends WebArchiveHandler implements ArchiveHand
             }
         }
     }
-    
+
+    /**
+     * @param randomAccessPayloads whether to read the payloads of uncompressed WARC files on disk in place,
+     *                             rather than copying each payload out of the WARC file before it is submitted.
+     */
+    public final void setRandomAccessPayloads(boolean randomAccessPayloads) {
+        this.randomAccessPayloads = randomAccessPayloads;
+    }
+
+    /*
+     * Payloads can only be read in place if the WARC file is a file on disk, which stays there after the
+     * request for the WARC file is closed, and if it is not compressed.  WARC files nested in other
+     * archives, and compressed WARC files, are read from streams.
+     */
+    private boolean canReadInPlace(IdentificationRequest request) throws IOException {
+        return randomAccessPayloads && request instanceof FileSystemIdentificationRequest
+                && canReadPayloadsInPlace() && WarcPayloadScanner.isUncompressedWarc(request.getWindowReader());
+    }
+
+    /*
+     * Walks the payloads as they are found by scanning the WARC file.
+     */
+    private void handleInPlace(FileSystemIdentificationRequest request) throws IOException {
+        final WindowReader reader = request.getWindowReader();
+        final WarcPayloadScanner scanner = new WarcPayloadScanner(reader);
+        final ArchiveExpansion expansion = newExpansion(request.getIdentifier().getUri());
+        try {
+            WarcPayloadWalker walker = new WarcPayloadWalker(request.getIdentifier(), request.getFile(), expansion);
+            walker.walk(() -> scanner);
+        } finally {
+            expansion.finish();
+        }
+    }
 
     /**
      * Adapts the JWAT ByteCountingPushbackInputStream to generate warc entries.
@@ -167,30 +213,46 @@ public class WarcArchiveHandler extends WebArchiveHandler implements ArchiveHand
     /**
      * Archive walker for WARC archives.
      * modelled on walker for TAR archives
+     * @param <T> the type of the records walked
      * @author rflitcroft
      * @author gseaman
      */
-    private final class WarcArchiveWalker extends ArchiveFileWalker<WarcRecord> {
+    private abstract class AbstractWarcWalker<T> extends ArchiveFileWalker<T> {
 
         private final ResourceId parentId;
         private final long originatorNodeId;
         private final URI parentName;
-        private final InputStream in;
         private final Map<String, ResourceId> directories = new HashMap<String, ResourceId>();
 
-        WarcArchiveWalker(RequestIdentifier parent, InputStream in) {
-            this.in = in;
+        AbstractWarcWalker(RequestIdentifier parent) {
             this.parentId = parent.getResourceId();
             this.parentName = parent.getUri();
             this.originatorNodeId = parent.getAncestorId();
         }
 
+        /**
+         * @param entry a record
+         * @return the URI the record was captured from
+         */
+        protected abstract String getTargetUri(T entry);
+
+        /**
+         * Submits a record.
+         * @param entry the record to submit
+         * @param entryName the name of the record
+         * @param parent the name of the parent file
+         * @param correlationId the correlation Id for the request
+         * @param originatorId the Id of the originator node
+         * @throws IOException if the record could not be read
+         */
+        protected abstract void submitEntry(T entry, String entryName, URI parent, ResourceId correlationId,
+                                            long originatorId) throws IOException;
 
         @Override
-        protected void handleEntry(WarcRecord entry) throws IOException {
+        protected final void handleEntry(T entry) throws IOException {
             final int maxLEN = 4095;
 
-            String entryUri = entry.header.warcTargetUriStr;
+            String entryUri = getTargetUri(entry);
             String entryPath = new URL(entryUri).getFile();
             // remove querystring if any (may include slashes)
             final int queryPos = entryPath.indexOf('?');
@@ -212,8 +274,90 @@ public class WarcArchiveHandler extends WebArchiveHandler implements ArchiveHand
             // if the file name (including querystring) is > 4096 chars, truncate it for the DB
             String truncatedName = entryName.length() < maxLEN ? entryName : entryName.substring(0, maxLEN);
 
-            submit(entry, truncatedName, parentName, in, correlationId, originatorNodeId);
+            submitEntry(entry, truncatedName, parentName, correlationId, originatorNodeId);
+        }
+
+    }
+
+    /**
+     * Walks the records read by JWAT, copying out each payload.
+     */
+    private final class WarcArchiveWalker extends AbstractWarcWalker<WarcRecord> {
+
+        private final InputStream in;
+
+        WarcArchiveWalker(RequestIdentifier parent, InputStream in) {
+            super(parent);
+            this.in = in;
+        }
+
+        @Override
+        protected String getTargetUri(WarcRecord entry) {
+            return entry.header.warcTargetUriStr;
+        }
+
+        @Override
+        protected void submitEntry(WarcRecord entry, String entryName, URI parent, ResourceId correlationId,
+                                   long originatorId) throws IOException {
+            submit(entry, entryName, parent, in, correlationId, originatorId);
+        }
+    }
+
+    /**
+     * Walks the payloads found in an uncompressed WARC file, which are read in place.
+     *
+     * <p>The records of payloads with a transfer or content encoding are read by JWAT instead, from a stream
+     * which starts at the record, so their payloads are read exactly as they are when the WARC file is read
+     * from a stream.  Only those records are streamed: the rest of the payloads are still read in place.</p>
+     */
+    private final class WarcPayloadWalker extends AbstractWarcWalker<WarcPayloadScanner.Payload> {
+
+        private final Path warcFile;
+        private final ArchiveExpansion expansion;
+
+        WarcPayloadWalker(RequestIdentifier parent, Path warcFile, ArchiveExpansion expansion) {
+            super(parent);
+            this.warcFile = warcFile;
+            this.expansion = expansion;
         }
 
+        @Override
+        protected String getTargetUri(WarcPayloadScanner.Payload entry) {
+            return entry.getTargetUri();
+        }
+
+        @Override
+        protected void submitEntry(WarcPayloadScanner.Payload entry, String entryName, URI parent,
+                                   ResourceId correlationId, long originatorId) throws IOException {
+            // the size reported is the length of the record's content, as it is for records read by JWAT:
+            RequestMetaData metaData = new RequestMetaData(entry.getContentLength(), entry.getTime(), entryName);
+            if (entry.isEncoded()) {
+                submitFromRecord(entry, metaData, parent, correlationId, originatorId);
+            } else {
+                submitInPlace(WEB_ARCHIVE_TYPE, metaData, parent, warcFile, entry.getOffset(), entry.getLength(),
+                        correlationId, originatorId, expansion);
+            }
+        }
+
+        private void submitFromRecord(WarcPayloadScanner.Payload entry, RequestMetaData metaData, URI parent,
+                                   ResourceId correlationId, long originatorId) throws IOException {
+            try (FileChannel channel = FileChannel.open(warcFile, StandardOpenOption.READ)) {
+                channel.position(entry.getRecordOffset());
+                final InputStream in = Channels.newInputStream(channel);
+                final WarcReader warcReader = WarcReaderFactory.getReaderUncompressed();
+                try {
+                    final WarcRecord record = warcReader.getNextRecordFrom(in, entry.getRecordOffset(),
+                            RECORD_BUFFER_SIZE);
+                    if (record == null || record.getPayload() == null) {
+                        throw new IOException("JWAT could not read the WARC record at position "
+                                + entry.getRecordOffset());
+                    }
+                    submit(WEB_ARCHIVE_TYPE, metaData, parent, record.getPayloadContent(), correlationId,
+                            originatorId, expansion);
+                } finally {
+                    warcReader.close();
+                }
+            }
+        }
     }
 }
@@ -0,0 +1,400 @@
+/*
+ * Copyright (c) 2016, The National Archives <pronom@nationalarchives.gov.uk>
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following
+ * conditions are met:
+ *
+ *  * Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ *
+ *  * Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ *
+ *  * Neither the name of the The National Archives nor the
+ *    names of its contributors may be used to endorse or promote products
+ *    derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package uk.gov.nationalarchives.droid.core.interfaces.archive;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.time.format.DateTimeParseException;
+import java.util.Iterator;
+import java.util.Locale;
+import java.util.NoSuchElementException;
+import java.util.function.BiConsumer;
+
+import net.byteseek.io.reader.WindowReader;
+
+/**
+ * Finds the payloads of the HTTP 200 response records in an uncompressed WARC file, by reading the
+ * headers of each record and skipping over its content, so the payloads can be read in place.
+ *
+ * <p>The records accepted are the same as those the {@link WarcArchiveHandler} accepts from JWAT:
+ * response records whose content is an HTTP response with a status of 200.  The payload of a record is
+ * its HTTP entity: the bytes of the record's content which follow the HTTP headers.</p>
+ *
+ * <p>A payload sent with a transfer encoding (such as chunked) or a content encoding (such as gzip) is
+ * marked as {@link Payload#isEncoded() encoded}.  Its record can be read by JWAT instead, from the
+ * {@link Payload#getRecordOffset() start of the record}, so the payload is read exactly as it is when the
+ * WARC file is read from a stream.</p>
+ *
+ * <p>Records are scanned one at a time as the payloads are iterated over, so a WARC file of any size
+ * can be scanned without holding all its payloads in memory.</p>
+ */
+final class WarcPayloadScanner implements Iterator<WarcPayloadScanner.Payload> {
+
+    private static final String WARC_VERSION_PREFIX = "WARC/";
+    private static final byte[] WARC_MAGIC = WARC_VERSION_PREFIX.getBytes(StandardCharsets.US_ASCII);
+    private static final int MAX_LINE_LENGTH = 64 * 1024;
+    private static final int HTTP_OK = 200;
+    private static final int CR = '\r';
+    private static final int LF = '\n';
+
+    private final WindowReader reader;
+    private final long length;
+    private long position;
+    private Payload next;
+
+    /**
+     * @param reader A reader for the WARC file, which must not be compressed.
+     * @throws IOException If the length of the WARC file could not be read.
+     */
+    WarcPayloadScanner(WindowReader reader) throws IOException {
+        this.reader = reader;
+        this.length = reader.length();
+    }
+
+    /**
+     * @param reader A reader for a file.
+     * @return Whether the file starts with a WARC record which is not compressed.
+     * @throws IOException If the file could not be read.
+     */
+    static boolean isUncompressedWarc(WindowReader reader) throws IOException {
+        for (int i = 0; i < WARC_MAGIC.length; i++) {
+            if (reader.readByte(i) != WARC_MAGIC[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * {@inheritDoc}
+     * @throws ArchiveIterationException if the WARC file could not be read (RuntimeException)
+     */
+    @Override
+    public boolean hasNext() {
+        if (next == null) {
+            try {
+                next = nextPayload();
+            } catch (IOException e) {
+                throw new ArchiveIterationException(e.getMessage(), e);
+            }
+        }
+        return next != null;
+    }
+
+    /**
+     * {@inheritDoc}
+     * @throws ArchiveIterationException if the WARC file could not be read (RuntimeException)
+     */
+    @Override
+    public Payload next() {
+        if (!hasNext()) {
+            throw new NoSuchElementException();
+        }
+        final Payload payload = next;
+        next = null;
+        return payload;
+    }
+
+    /**
+     * Not implemented.
+     */
+    @Override
+    public void remove() {
+        throw new UnsupportedOperationException("Remove is not supported.");
+    }
+
+    private Payload nextPayload() throws IOException {
+        Payload payload = null;
+        while (payload == null && skipLineEnds()) {
+            payload = nextRecord();
+        }
+        return payload;
+    }
+
+    /*
+     * Reads the headers of the record at the current position and moves past its content,
+     * returning its payload if it is accepted, or null if it is not.
+     */
+    private Payload nextRecord() throws IOException {
+        final long recordStart = position;
+        final String version = readLine(length);
+        if (version == null || !version.startsWith(WARC_VERSION_PREFIX)) {
+            throw new IOException("No WARC record at position " + recordStart);
+        }
+        final RecordHeaders headers = new RecordHeaders();
+        final boolean headersEnded = readHeaders(length, headers::add);
+        final long contentLength = parseLength(headers.contentLength, recordStart);
+        final long contentEnd = position + contentLength;
+        if (!headersEnded || contentLength < 0 || contentEnd > length) {
+            throw new IOException("Truncated WARC record at position " + recordStart);
+        }
+        Payload payload = null;
+        if (headers.isHttpResponse() && readHttpStatus(contentEnd) == HTTP_OK) {
+            final HttpHeaders httpHeaders = new HttpHeaders();
+            if (readHeaders(contentEnd, httpHeaders::add)) {
+                payload = new Payload(headers.targetUri, parseDate(headers.date), contentLength, recordStart,
+                        position, contentEnd - position, httpHeaders.encoded);
+            }
+        }
+        position = contentEnd;
+        return payload;
+    }
+
+    private int readHttpStatus(long limit) throws IOException {
+        final String statusLine = readLine(limit);
+        if (statusLine != null && statusLine.startsWith("HTTP/")) {
+            final String[] parts = statusLine.split(" +", 3);
+            if (parts.length > 1) {
+                try {
+                    return Integer.parseInt(parts[1]);
+                } catch (NumberFormatException e) {
+                    return -1;
+                }
+            }
+        }
+        return -1;
+    }
+
+    /*
+     * Moves past the header lines up to the blank line which ends them, giving the name of each header,
+     * in lower case, and its value to the consumer.  Returns false if the headers do not end before the limit.
+     */
+    private boolean readHeaders(long limit, BiConsumer<String, String> consumer) throws IOException {
+        String line = readLine(limit);
+        while (line != null && !line.isEmpty()) {
+            final int colon = line.indexOf(':');
+            if (colon > 0) {
+                consumer.accept(line.substring(0, colon).trim().toLowerCase(Locale.ROOT),
+                        line.substring(colon + 1).trim());
+            }
+            line = readLine(limit);
+        }
+        return line != null;
+    }
+
+    /*
+     * Moves past the blank lines which end a record, returning false if there are no more records.
+     */
+    private boolean skipLineEnds() throws IOException {
+        int nextByte = reader.readByte(position);
+        while (nextByte == CR || nextByte == LF) {
+            nextByte = reader.readByte(++position);
+        }
+        return nextByte >= 0;
+    }
+
+    /*
+     * Reads a line which ends before the limit, without its line ending,
+     * or returns null if there is no line ending before the limit.
+     */
+    private String readLine(long limit) throws IOException {
+        final ByteArrayOutputStream line = new ByteArrayOutputStream();
+        while (position < limit) {
+            final int nextByte = reader.readByte(position++);
+            if (nextByte == LF) {
+                return line.toString(StandardCharsets.UTF_8.name());
+            }
+            if (nextByte != CR) {
+                if (nextByte < 0 || line.size() >= MAX_LINE_LENGTH) {
+                    return null;
+                }
+                line.write(nextByte);
+            }
+        }
+        return null;
+    }
+
+    private static long parseLength(String value, long recordStart) throws IOException {
+        if (value == null) {
+            return -1;
+        }
+        try {
+            return Long.parseLong(value);
+        } catch (NumberFormatException e) {
+            throw new IOException("Invalid content length [" + value + "] in WARC record at position "
+                    + recordStart, e);
+        }
+    }
+
+    private static Long parseDate(String date) {
+        if (date != null) {
+            try {
+                return Instant.parse(date).toEpochMilli();
+            } catch (DateTimeParseException e) {
+                return null;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * The WARC headers of a record which are needed to accept its payload.
+     */
+    private static final class RecordHeaders {
+
+        private String type;
+        private String targetUri;
+        private String date;
+        private String contentType;
+        private String contentLength;
+
+        void add(String name, String value) {
+            switch (name) {
+                case "warc-type":
+                    type = value;
+                    break;
+                case "warc-target-uri":
+                    targetUri = value;
+                    break;
+                case "warc-date":
+                    date = value;
+                    break;
+                case "content-type":
+                    contentType = value;
+                    break;
+                case "content-length":
+                    contentLength = value;
+                    break;
+                default:
+                    break;
+            }
+        }
+
+        /*
+         * Whether the record is a response from a target, whose content is an HTTP response.
+         */
+        boolean isHttpResponse() {
+            return "response".equals(type) && targetUri != null
+                    && contentType != null && contentType.toLowerCase(Locale.ROOT).startsWith("application/http");
+        }
+    }
+
+    /**
+     * The HTTP headers of a response which say whether its payload is encoded.
+     */
+    private static final class HttpHeaders {
+
+        private boolean encoded;
+
+        void add(String name, String value) {
+            if (isEncodingHeader(name) && !value.isEmpty() && !"identity".equalsIgnoreCase(value)) {
+                encoded = true;
+            }
+        }
+
+        private static boolean isEncodingHeader(String name) {
+            return "transfer-encoding".equals(name) || "content-encoding".equals(name);
+        }
+    }
+
+    /**
+     * The payload of a response record, and where it is in the WARC file.
+     */
+    static final class Payload {
+
+        private final String targetUri;
+        private final Long time;
+        private final long contentLength;
+        private final long recordOffset;
+        private final long offset;
+        private final long length;
+        private final boolean encoded;
+
+        Payload(String targetUri, Long time, long contentLength, long recordOffset, long offset, long length,
+                boolean encoded) {
+            this.targetUri = targetUri;
+            this.time = time;
+            this.contentLength = contentLength;
+            this.recordOffset = recordOffset;
+            this.offset = offset;
+            this.length = length;
+            this.encoded = encoded;
+        }
+
+        /**
+         * @return The URI the record was captured from.
+         */
+        String getTargetUri() {
+            return targetUri;
+        }
+
+        /**
+         * @return The time the record was captured, or null if it is not known.
+         */
+        Long getTime() {
+            return time;
+        }
+
+        /**
+         * @return The length of the record's content, including its HTTP headers.
+         */
+        long getContentLength() {
+            return contentLength;
+        }
+
+        /**
+         * @return The position of the record in the WARC file, from which JWAT can read it.
+         */
+        long getRecordOffset() {
+            return recordOffset;
+        }
+
+        /**
+         * @return The position of the payload in the WARC file.
+         */
+        long getOffset() {
+            return offset;
+        }
+
+        /**
+         * @return The length of the payload.
+         */
+        long getLength() {
+            return length;
+        }
+
+        /**
+         * @return Whether the payload has a transfer or content encoding, so its bytes in the WARC file
+         *         are not the entity which is identified.
+         */
+        boolean isEncoded() {
+            return encoded;
+        }
+
+        @Override
+        public String toString() {
+            return targetUri;
+        }
+    }
+}
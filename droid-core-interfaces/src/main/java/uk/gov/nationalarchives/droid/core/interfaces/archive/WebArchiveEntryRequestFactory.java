@@ -33,6 +33,7 @@ package uk.gov.nationalarchives.droid.core.interfaces.archive;
 
 import uk.gov.nationalarchives.droid.core.interfaces.IdentificationRequest;
 import uk.gov.nationalarchives.droid.core.interfaces.RequestIdentifier;
+import uk.gov.nationalarchives.droid.core.interfaces.resource.RandomAccessWebArchiveEntryIdentificationRequest;
 import uk.gov.nationalarchives.droid.core.interfaces.resource.RequestMetaData;
 import uk.gov.nationalarchives.droid.core.interfaces.resource.WebArchiveEntryIdentificationRequest;
 
@@ -52,4 +53,19 @@ public class WebArchiveEntryRequestFactory extends AbstractArchiveRequestFactory
         return request;
     }
 
+    /**
+     * Creates a request for the payload of a record in an uncompressed web archive on disk,
+     * which is read in place rather than from a stream.
+     * @param metaData meta data about the request.
+     * @param identifier the request's identifier
+     * @param payloadOffset the position in the web archive of the payload.
+     * @param payloadLength the length of the payload.
+     * @return A request to be opened on the web archive.
+     */
+    public final RandomAccessWebArchiveEntryIdentificationRequest newRandomAccessRequest(RequestMetaData metaData,
+            RequestIdentifier identifier, long payloadOffset, long payloadLength) {
+        return new RandomAccessWebArchiveEntryIdentificationRequest(metaData, identifier, payloadOffset,
+                payloadLength);
+    }
+
 }
@@ -34,6 +34,7 @@ package uk.gov.nationalarchives.droid.core.interfaces.archive;
 import java.io.InputStream;
 import java.io.IOException;
 import java.net.URI;
+import java.nio.file.Path;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
@@ -45,6 +46,7 @@ import uk.gov.nationalarchives.droid.core.interfaces.IdentificationResultImpl;
 import uk.gov.nationalarchives.droid.core.interfaces.ResourceId;
 import uk.gov.nationalarchives.droid.core.interfaces.RequestIdentifier;
 import uk.gov.nationalarchives.droid.core.interfaces.ResultHandler;
+import uk.gov.nationalarchives.droid.core.interfaces.resource.RandomAccessWebArchiveEntryIdentificationRequest;
 import uk.gov.nationalarchives.droid.core.interfaces.resource.RequestMetaData;
 
 /**
@@ -139,10 +141,8 @@ public abstract class WebArchiveHandler {
     final void submit(String webArchiveType, RequestMetaData metaData, URI parentName,
                       InputStream payload, ResourceId correlationId, long originatorNodeId) throws IOException {
 
-        RequestIdentifier identifier =
-                new RequestIdentifier(ArchiveFileUtils.toWebArchiveUri(webArchiveType, parentName, metaData.getName()));
-        identifier.setAncestorId(originatorNodeId);
-        identifier.setParentResourceId(correlationId);
+        RequestIdentifier identifier = newIdentifier(webArchiveType, metaData, parentName, correlationId,
+                originatorNodeId);
         IdentificationRequest request = factory.newRequest(metaData, identifier);
         if (droidCore.passesIdentificationFilter(request)) {
             request.open(payload); // get the inputstream back from the record, and write it out to file
@@ -150,6 +150,84 @@ public abstract class WebArchiveHandler {
         } // don;t close payload on each entry - it exists for entire archive.
     }
 
+    /**
+     * Submits a request for a payload which is read from a stream, while expanding a web archive
+     * whose other payloads are read in place.
+     * @param webArchiveType arc or warc
+     * @param metaData file size, time and name
+     * @param parentName the name of the parent file
+     * @param payload the payload input stream, which is read before this method returns
+     * @param correlationId the correlation Id for the request
+     * @param originatorNodeId the Id of the originator node
+     * @param expansion the expansion of the web archive to submit the request to
+     * @throws IOException if the input stream could not be read
+     */
+    final void submit(String webArchiveType, RequestMetaData metaData, URI parentName, InputStream payload,
+                      ResourceId correlationId, long originatorNodeId, ArchiveExpansion expansion)
+        throws IOException {
+        RequestIdentifier identifier = newIdentifier(webArchiveType, metaData, parentName, correlationId,
+                originatorNodeId);
+        IdentificationRequest request = factory.newRequest(metaData, identifier);
+        if (droidCore.passesIdentificationFilter(request)) {
+            request.open(payload);
+            expansion.submit(request);
+        }
+    }
+
+    /**
+     * @return Whether the factory can create requests which read payloads in place.
+     */
+    final boolean canReadPayloadsInPlace() {
+        return factory instanceof WebArchiveEntryRequestFactory;
+    }
+
+    /**
+     * Starts the expansion of a web archive whose payloads are read in place.
+     * @param archiveUri the URI of the web archive
+     * @return the expansion to submit the payloads to
+     */
+    final ArchiveExpansion newExpansion(URI archiveUri) {
+        return new ArchiveExpansion(droidCore, resultHandler, archiveUri);
+    }
+
+    /**
+     * Submits a request for a payload which is read in place from an uncompressed web archive on disk.
+     * The request is opened when it is identified, rather than its payload being copied out first.
+     * @param webArchiveType arc or warc
+     * @param metaData file size, time and name; the size is reported in the same way as for payloads read
+     *                 from streams, which may not be the length of the payload
+     * @param parentName the name of the parent file
+     * @param webArchive the web archive containing the payload
+     * @param payloadOffset the position of the payload in the web archive
+     * @param payloadLength the length of the payload
+     * @param correlationId the correlation Id for the request
+     * @param originatorNodeId the Id of the originator node
+     * @param expansion the expansion of the web archive to submit the request to
+     */
+    //CHECKSTYLE:OFF - more than 8 parameters.
+    final void submitInPlace(String webArchiveType, RequestMetaData metaData, URI parentName, Path webArchive,
+                             long payloadOffset, long payloadLength, ResourceId correlationId,
+                             long originatorNodeId, ArchiveExpansion expansion) {
+    //CHECKSTYLE:ON
+        RequestIdentifier identifier = newIdentifier(webArchiveType, metaData, parentName, correlationId,
+                originatorNodeId);
+        final RandomAccessWebArchiveEntryIdentificationRequest request =
+                ((WebArchiveEntryRequestFactory) factory).newRandomAccessRequest(metaData, identifier,
+                        payloadOffset, payloadLength);
+        if (droidCore.passesIdentificationFilter(request)) {
+            expansion.submit(request, () -> request.open(webArchive));
+        }
+    }
+
+    private static RequestIdentifier newIdentifier(String webArchiveType, RequestMetaData metaData, URI parentName,
+                                                   ResourceId correlationId, long originatorNodeId) {
+        RequestIdentifier identifier =
+                new RequestIdentifier(ArchiveFileUtils.toWebArchiveUri(webArchiveType, parentName, metaData.getName()));
+        identifier.setAncestorId(originatorNodeId);
+        identifier.setParentResourceId(correlationId);
+        return identifier;
+    }
+
 
 
     /**
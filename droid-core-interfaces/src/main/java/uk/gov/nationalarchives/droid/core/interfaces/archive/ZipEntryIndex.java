@@ -0,0 +1,119 @@
+/*
+ * Copyright (c) 2016, The National Archives <pronom@nationalarchives.gov.uk>
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following
+ * conditions are met:
+ *
+ *  * Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ *
+ *  * Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ *
+ *  * Neither the name of the The National Archives nor the
+ *    names of its contributors may be used to endorse or promote products
+ *    derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package uk.gov.nationalarchives.droid.core.interfaces.archive;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Path;
+import java.util.Collections;
+
+import org.apache.commons.compress.archivers.EntryStreamOffsets;
+import org.apache.commons.compress.archivers.zip.ZipArchiveEntry;
+import org.apache.commons.compress.archivers.zip.ZipFile;
+
+import uk.gov.nationalarchives.droid.core.interfaces.resource.RandomAccessZipEntryIdentificationRequest;
+
+/**
+ * The entries of a zip file on disk, and where their data start, so they can be read in place.
+ * The central directory is read once, by commons-compress, which both lists the entries and
+ * gives the offsets of their data.  The index is held by the {@link ParsedZipFile} of the zip file,
+ * so container identification and archive expansion share it.
+ */
+final class ZipEntryIndex implements Closeable {
+
+    private final Path zipFile;
+    private final ZipFile entries;
+
+    private ZipEntryIndex(final Path zipFile, final ZipFile entries) {
+        this.zipFile = zipFile;
+        this.entries = entries;
+    }
+
+    /**
+     * Reads the central directory of a zip file.
+     * @param zipFile The zip file to index.
+     * @return An index of the entries in the zip file.
+     * @throws IOException If the zip file could not be read.
+     */
+    static ZipEntryIndex open(final Path zipFile) throws IOException {
+        return new ZipEntryIndex(zipFile, ZipFile.builder().setPath(zipFile).get());
+    }
+
+    /**
+     * @return The zip file which was indexed.
+     */
+    Path getZipFile() {
+        return zipFile;
+    }
+
+    /**
+     * @return The entries of the zip file, in the order of its central directory.
+     */
+    Iterable<ZipArchiveEntry> entries() {
+        return Collections.list(entries.getEntries());
+    }
+
+    /**
+     * @param name The name of an entry.
+     * @return The first entry with that name, or null if there is none.
+     */
+    ZipArchiveEntry getEntry(final String name) {
+        return entries.getEntry(name);
+    }
+
+    /**
+     * @param entry An entry of the zip file.
+     * @return Whether the entry can be read in place: its size and data offset are known, and it is
+     * neither encrypted nor compressed with a method which can't be read in place.
+     */
+    static boolean canReadInPlace(final ZipArchiveEntry entry) {
+        return entry.getSize() >= 0
+                && entry.getDataOffset() != EntryStreamOffsets.OFFSET_UNKNOWN
+                && !entry.getGeneralPurposeBit().usesEncryption()
+                && RandomAccessZipEntryIdentificationRequest.isSupported(entry.getMethod());
+    }
+
+    /**
+     * @param entry An entry of the zip file.
+     * @return A stream of the entry's bytes, which must be closed once it has been read.
+     * @throws IOException If the entry could not be read.
+     */
+    InputStream getInputStream(final ZipArchiveEntry entry) throws IOException {
+        return entries.getInputStream(entry);
+    }
+
+    @Override
+    public void close() throws IOException {
+        entries.close();
+    }
+}
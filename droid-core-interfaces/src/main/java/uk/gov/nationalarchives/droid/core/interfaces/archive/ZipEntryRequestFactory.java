@@ -34,6 +34,7 @@ package uk.gov.nationalarchives.droid.core.interfaces.archive;
 import java.io.InputStream;
 
 import uk.gov.nationalarchives.droid.core.interfaces.RequestIdentifier;
+import uk.gov.nationalarchives.droid.core.interfaces.resource.RandomAccessZipEntryIdentificationRequest;
 import uk.gov.nationalarchives.droid.core.interfaces.resource.RequestMetaData;
 import uk.gov.nationalarchives.droid.core.interfaces.resource.ZipEntryIdentificationRequest;
 
@@ -54,5 +55,20 @@ public class ZipEntryRequestFactory extends AbstractArchiveRequestFactory<InputS
         
         return new ZipEntryIdentificationRequest(metaData, identifier, getTempDirLocation());
     }
+
+    /**
+     * Creates a request for an entry in a zip file on disk, which is read in place rather than from a stream.
+     * @param metaData meta data about the request, whose size must be known.
+     * @param identifier the request's identifier
+     * @param dataOffset the position in the zip file of the entry's data.
+     * @param compressedSize the size of the entry's data in the zip file.
+     * @param method the compression method of the entry.
+     * @return A request to be opened on the zip file.
+     */
+    public final RandomAccessZipEntryIdentificationRequest newRandomAccessRequest(RequestMetaData metaData,
+            RequestIdentifier identifier, long dataOffset, long compressedSize, int method) {
+        return new RandomAccessZipEntryIdentificationRequest(metaData, identifier, getTempDirLocation(),
+                dataOffset, compressedSize, method);
+    }
     
 }
@@ -122,6 +122,14 @@ public enum DroidGlobalProperty {
     /** Default hash algorithm to use (currently only md5, sha1, sha256 available). */
     HASH_ALGORITHM("profile.hashAlgorithm", PropertyType.TEXT, true),
 
+    /** Hash algorithms to calculate as well as the default algorithm, separated by spaces. */
+    ADDITIONAL_HASH_ALGORITHMS("profile.additionalHashAlgorithms", PropertyType.TEXT, true),
+
+    /** The number of bytes of a file after which each hash algorithm is calculated
+     * on its own thread, or zero or less to calculate all algorithms on one thread.
+     */
+    HASH_PARALLEL_THRESHOLD("profile.hashParallelThreshold", PropertyType.LONG, true),
+
     /** CSV Export one row per format. */
     CSV_EXPORT_ROW_PER_FORMAT("export.rowPerFormat", PropertyType.BOOLEAN, true),
 
@@ -130,6 +138,56 @@ public enum DroidGlobalProperty {
      */
     MAX_BYTES_TO_SCAN("profile.maxBytesToScan", PropertyType.LONG, true),
 
+    /** The engine used to match binary signatures: standard, or multipattern to find
+     * all variable offset sequences in a single pass over each file.
+     */
+    MATCHING_ENGINE("profile.matchingEngine", PropertyType.TEXT, true),
+
+    /** The size of file at or above which files are read through a memory mapping,
+     * or negative, meaning files are never memory mapped.
+     */
+    MAPPED_FILE_THRESHOLD("profile.mappedFileThreshold", PropertyType.LONG, true),
+
+    /** The scheduler identification requests are run on: workstealing, to use a work-stealing
+     * pool which makes the profile walker wait when it is busy, or blocking, to use the fixed size pool.
+     */
+    EXECUTOR("profile.executor", PropertyType.TEXT, true),
+
+    /** The number of threads the work-stealing scheduler uses,
+     * or zero or less to use the number of available processors.
+     */
+    EXECUTOR_PARALLELISM("profile.executorParallelism", PropertyType.INTEGER, true),
+
+    /** The most identification requests which can be in flight in the work-stealing scheduler,
+     * or zero or less for four times the number of threads.
+     */
+    EXECUTOR_QUEUE_CAPACITY("profile.executorQueueCapacity", PropertyType.INTEGER, true),
+
+    /** The number of threads which open files and read their first and last windows before
+     * signatures are matched, or zero to read files on the threads which match signatures.
+     */
+    IO_THREADS("profile.ioThreads", PropertyType.INTEGER, true),
+
+    /** The number of bytes at the start and end of each file which the I/O threads read
+     * before signatures are matched.
+     */
+    READ_AHEAD_BYTES("profile.readAheadBytes", PropertyType.INTEGER, true),
+
+    /** Whether a new profile database is filled with only its primary key and parent id indexes,
+     * building the other indexes when the run completes or the profile is saved.
+     */
+    BULK_LOAD("profile.bulkLoad", PropertyType.BOOLEAN, true),
+
+    /** The number of threads which save results to the profile database, each with its own connection
+     * and a disjoint set of results.
+     */
+    DATABASE_WRITERS("profile.databaseWriters", PropertyType.INTEGER, true),
+
+    /** Where the results of a profile are saved: "database" for the profile database, or "segments"
+     * for an append-only log of columnar segment files in the profile.
+     */
+    RESULT_STORE("profile.resultStore", PropertyType.TEXT, true),
+
     /** A path to output the results to as a CSV file.
      * If this property is not set, then results will go to the profile database (default).
      * If it is set, then the results will be written to the file, but not the profile database.
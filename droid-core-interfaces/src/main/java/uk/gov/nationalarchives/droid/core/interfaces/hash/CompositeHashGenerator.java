@@ -0,0 +1,148 @@
+/*
+ * Copyright (c) 2016, The National Archives <pronom@nationalarchives.gov.uk>
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following
+ * conditions are met:
+ *
+ *  * Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ *
+ *  * Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ *
+ *  * Neither the name of the The National Archives nor the
+ *    names of its contributors may be used to endorse or promote products
+ *    derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package uk.gov.nationalarchives.droid.core.interfaces.hash;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.util.EnumSet;
+import java.util.Set;
+
+/**
+ * A hash generator which calculates several hash algorithms from a single read of the bytes.
+ *
+ * <p>The hash returned by {@link #hash(InputStream)} is the hash of the primary generator's
+ * algorithm; the streaming hashes it creates calculate the primary algorithm along with
+ * any additional algorithms configured.  On large files, each algorithm can be hashed
+ * on its own thread from buffers shared between them, if a parallel threshold is set.</p>
+ */
+public class CompositeHashGenerator implements HashGenerator {
+
+    private static final int BUFFER_SIZE = 65536;
+
+    private final HashGenerator primaryGenerator;
+    private final Set<HashAlgorithm> algorithms = EnumSet.noneOf(HashAlgorithm.class);
+    private long parallelThreshold;
+
+    /**
+     * Constructs a composite hash generator which calculates the primary generator's algorithm.
+     * @param primaryGenerator The generator whose algorithm is returned as the hash.
+     */
+    public CompositeHashGenerator(HashGenerator primaryGenerator) {
+        this.primaryGenerator = primaryGenerator;
+        addPrimaryAlgorithm();
+    }
+
+    /**
+     * Sets the algorithms to calculate in addition to the primary algorithm.
+     * Unknown algorithm names are ignored.
+     *
+     * @param additionalAlgorithms The names of the algorithms, separated by spaces or commas.
+     */
+    public void setAdditionalAlgorithms(String additionalAlgorithms) {
+        algorithms.clear();
+        addPrimaryAlgorithm();
+        if (additionalAlgorithms != null) {
+            for (String name : additionalAlgorithms.split("[\\s,]+")) {
+                final HashAlgorithm algorithm = HashAlgorithm.forName(name);
+                if (algorithm != null) {
+                    algorithms.add(algorithm);
+                }
+            }
+        }
+    }
+
+    /**
+     * Sets the number of bytes after which each algorithm is hashed on its own thread.
+     * @param parallelThreshold The number of bytes, or zero or less to always hash on the calling thread.
+     */
+    public void setParallelThreshold(long parallelThreshold) {
+        this.parallelThreshold = parallelThreshold;
+    }
+
+    /**
+     * @return The algorithms calculated by this generator.
+     */
+    public Set<HashAlgorithm> getAlgorithms() {
+        return EnumSet.copyOf(algorithms);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public String hash(InputStream in) throws IOException {
+        if (getAlgorithm() == null) {
+            return primaryGenerator.hash(in);
+        }
+        final StreamingHash streamingHash = newStreamingHash();
+        try {
+            final byte[] buffer = new byte[BUFFER_SIZE];
+            int read = in.read(buffer);
+            while (read >= 0) {
+                streamingHash.update(ByteBuffer.wrap(buffer, 0, read));
+                read = in.read(buffer);
+            }
+        } catch (IOException e) {
+            streamingHash.cancel();
+            throw e;
+        }
+        return streamingHash.finish().get(getAlgorithm());
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public HashAlgorithm getAlgorithm() {
+        return primaryGenerator.getAlgorithm();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public StreamingHash newStreamingHash() {
+        return new MessageDigestStreamingHash(parallelThreshold, algorithms.toArray(new HashAlgorithm[0]));
+    }
+
+    /**
+     * A primary generator with no {@link HashAlgorithm} can only hash whole streams,
+     * so it adds nothing to the algorithms streamed.
+     */
+    private void addPrimaryAlgorithm() {
+        final HashAlgorithm primaryAlgorithm = primaryGenerator.getAlgorithm();
+        if (primaryAlgorithm != null) {
+            algorithms.add(primaryAlgorithm);
+        }
+    }
+}
@@ -0,0 +1,94 @@
+/*
+ * Copyright (c) 2016, The National Archives <pronom@nationalarchives.gov.uk>
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following
+ * conditions are met:
+ *
+ *  * Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ *
+ *  * Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ *
+ *  * Neither the name of the The National Archives nor the
+ *    names of its contributors may be used to endorse or promote products
+ *    derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package uk.gov.nationalarchives.droid.core.interfaces.hash;
+
+import java.security.MessageDigest;
+import java.util.Locale;
+
+import org.apache.commons.codec.digest.DigestUtils;
+
+/**
+ * The hash algorithms which DROID can calculate.
+ */
+public enum HashAlgorithm {
+
+    /** MD5. */
+    MD5("md5", "MD5"),
+
+    /** SHA-1. */
+    SHA1("sha1", "SHA-1"),
+
+    /** SHA-256. */
+    SHA256("sha256", "SHA-256"),
+
+    /** SHA-512. */
+    SHA512("sha512", "SHA-512");
+
+    private final String name;
+    private final String digestName;
+
+    HashAlgorithm(String name, String digestName) {
+        this.name = name;
+        this.digestName = digestName;
+    }
+
+    /**
+     * @return The name of the algorithm, as used in the DROID configuration.
+     */
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * @return A new message digest for the algorithm.
+     */
+    public MessageDigest newMessageDigest() {
+        return DigestUtils.getDigest(digestName);
+    }
+
+    /**
+     * Returns the algorithm with a name, ignoring case.
+     * @param name The name of the algorithm.
+     * @return The algorithm with the name, or null if there is no algorithm with that name.
+     */
+    public static HashAlgorithm forName(String name) {
+        if (name != null) {
+            final String algorithmName = name.trim().toLowerCase(Locale.ENGLISH);
+            for (HashAlgorithm algorithm : values()) {
+                if (algorithm.name.equals(algorithmName)) {
+                    return algorithm;
+                }
+            }
+        }
+        return null;
+    }
+}
@@ -48,4 +48,26 @@ public interface HashGenerator {
      */
     String hash(InputStream in) throws IOException;
 
+    /**
+     * @return the algorithm whose hash is returned by this generator, or null if it is not one
+     *         of the {@link HashAlgorithm}s, in which case it can only hash whole streams.
+     */
+    default HashAlgorithm getAlgorithm() {
+        return null;
+    }
+
+    /**
+     * Creates a new streaming hash for the algorithms calculated by this generator,
+     * so the hashes can be calculated incrementally as bytes are read.
+     * @return a new streaming hash.
+     * @throws UnsupportedOperationException if the generator has no {@link HashAlgorithm}.
+     */
+    default StreamingHash newStreamingHash() {
+        final HashAlgorithm algorithm = getAlgorithm();
+        if (algorithm == null) {
+            throw new UnsupportedOperationException(getClass().getName() + " can only hash whole streams.");
+        }
+        return new MessageDigestStreamingHash(algorithm);
+    }
+
 }
@@ -51,4 +51,12 @@ public class MD5HashGenerator implements HashGenerator {
         return DigestUtils.md5Hex(in);
     }
 
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public HashAlgorithm getAlgorithm() {
+        return HashAlgorithm.MD5;
+    }
+
 }
@@ -0,0 +1,260 @@
+/*
+ * Copyright (c) 2016, The National Archives <pronom@nationalarchives.gov.uk>
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following
+ * conditions are met:
+ *
+ *  * Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ *
+ *  * Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ *
+ *  * Neither the name of the The National Archives nor the
+ *    names of its contributors may be used to endorse or promote products
+ *    derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package uk.gov.nationalarchives.droid.core.interfaces.hash;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.security.MessageDigest;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.commons.codec.binary.Hex;
+
+/**
+ * A streaming hash which calculates one or more message digests over the same bytes.
+ *
+ * <p>By default, each buffer is given to each algorithm in turn on the calling thread, so the
+ * bytes are only read once however many algorithms are calculated.  If a parallel threshold is
+ * set, each algorithm moves on to its own thread once more than that many bytes have been
+ * hashed.  The calling thread then copies each buffer once, and the copy is shared by all the
+ * algorithm threads, so the caller only waits for the slowest algorithm when it gets too far
+ * ahead of it.</p>
+ */
+public class MessageDigestStreamingHash implements StreamingHash {
+
+    /**
+     * The most buffers which can be waiting to be hashed by each algorithm thread.
+     */
+    private static final int WORKER_QUEUE_CAPACITY = 16;
+
+    /**
+     * How long to wait for an algorithm thread before checking it is still running.
+     */
+    private static final long WORKER_POLL_MILLIS = 100;
+
+    private static final ByteBuffer END_OF_DATA = ByteBuffer.allocate(0);
+
+    private final HashAlgorithm[] algorithms;
+    private final MessageDigest[] digests;
+    private final long parallelThreshold;
+    private DigestWorker[] workers;
+    private long bytesHashed;
+    private boolean finished;
+
+    /**
+     * Constructs a streaming hash which hashes all bytes on the calling thread.
+     * @param algorithms The algorithms to calculate.
+     */
+    public MessageDigestStreamingHash(HashAlgorithm... algorithms) {
+        this(0, algorithms);
+    }
+
+    /**
+     * Constructs a streaming hash which hashes each algorithm on its own thread
+     * once more than a threshold of bytes have been hashed.
+     *
+     * @param parallelThreshold The number of bytes after which each algorithm is hashed on its own thread.
+     *                          If zero or less, all bytes are hashed on the calling thread.
+     * @param algorithms The algorithms to calculate.
+     */
+    public MessageDigestStreamingHash(long parallelThreshold, HashAlgorithm... algorithms) {
+        this.parallelThreshold = parallelThreshold;
+        this.algorithms = algorithms.clone();
+        this.digests = new MessageDigest[algorithms.length];
+        for (int i = 0; i < algorithms.length; i++) {
+            digests[i] = algorithms[i].newMessageDigest();
+        }
+    }
+
+    @Override
+    public void update(ByteBuffer buffer) throws IOException {
+        checkNotFinished();
+        final int length = buffer.remaining();
+        if (workers == null && shouldHashInParallel(length)) {
+            startWorkers();
+        }
+        if (workers == null) {
+            for (MessageDigest digest : digests) {
+                digest.update(buffer.duplicate());
+            }
+        } else {
+            final ByteBuffer shared = ByteBuffer.allocate(length);
+            shared.put(buffer.duplicate()).flip();
+            try {
+                for (DigestWorker worker : workers) {
+                    worker.add(shared.duplicate());
+                }
+            } catch (IOException e) {
+                cancel();
+                throw e;
+            }
+        }
+        bytesHashed += length;
+    }
+
+    @Override
+    public Map<HashAlgorithm, String> finish() throws IOException {
+        checkNotFinished();
+        finished = true;
+        try {
+            if (workers != null) {
+                for (DigestWorker worker : workers) {
+                    worker.add(END_OF_DATA);
+                }
+                for (DigestWorker worker : workers) {
+                    worker.waitUntilDone();
+                }
+            }
+        } finally {
+            // Only interrupts workers still running if adding or waiting failed.
+            stopWorkers();
+        }
+        final Map<HashAlgorithm, String> hashes = new EnumMap<>(HashAlgorithm.class);
+        for (int i = 0; i < algorithms.length; i++) {
+            hashes.put(algorithms[i], Hex.encodeHexString(digests[i].digest()));
+        }
+        return hashes;
+    }
+
+    @Override
+    public void cancel() {
+        finished = true;
+        stopWorkers();
+    }
+
+    /**
+     * @return Whether the algorithms are being hashed on their own threads.
+     */
+    public boolean isHashingInParallel() {
+        return workers != null;
+    }
+
+    private boolean shouldHashInParallel(int length) {
+        return parallelThreshold > 0 && digests.length > 1 && bytesHashed + length > parallelThreshold;
+    }
+
+    private void startWorkers() {
+        workers = new DigestWorker[digests.length];
+        for (int i = 0; i < digests.length; i++) {
+            workers[i] = new DigestWorker(algorithms[i], digests[i]);
+            workers[i].start();
+        }
+    }
+
+    private void stopWorkers() {
+        if (workers != null) {
+            for (DigestWorker worker : workers) {
+                worker.interrupt();
+            }
+        }
+    }
+
+    private void checkNotFinished() {
+        if (finished) {
+            throw new IllegalStateException("Hashing has already finished.");
+        }
+    }
+
+    /**
+     * Hashes the buffers added to it with a single digest, on its own thread.
+     */
+    private static final class DigestWorker extends Thread {
+
+        private final MessageDigest digest;
+        private final BlockingQueue<ByteBuffer> buffers = new ArrayBlockingQueue<>(WORKER_QUEUE_CAPACITY);
+        private volatile boolean completed;
+
+        DigestWorker(HashAlgorithm algorithm, MessageDigest digest) {
+            super("droid-hash-" + algorithm.getName());
+            this.digest = digest;
+            setDaemon(true);
+        }
+
+        @Override
+        public void run() {
+            try {
+                ByteBuffer buffer = buffers.take();
+                while (buffer != END_OF_DATA) {
+                    digest.update(buffer);
+                    buffer = buffers.take();
+                }
+                completed = true;
+            } catch (InterruptedException e) {
+                // Hashing was cancelled - the digest will not be used.
+                Thread.currentThread().interrupt();
+            } finally {
+                if (!completed) {
+                    buffers.clear();
+                }
+            }
+        }
+
+        /**
+         * Adds a buffer to hash, waiting while the queue is full.
+         * Never waits on a worker which has stopped, as nothing would ever take the buffer.
+         *
+         * @param buffer The buffer to hash.
+         * @throws IOException if the worker has stopped, or the caller was interrupted.
+         */
+        void add(ByteBuffer buffer) throws IOException {
+            checkNotStopped();
+            try {
+                while (!buffers.offer(buffer, WORKER_POLL_MILLIS, TimeUnit.MILLISECONDS)) {
+                    checkNotStopped();
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted waiting to hash with " + getName());
+            }
+        }
+
+        void waitUntilDone() throws IOException {
+            try {
+                join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted waiting for " + getName() + " to finish");
+            }
+            checkNotStopped();
+        }
+
+        private void checkNotStopped() throws IOException {
+            if (!isAlive() && !completed) {
+                throw new IOException(getName() + " stopped before hashing finished");
+            }
+        }
+    }
+}
@@ -50,4 +50,13 @@ public class SHA256HashGenerator implements HashGenerator {
     public String hash(InputStream in) throws IOException {
         return DigestUtils.sha256Hex(in);
     }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public HashAlgorithm getAlgorithm() {
+        return HashAlgorithm.SHA256;
+    }
+
 }
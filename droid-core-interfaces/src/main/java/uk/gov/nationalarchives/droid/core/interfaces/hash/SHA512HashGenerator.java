@@ -46,4 +46,12 @@ public class SHA512HashGenerator implements HashGenerator {
     public String hash(InputStream in) throws IOException {
         return DigestUtils.sha512Hex(in);
     }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public HashAlgorithm getAlgorithm() {
+        return HashAlgorithm.SHA512;
+    }
 }
@@ -89,7 +89,7 @@ public class BZipIdentificationRequest implements IdentificationRequest<InputStr
      */
     @Override
     public final void open(final InputStream in) throws IOException {
-        reader = ResourceUtils.getStreamReader(in, tempDir, TOP_TAIL_CAPACITY);
+        reader = ResourceUtils.getStreamReader(in, tempDir, TOP_TAIL_CAPACITY, true, null);
         // Force read of entire input stream to build reader and remove dependence on source input stream.
         size = reader.length(); // getting the size of a reader backed by a stream forces a stream read.
     }
@@ -0,0 +1,195 @@
+/*
+ * Copyright (c) 2016, The National Archives <pronom@nationalarchives.gov.uk>
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following
+ * conditions are met:
+ *
+ *  * Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ *
+ *  * Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ *
+ *  * Neither the name of the The National Archives nor the
+ *    names of its contributors may be used to endorse or promote products
+ *    derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package uk.gov.nationalarchives.droid.core.interfaces.resource;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A bounded pool of byte arrays of the same size, which window readers take their window
+ * arrays from and give back when they are closed.
+ *
+ * <p>Identifying archives with many small entries creates and discards a reader for every entry,
+ * and each reader allocates new arrays for the windows it reads.  Reusing the arrays takes that
+ * load off the garbage collector.  When the pool is empty, a new array is allocated, and when it
+ * is full, arrays given back are left for the garbage collector.</p>
+ *
+ * <p>The default pool is shared by every profile in the process, since the arrays it holds are
+ * interchangeable and it bounds the memory the pool keeps however many profiles run.</p>
+ */
+public final class BufferPool {
+
+    /**
+     * The size of the arrays in the default pool, which is the default byteseek window size.
+     */
+    public static final int DEFAULT_BUFFER_SIZE = 4096;
+
+    /**
+     * The counter of arrays taken from the pool.
+     */
+    public static final String HITS = "hits";
+
+    /**
+     * The counter of arrays allocated because the pool was empty.
+     */
+    public static final String MISSES = "misses";
+
+    /**
+     * The counter of arrays given back which the pool did not keep.
+     */
+    public static final String DISCARDS = "discards";
+
+    private static final String[] COUNTERS = {HITS, MISSES, DISCARDS};
+
+    private static final int DEFAULT_CAPACITY = 4096;
+
+    private static final BufferPool DEFAULT_POOL = new BufferPool(DEFAULT_BUFFER_SIZE, DEFAULT_CAPACITY);
+
+    private final int bufferSize;
+    private final int capacity;
+    private final BlockingQueue<byte[]> buffers;
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder discards = new LongAdder();
+
+    /**
+     * Constructs a buffer pool.
+     *
+     * @param bufferSize The size of the arrays in the pool.
+     * @param capacity The most arrays the pool holds on to.
+     */
+    public BufferPool(final int bufferSize, final int capacity) {
+        this.bufferSize = bufferSize;
+        this.capacity = capacity;
+        this.buffers = new ArrayBlockingQueue<>(capacity);
+    }
+
+    /**
+     * @return The pool shared by the identification requests, with arrays of the default window size.
+     */
+    public static BufferPool getDefault() {
+        return DEFAULT_POOL;
+    }
+
+    /**
+     * Takes an array from the pool, or allocates a new one if the pool is empty.
+     * The contents of an array taken from the pool are whatever was last written to it.
+     *
+     * @return An array of the pool's buffer size.
+     */
+    public byte[] acquire() {
+        final byte[] buffer = buffers.poll();
+        if (buffer == null) {
+            misses.increment();
+            return new byte[bufferSize];
+        }
+        hits.increment();
+        return buffer;
+    }
+
+    /**
+     * Gives an array back to the pool.  Nothing may use the array after it has been given back.
+     *
+     * @param buffer The array to give back.
+     */
+    public void release(final byte[] buffer) {
+        if (buffer.length != bufferSize || !buffers.offer(buffer)) {
+            discards.increment();
+        }
+    }
+
+    /**
+     * @return The size of the arrays in the pool.
+     */
+    public int getBufferSize() {
+        return bufferSize;
+    }
+
+    /**
+     * @return The most arrays the pool holds on to.
+     */
+    public int getCapacity() {
+        return capacity;
+    }
+
+    /**
+     * @return The number of arrays currently in the pool.
+     */
+    public int getAvailable() {
+        return buffers.size();
+    }
+
+    /**
+     * @return The number of arrays taken from the pool.
+     */
+    public long getHits() {
+        return hits.sum();
+    }
+
+    /**
+     * @return The number of arrays allocated because the pool was empty.
+     */
+    public long getMisses() {
+        return misses.sum();
+    }
+
+    /**
+     * @return The number of arrays given back which the pool did not keep.
+     */
+    public long getDiscards() {
+        return discards.sum();
+    }
+
+    /**
+     * @return The proportion of arrays acquired which came from the pool, from 0.0 to 1.0.
+     */
+    public double getHitRatio() {
+        final long hitCount = hits.sum();
+        final long total = hitCount + misses.sum();
+        return total == 0 ? 0.0 : (double) hitCount / total;
+    }
+
+    /**
+     * @return The {@link #HITS}, {@link #MISSES} and {@link #DISCARDS} counted so far.
+     */
+    public CountSnapshot snapshot() {
+        return new CountSnapshot(COUNTERS, getHits(), getMisses(), getDiscards());
+    }
+
+    @Override
+    public String toString() {
+        return getClass().getSimpleName() + "[bufferSize:" + bufferSize
+                + " available:" + getAvailable() + '/' + capacity
+                + ' ' + snapshot() + ']';
+    }
+}
@@ -0,0 +1,107 @@
+/*
+ * Copyright (c) 2016, The National Archives <pronom@nationalarchives.gov.uk>
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following
+ * conditions are met:
+ *
+ *  * Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ *
+ *  * Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ *
+ *  * Neither the name of the The National Archives nor the
+ *    names of its contributors may be used to endorse or promote products
+ *    derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package uk.gov.nationalarchives.droid.core.interfaces.resource;
+
+import java.util.Arrays;
+
+/**
+ * The values of a set of named counters at one point in time, or the difference between two such points.
+ *
+ * <p>The buffer pool, stream memory budget and parsed container cache used by identification requests
+ * are shared by every profile running in the process, so their counters cover every profile.  A profile
+ * takes a snapshot of them when it starts, and counts its own use as the difference between a later
+ * snapshot and that one.</p>
+ */
+public final class CountSnapshot {
+
+    private final String[] names;
+    private final long[] counts;
+
+    /**
+     * Constructs a snapshot of some counters.
+     *
+     * @param names The names of the counters.
+     * @param counts The values of the counters, in the same order as their names.
+     * @throws IllegalArgumentException If there is not one value for each name.
+     */
+    public CountSnapshot(final String[] names, final long... counts) {
+        if (names.length != counts.length) {
+            throw new IllegalArgumentException("There are " + names.length + " counter names but "
+                    + counts.length + " values.");
+        }
+        this.names = names.clone();
+        this.counts = counts.clone();
+    }
+
+    /**
+     * @param start An earlier snapshot of the same counters.
+     * @return The counts added since the earlier snapshot.
+     * @throws IllegalArgumentException If the earlier snapshot is of different counters.
+     */
+    public CountSnapshot since(final CountSnapshot start) {
+        if (!Arrays.equals(names, start.names)) {
+            throw new IllegalArgumentException("Cannot compare snapshots of different counters: "
+                    + Arrays.toString(names) + " and " + Arrays.toString(start.names));
+        }
+        final long[] added = new long[counts.length];
+        for (int i = 0; i < counts.length; i++) {
+            added[i] = counts[i] - start.counts[i];
+        }
+        return new CountSnapshot(names, added);
+    }
+
+    /**
+     * @param name The name of a counter.
+     * @return The value of the counter.
+     * @throws IllegalArgumentException If there is no counter with that name.
+     */
+    public long get(final String name) {
+        for (int i = 0; i < names.length; i++) {
+            if (names[i].equals(name)) {
+                return counts[i];
+            }
+        }
+        throw new IllegalArgumentException("There is no counter named " + name);
+    }
+
+    @Override
+    public String toString() {
+        final StringBuilder builder = new StringBuilder();
+        for (int i = 0; i < names.length; i++) {
+            if (i > 0) {
+                builder.append(' ');
+            }
+            builder.append(names[i]).append(':').append(counts[i]);
+        }
+        return builder.toString();
+    }
+}
@@ -77,7 +77,7 @@ public class FatFileIdentificationRequest implements IdentificationRequest<Input
 
     @Override
     public void open(InputStream in) throws IOException {
-        reader = ResourceUtils.getStreamReader(in, tempDir, TOP_TAIL_CAPACITY);
+        reader = ResourceUtils.getStreamReader(in, tempDir, TOP_TAIL_CAPACITY, true, size);
         // Force read of entire input stream to build reader and remove dependence on source input stream.
         size = reader.length(); // getting the size of a reader backed by a stream forces a stream read.
     }
@@ -37,7 +37,6 @@ import java.nio.file.Path;
 
 import net.byteseek.io.reader.ReaderInputStream;
 import net.byteseek.io.reader.WindowReader;
-import net.byteseek.io.reader.FileReader;
 import net.byteseek.io.reader.cache.TopAndTailFixedLengthCache;
 import net.byteseek.io.reader.cache.WindowCache;
 import uk.gov.nationalarchives.droid.core.interfaces.IdentificationRequest;
@@ -78,15 +77,26 @@ public class FileSystemIdentificationRequest implements IdentificationRequest<Pa
      */
     @Override
     public final void open(final Path theFile) throws IOException {
-        // Use a caching strategy that uses soft references, to allow the GC to reclaim
-        // cached file bytes in low memory conditions.
-        final WindowCache cache = new TopAndTailFixedLengthCache(theFile.toFile().length(), TOP_TAIL_BUFFER_CAPACITY);
-        fileReader = new FileReader(theFile.toFile(), cache);
-        ((FileReader) fileReader).useSoftWindows(true);
+        // Read through a hashing reader, so any hashes can be calculated from the windows read to match signatures.
+        fileReader = new HashingWindowReader(createReader(theFile));
         this.file = theFile;
         fileReader.getWindow(0); // force read of first block to generate any IO exceptions.
     }
 
+    /**
+     * Creates the reader used to read the file.
+     * @param theFile The file to read.
+     * @return A window reader over the file.
+     * @throws IOException If the file could not be opened.
+     */
+    protected WindowReader createReader(final Path theFile) throws IOException {
+        // Use a caching strategy that uses soft references, to allow the GC to reclaim
+        // cached file bytes in low memory conditions.  The first windows read are taken from
+        // the buffer pool, and given back when the request is closed.
+        final WindowCache cache = new TopAndTailFixedLengthCache(theFile.toFile().length(), TOP_TAIL_BUFFER_CAPACITY);
+        return new PooledFileReader(theFile, cache, BufferPool.getDefault(), ResourceUtils.MAX_POOLED_BYTES_PER_READER);
+    }
+
     /**
      * {@inheritDoc}
      */
@@ -118,7 +128,9 @@ public class FileSystemIdentificationRequest implements IdentificationRequest<Pa
     @Override
     public final void close() throws IOException {
         file = null;
-        fileReader.close();
+        if (fileReader != null) { // the request may be closed without having been opened.
+            fileReader.close();
+        }
     }
 
     //TODO:MP: can we return something backed by the file reader, which has already cached a lot of the file?
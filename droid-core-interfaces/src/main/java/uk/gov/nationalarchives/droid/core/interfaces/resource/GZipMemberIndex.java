@@ -0,0 +1,388 @@
+/*
+ * Copyright (c) 2016, The National Archives <pronom@nationalarchives.gov.uk>
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following
+ * conditions are met:
+ *
+ *  * Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ *
+ *  * Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ *
+ *  * Neither the name of the The National Archives nor the
+ *    names of its contributors may be used to endorse or promote products
+ *    derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package uk.gov.nationalarchives.droid.core.interfaces.resource;
+
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+import java.util.zip.ZipException;
+
+/**
+ * An index of the members of a gzip file on disk: where each member's deflated data starts in the
+ * gzip file, and which range of the uncompressed bytes it inflates to.
+ *
+ * <p>A gzip file can be the concatenation of many members, as web archives compressed one record at a time
+ * are.  With an index, a read at any position of the uncompressed bytes only has to inflate the member
+ * which contains it, from the start of that member, rather than inflating the whole file up to that position.
+ * The index is built by inflating the whole file once, without keeping any of the inflated bytes.</p>
+ *
+ * <p>Members can only be entered at their start, as the JDK inflater can't be resumed from a checkpoint
+ * in the middle of a deflate stream: it can't be primed with the bits left over from a deflate block which
+ * doesn't end on a byte boundary.  So a gzip file with a single member gains nothing from an index, and
+ * however large it is, it is still inflated from the start to be read.</p>
+ */
+public final class GZipMemberIndex {
+
+    private static final int GZIP_MAGIC_1 = 0x1f;
+    private static final int GZIP_MAGIC_2 = 0x8b;
+    private static final int DEFLATE_METHOD = 8;
+    private static final int FHCRC = 2;
+    private static final int FEXTRA = 4;
+    private static final int FNAME = 8;
+    private static final int FCOMMENT = 16;
+    private static final int HEADER_SKIP = 6; // modification time, extra flags and operating system.
+    private static final int TRAILER_LENGTH = 8;
+    private static final int HEADER_CRC_LENGTH = 2;
+    private static final int BUFFER_SIZE = 64 * 1024;
+    private static final int BYTE_MASK = 0xFF;
+    private static final int BITS_PER_BYTE = 8;
+    private static final String UNEXPECTED_END = "Unexpected end of gzip file ";
+
+    private final List<Member> members;
+    private final long uncompressedLength;
+
+    private GZipMemberIndex(List<Member> members, long uncompressedLength) {
+        this.members = Collections.unmodifiableList(members);
+        this.uncompressedLength = uncompressedLength;
+    }
+
+    /**
+     * Builds the index of a gzip file by inflating all of its members.
+     *
+     * @param gzipFile The gzip file to index.
+     * @return The index of the gzip file.
+     * @throws IOException If the file could not be read, or is not a valid gzip file.
+     */
+    public static GZipMemberIndex build(Path gzipFile) throws IOException {
+        final List<Member> members = new ArrayList<>();
+        long uncompressedOffset = 0;
+        try (PositionalInput in = new PositionalInput(gzipFile)) {
+            final Inflater inflater = new Inflater(true);
+            final byte[] inflated = new byte[BUFFER_SIZE];
+            try {
+                while (isMemberStart(in)) {
+                    final long memberStart = in.getPosition();
+                    final long dataOffset = skipHeader(in);
+                    inflater.reset();
+                    final long length = inflateMember(in, inflater, inflated, Long.MAX_VALUE);
+                    members.add(new Member(memberStart, dataOffset, uncompressedOffset, length));
+                    uncompressedOffset += length;
+                }
+            } finally {
+                inflater.end();
+            }
+        }
+        if (members.isEmpty()) {
+            throw new ZipException("Not a gzip file: " + gzipFile);
+        }
+        return new GZipMemberIndex(members, uncompressedOffset);
+    }
+
+    /**
+     * Tells whether a gzip file has more than one member, by inflating only its first member.
+     * Building an index of a gzip file with one member costs an extra inflation of the whole file,
+     * and gains nothing, so this can be checked first.
+     *
+     * @param gzipFile The gzip file.
+     * @param maxFirstMemberLength The most bytes to inflate from the first member.  If the first member
+     *                             is longer than this, the gzip file is treated as having a single member.
+     * @return Whether another member follows a first member no longer than the maximum length.
+     * @throws IOException If the file could not be read, or is not a valid gzip file.
+     */
+    public static boolean hasManyMembers(Path gzipFile, long maxFirstMemberLength) throws IOException {
+        try (PositionalInput in = new PositionalInput(gzipFile)) {
+            if (!isMemberStart(in)) {
+                return false;
+            }
+            skipHeader(in);
+            final Inflater inflater = new Inflater(true);
+            try {
+                return inflateMember(in, inflater, new byte[BUFFER_SIZE], maxFirstMemberLength) >= 0
+                        && isMemberStart(in);
+            } finally {
+                inflater.end();
+            }
+        }
+    }
+
+    /**
+     * @return The members of the gzip file, in the order they appear in it.
+     */
+    public List<Member> getMembers() {
+        return members;
+    }
+
+    /**
+     * @return The number of members in the gzip file.
+     */
+    public int getMemberCount() {
+        return members.size();
+    }
+
+    /**
+     * @return The length of the uncompressed bytes of the gzip file.
+     */
+    public long getUncompressedLength() {
+        return uncompressedLength;
+    }
+
+    /**
+     * @param position A position in the uncompressed bytes of the gzip file.
+     * @return The index of the member containing the position, or -1 if it is outside the uncompressed bytes.
+     */
+    public int findMember(long position) {
+        if (position < 0 || position >= uncompressedLength) {
+            return -1;
+        }
+        int low = 0;
+        int high = members.size() - 1;
+        while (low < high) {
+            final int middle = (low + high + 1) >>> 1;
+            if (members.get(middle).getUncompressedOffset() <= position) {
+                low = middle;
+            } else {
+                high = middle - 1;
+            }
+        }
+        return low;
+    }
+
+    @Override
+    public String toString() {
+        return "members:" + members.size() + " uncompressed:" + uncompressedLength;
+    }
+
+    /*
+     * Trailing bytes after the last member which do not start another member, such as zero padding, are ignored.
+     */
+    private static boolean isMemberStart(PositionalInput in) throws IOException {
+        final long start = in.getPosition();
+        final boolean isStart = in.read() == GZIP_MAGIC_1 && in.read() == GZIP_MAGIC_2;
+        in.seek(start);
+        return isStart;
+    }
+
+    private static long skipHeader(PositionalInput in) throws IOException {
+        in.skip(2); // the magic number has already been checked.
+        if (in.readFully() != DEFLATE_METHOD) {
+            throw new ZipException("Unsupported gzip compression method at position " + in.getPosition());
+        }
+        final int flags = in.readFully();
+        in.skip(HEADER_SKIP);
+        if ((flags & FEXTRA) != 0) {
+            final int extraLength = in.readFully() | (in.readFully() << BITS_PER_BYTE);
+            in.skip(extraLength);
+        }
+        if ((flags & FNAME) != 0) {
+            skipZeroTerminated(in);
+        }
+        if ((flags & FCOMMENT) != 0) {
+            skipZeroTerminated(in);
+        }
+        if ((flags & FHCRC) != 0) {
+            in.skip(HEADER_CRC_LENGTH);
+        }
+        return in.getPosition();
+    }
+
+    private static void skipZeroTerminated(PositionalInput in) throws IOException {
+        int next = in.readFully();
+        while (next != 0) {
+            next = in.readFully();
+        }
+    }
+
+    /*
+     * Inflates a member, leaving the input after its trailer, and returns its uncompressed length,
+     * or -1 if it is longer than the maximum length.
+     */
+    private static long inflateMember(PositionalInput in, Inflater inflater, byte[] inflated, long maxLength)
+        throws IOException {
+        long length = 0;
+        try {
+            while (!inflater.finished()) {
+                if (inflater.needsInput()) {
+                    in.fill(inflater);
+                }
+                final long allowed = maxLength - length;
+                final int toInflate = allowed < inflated.length ? (int) allowed + 1 : inflated.length;
+                length += inflater.inflate(inflated, 0, toInflate);
+                if (inflater.needsDictionary()) {
+                    throw new ZipException("Gzip member needs a preset dictionary at position " + in.getPosition());
+                }
+                if (length > maxLength) {
+                    return -1;
+                }
+            }
+        } catch (DataFormatException e) {
+            throw new ZipException("Invalid gzip data before position " + in.getPosition() + ": " + e.getMessage());
+        }
+        in.seek(in.getPosition() - inflater.getRemaining());
+        in.skip(TRAILER_LENGTH);
+        return length;
+    }
+
+    /**
+     * A member of a gzip file.
+     */
+    public static final class Member {
+
+        private final long memberOffset;
+        private final long dataOffset;
+        private final long uncompressedOffset;
+        private final long uncompressedLength;
+
+        Member(long memberOffset, long dataOffset, long uncompressedOffset, long uncompressedLength) {
+            this.memberOffset = memberOffset;
+            this.dataOffset = dataOffset;
+            this.uncompressedOffset = uncompressedOffset;
+            this.uncompressedLength = uncompressedLength;
+        }
+
+        /**
+         * @return The position of the member's header in the gzip file.
+         */
+        public long getMemberOffset() {
+            return memberOffset;
+        }
+
+        /**
+         * @return The position of the member's deflated data in the gzip file.
+         */
+        public long getDataOffset() {
+            return dataOffset;
+        }
+
+        /**
+         * @return The position of the member's first byte in the uncompressed bytes of the gzip file.
+         */
+        public long getUncompressedOffset() {
+            return uncompressedOffset;
+        }
+
+        /**
+         * @return The number of uncompressed bytes in the member.
+         */
+        public long getUncompressedLength() {
+            return uncompressedLength;
+        }
+    }
+
+    /**
+     * Reads a file through a buffer from any position.
+     */
+    static final class PositionalInput implements Closeable {
+
+        private final Path path;
+        private final FileChannel channel;
+        private final ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE);
+        private long bufferStart;
+
+        PositionalInput(Path path) throws IOException {
+            this.path = path;
+            this.channel = FileChannel.open(path, StandardOpenOption.READ);
+            buffer.limit(0);
+        }
+
+        long getPosition() {
+            return bufferStart + buffer.position();
+        }
+
+        void seek(long position) {
+            if (position >= bufferStart && position <= bufferStart + buffer.limit()) {
+                buffer.position((int) (position - bufferStart));
+            } else {
+                bufferStart = position;
+                buffer.limit(0);
+            }
+        }
+
+        void skip(long count) {
+            seek(getPosition() + count);
+        }
+
+        /*
+         * Returns the next byte, or -1 at the end of the file.
+         */
+        int read() throws IOException {
+            if (!buffer.hasRemaining() && !refill()) {
+                return -1;
+            }
+            return buffer.get() & BYTE_MASK;
+        }
+
+        int readFully() throws IOException {
+            final int result = read();
+            if (result < 0) {
+                throw new EOFException(UNEXPECTED_END + path);
+            }
+            return result;
+        }
+
+        /*
+         * Gives the inflater the rest of the buffer, and moves past it.  The inflater's remaining
+         * bytes must be given back by seeking once it has finished.
+         */
+        void fill(Inflater inflater) throws IOException {
+            if (!buffer.hasRemaining() && !refill()) {
+                throw new EOFException(UNEXPECTED_END + path);
+            }
+            inflater.setInput(buffer.array(), buffer.position(), buffer.remaining());
+            buffer.position(buffer.limit());
+        }
+
+        private boolean refill() throws IOException {
+            bufferStart = getPosition();
+            buffer.clear();
+            int read = 0;
+            while (read == 0) {
+                read = channel.read(buffer, bufferStart);
+            }
+            buffer.flip();
+            return read > 0;
+        }
+
+        @Override
+        public void close() throws IOException {
+            channel.close();
+        }
+    }
+}
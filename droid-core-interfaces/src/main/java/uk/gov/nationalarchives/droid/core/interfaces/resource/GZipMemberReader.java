@@ -0,0 +1,189 @@
+/*
+ * Copyright (c) 2016, The National Archives <pronom@nationalarchives.gov.uk>
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following
+ * conditions are met:
+ *
+ *  * Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ *
+ *  * Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ *
+ *  * Neither the name of the The National Archives nor the
+ *    names of its contributors may be used to endorse or promote products
+ *    derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package uk.gov.nationalarchives.droid.core.interfaces.resource;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+import java.util.zip.ZipException;
+
+import net.byteseek.io.reader.AbstractReader;
+import net.byteseek.io.reader.cache.WindowCache;
+import net.byteseek.io.reader.windows.HardWindow;
+import net.byteseek.io.reader.windows.Window;
+
+/**
+ * A window reader over the uncompressed bytes of a gzip file on disk, which uses an index of the
+ * members of the gzip file to inflate only the member containing each window it reads.
+ *
+ * <p>Windows read one after another in the same member carry on inflating from where the last window
+ * stopped.  A window before the last one, or in another member, starts inflating from the start of
+ * the member which contains it.  The file is not opened until the first window is read.</p>
+ */
+public class GZipMemberReader extends AbstractReader {
+
+    private static final int DEFAULT_WINDOW_SIZE = 4096;
+    private static final int SKIP_BUFFER_SIZE = 8192;
+    private static final String AT = " at ";
+
+    private final Path path;
+    private final GZipMemberIndex index;
+    private GZipMemberIndex.PositionalInput input;
+    private Inflater inflater;
+    private int member = -1;
+    private long inflatedTo;
+    private byte[] skipBuffer;
+    private boolean closed;
+
+    /**
+     * Constructs a reader over the uncompressed bytes of a gzip file.
+     *
+     * @param path The gzip file to read.
+     * @param index The index of the members of the gzip file.
+     * @param cache The cache to hold windows in.
+     */
+    public GZipMemberReader(final Path path, final GZipMemberIndex index, final WindowCache cache) {
+        super(DEFAULT_WINDOW_SIZE, cache);
+        this.path = path;
+        this.index = index;
+    }
+
+    @Override
+    public long length() {
+        return index.getUncompressedLength();
+    }
+
+    /**
+     * @return The gzip file being read.
+     */
+    public Path getPath() {
+        return path;
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            super.close();
+        } finally {
+            closeInput();
+        }
+    }
+
+    @Override
+    protected Window createWindow(final long windowStart) throws IOException {
+        if (windowStart < 0 || windowStart >= length()) {
+            return null;
+        }
+        final int windowLength = (int) Math.min(windowSize, length() - windowStart);
+        final byte[] bytes = new byte[windowSize];
+        readFully(bytes, windowStart, windowLength);
+        return new HardWindow(bytes, windowStart, windowLength);
+    }
+
+    private synchronized void readFully(final byte[] bytes, final long position, final int count)
+        throws IOException {
+        int offset = 0;
+        while (offset < count) {
+            final long nextPosition = position + offset;
+            final int memberIndex = index.findMember(nextPosition);
+            if (memberIndex < 0) {
+                throw new EOFException("Unexpected end of gzip file " + path + AT + nextPosition);
+            }
+            final GZipMemberIndex.Member nextMember = index.getMembers().get(memberIndex);
+            if (memberIndex != member || nextPosition < inflatedTo) {
+                startMember(memberIndex, nextMember);
+            }
+            skipTo(nextPosition);
+            final long memberEnd = nextMember.getUncompressedOffset() + nextMember.getUncompressedLength();
+            final int toRead = (int) Math.min(count - offset, memberEnd - nextPosition);
+            inflate(bytes, offset, toRead);
+            offset += toRead;
+        }
+    }
+
+    private void startMember(final int memberIndex, final GZipMemberIndex.Member nextMember) throws IOException {
+        if (closed) {
+            throw new IOException("The reader for " + path + " is closed.");
+        }
+        if (input == null) {
+            input = new GZipMemberIndex.PositionalInput(path);
+            inflater = new Inflater(true);
+        }
+        input.seek(nextMember.getDataOffset());
+        inflater.reset();
+        member = memberIndex;
+        inflatedTo = nextMember.getUncompressedOffset();
+    }
+
+    private void skipTo(final long position) throws IOException {
+        while (inflatedTo < position) {
+            if (skipBuffer == null) {
+                skipBuffer = new byte[SKIP_BUFFER_SIZE];
+            }
+            inflate(skipBuffer, 0, (int) Math.min(SKIP_BUFFER_SIZE, position - inflatedTo));
+        }
+    }
+
+    private void inflate(final byte[] bytes, final int offset, final int count) throws IOException {
+        int inflated = 0;
+        try {
+            while (inflated < count) {
+                if (inflater.finished()) {
+                    throw new EOFException("Unexpected end of gzip member in " + path + AT
+                            + (inflatedTo + inflated));
+                }
+                if (inflater.needsInput()) {
+                    input.fill(inflater);
+                }
+                inflated += inflater.inflate(bytes, offset + inflated, count - inflated);
+            }
+        } catch (DataFormatException e) {
+            throw new ZipException("Invalid gzip data in " + path + ": " + e.getMessage());
+        } finally {
+            inflatedTo += inflated;
+        }
+    }
+
+    private synchronized void closeInput() throws IOException {
+        closed = true;
+        if (inflater != null) {
+            inflater.end();
+            inflater = null;
+        }
+        if (input != null) {
+            input.close();
+            input = null;
+        }
+    }
+}
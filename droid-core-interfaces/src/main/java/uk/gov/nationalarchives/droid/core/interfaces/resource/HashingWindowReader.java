@@ -0,0 +1,229 @@
+/*
+ * Copyright (c) 2016, The National Archives <pronom@nationalarchives.gov.uk>
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following
+ * conditions are met:
+ *
+ *  * Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ *
+ *  * Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ *
+ *  * Neither the name of the The National Archives nor the
+ *    names of its contributors may be used to endorse or promote products
+ *    derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package uk.gov.nationalarchives.droid.core.interfaces.resource;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.TreeMap;
+
+import net.byteseek.io.reader.WindowReader;
+import net.byteseek.io.reader.windows.Window;
+
+import uk.gov.nationalarchives.droid.core.interfaces.hash.HashAlgorithm;
+import uk.gov.nationalarchives.droid.core.interfaces.hash.StreamingHash;
+
+/**
+ * A window reader which tees the windows read through it into a streaming hash.
+ *
+ * <p>Once hashing has started, each window loaded by signature matching (or anything else
+ * reading through this reader) is fed into the hash as soon as it continues on from
+ * the bytes already hashed.  Windows further on in the file are held briefly until the
+ * gap before them is filled.  When hashing is finished, only the gaps which were never
+ * read are fetched from the underlying reader, so each byte is read from storage at most
+ * once, however many hash algorithms are calculated.</p>
+ */
+public class HashingWindowReader implements WindowReader {
+
+    /**
+     * The most windows to hold on to while waiting for the gap before them to be read.
+     */
+    private static final int MAX_PENDING_WINDOWS = 256;
+
+    private static final int BYTE_MASK = 0xFF;
+
+    private final WindowReader reader;
+    private final TreeMap<Long, Window> pendingWindows = new TreeMap<>();
+    private volatile StreamingHash hash;
+    private long hashedPosition;
+    private long bytesReadOnFinish;
+
+    /**
+     * Constructs a hashing window reader over another reader.
+     * @param reader The reader to read windows from.
+     */
+    public HashingWindowReader(final WindowReader reader) {
+        this.reader = reader;
+    }
+
+    /**
+     * Starts hashing the windows read, from the start of the file.
+     * Any hashing already in progress is cancelled.
+     *
+     * @param streamingHash The hash to calculate, which must not have hashed any bytes yet.
+     */
+    public synchronized void startHashing(final StreamingHash streamingHash) {
+        cancelHashing();
+        this.hash = streamingHash;
+        this.hashedPosition = 0;
+        this.bytesReadOnFinish = 0;
+        pendingWindows.clear();
+    }
+
+    /**
+     * @return Whether windows read are currently being hashed.
+     */
+    public synchronized boolean isHashing() {
+        return hash != null;
+    }
+
+    /**
+     * Reads any bytes which have not already been hashed, and returns the hex encoded
+     * value of each hash algorithm calculated.
+     * Hashing stops once the hashes have been calculated.
+     *
+     * @return The hex encoded hashes.
+     * @throws IOException If there was a problem reading the bytes not already hashed.
+     */
+    public synchronized Map<HashAlgorithm, String> finishHashing() throws IOException {
+        if (hash == null) {
+            throw new IllegalStateException("Hashing has not been started.");
+        }
+        final long length = reader.length();
+        while (hashedPosition < length) {
+            final Window window = reader.getWindow(hashedPosition);
+            if (window == null) {
+                break;
+            }
+            bytesReadOnFinish += window.getWindowPosition() + window.length() - hashedPosition;
+            hashWindow(window);
+        }
+        final StreamingHash finishing = hash;
+        hash = null;
+        pendingWindows.clear();
+        return finishing.finish();
+    }
+
+    /**
+     * @return The number of bytes which had to be read to finish hashing, as they were not read before.
+     */
+    public synchronized long getBytesReadOnFinish() {
+        return bytesReadOnFinish;
+    }
+
+    /**
+     * @return The reader this hashing reader reads windows from.
+     */
+    public WindowReader getReader() {
+        return reader;
+    }
+
+    @Override
+    public int readByte(final long position) throws IOException {
+        final Window window = getWindow(position);
+        return window == null ? -1 : window.getByte((int) (position - window.getWindowPosition())) & BYTE_MASK;
+    }
+
+    @Override
+    public Window getWindow(final long position) throws IOException {
+        final Window window = reader.getWindow(position);
+        if (window != null && hash != null) {
+            synchronized (this) {
+                if (hash != null) {
+                    hashWindow(window);
+                }
+            }
+        }
+        return window;
+    }
+
+    @Override
+    public int getWindowOffset(final long position) {
+        return reader.getWindowOffset(position);
+    }
+
+    @Override
+    public long length() throws IOException {
+        return reader.length();
+    }
+
+    @Override
+    public Iterator<Window> iterator() {
+        return reader.iterator();
+    }
+
+    @Override
+    public void close() throws IOException {
+        synchronized (this) {
+            cancelHashing();
+        }
+        reader.close();
+    }
+
+    private void cancelHashing() {
+        if (hash != null) {
+            hash.cancel();
+            hash = null;
+        }
+        pendingWindows.clear();
+    }
+
+    /*
+     * Hashes a window if it continues on from the bytes already hashed, along with any pending
+     * windows which then follow on from it.  Windows further on are kept until the gap is filled.
+     */
+    private void hashWindow(final Window window) throws IOException {
+        final long windowPosition = window.getWindowPosition();
+        if (windowPosition > hashedPosition) {
+            if (pendingWindows.size() < MAX_PENDING_WINDOWS) {
+                pendingWindows.put(windowPosition, window);
+            }
+        } else {
+            updateHash(window);
+            Map.Entry<Long, Window> next = pendingWindows.firstEntry();
+            while (next != null && next.getKey() <= hashedPosition) {
+                pendingWindows.remove(next.getKey());
+                updateHash(next.getValue());
+                next = pendingWindows.firstEntry();
+            }
+        }
+    }
+
+    private void updateHash(final Window window) throws IOException {
+        final long windowPosition = window.getWindowPosition();
+        final long windowEnd = windowPosition + window.length();
+        if (windowEnd > hashedPosition) {
+            final int offset = (int) (hashedPosition - windowPosition);
+            final int length = (int) (windowEnd - hashedPosition);
+            if (window instanceof MappedWindow) {
+                // Hash mapped bytes directly, rather than copying the window into an array.
+                final ByteBuffer buffer = ((MappedWindow) window).asByteBuffer();
+                buffer.position(offset);
+                hash.update(buffer);
+            } else {
+                hash.update(ByteBuffer.wrap(window.getArray(), offset, length));
+            }
+            hashedPosition = windowEnd;
+        }
+    }
+}
@@ -0,0 +1,66 @@
+/*
+ * Copyright (c) 2016, The National Archives <pronom@nationalarchives.gov.uk>
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following
+ * conditions are met:
+ *
+ *  * Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ *
+ *  * Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ *
+ *  * Neither the name of the The National Archives nor the
+ *    names of its contributors may be used to endorse or promote products
+ *    derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package uk.gov.nationalarchives.droid.core.interfaces.resource;
+
+import java.io.IOException;
+import java.nio.file.Path;
+
+import net.byteseek.io.reader.WindowReader;
+import net.byteseek.io.reader.cache.LeastRecentlyUsedCache;
+
+import uk.gov.nationalarchives.droid.core.interfaces.RequestIdentifier;
+
+/**
+ * A file system identification request which reads the file through a memory mapping.
+ *
+ * <p>Windows over the mapped file are created without reading or copying any bytes, so only
+ * a small cache of recently used windows is kept.  This suits large files, where signatures
+ * scanning from both ends of the file would otherwise thrash a cache of windows read into memory.</p>
+ */
+public class MappedFileIdentificationRequest extends FileSystemIdentificationRequest {
+
+    private static final int WINDOW_CACHE_CAPACITY = 64;
+
+    /**
+     * Constructs a new memory mapped identification request.
+     * @param metaData the metaData about the binary.
+     * @param identifier the request's identifier
+     */
+    public MappedFileIdentificationRequest(final RequestMetaData metaData, final RequestIdentifier identifier) {
+        super(metaData, identifier);
+    }
+
+    @Override
+    protected WindowReader createReader(final Path theFile) throws IOException {
+        return new MappedFileReader(theFile, new LeastRecentlyUsedCache(WINDOW_CACHE_CAPACITY));
+    }
+}
@@ -0,0 +1,152 @@
+/*
+ * Copyright (c) 2016, The National Archives <pronom@nationalarchives.gov.uk>
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following
+ * conditions are met:
+ *
+ *  * Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ *
+ *  * Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ *
+ *  * Neither the name of the The National Archives nor the
+ *    names of its contributors may be used to endorse or promote products
+ *    derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package uk.gov.nationalarchives.droid.core.interfaces.resource;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+import net.byteseek.io.reader.AbstractReader;
+import net.byteseek.io.reader.cache.WindowCache;
+import net.byteseek.io.reader.windows.Window;
+
+/**
+ * A window reader over a memory mapped file.
+ *
+ * <p>The file is mapped in regions of up to a gigabyte, each mapped the first time a window
+ * is read from it.  Windows are slices of the mapped regions, so creating a window never reads
+ * the file or copies any bytes - the operating system pages the bytes in as they are read.
+ * This makes it cheap to recreate windows which have dropped out of the cache, so a small
+ * cache can be used even when signatures scan large parts of big files.</p>
+ *
+ * <p>Byteseek matches against window arrays, so bytes scanned by signatures are still copied
+ * out of the mapping into each window's array; only hashing reads the mapping directly.
+ * Mapped regions are only unmapped when they are garbage collected, and on Windows the file
+ * cannot be deleted or renamed until then, even after the reader is closed.</p>
+ */
+public class MappedFileReader extends AbstractReader {
+
+    private static final int MAPPED_WINDOW_SIZE = 64 * 1024;
+    private static final int DEFAULT_REGION_SHIFT = 30;
+
+    private final Path path;
+    private final FileChannel channel;
+    private final long length;
+    private final int regionShift;
+    private final long regionMask;
+    private final MappedByteBuffer[] regions;
+
+    /**
+     * Constructs a memory mapped reader over a file.
+     *
+     * @param path The file to read.
+     * @param cache The cache to hold windows in.
+     * @throws IOException If the file could not be opened.
+     */
+    public MappedFileReader(final Path path, final WindowCache cache) throws IOException {
+        this(path, cache, DEFAULT_REGION_SHIFT);
+    }
+
+    /**
+     * Constructs a memory mapped reader over a file, mapping it in regions of a given size.
+     *
+     * @param path The file to read.
+     * @param cache The cache to hold windows in.
+     * @param regionShift The power of two size of each mapped region, which must be at least the window size.
+     * @throws IOException If the file could not be opened.
+     */
+    MappedFileReader(final Path path, final WindowCache cache, final int regionShift) throws IOException {
+        super(MAPPED_WINDOW_SIZE, cache);
+        this.path = path;
+        this.regionShift = regionShift;
+        this.regionMask = (1L << regionShift) - 1;
+        this.channel = FileChannel.open(path, StandardOpenOption.READ);
+        this.length = channel.size();
+        this.regions = new MappedByteBuffer[(int) ((length + regionMask) >>> regionShift)];
+    }
+
+    @Override
+    public long length() {
+        return length;
+    }
+
+    /**
+     * @return The file being read.
+     */
+    public Path getPath() {
+        return path;
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            super.close();
+        } finally {
+            synchronized (regions) {
+                // Mapped regions are only released when they are garbage collected.
+                Arrays.fill(regions, null);
+            }
+            channel.close();
+        }
+    }
+
+    @Override
+    protected Window createWindow(final long windowStart) throws IOException {
+        if (windowStart < 0 || windowStart >= length) {
+            return null;
+        }
+        final MappedByteBuffer region = getRegion((int) (windowStart >>> regionShift));
+        final int offset = (int) (windowStart & regionMask);
+        final int windowLength = (int) Math.min(windowSize, length - windowStart);
+        final ByteBuffer window = region.duplicate();
+        window.position(offset);
+        window.limit(offset + windowLength);
+        return new MappedWindow(window.slice(), windowStart, windowLength);
+    }
+
+    private MappedByteBuffer getRegion(final int index) throws IOException {
+        synchronized (regions) {
+            MappedByteBuffer region = regions[index];
+            if (region == null) {
+                final long regionStart = (long) index << regionShift;
+                region = channel.map(FileChannel.MapMode.READ_ONLY, regionStart,
+                        Math.min(regionMask + 1, length - regionStart));
+                regions[index] = region;
+            }
+            return region;
+        }
+    }
+}
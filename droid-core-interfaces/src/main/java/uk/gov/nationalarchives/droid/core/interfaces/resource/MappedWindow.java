@@ -0,0 +1,122 @@
+/*
+ * Copyright (c) 2016, The National Archives <pronom@nationalarchives.gov.uk>
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following
+ * conditions are met:
+ *
+ *  * Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ *
+ *  * Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ *
+ *  * Neither the name of the The National Archives nor the
+ *    names of its contributors may be used to endorse or promote products
+ *    derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package uk.gov.nationalarchives.droid.core.interfaces.resource;
+
+import java.nio.ByteBuffer;
+
+import net.byteseek.io.reader.windows.Window;
+
+/**
+ * A window over a region of a memory mapped file.
+ *
+ * <p>Bytes are read directly from the mapped region, without copying them.  A copy of the
+ * window is only made if something asks for its array, and the copy is then kept for as long
+ * as the window is.  Byteseek's matchers ask for the array, so only readers which use
+ * {@link #asByteBuffer()} avoid the copy.</p>
+ */
+public final class MappedWindow implements Window {
+
+    private final ByteBuffer buffer;
+    private final long windowPosition;
+    private final int length;
+    private volatile byte[] array;
+
+    /**
+     * Constructs a mapped window.
+     * @param buffer The mapped bytes of the window, starting at index zero.
+     * @param windowPosition The position of the window in the file.
+     * @param length The length of the window.
+     */
+    public MappedWindow(final ByteBuffer buffer, final long windowPosition, final int length) {
+        this.buffer = buffer;
+        this.windowPosition = windowPosition;
+        this.length = length;
+    }
+
+    @Override
+    public byte getByte(final int position) {
+        return buffer.get(position);
+    }
+
+    @Override
+    public byte[] getArray() {
+        byte[] bytes = array;
+        if (bytes == null) {
+            bytes = new byte[length];
+            buffer.duplicate().get(bytes);
+            array = bytes;
+        }
+        return bytes;
+    }
+
+    /**
+     * @return Whether the window has been copied into an array.
+     */
+    public boolean hasArray() {
+        return array != null;
+    }
+
+    /**
+     * Returns the mapped bytes of the window without copying them.
+     * The buffer returned is independent of any other buffer returned by this method.
+     *
+     * @return A read only buffer over the bytes of the window.
+     */
+    public ByteBuffer asByteBuffer() {
+        return buffer.asReadOnlyBuffer();
+    }
+
+    @Override
+    public long getWindowPosition() {
+        return windowPosition;
+    }
+
+    @Override
+    public long getWindowEndPosition() {
+        return windowPosition + length - 1;
+    }
+
+    @Override
+    public long getNextWindowPosition() {
+        return windowPosition + length;
+    }
+
+    @Override
+    public int length() {
+        return length;
+    }
+
+    @Override
+    public String toString() {
+        return getClass().getSimpleName() + "[windowPosition:" + windowPosition + " length:" + length + ']';
+    }
+}
@@ -0,0 +1,194 @@
+/*
+ * Copyright (c) 2016, The National Archives <pronom@nationalarchives.gov.uk>
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following
+ * conditions are met:
+ *
+ *  * Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ *
+ *  * Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ *
+ *  * Neither the name of the The National Archives nor the
+ *    names of its contributors may be used to endorse or promote products
+ *    derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package uk.gov.nationalarchives.droid.core.interfaces.resource;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+
+import net.byteseek.io.reader.AbstractReader;
+import net.byteseek.io.reader.cache.WindowCache;
+import net.byteseek.io.reader.windows.HardWindow;
+import net.byteseek.io.reader.windows.SoftWindow;
+import net.byteseek.io.reader.windows.SoftWindowRecovery;
+import net.byteseek.io.reader.windows.Window;
+
+/**
+ * A window reader over a file, or a range of bytes in a file, which takes the arrays for its first
+ * windows from a buffer pool.  The file is not opened until the first window is read.
+ *
+ * <p>Pooled windows are held until the reader is closed, when their arrays are given back to the pool,
+ * so no window read from it may be used after that.  Other windows are soft windows, which are read
+ * again if the garbage collector reclaims them, as the byteseek FileReader does when soft windows are used.</p>
+ */
+public class PooledFileReader extends AbstractReader implements SoftWindowRecovery {
+
+    private final Path path;
+    private final long offset;
+    private final long length;
+    private final BufferPool pool;
+    private final int maxPooledBuffers;
+    private final List<byte[]> pooledBuffers = new ArrayList<>();
+    private FileChannel channel;
+    private boolean closed;
+
+    /**
+     * Constructs a pooled reader over a file.
+     *
+     * @param path The file to read.
+     * @param cache The cache to hold windows in.
+     * @param pool The pool to take window arrays from, whose buffer size is the window size.
+     * @param maxPooledBytes The most bytes of windows to take from the pool.
+     * @throws IOException If the size of the file could not be read.
+     */
+    public PooledFileReader(final Path path, final WindowCache cache, final BufferPool pool,
+                            final int maxPooledBytes) throws IOException {
+        this(path, 0, Files.size(path), cache, pool, maxPooledBytes);
+    }
+
+    /**
+     * Constructs a pooled reader over a range of bytes in a file, which reads them as if they were a file
+     * of their own, with the first byte of the range at position zero.
+     *
+     * @param path The file to read.
+     * @param offset The position in the file of the first byte to read.
+     * @param length The number of bytes to read.
+     * @param cache The cache to hold windows in.
+     * @param pool The pool to take window arrays from, whose buffer size is the window size.
+     * @param maxPooledBytes The most bytes of windows to take from the pool.
+     */
+    public PooledFileReader(final Path path, final long offset, final long length, final WindowCache cache,
+                            final BufferPool pool, final int maxPooledBytes) {
+        super(pool.getBufferSize(), cache);
+        this.path = path;
+        this.offset = offset;
+        this.length = length;
+        this.pool = pool;
+        this.maxPooledBuffers = maxPooledBytes / pool.getBufferSize();
+    }
+
+    @Override
+    public long length() {
+        return length;
+    }
+
+    /**
+     * @return The file being read.
+     */
+    public Path getPath() {
+        return path;
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            super.close();
+        } finally {
+            closeChannel();
+            synchronized (pooledBuffers) {
+                for (final byte[] buffer : pooledBuffers) {
+                    pool.release(buffer);
+                }
+                pooledBuffers.clear();
+            }
+        }
+    }
+
+    @Override
+    public byte[] reloadWindowBytes(final Window window) throws IOException {
+        final byte[] bytes = new byte[windowSize];
+        readFully(bytes, window.getWindowPosition(), window.length());
+        return bytes;
+    }
+
+    @Override
+    protected Window createWindow(final long windowStart) throws IOException {
+        if (windowStart < 0 || windowStart >= length) {
+            return null;
+        }
+        final int windowLength = (int) Math.min(windowSize, length - windowStart);
+        final byte[] pooled = nextPooledBuffer();
+        if (pooled != null) {
+            readFully(pooled, windowStart, windowLength);
+            return new HardWindow(pooled, windowStart, windowLength);
+        }
+        final byte[] bytes = new byte[windowSize];
+        readFully(bytes, windowStart, windowLength);
+        return new SoftWindow(bytes, windowStart, windowLength, this);
+    }
+
+    private byte[] nextPooledBuffer() {
+        synchronized (pooledBuffers) {
+            if (pooledBuffers.size() < maxPooledBuffers) {
+                final byte[] buffer = pool.acquire();
+                pooledBuffers.add(buffer);
+                return buffer;
+            }
+            return null;
+        }
+    }
+
+    private void readFully(final byte[] bytes, final long position, final int count) throws IOException {
+        final FileChannel fileChannel = getChannel();
+        final ByteBuffer buffer = ByteBuffer.wrap(bytes, 0, count);
+        final long filePosition = offset + position;
+        while (buffer.hasRemaining()) {
+            if (fileChannel.read(buffer, filePosition + buffer.position()) < 0) {
+                throw new EOFException("Unexpected end of file reading " + path + " at " + filePosition);
+            }
+        }
+    }
+
+    private synchronized FileChannel getChannel() throws IOException {
+        if (closed) {
+            throw new IOException("The reader for " + path + " is closed.");
+        }
+        if (channel == null) {
+            channel = FileChannel.open(path, StandardOpenOption.READ);
+        }
+        return channel;
+    }
+
+    private synchronized void closeChannel() throws IOException {
+        closed = true;
+        if (channel != null) {
+            channel.close();
+            channel = null;
+        }
+    }
+}
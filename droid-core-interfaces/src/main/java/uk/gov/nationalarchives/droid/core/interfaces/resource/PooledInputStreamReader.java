@@ -0,0 +1,182 @@
+/*
+ * Copyright (c) 2016, The National Archives <pronom@nationalarchives.gov.uk>
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following
+ * conditions are met:
+ *
+ *  * Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ *
+ *  * Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ *
+ *  * Neither the name of the The National Archives nor the
+ *    names of its contributors may be used to endorse or promote products
+ *    derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package uk.gov.nationalarchives.droid.core.interfaces.resource;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+import net.byteseek.io.IOUtils;
+import net.byteseek.io.reader.AbstractReader;
+import net.byteseek.io.reader.cache.WindowCache;
+import net.byteseek.io.reader.windows.HardWindow;
+import net.byteseek.io.reader.windows.Window;
+import net.byteseek.io.reader.windows.WindowMissingException;
+
+/**
+ * A window reader over an input stream, which reads the stream in the same way as the byteseek
+ * InputStreamReader, but takes the arrays for its first windows from a buffer pool.
+ *
+ * <p>The pooled arrays are given back when the reader is closed, so no window read from it
+ * may be used after that.  Only the arrays for the first windows are pooled, so a reader over
+ * a large stream does not hold on to more arrays than its cache would keep in memory anyway.</p>
+ */
+public class PooledInputStreamReader extends AbstractReader {
+
+    private final InputStream stream;
+    private final boolean closeStreamOnClose;
+    private final BufferPool pool;
+    private final int maxPooledBuffers;
+    private final List<byte[]> pooledBuffers = new ArrayList<>();
+    private StreamMemoryBudget memoryBudget;
+    private long reservedBytes;
+    private long nextReadPos;
+    private long length = UNKNOWN_LENGTH;
+
+    /**
+     * Constructs a pooled reader over an input stream.
+     *
+     * @param stream The stream to read.
+     * @param cache The cache to hold windows in.
+     * @param closeStreamOnClose Whether to close the stream when the reader is closed.
+     * @param pool The pool to take window arrays from, whose buffer size is the window size.
+     * @param maxPooledBytes The most bytes of windows to take from the pool.
+     */
+    public PooledInputStreamReader(final InputStream stream, final WindowCache cache, final boolean closeStreamOnClose,
+                                   final BufferPool pool, final int maxPooledBytes) {
+        super(pool.getBufferSize(), cache);
+        this.stream = stream;
+        this.closeStreamOnClose = closeStreamOnClose;
+        this.pool = pool;
+        this.maxPooledBuffers = maxPooledBytes / pool.getBufferSize();
+    }
+
+    @Override
+    public Window getWindow(final long position) throws IOException {
+        final Window window = super.getWindow(position);
+        if (window == null && position >= 0 && position < nextReadPos) {
+            throw new WindowMissingException(String.format(
+                    "Cache failed to provide a window at position: %d but we have already read up to: %d",
+                    position, nextReadPos));
+        }
+        return window;
+    }
+
+    @Override
+    public long length() throws IOException {
+        while (length == UNKNOWN_LENGTH) {
+            final Window window = readNextWindow();
+            if (window != null) {
+                cache.addWindow(window);
+            }
+        }
+        return length;
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            if (closeStreamOnClose) {
+                stream.close();
+            }
+        } finally {
+            super.close();
+            for (final byte[] buffer : pooledBuffers) {
+                pool.release(buffer);
+            }
+            pooledBuffers.clear();
+            if (memoryBudget != null) {
+                memoryBudget.release(reservedBytes);
+                memoryBudget = null;
+            }
+        }
+    }
+
+    /**
+     * Sets bytes reserved from a memory budget for the windows this reader caches, which are
+     * released when the reader is closed.
+     *
+     * @param budget The budget the bytes were reserved from.
+     * @param bytes The number of bytes reserved.
+     */
+    public void setMemoryReservation(final StreamMemoryBudget budget, final long bytes) {
+        this.memoryBudget = budget;
+        this.reservedBytes = bytes;
+    }
+
+    /**
+     * @return The number of window arrays this reader has taken from the pool.
+     */
+    public int getPooledBufferCount() {
+        return pooledBuffers.size();
+    }
+
+    /*
+     * Reads forward through the stream up to the window containing the position.  Windows read on the
+     * way are added to the cache; the window at the position is added by the caller.
+     */
+    @Override
+    protected Window createWindow(final long windowStart) throws IOException {
+        Window window = null;
+        while (nextReadPos <= windowStart && length == UNKNOWN_LENGTH) {
+            window = readNextWindow();
+            if (window != null && windowStart >= nextReadPos) {
+                cache.addWindow(window);
+            }
+        }
+        return windowStart < nextReadPos ? window : null;
+    }
+
+    private Window readNextWindow() throws IOException {
+        final byte[] bytes = nextBuffer();
+        final int bytesRead = IOUtils.readBytes(stream, bytes);
+        Window window = null;
+        if (bytesRead > 0) {
+            window = new HardWindow(bytes, nextReadPos, bytesRead);
+            nextReadPos += bytesRead;
+        }
+        if (bytesRead < windowSize) {
+            length = nextReadPos;
+        }
+        return window;
+    }
+
+    private byte[] nextBuffer() {
+        if (pooledBuffers.size() < maxPooledBuffers) {
+            final byte[] buffer = pool.acquire();
+            pooledBuffers.add(buffer);
+            return buffer;
+        }
+        return new byte[windowSize];
+    }
+}
@@ -0,0 +1,169 @@
+/*
+ * Copyright (c) 2016, The National Archives <pronom@nationalarchives.gov.uk>
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following
+ * conditions are met:
+ *
+ *  * Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ *
+ *  * Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ *
+ *  * Neither the name of the The National Archives nor the
+ *    names of its contributors may be used to endorse or promote products
+ *    derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package uk.gov.nationalarchives.droid.core.interfaces.resource;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Path;
+
+import net.byteseek.io.reader.ReaderInputStream;
+import net.byteseek.io.reader.WindowReader;
+import net.byteseek.io.reader.cache.TopAndTailFixedLengthCache;
+import org.apache.commons.io.FilenameUtils;
+
+import uk.gov.nationalarchives.droid.core.interfaces.IdentificationRequest;
+import uk.gov.nationalarchives.droid.core.interfaces.RequestIdentifier;
+
+/**
+ * Identification request for the uncompressed contents of a gzip file on disk with many members,
+ * which inflates only the members containing the bytes asked for, using an index of the members,
+ * rather than inflating the whole file to memory or a temporary file when it is opened.
+ *
+ * <p>Reads near the end of the contents, to match end of file signatures, only inflate the last members.
+ * The gzip file is not opened until the first bytes are read.</p>
+ */
+public class RandomAccessGZipIdentificationRequest implements IdentificationRequest<Path> {
+
+    private static final int TOP_TAIL_CAPACITY = 2 * 1024 * 1024; // hold 2Mb cache on either end of contents.
+
+    private final String extension;
+    private final String fileName;
+    private final long size;
+    private final RequestMetaData requestMetaData;
+    private final RequestIdentifier identifier;
+    private final GZipMemberIndex index;
+
+    private WindowReader reader;
+
+    /**
+     * Constructs a new random access gzip request.
+     *
+     * @param metaData meta data about the request.
+     * @param identifier request identifier
+     * @param index the index of the members of the gzip file.
+     */
+    public RandomAccessGZipIdentificationRequest(final RequestMetaData metaData, final RequestIdentifier identifier,
+                                                 final GZipMemberIndex index) {
+        this.identifier = identifier;
+        String path = identifier.getUri().getSchemeSpecificPart();
+        this.extension = ResourceUtils.getExtension(path);
+        this.fileName = FilenameUtils.getName(path);
+        this.requestMetaData = metaData;
+        this.index = index;
+        this.size = index.getUncompressedLength();
+    }
+
+    /**
+     * Opens the request on the gzip file.
+     * No bytes are read from the gzip file until they are asked for.
+     *
+     * @param gzipFile the gzip file.
+     */
+    @Override
+    public final void open(final Path gzipFile) {
+        reader = new GZipMemberReader(gzipFile, index, new TopAndTailFixedLengthCache(size, TOP_TAIL_CAPACITY));
+    }
+
+    /**
+     * Releases resources for this resource.
+     * @throws IOException if the resource could not be closed
+     */
+    @Override
+    public final void close() throws IOException {
+        if (reader != null) {
+            reader.close();
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public final String getExtension() {
+        return extension;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public final String getFileName() {
+        return fileName;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public final long size() {
+        return size;
+    }
+
+    /**
+     * {@inheritDoc}
+     * @throws IOException exception
+     */
+    @Override
+    public final InputStream getSourceInputStream() throws IOException {
+        return new ReaderInputStream(reader, false);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public final RequestMetaData getRequestMetaData() {
+        return requestMetaData;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public final RequestIdentifier getIdentifier() {
+        return identifier;
+    }
+
+    @Override
+    public byte getByte(long position) throws IOException {
+        final int result = reader.readByte(position);
+        if (result < 0) {
+            throw new IOException("No byte at position " + position);
+        }
+        return (byte) result;
+    }
+
+    @Override
+    public WindowReader getWindowReader() {
+        return reader;
+    }
+}
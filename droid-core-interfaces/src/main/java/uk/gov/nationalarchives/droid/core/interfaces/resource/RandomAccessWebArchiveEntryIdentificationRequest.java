@@ -0,0 +1,169 @@
+/*
+ * Copyright (c) 2016, The National Archives <pronom@nationalarchives.gov.uk>
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following
+ * conditions are met:
+ *
+ *  * Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ *
+ *  * Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ *
+ *  * Neither the name of the The National Archives nor the
+ *    names of its contributors may be used to endorse or promote products
+ *    derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package uk.gov.nationalarchives.droid.core.interfaces.resource;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Path;
+
+import net.byteseek.io.reader.ReaderInputStream;
+import net.byteseek.io.reader.WindowReader;
+import net.byteseek.io.reader.cache.TopAndTailFixedLengthCache;
+import uk.gov.nationalarchives.droid.core.interfaces.IdentificationRequest;
+import uk.gov.nationalarchives.droid.core.interfaces.RequestIdentifier;
+
+/**
+ * Identification request for the payload of a record in an uncompressed web archive on disk,
+ * which reads the payload's bytes from their range in the web archive as they are asked for,
+ * rather than copying the payload to memory or a temporary file when it is opened.
+ *
+ * <p>The web archive is not opened until the first bytes are read, so requests waiting to be
+ * matched do not hold files open.</p>
+ */
+public class RandomAccessWebArchiveEntryIdentificationRequest implements IdentificationRequest<Path> {
+
+    private static final int TOP_TAIL_CAPACITY = 2 * 1024 * 1024; // hold 2Mb cache on either end of payload.
+
+    private final String extension;
+    private final String fileName;
+    private final long size;
+    private final RequestMetaData requestMetaData;
+    private final RequestIdentifier identifier;
+    private final long payloadOffset;
+
+    private WindowReader reader;
+
+    /**
+     * Constructs a new random access web archive entry request.
+     *
+     * @param metaData meta data about the request.
+     * @param identifier request identifier
+     * @param payloadOffset the position in the web archive of the payload.
+     * @param payloadLength the length of the payload.
+     */
+    public RandomAccessWebArchiveEntryIdentificationRequest(final RequestMetaData metaData,
+            final RequestIdentifier identifier, final long payloadOffset, final long payloadLength) {
+        this.identifier = identifier;
+        this.size = payloadLength;
+        this.fileName = metaData.getName();
+        this.extension = ResourceUtils.getExtension(fileName);
+        this.requestMetaData = metaData;
+        this.payloadOffset = payloadOffset;
+    }
+
+    /**
+     * Opens the request on the web archive containing the payload.
+     * No bytes are read from the web archive until they are asked for.
+     *
+     * @param webArchive the web archive containing the payload.
+     */
+    @Override
+    public final void open(final Path webArchive) {
+        reader = new PooledFileReader(webArchive, payloadOffset, size,
+                new TopAndTailFixedLengthCache(size, TOP_TAIL_CAPACITY),
+                BufferPool.getDefault(), ResourceUtils.MAX_POOLED_BYTES_PER_READER);
+    }
+
+    /**
+     * Releases resources for this resource.
+     * @throws IOException if the resource could not be closed
+     */
+    @Override
+    public final void close() throws IOException {
+        if (reader != null) {
+            reader.close();
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public final String getExtension() {
+        return extension;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public final String getFileName() {
+        return fileName;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public final long size() {
+        return size;
+    }
+
+    /**
+     * {@inheritDoc}
+     * @throws IOException exception
+     */
+    @Override
+    public final InputStream getSourceInputStream() throws IOException {
+        return new ReaderInputStream(reader, false);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public final RequestMetaData getRequestMetaData() {
+        return requestMetaData;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public final RequestIdentifier getIdentifier() {
+        return identifier;
+    }
+
+    @Override
+    public byte getByte(long position) throws IOException {
+        final int result = reader.readByte(position);
+        if (result < 0) {
+            throw new IOException("No byte at position " + position);
+        }
+        return (byte) result;
+    }
+
+    @Override
+    public WindowReader getWindowReader() {
+        return reader;
+    }
+}
@@ -0,0 +1,279 @@
+/*
+ * Copyright (c) 2016, The National Archives <pronom@nationalarchives.gov.uk>
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following
+ * conditions are met:
+ *
+ *  * Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ *
+ *  * Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ *
+ *  * Neither the name of the The National Archives nor the
+ *    names of its contributors may be used to endorse or promote products
+ *    derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package uk.gov.nationalarchives.droid.core.interfaces.resource;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
+
+import net.byteseek.io.reader.ReaderInputStream;
+import net.byteseek.io.reader.WindowReader;
+import net.byteseek.io.reader.cache.TopAndTailFixedLengthCache;
+import uk.gov.nationalarchives.droid.core.interfaces.IdentificationRequest;
+import uk.gov.nationalarchives.droid.core.interfaces.RequestIdentifier;
+
+/**
+ * Identification request for an entry in a zip file on disk, which reads the entry's bytes
+ * from the zip file as they are asked for, rather than reading the whole entry when it is opened.
+ *
+ * <p>A stored entry is read directly from its range of bytes in the zip file.  A deflated entry is
+ * inflated as far as the reader is asked to read, and cached like any other entry stream.
+ * The zip file is not opened until the first bytes are read, so requests waiting to be
+ * matched do not hold files open.</p>
+ */
+public class RandomAccessZipEntryIdentificationRequest implements IdentificationRequest<Path> {
+
+    /**
+     * The compression method of a stored zip entry.
+     */
+    public static final int STORED = 0;
+
+    /**
+     * The compression method of a deflated zip entry.
+     */
+    public static final int DEFLATED = 8;
+
+    private static final int TOP_TAIL_CAPACITY = 2 * 1024 * 1024; // hold 2Mb cache on either end of zip entry.
+    private static final int INFLATE_BUFFER_SIZE = 8192;
+    private static final int BYTE_MASK = 0xFF;
+
+    private final String extension;
+    private final String fileName;
+    private final long size;
+    private final RequestMetaData requestMetaData;
+    private final RequestIdentifier identifier;
+    private final Path tempDir;
+    private final long dataOffset;
+    private final long compressedSize;
+    private final int method;
+
+    private WindowReader reader;
+
+    /**
+     * Constructs a new random access zip entry request.
+     *
+     * @param metaData meta data about the request, whose size must be the uncompressed size of the entry.
+     * @param identifier request identifier
+     * @param tempDir the location to write temp files.
+     * @param dataOffset the position in the zip file of the entry's data.
+     * @param compressedSize the size of the entry's data in the zip file.
+     * @param method the compression method of the entry, which must be STORED or DEFLATED.
+     */
+    public RandomAccessZipEntryIdentificationRequest(final RequestMetaData metaData, final RequestIdentifier identifier,
+            final Path tempDir, final long dataOffset, final long compressedSize, final int method) {
+        if (!isSupported(method)) {
+            throw new IllegalArgumentException("Zip entries compressed with method " + method
+                    + " can't be read randomly.");
+        }
+        this.identifier = identifier;
+        this.size = metaData.getSize();
+        this.fileName = metaData.getName();
+        this.extension = ResourceUtils.getExtension(fileName);
+        this.tempDir = tempDir;
+        this.requestMetaData = metaData;
+        this.dataOffset = dataOffset;
+        this.compressedSize = compressedSize;
+        this.method = method;
+    }
+
+    /**
+     * @param method A zip entry compression method.
+     * @return Whether entries compressed with the method can be read by this request.
+     */
+    public static boolean isSupported(final int method) {
+        return method == STORED || method == DEFLATED;
+    }
+
+    /**
+     * Opens the request on the zip file containing the entry.
+     * No bytes are read from the zip file until they are asked for.
+     *
+     * @param zipFile the zip file containing the entry.
+     */
+    @Override
+    public final void open(final Path zipFile) {
+        if (method == STORED) {
+            reader = new PooledFileReader(zipFile, dataOffset, size,
+                    new TopAndTailFixedLengthCache(size, TOP_TAIL_CAPACITY),
+                    BufferPool.getDefault(), ResourceUtils.MAX_POOLED_BYTES_PER_READER);
+        } else {
+            final Inflater inflater = new Inflater(true);
+            final InputStream in = new InflatingEntryStream(
+                    new FileRangeInputStream(zipFile, dataOffset, compressedSize), inflater);
+            reader = ResourceUtils.getStreamReader(in, tempDir, TOP_TAIL_CAPACITY, true, size);
+        }
+    }
+
+    /**
+     * Releases resources for this resource.
+     * @throws IOException if the resource could not be closed
+     */
+    @Override
+    public final void close() throws IOException {
+        if (reader != null) {
+            reader.close();
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public final String getExtension() {
+        return extension;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public final String getFileName() {
+        return fileName;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public final long size() {
+        return size;
+    }
+
+    /**
+     * {@inheritDoc}
+     * @throws IOException exception
+     */
+    @Override
+    public final InputStream getSourceInputStream() throws IOException {
+        return new ReaderInputStream(reader, false);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public final RequestMetaData getRequestMetaData() {
+        return requestMetaData;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public final RequestIdentifier getIdentifier() {
+        return identifier;
+    }
+
+    @Override
+    public byte getByte(long position) throws IOException {
+        final int result = reader.readByte(position);
+        if (result < 0) {
+            throw new IOException("No byte at position " + position);
+        }
+        return (byte) result;
+    }
+
+    @Override
+    public WindowReader getWindowReader() {
+        return reader;
+    }
+
+    /**
+     * Inflates a deflated zip entry, and ends the inflater when it is closed.
+     */
+    private static final class InflatingEntryStream extends InflaterInputStream {
+
+        InflatingEntryStream(final InputStream in, final Inflater inflater) {
+            super(in, inflater, INFLATE_BUFFER_SIZE);
+        }
+
+        @Override
+        public void close() throws IOException {
+            try {
+                super.close();
+            } finally {
+                inf.end();
+            }
+        }
+    }
+
+    /**
+     * Reads a range of bytes from a file, which is not opened until the first byte is read.
+     */
+    private static final class FileRangeInputStream extends InputStream {
+
+        private final Path path;
+        private final long end;
+        private long position;
+        private FileChannel channel;
+
+        FileRangeInputStream(final Path path, final long offset, final long length) {
+            this.path = path;
+            this.position = offset;
+            this.end = offset + length;
+        }
+
+        @Override
+        public int read() throws IOException {
+            final byte[] single = new byte[1];
+            return read(single, 0, 1) < 0 ? -1 : single[0] & BYTE_MASK;
+        }
+
+        @Override
+        public int read(final byte[] bytes, final int off, final int len) throws IOException {
+            if (position >= end) {
+                return -1;
+            }
+            if (channel == null) {
+                channel = FileChannel.open(path, StandardOpenOption.READ);
+            }
+            final int toRead = (int) Math.min(len, end - position);
+            final int bytesRead = channel.read(ByteBuffer.wrap(bytes, off, toRead), position);
+            if (bytesRead > 0) {
+                position += bytesRead;
+            }
+            return bytesRead;
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (channel != null) {
+                channel.close();
+            }
+        }
+    }
+}
@@ -31,6 +31,11 @@
  */
 package uk.gov.nationalarchives.droid.core.interfaces.resource;
 
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.Map;
+
+import uk.gov.nationalarchives.droid.core.interfaces.hash.HashAlgorithm;
 
 /**
  * @author rflitcroft
@@ -42,6 +47,7 @@ public class RequestMetaData {
     private final Long time;
     private final String name;
     private String hash;
+    private Map<HashAlgorithm, String> hashes = Collections.emptyMap();
 
     /**
      * @param size - the size in bytes of the request data
@@ -88,4 +94,19 @@ public class RequestMetaData {
     public final String getHash() {
         return hash;
     }
+
+    /**
+     * @param hashes the hashes calculated for each algorithm
+     */
+    public final void setHashes(Map<HashAlgorithm, String> hashes) {
+        this.hashes = hashes == null || hashes.isEmpty() ? Collections.<HashAlgorithm, String>emptyMap()
+                : new EnumMap<>(hashes);
+    }
+
+    /**
+     * @return the hashes calculated for each algorithm
+     */
+    public final Map<HashAlgorithm, String> getHashes() {
+        return Collections.unmodifiableMap(hashes);
+    }
 }
@@ -47,6 +47,7 @@ import net.byteseek.io.reader.cache.TopAndTailStreamCache;
 import net.byteseek.io.reader.cache.TwoLevelCache;
 import net.byteseek.io.reader.cache.WindowCache;
 import net.byteseek.io.reader.InputStreamReader;
+import net.byteseek.io.reader.WindowReader;
 
 /**
  * 
@@ -57,9 +58,16 @@ public final class ResourceUtils {
 
     /**
      * Amount of free memory must be available.
+     * @deprecated Stream readers reserve their memory from the {@link StreamMemoryBudget} instead.
      */
+    @Deprecated
     public static final double FREE_MEMORY_THRESHOLD = 64 * 1024 * 1024; // 64 Mb of free memory must be available.
 
+    /**
+     * The most bytes of windows a stream reader takes from the buffer pool.
+     */
+    public static final int MAX_POOLED_BYTES_PER_READER = 256 * 1024;
+
     private static final int BUFFER_SIZE = 8192;
     
     private static final int NINENTYEIGHT = 98;
@@ -109,7 +117,10 @@ public final class ResourceUtils {
      * @param tempDir The directory in which to create temporary files for caching.
      * @param topTailCapacity The amount of memory to cache on the top and tail of each stream.
      * @return The input stream reader.
+     * @deprecated Use {@link #getStreamReader(InputStream, Path, int, boolean, Long)}, which reserves
+     * the memory of the cache from the {@link StreamMemoryBudget} and takes its windows from the {@link BufferPool}.
      */
+    @Deprecated
     public static InputStreamReader getStreamReader(final InputStream in, final Path tempDir, final int topTailCapacity) {
         final WindowCache cache;
         final InputStreamReader reader;
@@ -141,7 +152,10 @@ public final class ResourceUtils {
      * @param topTailCapacity The amount of memory to cache on the top and tail of each stream.
      * @param closeStream Whether to close the underlying input stream when this reader is closed.
      * @return The input stream reader.
+     * @deprecated Use {@link #getStreamReader(InputStream, Path, int, boolean, Long)}, which reserves
+     * the memory of the cache from the {@link StreamMemoryBudget} and takes its windows from the {@link BufferPool}.
      */
+    @Deprecated
     public static InputStreamReader getStreamReader(final InputStream in, final Path tempDir,
                                                     final int topTailCapacity, final boolean closeStream) {
         final WindowCache cache;
@@ -161,6 +175,63 @@ public final class ResourceUtils {
         return reader;
     }
 
+    /**
+     * Creates a reader over an input stream backed by a cache.
+     * <p>
+     * The memory the cache can hold is reserved from the default stream memory budget.  A stream known to be
+     * no bigger than the top and tail capacity reserves its size, and is held entirely in memory.  Other streams
+     * reserve the top and tail capacity twice over, and cache the rest of the stream in a temporary file.
+     * The windows at the start of the stream are taken from the default buffer pool.  The reservation and
+     * the pooled windows are given back when the reader is closed.
+     * <p>
+     * If the budget is used up, then a double cache of a most recently used cache with SoftWindows,
+     * backed by a temp file cache will be used.
+     *
+     * @param in The input stream to back the reader.
+     * @param tempDir The directory in which to create temporary files for caching.
+     * @param topTailCapacity The amount of memory to cache on the top and tail of each stream.
+     * @param closeStream Whether to close the underlying input stream when this reader is closed.
+     * @param expectedSize The size of the stream, if known from an archive header, or null or negative if not.
+     * @return The input stream reader.
+     */
+    public static WindowReader getStreamReader(final InputStream in, final Path tempDir,
+                                               final int topTailCapacity, final boolean closeStream,
+                                               final Long expectedSize) {
+        final WindowCache cache;
+        final WindowReader reader;
+        final StreamMemoryBudget budget = StreamMemoryBudget.getDefault();
+        final long memoryNeeded = getMemoryNeeded(topTailCapacity, expectedSize);
+        if (budget.tryReserve(memoryNeeded)) {
+            cache = TwoLevelCache.create(
+                    new TopAndTailStreamCache(topTailCapacity),
+                    new TempFileCache(tempDir == null ? null : tempDir.toFile()));
+            final PooledInputStreamReader pooledReader = new PooledInputStreamReader(in, cache, closeStream,
+                    BufferPool.getDefault(), Math.min(topTailCapacity, MAX_POOLED_BYTES_PER_READER));
+            pooledReader.setMemoryReservation(budget, memoryNeeded);
+            reader = pooledReader;
+        } else {
+            final WindowCache memoryCache = new LeastRecentlyUsedCache(1024);
+            final TempFileCache persistentCache = new TempFileCache(tempDir == null ? null : tempDir.toFile());
+            cache = DoubleCache.create(memoryCache, persistentCache);
+            final InputStreamReader streamReader = new InputStreamReader(in, cache, closeStream);
+            streamReader.setSoftWindowRecovery(persistentCache);
+            reader = streamReader;
+        }
+        return reader;
+    }
+
+    /*
+     * A stream no bigger than the top and tail capacity never leaves the top cache, so only needs
+     * its own size in whole windows.  Bigger streams, or ones of unknown size, can fill both the top and tail.
+     */
+    private static long getMemoryNeeded(final int topTailCapacity, final Long expectedSize) {
+        if (expectedSize != null && expectedSize >= 0 && expectedSize <= topTailCapacity) {
+            final long windowSize = BufferPool.DEFAULT_BUFFER_SIZE;
+            return Math.max(1, (expectedSize + windowSize - 1) / windowSize) * windowSize;
+        }
+        return 2L * topTailCapacity;
+    }
+
 
     /**
      * @param tempDir The temp directory to create the temporary file in.
@@ -128,7 +128,7 @@ public class SevenZipEntryIdentificationRequest implements IdentificationRequest
      * @throws IOException if open unsuccessful
      */
     public final void open(final InputStream in) throws IOException {
-        reader = ResourceUtils.getStreamReader(in, tempDir, TOP_TAIL_CAPACITY, true);
+        reader = ResourceUtils.getStreamReader(in, tempDir, TOP_TAIL_CAPACITY, true, size);
         reader.length();
     }
 
@@ -0,0 +1,181 @@
+/*
+ * Copyright (c) 2016, The National Archives <pronom@nationalarchives.gov.uk>
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following
+ * conditions are met:
+ *
+ *  * Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ *
+ *  * Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ *
+ *  * Neither the name of the The National Archives nor the
+ *    names of its contributors may be used to endorse or promote products
+ *    derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package uk.gov.nationalarchives.droid.core.interfaces.resource;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A budget of memory shared by all the readers caching archive entry streams in memory.
+ *
+ * <p>Readers reserve the bytes they can hold in memory before they are created, and release them when
+ * they are closed.  If a reservation would take the memory in use over the budget, it is refused, and the
+ * reader caches the stream in a temporary file instead.  Unlike checking the free memory of the runtime,
+ * which moves up and down with garbage collection, the memory in use is exactly what has been reserved.</p>
+ *
+ * <p>The default budget is shared by every profile running in the process, because they all share the
+ * one heap: a budget per profile would let several profiles running at once reserve more than the heap
+ * can hold.  It is a quarter of the maximum heap, unless the {@value #BUDGET_PROPERTY} system property
+ * sets it in bytes.</p>
+ */
+public final class StreamMemoryBudget {
+
+    /**
+     * The system property which sets the size of the default budget in bytes.
+     */
+    public static final String BUDGET_PROPERTY = "droid.streamMemoryBudget";
+
+    /**
+     * The counter of reservations granted.
+     */
+    public static final String GRANTED = "granted";
+
+    /**
+     * The counter of reservations refused because the budget was used up.
+     */
+    public static final String REFUSED = "refused";
+
+    private static final String[] COUNTERS = {GRANTED, REFUSED};
+
+    private static final int DEFAULT_HEAP_FRACTION = 4;
+
+    private static final StreamMemoryBudget DEFAULT_BUDGET = new StreamMemoryBudget(getDefaultBudget());
+
+    private final long budget;
+    private final AtomicLong reserved = new AtomicLong();
+    private final AtomicLong peakReserved = new AtomicLong();
+    private final LongAdder granted = new LongAdder();
+    private final LongAdder refused = new LongAdder();
+
+    /**
+     * Constructs a memory budget.
+     *
+     * @param budget The most bytes which can be reserved at any one time.
+     */
+    public StreamMemoryBudget(final long budget) {
+        this.budget = budget;
+    }
+
+    /**
+     * @return The budget shared by the identification requests of every profile.
+     */
+    public static StreamMemoryBudget getDefault() {
+        return DEFAULT_BUDGET;
+    }
+
+    private static long getDefaultBudget() {
+        final long heapFraction = Runtime.getRuntime().maxMemory() / DEFAULT_HEAP_FRACTION;
+        final long configured = Long.getLong(BUDGET_PROPERTY, heapFraction);
+        return configured > 0 ? configured : heapFraction;
+    }
+
+    /**
+     * Reserves bytes from the budget, if there are enough left.
+     *
+     * @param bytes The number of bytes to reserve.
+     * @return Whether the bytes were reserved.  If they were, they must be released when they are no longer used.
+     */
+    public boolean tryReserve(final long bytes) {
+        long current;
+        long next;
+        do {
+            current = reserved.get();
+            next = current + bytes;
+            if (next > budget) {
+                refused.increment();
+                return false;
+            }
+        } while (!reserved.compareAndSet(current, next));
+        peakReserved.accumulateAndGet(next, Math::max);
+        granted.increment();
+        return true;
+    }
+
+    /**
+     * Releases bytes previously reserved.
+     *
+     * @param bytes The number of bytes to release.
+     */
+    public void release(final long bytes) {
+        reserved.addAndGet(-bytes);
+    }
+
+    /**
+     * @return The most bytes which can be reserved at any one time.
+     */
+    public long getBudget() {
+        return budget;
+    }
+
+    /**
+     * @return The number of bytes currently reserved.
+     */
+    public long getReserved() {
+        return reserved.get();
+    }
+
+    /**
+     * @return The most bytes which have been reserved at any one time.
+     */
+    public long getPeakReserved() {
+        return peakReserved.get();
+    }
+
+    /**
+     * @return The number of reservations granted.
+     */
+    public long getGrantedCount() {
+        return granted.sum();
+    }
+
+    /**
+     * @return The number of reservations refused because the budget was used up.
+     */
+    public long getRefusedCount() {
+        return refused.sum();
+    }
+
+    /**
+     * @return The {@link #GRANTED} and {@link #REFUSED} reservations counted so far.
+     */
+    public CountSnapshot snapshot() {
+        return new CountSnapshot(COUNTERS, getGrantedCount(), getRefusedCount());
+    }
+
+    @Override
+    public String toString() {
+        return getClass().getSimpleName() + "[budget:" + budget
+                + " reserved:" + getReserved()
+                + " peak:" + getPeakReserved()
+                + ' ' + snapshot() + ']';
+    }
+}
@@ -0,0 +1,191 @@
+/*
+ * Copyright (c) 2016, The National Archives <pronom@nationalarchives.gov.uk>
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following
+ * conditions are met:
+ *
+ *  * Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ *
+ *  * Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ *
+ *  * Neither the name of the The National Archives nor the
+ *    names of its contributors may be used to endorse or promote products
+ *    derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package uk.gov.nationalarchives.droid.core.interfaces.archive;
+
+import java.io.IOException;
+import java.net.URI;
+import java.util.concurrent.CompletableFuture;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.CALLS_REAL_METHODS;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import uk.gov.nationalarchives.droid.core.interfaces.AsynchDroid;
+import uk.gov.nationalarchives.droid.core.interfaces.IdentificationException;
+import uk.gov.nationalarchives.droid.core.interfaces.IdentificationRequest;
+import uk.gov.nationalarchives.droid.core.interfaces.IdentificationResultCollection;
+import uk.gov.nationalarchives.droid.core.interfaces.ResultHandler;
+import uk.gov.nationalarchives.droid.core.interfaces.resource.RequestMetaData;
+
+public class ArchiveExpansionTest {
+
+    private static final URI ARCHIVE = URI.create("file:/archive.tar");
+
+    @Test
+    public void testCountsEntriesAndBytes() {
+        AsynchDroid droid = mock(AsynchDroid.class);
+        ArchiveExpansion.Statistics statistics = new ArchiveExpansion.Statistics();
+        when(droid.getArchiveStatistics()).thenReturn(statistics);
+        when(droid.submit(any(IdentificationRequest.class))).thenReturn(CompletableFuture.completedFuture(null));
+        ArchiveExpansion expansion = new ArchiveExpansion(droid, mock(ResultHandler.class), ARCHIVE);
+
+        expansion.submit(newRequest(100L));
+        expansion.submit(newRequest(null));
+        expansion.submit(newRequest(50L));
+        expansion.finish();
+
+        assertEquals(3, expansion.getEntryCount());
+        assertEquals(150, expansion.getByteCount());
+        assertEquals(0, expansion.getHandOffWaitCount());
+        assertEquals(1, statistics.getArchiveCount());
+        assertEquals(3, statistics.getEntryCount());
+    }
+
+    @Test
+    public void testCountsDecodedAndCompressedBytes() {
+        AsynchDroid droid = mock(AsynchDroid.class);
+        ArchiveExpansion.Statistics statistics = new ArchiveExpansion.Statistics();
+        when(droid.getArchiveStatistics()).thenReturn(statistics);
+        ArchiveExpansion expansion = new ArchiveExpansion(droid, mock(ResultHandler.class), ARCHIVE);
+
+        expansion.addDecodedBytes(1000);
+        expansion.addDecodedBytes(500);
+        expansion.addCompressedBytes(300);
+        expansion.finish();
+
+        assertEquals(1500, expansion.getDecodedByteCount());
+        assertEquals(300, expansion.getCompressedByteCount());
+        assertTrue(expansion.toString().contains("decoded bytes:1500 compressed bytes read:300"));
+        assertEquals(1500, statistics.getDecodedByteCount());
+        assertEquals(300, statistics.getCompressedByteCount());
+    }
+
+    @Test
+    public void testWaitsWhenTooManyEntriesArePending() {
+        AsynchDroid droid = mock(AsynchDroid.class);
+        CompletableFuture<IdentificationResultCollection> slow = new CompletableFuture<>();
+        when(droid.submit(any(IdentificationRequest.class))).thenReturn(slow);
+        ArchiveExpansion expansion = new ArchiveExpansion(droid, mock(ResultHandler.class), ARCHIVE, 2);
+
+        expansion.submit(newRequest(1L));
+        expansion.submit(newRequest(1L));
+        assertEquals(0, expansion.getHandOffWaitCount());
+
+        // The third entry waits until an earlier entry has been identified, however long that takes:
+        completeLater(slow, 500);
+        expansion.submit(newRequest(1L));
+        assertTrue(slow.isDone());
+        assertEquals(1, expansion.getHandOffWaitCount());
+        assertTrue(expansion.getHandOffWaitMillis() >= 400);
+        expansion.finish();
+    }
+
+    @Test
+    public void testStopsWaitingWhenInterrupted() {
+        AsynchDroid droid = mock(AsynchDroid.class);
+        when(droid.submit(any(IdentificationRequest.class))).thenReturn(new CompletableFuture<>());
+        ArchiveExpansion expansion = new ArchiveExpansion(droid, mock(ResultHandler.class), ARCHIVE, 1);
+
+        expansion.submit(newRequest(1L));
+        Thread.currentThread().interrupt();
+        try {
+            expansion.submit(newRequest(1L));
+            assertTrue(Thread.currentThread().isInterrupted());
+        } finally {
+            Thread.interrupted();
+        }
+        assertEquals(1, expansion.getHandOffWaitCount());
+        expansion.finish();
+    }
+
+    @Test
+    public void testStatisticsAreNotCountedWithoutDroidStatistics() {
+        ArchiveExpansion expansion = new ArchiveExpansion(mock(AsynchDroid.class), mock(ResultHandler.class), ARCHIVE);
+        expansion.addDecodedBytes(1);
+        expansion.finish();
+        assertEquals(1, expansion.getDecodedByteCount());
+    }
+
+    @Test
+    public void testDoesNotWaitForEntriesAlreadyIdentified() {
+        AsynchDroid droid = mock(AsynchDroid.class);
+        when(droid.submit(any(IdentificationRequest.class))).thenReturn(CompletableFuture.completedFuture(null));
+        ArchiveExpansion expansion = new ArchiveExpansion(droid, mock(ResultHandler.class), ARCHIVE, 1);
+
+        for (int i = 0; i < 10; i++) {
+            expansion.submit(newRequest(1L));
+        }
+        assertEquals(0, expansion.getHandOffWaitCount());
+        expansion.finish();
+    }
+
+    @Test
+    public void testReportsEntriesWhichCannotBeOpened() {
+        // Calls the default submit with an opener, which opens the entry on the calling thread:
+        AsynchDroid droid = mock(AsynchDroid.class, CALLS_REAL_METHODS);
+        ResultHandler resultHandler = mock(ResultHandler.class);
+        ArchiveExpansion expansion = new ArchiveExpansion(droid, resultHandler, ARCHIVE);
+
+        expansion.submit(newRequest(1L), () -> {
+            throw new IOException("Can't read entry");
+        });
+        expansion.finish();
+
+        assertEquals(1, expansion.getEntryCount());
+        verify(resultHandler).handleError(any(IdentificationException.class));
+    }
+
+    private static void completeLater(CompletableFuture<IdentificationResultCollection> future, long millis) {
+        Thread completer = new Thread(() -> {
+            try {
+                Thread.sleep(millis);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            future.complete(null);
+        });
+        completer.setDaemon(true);
+        completer.start();
+    }
+
+    private static IdentificationRequest newRequest(Long size) {
+        IdentificationRequest request = mock(IdentificationRequest.class);
+        when(request.getRequestMetaData()).thenReturn(new RequestMetaData(size, 0L, "entry"));
+        return request;
+    }
+}
@@ -106,7 +106,8 @@ public class ISOImageArchiveHandlerTest {
 
     @Test
     public void testWithOneFile() throws Exception {
-        AsynchDroid droid = mock(AsynchDroid.class);
+        // Entries are submitted with an opener: let the default method open them and submit them.
+        AsynchDroid droid = mock(AsynchDroid.class, CALLS_REAL_METHODS);
         when(droid.passesIdentificationFilter(any(IdentificationRequest.class))).thenReturn(true);
 
         IdentificationRequestFactory<InputStream> factory = mock(IdentificationRequestFactory.class);
@@ -153,7 +154,8 @@ public class ISOImageArchiveHandlerTest {
 
     @Test
     public void testWithOneFileWithWrongOrder() throws Exception {
-        AsynchDroid droid = mock(AsynchDroid.class);
+        // Entries are submitted with an opener: let the default method open them and submit them.
+        AsynchDroid droid = mock(AsynchDroid.class, CALLS_REAL_METHODS);
         when(droid.passesIdentificationFilter(any(IdentificationRequest.class))).thenReturn(true);
 
         IdentificationRequestFactory<InputStream> factory = mock(IdentificationRequestFactory.class);
@@ -204,7 +206,8 @@ public class ISOImageArchiveHandlerTest {
 
         IdentificationRequestFactory<InputStream> factory = new ISOEntryRequestFactory();
 
-        AsynchDroid droid = mock(AsynchDroid.class);
+        // Entries are submitted with an opener: let the default method open them and submit them.
+        AsynchDroid droid = mock(AsynchDroid.class, CALLS_REAL_METHODS);
         when(droid.passesIdentificationFilter(any(IdentificationRequest.class))).thenReturn(true);
 
         ResultHandler resultHandler = mock(ResultHandler.class);
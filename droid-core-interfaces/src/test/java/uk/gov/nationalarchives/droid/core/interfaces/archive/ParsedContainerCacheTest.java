@@ -0,0 +1,148 @@
+/*
+ * Copyright (c) 2016, The National Archives <pronom@nationalarchives.gov.uk>
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following
+ * conditions are met:
+ *
+ *  * Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ *
+ *  * Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ *
+ *  * Neither the name of the The National Archives nor the
+ *    names of its contributors may be used to endorse or promote products
+ *    derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package uk.gov.nationalarchives.droid.core.interfaces.archive;
+
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import org.apache.commons.io.IOUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import uk.gov.nationalarchives.droid.core.interfaces.RequestIdentifier;
+import uk.gov.nationalarchives.droid.core.interfaces.resource.CountSnapshot;
+import uk.gov.nationalarchives.droid.core.interfaces.resource.FileSystemIdentificationRequest;
+import uk.gov.nationalarchives.droid.core.interfaces.resource.RequestMetaData;
+import uk.gov.nationalarchives.droid.core.interfaces.resource.StreamMemoryBudget;
+
+public class ParsedContainerCacheTest {
+
+    private static final String ENTRY = "orm_1_0.xsd";
+
+    private StreamMemoryBudget budget;
+    private ParsedContainerCache cache;
+    private FileSystemIdentificationRequest request;
+
+    @Before
+    public void setup() throws Exception {
+        final Path file = Paths.get(getClass().getResource("/persistence.zip").toURI());
+        budget = new StreamMemoryBudget(1024 * 1024);
+        cache = new ParsedContainerCache(budget);
+        request = new FileSystemIdentificationRequest(
+                new RequestMetaData(Files.size(file), 0L, "persistence.zip"), new RequestIdentifier(file.toUri()));
+        request.open(file);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        request.close();
+    }
+
+    @Test
+    public void testAttachedRequestSharesOneParse() throws Exception {
+        cache.attach(request);
+
+        ParsedZipFile first = cache.getZipFile(request);
+        byte[] entry = readEntry(first);
+        first.close(); // does nothing, as it is shared.
+
+        ParsedZipFile second = cache.getZipFile(request);
+        assertSame(first, second);
+        assertTrue(second.isShared());
+        assertArrayEquals(entry, readEntry(second));
+        assertEquals(1, cache.getParsedCount());
+        assertEquals(1, cache.getReusedCount());
+
+        cache.release(request);
+        assertEquals(0, cache.getAttachedCount());
+    }
+
+    @Test
+    public void testRequestNotAttachedIsParsedEachTime() throws Exception {
+        try (ParsedZipFile first = cache.getZipFile(request);
+             ParsedZipFile second = cache.getZipFile(request)) {
+            assertNotSame(first, second);
+            assertFalse(first.isShared());
+            assertTrue(first.hasEntry(ENTRY));
+            assertNotNull(first.getEntryIndex());
+        }
+        assertEquals(2, cache.getParsedCount());
+        assertEquals(0, cache.getReusedCount());
+    }
+
+    @Test
+    public void testSnapshotsCountOnlyWhatHappensBetweenThem() throws Exception {
+        cache.getZipFile(request).close();
+        CountSnapshot start = cache.snapshot();
+        cache.attach(request);
+        cache.getZipFile(request);
+        cache.getZipFile(request);
+        cache.release(request);
+
+        CountSnapshot counts = cache.snapshot().since(start);
+        assertEquals(1, counts.get(ParsedContainerCache.PARSED));
+        assertEquals(1, counts.get(ParsedContainerCache.REUSED));
+        assertEquals(2, cache.getParsedCount());
+    }
+
+    @Test
+    public void testSmallEntriesAreKeptUntilReleased() throws Exception {
+        cache.attach(request);
+        ParsedZipFile zipFile = cache.getZipFile(request);
+        byte[] entry = readEntry(zipFile);
+
+        assertEquals(entry.length, zipFile.getCachedBytes());
+        assertEquals(entry.length, budget.getReserved());
+        assertArrayEquals(entry, readEntry(zipFile));
+
+        cache.release(request);
+        assertEquals(0, zipFile.getCachedBytes());
+        assertEquals(0, budget.getReserved());
+    }
+
+    private static byte[] readEntry(ParsedZipFile zipFile) throws Exception {
+        try (InputStream in = zipFile.getInputStream(ENTRY)) {
+            return IOUtils.toByteArray(in);
+        }
+    }
+}
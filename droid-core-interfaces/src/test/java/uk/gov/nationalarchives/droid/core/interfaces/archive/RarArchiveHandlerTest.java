@@ -53,9 +53,11 @@ import java.nio.file.Paths;
 import java.util.List;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
 import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.ArgumentMatchers.anyBoolean;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
@@ -106,4 +108,27 @@ public class RarArchiveHandlerTest {
         verify(resultHandler, times(3)).handleDirectory(any(IdentificationResult.class), any(ResourceId.class), anyBoolean());
 
     }
+
+    @Test
+    public void testFilteredEntriesAreNotSubmitted() throws URISyntaxException, IOException {
+        AsynchDroid droid = mock(AsynchDroid.class);
+        when(droid.passesIdentificationFilter(any(IdentificationRequest.class))).thenReturn(false);
+        ArchiveExpansion.Statistics statistics = new ArchiveExpansion.Statistics();
+        when(droid.getArchiveStatistics()).thenReturn(statistics);
+
+        ResultHandler resultHandler = mock(ResultHandler.class);
+        when(resultHandler.handleDirectory(any(IdentificationResult.class), any(ResourceId.class), anyBoolean())).thenReturn(mock(ResourceId.class));
+
+        RarArchiveHandler rarHandler = new RarArchiveHandler(droid, new RarEntryRequestFactory(), resultHandler);
+
+        RequestIdentifier identifier = new RequestIdentifier(new URI("file://sample.rar"));
+        identifier.setNodeId(1L);
+        FileSystemIdentificationRequest req = new FileSystemIdentificationRequest(new RequestMetaData(958L, 1L, "sample.rar"), identifier);
+        req.open(Paths.get("./src/test/resources/sample.rar"));
+        rarHandler.handle(req);
+
+        verify(droid, never()).submit(any(IdentificationRequest.class));
+        verify(resultHandler, times(3)).handleDirectory(any(IdentificationResult.class), any(ResourceId.class), anyBoolean());
+        assertTrue(statistics.getCompressedByteCount() > 0);
+    }
 }
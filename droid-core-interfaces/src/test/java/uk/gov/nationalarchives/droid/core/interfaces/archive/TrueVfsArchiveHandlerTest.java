@@ -0,0 +1,133 @@
+/*
+ * Copyright (c) 2016, The National Archives <pronom@nationalarchives.gov.uk>
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following
+ * conditions are met:
+ *
+ *  * Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ *
+ *  * Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ *
+ *  * Neither the name of the The National Archives nor the
+ *    names of its contributors may be used to endorse or promote products
+ *    derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package uk.gov.nationalarchives.droid.core.interfaces.archive;
+
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyBoolean;
+import static org.mockito.Mockito.CALLS_REAL_METHODS;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import org.apache.commons.io.IOUtils;
+import org.junit.Test;
+
+import uk.gov.nationalarchives.droid.core.interfaces.AsynchDroid;
+import uk.gov.nationalarchives.droid.core.interfaces.IdentificationRequest;
+import uk.gov.nationalarchives.droid.core.interfaces.IdentificationResult;
+import uk.gov.nationalarchives.droid.core.interfaces.RequestIdentifier;
+import uk.gov.nationalarchives.droid.core.interfaces.ResourceId;
+import uk.gov.nationalarchives.droid.core.interfaces.ResultHandler;
+import uk.gov.nationalarchives.droid.core.interfaces.resource.FileSystemIdentificationRequest;
+import uk.gov.nationalarchives.droid.core.interfaces.resource.RandomAccessZipEntryIdentificationRequest;
+import uk.gov.nationalarchives.droid.core.interfaces.resource.RequestMetaData;
+import uk.gov.nationalarchives.droid.core.interfaces.resource.ZipEntryIdentificationRequest;
+
+public class TrueVfsArchiveHandlerTest {
+
+    @Test
+    public void testEntriesOfZipFileOnDiskAreReadInPlace() throws Exception {
+        final List<IdentificationRequest> submitted = handleZip(true);
+        for (IdentificationRequest request : submitted) {
+            assertTrue(request instanceof RandomAccessZipEntryIdentificationRequest);
+        }
+    }
+
+    @Test
+    public void testEntriesAreReadFromStreamsIfRandomAccessIsOff() throws Exception {
+        final List<IdentificationRequest> submitted = handleZip(false);
+        for (IdentificationRequest request : submitted) {
+            assertTrue(request instanceof ZipEntryIdentificationRequest);
+        }
+    }
+
+    private List<IdentificationRequest> handleZip(boolean randomAccess) throws Exception {
+        final Path file = Paths.get(getClass().getResource("/persistence.zip").toURI());
+
+        final List<IdentificationRequest> submitted = Collections.synchronizedList(new ArrayList<>());
+        // Entries read in place are submitted with an opener: let the default method open them and submit them.
+        AsynchDroid droidCore = mock(AsynchDroid.class, CALLS_REAL_METHODS);
+        when(droidCore.passesIdentificationFilter(any(IdentificationRequest.class))).thenReturn(true);
+        doAnswer(invocation -> {
+            submitted.add(invocation.getArgument(0));
+            return null;
+        }).when(droidCore).submit(any(IdentificationRequest.class));
+
+        ResultHandler resultHandler = mock(ResultHandler.class);
+        when(resultHandler.handleDirectory(any(IdentificationResult.class), any(ResourceId.class), anyBoolean()))
+                .thenReturn(new ResourceId(99L, ""));
+
+        TrueVfsArchiveHandler handler = new TrueVfsArchiveHandler(droidCore, new ZipEntryRequestFactory(), resultHandler);
+        handler.setRandomAccessEntries(randomAccess);
+
+        RequestIdentifier identifier = new RequestIdentifier(file.toUri());
+        identifier.setResourceId(new ResourceId(10L, ""));
+        identifier.setAncestorId(10L);
+        FileSystemIdentificationRequest zipRequest = new FileSystemIdentificationRequest(
+                new RequestMetaData(Files.size(file), 0L, "persistence.zip"), identifier);
+        zipRequest.open(file);
+        try {
+            handler.handle(zipRequest);
+        } finally {
+            zipRequest.close();
+        }
+
+        // The entries must still be readable once the request for the zip file is closed.
+        try (ZipFile zipFile = new ZipFile(file.toFile())) {
+            assertEquals(zipFile.stream().filter(e -> !e.isDirectory()).count(), submitted.size());
+            for (IdentificationRequest request : submitted) {
+                String uri = request.getIdentifier().getUri().toString();
+                ZipEntry entry = zipFile.getEntry(uri.substring(uri.indexOf("!/") + 2));
+                try (InputStream expected = zipFile.getInputStream(entry)) {
+                    assertArrayEquals(uri, IOUtils.toByteArray(expected),
+                            IOUtils.toByteArray(request.getSourceInputStream()));
+                } finally {
+                    request.close();
+                }
+            }
+        }
+        return submitted;
+    }
+}
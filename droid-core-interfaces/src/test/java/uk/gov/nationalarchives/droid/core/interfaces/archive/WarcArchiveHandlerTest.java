@@ -32,16 +32,36 @@
 package uk.gov.nationalarchives.droid.core.interfaces.archive;
 
 import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.util.List;
 
 import static org.junit.Assert.assertEquals;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
 
+import org.apache.commons.io.IOUtils;
 import org.jwat.warc.WarcReaderFactory;
 import org.jwat.common.ByteCountingPushBackInputStream;
 
+import org.junit.Rule;
 import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.mockito.ArgumentCaptor;
+
+import uk.gov.nationalarchives.droid.core.interfaces.AsynchDroid;
+import uk.gov.nationalarchives.droid.core.interfaces.IdentificationRequest;
+import uk.gov.nationalarchives.droid.core.interfaces.RequestIdentifier;
+import uk.gov.nationalarchives.droid.core.interfaces.RequestOpener;
+import uk.gov.nationalarchives.droid.core.interfaces.ResultHandler;
+import uk.gov.nationalarchives.droid.core.interfaces.resource.FileSystemIdentificationRequest;
+import uk.gov.nationalarchives.droid.core.interfaces.resource.RandomAccessWebArchiveEntryIdentificationRequest;
+import uk.gov.nationalarchives.droid.core.interfaces.resource.RequestMetaData;
 
 /**
  * @author gseaman
@@ -49,6 +69,9 @@ import org.junit.Test;
  */
 public class WarcArchiveHandlerTest {
 
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
     @Test
     public void testHandleWarcFile() throws Exception {
         final Path file = Paths.get(getClass().getResource("/expanded.warc").toURI());
@@ -57,4 +80,57 @@ public class WarcArchiveHandlerTest {
             assertEquals(true, WarcReaderFactory.isWarcFile(bpin));
         }
     }
+
+    @Test
+    public void testOnlyEncodedPayloadsAreReadByJwat() throws Exception {
+        final String chunked = "HTTP/1.1 200 OK\r\nTransfer-Encoding: chunked\r\n\r\n5\r\nhello\r\n0\r\n\r\n";
+        final String plain = "HTTP/1.1 200 OK\r\nContent-Length: 5\r\n\r\nworld";
+        final Path warcFile = temporaryFolder.newFile("mixed.warc").toPath();
+        Files.write(warcFile, (warcRecord("http://localhost/plain.txt", plain)
+                + warcRecord("http://localhost/chunked.txt", chunked)).getBytes(StandardCharsets.US_ASCII));
+
+        final WebArchiveEntryRequestFactory factory = new WebArchiveEntryRequestFactory();
+        factory.setTempDirLocation(temporaryFolder.getRoot().toPath());
+        final AsynchDroid droidCore = mock(AsynchDroid.class);
+        when(droidCore.passesIdentificationFilter(any(IdentificationRequest.class))).thenReturn(true);
+        final WarcArchiveHandler handler = new WarcArchiveHandler();
+        handler.setFactory(factory);
+        handler.setDroidCore(droidCore);
+        handler.setResultHandler(mock(ResultHandler.class));
+
+        final RequestIdentifier identifier = new RequestIdentifier(warcFile.toUri());
+        identifier.setAncestorId(1L);
+        identifier.setNodeId(1L);
+        try (FileSystemIdentificationRequest request = new FileSystemIdentificationRequest(
+                new RequestMetaData(Files.size(warcFile), 0L, "mixed.warc"), identifier)) {
+            request.open(warcFile);
+            handler.handle(request);
+        }
+
+        final ArgumentCaptor<IdentificationRequest> inPlace = ArgumentCaptor.forClass(IdentificationRequest.class);
+        verify(droidCore).submit(inPlace.capture(), any(RequestOpener.class));
+        assertEquals(RandomAccessWebArchiveEntryIdentificationRequest.class, inPlace.getValue().getClass());
+        assertEquals("plain.txt", inPlace.getValue().getRequestMetaData().getName());
+
+        final ArgumentCaptor<IdentificationRequest> streamed = ArgumentCaptor.forClass(IdentificationRequest.class);
+        verify(droidCore, times(1)).submit(streamed.capture());
+        final List<IdentificationRequest> streamedRequests = streamed.getAllValues();
+        assertEquals("chunked.txt", streamedRequests.get(0).getRequestMetaData().getName());
+        // JWAT gives the entity as it was sent, as it does when the WARC file is read from a stream:
+        try (InputStream in = streamedRequests.get(0).getSourceInputStream()) {
+            assertEquals(chunked.substring(chunked.indexOf("\r\n\r\n") + 4),
+                    IOUtils.toString(in, StandardCharsets.US_ASCII));
+        }
+        streamedRequests.get(0).close();
+    }
+
+    private static String warcRecord(String targetUri, String http) {
+        return "WARC/1.0\r\n"
+                + "WARC-Type: response\r\n"
+                + "WARC-Target-URI: " + targetUri + "\r\n"
+                + "WARC-Date: 2016-01-01T00:00:00Z\r\n"
+                + "Content-Type: application/http; msgtype=response\r\n"
+                + "Content-Length: " + http.length() + "\r\n"
+                + "\r\n" + http + "\r\n\r\n";
+    }
 }
@@ -0,0 +1,127 @@
+/*
+ * Copyright (c) 2016, The National Archives <pronom@nationalarchives.gov.uk>
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following
+ * conditions are met:
+ *
+ *  * Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ *
+ *  * Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ *
+ *  * Neither the name of the The National Archives nor the
+ *    names of its contributors may be used to endorse or promote products
+ *    derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package uk.gov.nationalarchives.droid.core.interfaces.archive;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import net.byteseek.io.reader.FileReader;
+import net.byteseek.io.reader.WindowReader;
+import org.junit.Test;
+
+public class WarcPayloadScannerTest {
+
+    @Test
+    public void testFindsPayloadsOfHttp200Responses() throws Exception {
+        try (WindowReader reader = getFileReader("/expanded.warc")) {
+            assertTrue(WarcPayloadScanner.isUncompressedWarc(reader));
+
+            List<WarcPayloadScanner.Payload> payloads = new ArrayList<>();
+            WarcPayloadScanner scanner = new WarcPayloadScanner(reader);
+            while (scanner.hasNext()) {
+                payloads.add(scanner.next());
+            }
+
+            assertEquals(3, payloads.size());
+            assertPayload(reader, payloads.get(0), "http://localhost/", 3273, 220, "<html>");
+            assertPayload(reader, payloads.get(1), "http://localhost/js/test.js", 6951, 27, "        ");
+            assertPayload(reader, payloads.get(2), "http://localhost/content/test.html", 8601, 119, "<html>");
+
+            // the content lengths are the sizes JWAT reports for the same records:
+            assertEquals(458, payloads.get(0).getContentLength());
+            assertEquals(279, payloads.get(1).getContentLength());
+            assertEquals(357, payloads.get(2).getContentLength());
+            for (WarcPayloadScanner.Payload payload : payloads) {
+                assertFalse(payload.isEncoded());
+            }
+        }
+    }
+
+    @Test
+    public void testChunkedPayloadsAreEncoded() throws Exception {
+        final String http = "HTTP/1.1 200 OK\r\nTransfer-Encoding: chunked\r\n\r\n5\r\nhello\r\n0\r\n\r\n";
+        final String warc = "WARC/1.0\r\n"
+                + "WARC-Type: response\r\n"
+                + "WARC-Target-URI: http://localhost/chunked.txt\r\n"
+                + "WARC-Date: 2016-01-01T00:00:00Z\r\n"
+                + "Content-Type: application/http; msgtype=response\r\n"
+                + "Content-Length: " + http.length() + "\r\n"
+                + "\r\n" + http + "\r\n\r\n";
+        final Path warcPath = Files.createTempFile("chunked", ".warc");
+        try {
+            Files.write(warcPath, warc.getBytes(StandardCharsets.US_ASCII));
+            try (WindowReader reader = new FileReader(warcPath.toFile())) {
+                WarcPayloadScanner scanner = new WarcPayloadScanner(reader);
+                assertTrue(scanner.hasNext());
+                WarcPayloadScanner.Payload payload = scanner.next();
+                assertEquals("http://localhost/chunked.txt", payload.getTargetUri());
+                assertEquals(http.length(), payload.getContentLength());
+                assertEquals(0, payload.getRecordOffset());
+                assertTrue(payload.isEncoded());
+                assertFalse(scanner.hasNext());
+            }
+        } finally {
+            Files.deleteIfExists(warcPath);
+        }
+    }
+
+    @Test
+    public void testCompressedWarcIsNotScanned() throws Exception {
+        try (WindowReader reader = getFileReader("/simple.warc.gz")) {
+            assertFalse(WarcPayloadScanner.isUncompressedWarc(reader));
+        }
+    }
+
+    private static void assertPayload(WindowReader reader, WarcPayloadScanner.Payload payload,
+                                      String targetUri, long offset, long length, String start) throws Exception {
+        assertEquals(targetUri, payload.getTargetUri());
+        assertEquals(offset, payload.getOffset());
+        assertEquals(length, payload.getLength());
+        byte[] bytes = new byte[start.length()];
+        for (int i = 0; i < bytes.length; i++) {
+            bytes[i] = (byte) reader.readByte(offset + i);
+        }
+        assertEquals(start, new String(bytes, StandardCharsets.US_ASCII));
+    }
+
+    private WindowReader getFileReader(String resourceName) throws Exception {
+        return new FileReader(new File(getClass().getResource(resourceName).toURI()));
+    }
+}
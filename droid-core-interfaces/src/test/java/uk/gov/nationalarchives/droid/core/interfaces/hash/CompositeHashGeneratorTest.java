@@ -0,0 +1,169 @@
+/*
+ * Copyright (c) 2016, The National Archives <pronom@nationalarchives.gov.uk>
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following
+ * conditions are met:
+ *
+ *  * Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ *
+ *  * Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ *
+ *  * Neither the name of the The National Archives nor the
+ *    names of its contributors may be used to endorse or promote products
+ *    derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package uk.gov.nationalarchives.droid.core.interfaces.hash;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.EnumSet;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import org.apache.commons.codec.digest.DigestUtils;
+import org.junit.Before;
+import org.junit.Test;
+
+public class CompositeHashGeneratorTest {
+
+    private static final int DATA_LENGTH = 1000000;
+    private static final int CHUNK_LENGTH = 4096;
+
+    private byte[] data;
+    private CompositeHashGenerator hashGenerator;
+
+    @Before
+    public void setup() {
+        data = new byte[DATA_LENGTH];
+        new Random(42).nextBytes(data);
+        hashGenerator = new CompositeHashGenerator(new SHA1HashGenerator());
+    }
+
+    @Test
+    public void testHashReturnsPrimaryAlgorithm() throws IOException {
+        hashGenerator.setAdditionalAlgorithms("md5 sha512");
+        assertEquals(HashAlgorithm.SHA1, hashGenerator.getAlgorithm());
+        assertEquals(DigestUtils.sha1Hex(data), hashGenerator.hash(new ByteArrayInputStream(data)));
+    }
+
+    @Test
+    public void testParsesAdditionalAlgorithms() {
+        hashGenerator.setAdditionalAlgorithms(" SHA256, md5 unknown null");
+        assertEquals(EnumSet.of(HashAlgorithm.MD5, HashAlgorithm.SHA1, HashAlgorithm.SHA256),
+                hashGenerator.getAlgorithms());
+        hashGenerator.setAdditionalAlgorithms("");
+        assertEquals(EnumSet.of(HashAlgorithm.SHA1), hashGenerator.getAlgorithms());
+    }
+
+    @Test
+    public void testStreamingHashCalculatesAllAlgorithms() throws IOException {
+        hashGenerator.setAdditionalAlgorithms("md5 sha256 sha512");
+        final MessageDigestStreamingHash hash = (MessageDigestStreamingHash) hashGenerator.newStreamingHash();
+        assertAllHashes(hash);
+        assertFalse(hash.isHashingInParallel());
+    }
+
+    @Test
+    public void testParallelStreamingHashCalculatesAllAlgorithms() throws IOException {
+        hashGenerator.setAdditionalAlgorithms("md5 sha256 sha512");
+        hashGenerator.setParallelThreshold(DATA_LENGTH / 2);
+        final MessageDigestStreamingHash hash = (MessageDigestStreamingHash) hashGenerator.newStreamingHash();
+        assertAllHashes(hash);
+        assertTrue(hash.isHashingInParallel());
+    }
+
+    @Test
+    public void testSingleAlgorithmNeverHashesInParallel() throws IOException {
+        hashGenerator.setParallelThreshold(1);
+        final MessageDigestStreamingHash hash = (MessageDigestStreamingHash) hashGenerator.newStreamingHash();
+        hash.update(ByteBuffer.wrap(data));
+        assertFalse(hash.isHashingInParallel());
+        assertEquals(DigestUtils.sha1Hex(data), hash.finish().get(HashAlgorithm.SHA1));
+    }
+
+    @Test
+    public void testCancelStopsHashThreads() throws Exception {
+        hashGenerator.setAdditionalAlgorithms("md5");
+        hashGenerator.setParallelThreshold(1);
+        final MessageDigestStreamingHash hash = (MessageDigestStreamingHash) hashGenerator.newStreamingHash();
+        hash.update(ByteBuffer.wrap(data));
+        assertTrue(hash.isHashingInParallel());
+        hash.cancel();
+        for (Thread thread : Thread.getAllStackTraces().keySet()) {
+            if (thread.getName().startsWith("droid-hash-")) {
+                thread.join(1000);
+                assertFalse(thread.isAlive());
+            }
+        }
+    }
+
+    @Test
+    public void testPrimaryGeneratorWithoutAlgorithm() throws IOException {
+        final HashGenerator wholeStreamGenerator = in -> DigestUtils.md5Hex(in);
+        final CompositeHashGenerator composite = new CompositeHashGenerator(wholeStreamGenerator);
+        assertNull(composite.getAlgorithm());
+        assertTrue(composite.getAlgorithms().isEmpty());
+        composite.setAdditionalAlgorithms("sha256");
+        assertEquals(EnumSet.of(HashAlgorithm.SHA256), composite.getAlgorithms());
+        assertEquals(DigestUtils.md5Hex(data), composite.hash(new ByteArrayInputStream(data)));
+    }
+
+    @Test
+    public void testGeneratorWithoutAlgorithmCannotStream() throws IOException {
+        final HashGenerator wholeStreamGenerator = in -> DigestUtils.md5Hex(in);
+        assertNull(wholeStreamGenerator.getAlgorithm());
+        try {
+            wholeStreamGenerator.newStreamingHash();
+            fail("Expected an UnsupportedOperationException");
+        } catch (UnsupportedOperationException expected) {
+            // a generator which does not declare its algorithm can only hash whole streams.
+        }
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void testCannotUpdateCancelledHash() throws IOException {
+        hashGenerator.setAdditionalAlgorithms("md5");
+        final StreamingHash hash = hashGenerator.newStreamingHash();
+        hash.update(ByteBuffer.wrap(data));
+        hash.cancel();
+        hash.update(ByteBuffer.wrap(data));
+    }
+
+    private void assertAllHashes(StreamingHash hash) throws IOException {
+        for (int position = 0; position < DATA_LENGTH; position += CHUNK_LENGTH) {
+            final ByteBuffer buffer = ByteBuffer.wrap(data, position, Math.min(CHUNK_LENGTH, DATA_LENGTH - position));
+            hash.update(buffer);
+            assertEquals(position, buffer.position());
+        }
+        final Map<HashAlgorithm, String> hashes = hash.finish();
+        assertEquals(4, hashes.size());
+        assertEquals(DigestUtils.md5Hex(data), hashes.get(HashAlgorithm.MD5));
+        assertEquals(DigestUtils.sha1Hex(data), hashes.get(HashAlgorithm.SHA1));
+        assertEquals(DigestUtils.sha256Hex(data), hashes.get(HashAlgorithm.SHA256));
+        assertEquals(DigestUtils.sha512Hex(data), hashes.get(HashAlgorithm.SHA512));
+    }
+}
@@ -0,0 +1,85 @@
+/*
+ * Copyright (c) 2016, The National Archives <pronom@nationalarchives.gov.uk>
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following
+ * conditions are met:
+ *
+ *  * Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ *
+ *  * Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ *
+ *  * Neither the name of the The National Archives nor the
+ *    names of its contributors may be used to endorse or promote products
+ *    derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package uk.gov.nationalarchives.droid.core.interfaces.resource;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+
+import org.junit.Test;
+
+public class BufferPoolTest {
+
+    @Test
+    public void testAcquireAllocatesWhenEmptyAndReusesReleasedBuffers() {
+        BufferPool pool = new BufferPool(16, 2);
+        byte[] first = pool.acquire();
+        assertEquals(16, first.length);
+        assertEquals(1, pool.getMisses());
+        pool.release(first);
+        assertEquals(1, pool.getAvailable());
+        assertSame(first, pool.acquire());
+        assertEquals(1, pool.getHits());
+        assertEquals(0.5, pool.getHitRatio(), 0.0);
+    }
+
+    @Test
+    public void testReleaseDiscardsWhenFullOrWrongSize() {
+        BufferPool pool = new BufferPool(16, 1);
+        pool.release(new byte[16]);
+        pool.release(new byte[16]);
+        pool.release(new byte[8]);
+        assertEquals(1, pool.getAvailable());
+        assertEquals(2, pool.getDiscards());
+    }
+
+    @Test
+    public void testEmptyPoolHasNoHitRatio() {
+        BufferPool pool = new BufferPool(16, 1);
+        assertEquals(0.0, pool.getHitRatio(), 0.0);
+        assertNotSame(pool.acquire(), pool.acquire());
+    }
+
+    @Test
+    public void testSnapshotsCountOnlyWhatHappensBetweenThem() {
+        BufferPool pool = new BufferPool(16, 1);
+        pool.release(pool.acquire());
+        CountSnapshot start = pool.snapshot();
+        pool.acquire();
+        pool.acquire();
+        CountSnapshot counts = pool.snapshot().since(start);
+        assertEquals(1, counts.get(BufferPool.HITS));
+        assertEquals(1, counts.get(BufferPool.MISSES));
+        assertEquals(0, counts.get(BufferPool.DISCARDS));
+        assertEquals(2, pool.getMisses());
+    }
+}
@@ -0,0 +1,60 @@
+/*
+ * Copyright (c) 2016, The National Archives <pronom@nationalarchives.gov.uk>
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following
+ * conditions are met:
+ *
+ *  * Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ *
+ *  * Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ *
+ *  * Neither the name of the The National Archives nor the
+ *    names of its contributors may be used to endorse or promote products
+ *    derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package uk.gov.nationalarchives.droid.core.interfaces.resource;
+
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+
+public class CountSnapshotTest {
+
+    private static final String[] NAMES = {"first", "second"};
+
+    @Test
+    public void testSinceSubtractsEachCounter() {
+        CountSnapshot start = new CountSnapshot(NAMES, 3, 10);
+        CountSnapshot counts = new CountSnapshot(NAMES, 5, 10).since(start);
+        assertEquals(2, counts.get("first"));
+        assertEquals(0, counts.get("second"));
+        assertEquals("first:2 second:0", counts.toString());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testSnapshotsOfDifferentCountersCannotBeCompared() {
+        new CountSnapshot(NAMES, 1, 2).since(new CountSnapshot(new String[] {"other"}, 1));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testUnknownCounterIsRejected() {
+        new CountSnapshot(NAMES, 1, 2).get("third");
+    }
+}
@@ -0,0 +1,126 @@
+/*
+ * Copyright (c) 2016, The National Archives <pronom@nationalarchives.gov.uk>
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following
+ * conditions are met:
+ *
+ *  * Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ *
+ *  * Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ *
+ *  * Neither the name of the The National Archives nor the
+ *    names of its contributors may be used to endorse or promote products
+ *    derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package uk.gov.nationalarchives.droid.core.interfaces.resource;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.zip.GZIPOutputStream;
+
+import net.byteseek.io.reader.WindowReader;
+import net.byteseek.io.reader.cache.TopAndTailFixedLengthCache;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class GZipMemberIndexTest {
+
+    private static final int MEMBER_SIZE = 50000;
+    private static final int MEMBERS = 3;
+
+    private Path gzipPath;
+    private byte[] data;
+
+    @Before
+    public void setup() throws IOException {
+        data = new byte[MEMBER_SIZE * MEMBERS];
+        new Random(MEMBER_SIZE).nextBytes(data);
+        gzipPath = Files.createTempFile("gzip-members", ".gz");
+        try (OutputStream out = Files.newOutputStream(gzipPath)) {
+            for (int member = 0; member < MEMBERS; member++) {
+                GZIPOutputStream gzip = new GZIPOutputStream(out);
+                gzip.write(data, member * MEMBER_SIZE, MEMBER_SIZE);
+                gzip.finish();
+            }
+        }
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        Files.deleteIfExists(gzipPath);
+    }
+
+    @Test
+    public void testIndexesEachMember() throws IOException {
+        assertTrue(GZipMemberIndex.hasManyMembers(gzipPath, MEMBER_SIZE));
+
+        GZipMemberIndex index = GZipMemberIndex.build(gzipPath);
+        assertEquals(MEMBERS, index.getMemberCount());
+        assertEquals(data.length, index.getUncompressedLength());
+        for (int member = 0; member < MEMBERS; member++) {
+            assertEquals(member * MEMBER_SIZE, index.getMembers().get(member).getUncompressedOffset());
+            assertEquals(MEMBER_SIZE, index.getMembers().get(member).getUncompressedLength());
+        }
+        assertEquals(0, index.getMembers().get(0).getMemberOffset());
+        assertEquals(1, index.findMember(MEMBER_SIZE));
+        assertEquals(MEMBERS - 1, index.findMember(data.length - 1));
+        assertEquals(-1, index.findMember(data.length));
+    }
+
+    @Test
+    public void testSingleMemberIsNotWorthIndexing() throws Exception {
+        Path singleMember = Paths.get(getClass().getResource("/testXmlFile.xml.gz").toURI());
+        assertFalse(GZipMemberIndex.hasManyMembers(singleMember, Long.MAX_VALUE));
+        assertEquals(1, GZipMemberIndex.build(singleMember).getMemberCount());
+    }
+
+    @Test
+    public void testReadsAnyPositionByInflatingItsMember() throws IOException {
+        GZipMemberIndex index = GZipMemberIndex.build(gzipPath);
+        try (WindowReader reader = new GZipMemberReader(gzipPath, index,
+                new TopAndTailFixedLengthCache(data.length, 4096))) {
+            assertEquals(data.length, reader.length());
+            // The end first, then across a member boundary, then back to the start.
+            assertRange(reader, data.length - 100, 100);
+            assertRange(reader, MEMBER_SIZE - 5000, 10000);
+            assertRange(reader, 0, 100);
+            assertEquals(-1, reader.readByte(data.length));
+        }
+    }
+
+    private void assertRange(WindowReader reader, int position, int length) throws IOException {
+        byte[] read = new byte[length];
+        for (int i = 0; i < length; i++) {
+            read[i] = (byte) reader.readByte(position + i);
+        }
+        assertArrayEquals(Arrays.copyOfRange(data, position, position + length), read);
+    }
+}
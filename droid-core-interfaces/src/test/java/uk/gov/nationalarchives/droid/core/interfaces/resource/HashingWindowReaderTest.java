@@ -0,0 +1,130 @@
+/*
+ * Copyright (c) 2016, The National Archives <pronom@nationalarchives.gov.uk>
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following
+ * conditions are met:
+ *
+ *  * Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ *
+ *  * Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ *
+ *  * Neither the name of the The National Archives nor the
+ *    names of its contributors may be used to endorse or promote products
+ *    derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package uk.gov.nationalarchives.droid.core.interfaces.resource;
+
+import java.io.IOException;
+import java.net.URISyntaxException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.apache.commons.codec.digest.DigestUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import net.byteseek.io.reader.FileReader;
+import net.byteseek.io.reader.windows.Window;
+
+import uk.gov.nationalarchives.droid.core.interfaces.hash.HashAlgorithm;
+import uk.gov.nationalarchives.droid.core.interfaces.hash.MessageDigestStreamingHash;
+
+public class HashingWindowReaderTest {
+
+    private Path file;
+    private byte[] fileData;
+    private HashingWindowReader reader;
+
+    @Before
+    public void setup() throws IOException, URISyntaxException {
+        file = Paths.get(getClass().getResource("/fat12.img").toURI());
+        fileData = Files.readAllBytes(file);
+        reader = new HashingWindowReader(new FileReader(file.toFile()));
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        reader.close();
+    }
+
+    @Test
+    public void testHashesAllWindowsReadInOrder() throws IOException {
+        reader.startHashing(new MessageDigestStreamingHash(HashAlgorithm.MD5, HashAlgorithm.SHA256));
+        assertTrue(reader.isHashing());
+        long position = 0;
+        while (position < fileData.length) {
+            position = reader.getWindow(position).getNextWindowPosition();
+        }
+        assertEquals(expectedHashes(), reader.finishHashing());
+        assertEquals(0, reader.getBytesReadOnFinish());
+        assertFalse(reader.isHashing());
+    }
+
+    @Test
+    public void testHashesWindowsReadOutOfOrder() throws IOException {
+        reader.startHashing(new MessageDigestStreamingHash(HashAlgorithm.MD5, HashAlgorithm.SHA256));
+        final Window last = reader.getWindow(fileData.length - 1);
+        final Window middle = reader.getWindow(fileData.length / 2);
+        reader.readByte(0);
+        assertEquals(expectedHashes(), reader.finishHashing());
+        assertTrue(reader.getBytesReadOnFinish() < fileData.length);
+        assertTrue(reader.getBytesReadOnFinish() <= fileData.length - reader.getWindow(0).length()
+                - last.length() - middle.length());
+    }
+
+    @Test
+    public void testFinishReadsBytesNotAlreadyRead() throws IOException {
+        reader.startHashing(new MessageDigestStreamingHash(HashAlgorithm.MD5, HashAlgorithm.SHA256));
+        assertEquals(expectedHashes(), reader.finishHashing());
+        assertEquals(fileData.length, reader.getBytesReadOnFinish());
+    }
+
+    @Test
+    public void testReadsSameBytesAsUnderlyingReader() throws IOException {
+        reader.startHashing(new MessageDigestStreamingHash(HashAlgorithm.SHA1));
+        for (int position = 0; position < fileData.length; position += 1001) {
+            assertEquals(fileData[position] & 0xFF, reader.readByte(position));
+        }
+        assertEquals(-1, reader.readByte(fileData.length));
+        assertEquals(fileData.length, reader.length());
+        assertEquals(Collections.singletonMap(HashAlgorithm.SHA1, DigestUtils.sha1Hex(fileData)), reader.finishHashing());
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void testCannotFinishWithoutStarting() throws IOException {
+        reader.finishHashing();
+    }
+
+    private Map<HashAlgorithm, String> expectedHashes() {
+        final Map<HashAlgorithm, String> hashes = new EnumMap<>(HashAlgorithm.class);
+        hashes.put(HashAlgorithm.MD5, DigestUtils.md5Hex(fileData));
+        hashes.put(HashAlgorithm.SHA256, DigestUtils.sha256Hex(fileData));
+        return hashes;
+    }
+}
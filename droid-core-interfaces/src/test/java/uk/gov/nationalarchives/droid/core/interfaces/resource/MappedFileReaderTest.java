@@ -0,0 +1,132 @@
+/*
+ * Copyright (c) 2016, The National Archives <pronom@nationalarchives.gov.uk>
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following
+ * conditions are met:
+ *
+ *  * Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ *
+ *  * Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ *
+ *  * Neither the name of the The National Archives nor the
+ *    names of its contributors may be used to endorse or promote products
+ *    derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package uk.gov.nationalarchives.droid.core.interfaces.resource;
+
+import java.io.IOException;
+import java.net.URISyntaxException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Arrays;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import org.apache.commons.codec.digest.DigestUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import net.byteseek.io.reader.cache.LeastRecentlyUsedCache;
+import net.byteseek.io.reader.windows.Window;
+
+import uk.gov.nationalarchives.droid.core.interfaces.RequestIdentifier;
+import uk.gov.nationalarchives.droid.core.interfaces.hash.HashAlgorithm;
+import uk.gov.nationalarchives.droid.core.interfaces.hash.MessageDigestStreamingHash;
+
+public class MappedFileReaderTest {
+
+    // Map the test file in 128K regions, so windows are read from several mapped regions.
+    private static final int SMALL_REGION_SHIFT = 17;
+
+    private Path file;
+    private byte[] fileData;
+    private MappedFileReader reader;
+
+    @Before
+    public void setup() throws IOException, URISyntaxException {
+        file = Paths.get(getClass().getResource("/fat12.img").toURI());
+        fileData = Files.readAllBytes(file);
+        reader = new MappedFileReader(file, new LeastRecentlyUsedCache(4), SMALL_REGION_SHIFT);
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        reader.close();
+    }
+
+    @Test
+    public void testReadsEveryByte() throws IOException {
+        assertEquals(fileData.length, reader.length());
+        for (int position = 0; position < fileData.length; position++) {
+            assertEquals(fileData[position] & 0xFF, reader.readByte(position));
+        }
+        assertEquals(-1, reader.readByte(fileData.length));
+        assertNull(reader.getWindow(fileData.length));
+    }
+
+    @Test
+    public void testWindowsCoverFileWithoutCopying() throws IOException {
+        long position = 0;
+        while (position < fileData.length) {
+            final MappedWindow window = (MappedWindow) reader.getWindow(position);
+            assertEquals(position, window.getWindowPosition());
+            assertEquals(window.getWindowPosition() + window.length() - 1, window.getWindowEndPosition());
+            window.getByte(window.length() - 1);
+            assertFalse(window.hasArray());
+            position = window.getNextWindowPosition();
+        }
+        assertEquals(fileData.length, position);
+    }
+
+    @Test
+    public void testWindowArrayMatchesFile() throws IOException {
+        final Window window = reader.getWindow(fileData.length / 2);
+        final int start = (int) window.getWindowPosition();
+        assertArrayEquals(Arrays.copyOfRange(fileData, start, start + window.length()), window.getArray());
+        assertTrue(((MappedWindow) window).hasArray());
+    }
+
+    @Test
+    public void testHashesMappedWindowsWithoutCopying() throws IOException {
+        final HashingWindowReader hashingReader = new HashingWindowReader(reader);
+        hashingReader.startHashing(new MessageDigestStreamingHash(HashAlgorithm.SHA256));
+        final Window first = hashingReader.getWindow(0);
+        assertEquals(DigestUtils.sha256Hex(fileData), hashingReader.finishHashing().get(HashAlgorithm.SHA256));
+        assertFalse(((MappedWindow) first).hasArray());
+    }
+
+    @Test
+    public void testMappedRequestReadsFile() throws IOException {
+        final RequestMetaData metaData = new RequestMetaData((long) fileData.length, 0L, "fat12.img");
+        try (MappedFileIdentificationRequest request =
+                     new MappedFileIdentificationRequest(metaData, new RequestIdentifier(file.toUri()))) {
+            request.open(file);
+            assertEquals(fileData[fileData.length - 1], request.getByte(fileData.length - 1));
+            assertEquals(file, request.getFile());
+            assertTrue(((HashingWindowReader) request.getWindowReader()).getReader() instanceof MappedFileReader);
+        }
+    }
+}
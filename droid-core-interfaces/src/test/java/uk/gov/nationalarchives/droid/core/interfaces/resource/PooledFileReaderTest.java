@@ -0,0 +1,78 @@
+/*
+ * Copyright (c) 2016, The National Archives <pronom@nationalarchives.gov.uk>
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following
+ * conditions are met:
+ *
+ *  * Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ *
+ *  * Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ *
+ *  * Neither the name of the The National Archives nor the
+ *    names of its contributors may be used to endorse or promote products
+ *    derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package uk.gov.nationalarchives.droid.core.interfaces.resource;
+
+import java.io.IOException;
+import java.net.URISyntaxException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Arrays;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import org.junit.Test;
+
+import net.byteseek.io.reader.cache.LeastRecentlyUsedCache;
+import net.byteseek.io.reader.windows.Window;
+
+public class PooledFileReaderTest {
+
+    private static final int WINDOW_SIZE = 4096;
+
+    @Test
+    public void testReadsFileAndGivesPooledBuffersBackOnClose() throws IOException, URISyntaxException {
+        Path file = Paths.get(getClass().getResource("/fat12.img").toURI());
+        byte[] fileData = Files.readAllBytes(file);
+        BufferPool pool = new BufferPool(WINDOW_SIZE, 8);
+        PooledFileReader reader = new PooledFileReader(file, new LeastRecentlyUsedCache(2), pool, WINDOW_SIZE * 2);
+        try {
+            assertEquals(fileData.length, reader.length());
+            for (long position = 0; position < fileData.length; position += WINDOW_SIZE * 3 + 7) {
+                assertEquals(fileData[(int) position] & 0xFF, reader.readByte(position));
+            }
+            Window last = reader.getWindow(fileData.length - 1);
+            int lastStart = (int) last.getWindowPosition();
+            assertArrayEquals(Arrays.copyOfRange(fileData, lastStart, fileData.length),
+                    Arrays.copyOf(last.getArray(), last.length()));
+            assertArrayEquals(Arrays.copyOf(last.getArray(), last.length()),
+                    Arrays.copyOf(reader.reloadWindowBytes(last), last.length()));
+            assertNull(reader.getWindow(fileData.length));
+            assertEquals(2, pool.getMisses());
+        } finally {
+            reader.close();
+        }
+        assertEquals(2, pool.getAvailable());
+    }
+}
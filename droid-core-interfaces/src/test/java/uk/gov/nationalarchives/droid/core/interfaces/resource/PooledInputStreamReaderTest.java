@@ -0,0 +1,101 @@
+/*
+ * Copyright (c) 2016, The National Archives <pronom@nationalarchives.gov.uk>
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following
+ * conditions are met:
+ *
+ *  * Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ *
+ *  * Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ *
+ *  * Neither the name of the The National Archives nor the
+ *    names of its contributors may be used to endorse or promote products
+ *    derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package uk.gov.nationalarchives.droid.core.interfaces.resource;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import org.junit.Test;
+
+import net.byteseek.io.reader.InputStreamReader;
+import net.byteseek.io.reader.WindowReader;
+import net.byteseek.io.reader.cache.TopAndTailStreamCache;
+import net.byteseek.io.reader.windows.Window;
+
+public class PooledInputStreamReaderTest {
+
+    private static final int WINDOW_SIZE = 4096;
+
+    @Test
+    public void testReadsSameBytesAsInputStreamReader() throws IOException {
+        byte[] data = randomBytes(WINDOW_SIZE * 10 + 123);
+        BufferPool pool = new BufferPool(WINDOW_SIZE, 8);
+        try (WindowReader pooled = new PooledInputStreamReader(new ByteArrayInputStream(data),
+                new TopAndTailStreamCache(WINDOW_SIZE * 4), true, pool, WINDOW_SIZE * 4);
+             WindowReader expected = new InputStreamReader(new ByteArrayInputStream(data),
+                     new TopAndTailStreamCache(WINDOW_SIZE * 4))) {
+            for (long position : new long[] {0, 5000, WINDOW_SIZE * 3, data.length - 1}) {
+                assertEquals(expected.readByte(position), pooled.readByte(position));
+            }
+            assertEquals(expected.length(), pooled.length());
+            assertEquals(data.length, pooled.length());
+            assertEquals(-1, pooled.readByte(data.length));
+            assertNull(pooled.getWindow(data.length));
+            Window last = pooled.getWindow(data.length - 1);
+            assertEquals(123, last.length());
+            assertEquals(WINDOW_SIZE * 10, last.getWindowPosition());
+        }
+    }
+
+    @Test
+    public void testPooledBuffersAreGivenBackOnClose() throws IOException {
+        byte[] data = randomBytes(WINDOW_SIZE * 6);
+        BufferPool pool = new BufferPool(WINDOW_SIZE, 8);
+        PooledInputStreamReader reader = new PooledInputStreamReader(new ByteArrayInputStream(data),
+                new TopAndTailStreamCache(WINDOW_SIZE * 8), true, pool, WINDOW_SIZE * 2);
+        Window first = reader.getWindow(0);
+        assertArrayEquals(Arrays.copyOf(data, WINDOW_SIZE), first.getArray());
+        reader.length();
+        assertEquals(2, reader.getPooledBufferCount());
+        assertEquals(2, pool.getMisses());
+        reader.close();
+        assertEquals(2, pool.getAvailable());
+
+        PooledInputStreamReader next = new PooledInputStreamReader(new ByteArrayInputStream(data),
+                new TopAndTailStreamCache(WINDOW_SIZE * 8), true, pool, WINDOW_SIZE * 2);
+        assertEquals(data[WINDOW_SIZE + 1] & 0xFF, next.readByte(WINDOW_SIZE + 1));
+        next.close();
+        assertEquals(2, pool.getHits());
+    }
+
+    private static byte[] randomBytes(int length) {
+        byte[] data = new byte[length];
+        new Random(length).nextBytes(data);
+        return data;
+    }
+}
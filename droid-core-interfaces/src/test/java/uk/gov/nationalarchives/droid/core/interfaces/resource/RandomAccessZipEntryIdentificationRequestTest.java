@@ -0,0 +1,136 @@
+/*
+ * Copyright (c) 2016, The National Archives <pronom@nationalarchives.gov.uk>
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following
+ * conditions are met:
+ *
+ *  * Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ *
+ *  * Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ *
+ *  * Neither the name of the The National Archives nor the
+ *    names of its contributors may be used to endorse or promote products
+ *    derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package uk.gov.nationalarchives.droid.core.interfaces.resource;
+
+import java.io.IOException;
+import java.net.URI;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Random;
+import java.util.zip.CRC32;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import org.apache.commons.compress.archivers.zip.ZipArchiveEntry;
+import org.apache.commons.compress.archivers.zip.ZipFile;
+import org.apache.commons.io.IOUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import uk.gov.nationalarchives.droid.core.interfaces.RequestIdentifier;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class RandomAccessZipEntryIdentificationRequestTest {
+
+    private static final int ENTRY_SIZE = 100000;
+
+    private Path zipPath;
+    private byte[] data;
+
+    @Before
+    public void setup() throws IOException {
+        data = new byte[ENTRY_SIZE];
+        new Random(ENTRY_SIZE).nextBytes(data);
+        // Make the data compressible, so the deflated entry is smaller than the stored one.
+        for (int i = 0; i < data.length; i += 2) {
+            data[i] = 0;
+        }
+        zipPath = Files.createTempFile("random-access", ".zip");
+        try (ZipOutputStream out = new ZipOutputStream(Files.newOutputStream(zipPath))) {
+            writeEntry(out, "deflated.bin", ZipEntry.DEFLATED);
+            writeEntry(out, "stored.bin", ZipEntry.STORED);
+        }
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        Files.deleteIfExists(zipPath);
+    }
+
+    @Test
+    public void testStoredEntryIsReadInPlace() throws IOException {
+        assertEntryIsRead("stored.bin");
+    }
+
+    @Test
+    public void testDeflatedEntryIsInflatedAsItIsRead() throws IOException {
+        assertEntryIsRead("deflated.bin");
+    }
+
+    @Test
+    public void testOnlyStoredAndDeflatedEntriesAreSupported() {
+        assertTrue(RandomAccessZipEntryIdentificationRequest.isSupported(ZipEntry.STORED));
+        assertTrue(RandomAccessZipEntryIdentificationRequest.isSupported(ZipEntry.DEFLATED));
+        assertFalse(RandomAccessZipEntryIdentificationRequest.isSupported(12)); // bzip2
+    }
+
+    private void assertEntryIsRead(String name) throws IOException {
+        try (ZipFile zipFile = new ZipFile(zipPath)) {
+            ZipArchiveEntry entry = zipFile.getEntry(name);
+            RequestMetaData metaData = new RequestMetaData(entry.getSize(), entry.getTime(), name);
+            RequestIdentifier identifier = new RequestIdentifier(URI.create("zip:" + zipPath.toUri() + "!/" + name));
+            RandomAccessZipEntryIdentificationRequest request = new RandomAccessZipEntryIdentificationRequest(
+                    metaData, identifier, null, entry.getDataOffset(), entry.getCompressedSize(), entry.getMethod());
+            request.open(zipPath);
+            try {
+                assertEquals(ENTRY_SIZE, request.size());
+                assertEquals("bin", request.getExtension());
+                assertEquals(data[ENTRY_SIZE - 1], request.getByte(ENTRY_SIZE - 1));
+                assertEquals(data[1], request.getByte(1));
+                assertEquals(ENTRY_SIZE, request.getWindowReader().length());
+                assertArrayEquals(data, IOUtils.toByteArray(request.getSourceInputStream()));
+            } finally {
+                request.close();
+            }
+        }
+    }
+
+    private void writeEntry(ZipOutputStream out, String name, int method) throws IOException {
+        ZipEntry entry = new ZipEntry(name);
+        entry.setMethod(method);
+        if (method == ZipEntry.STORED) {
+            CRC32 crc = new CRC32();
+            crc.update(data);
+            entry.setSize(data.length);
+            entry.setCompressedSize(data.length);
+            entry.setCrc(crc.getValue());
+        }
+        out.putNextEntry(entry);
+        out.write(data);
+        out.closeEntry();
+    }
+}
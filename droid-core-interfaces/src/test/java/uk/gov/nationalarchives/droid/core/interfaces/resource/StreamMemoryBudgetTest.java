@@ -0,0 +1,99 @@
+/*
+ * Copyright (c) 2016, The National Archives <pronom@nationalarchives.gov.uk>
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following
+ * conditions are met:
+ *
+ *  * Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ *
+ *  * Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ *
+ *  * Neither the name of the The National Archives nor the
+ *    names of its contributors may be used to endorse or promote products
+ *    derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package uk.gov.nationalarchives.droid.core.interfaces.resource;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import net.byteseek.io.reader.WindowReader;
+
+public class StreamMemoryBudgetTest {
+
+    private static final int TOP_TAIL_CAPACITY = 64 * 1024;
+
+    @Test
+    public void testReservationsAreRefusedOverBudget() {
+        StreamMemoryBudget budget = new StreamMemoryBudget(100);
+        assertTrue(budget.tryReserve(60));
+        assertFalse(budget.tryReserve(50));
+        assertTrue(budget.tryReserve(40));
+        assertEquals(100, budget.getReserved());
+        budget.release(60);
+        assertTrue(budget.tryReserve(50));
+        assertEquals(90, budget.getReserved());
+        assertEquals(100, budget.getPeakReserved());
+        assertEquals(3, budget.getGrantedCount());
+        assertEquals(1, budget.getRefusedCount());
+    }
+
+    @Test
+    public void testSnapshotsCountOnlyWhatHappensBetweenThem() {
+        StreamMemoryBudget budget = new StreamMemoryBudget(100);
+        assertTrue(budget.tryReserve(60));
+        CountSnapshot start = budget.snapshot();
+        assertTrue(budget.tryReserve(40));
+        assertFalse(budget.tryReserve(1));
+        CountSnapshot counts = budget.snapshot().since(start);
+        assertEquals(1, counts.get(StreamMemoryBudget.GRANTED));
+        assertEquals(1, counts.get(StreamMemoryBudget.REFUSED));
+    }
+
+    @Test
+    public void testSmallStreamReservesItsSizeUntilClosed() throws IOException {
+        StreamMemoryBudget budget = StreamMemoryBudget.getDefault();
+        long before = budget.getReserved();
+        byte[] data = new byte[5000];
+        WindowReader reader = ResourceUtils.getStreamReader(new ByteArrayInputStream(data), null,
+                TOP_TAIL_CAPACITY, true, (long) data.length);
+        assertEquals(before + 2 * BufferPool.DEFAULT_BUFFER_SIZE, budget.getReserved());
+        assertEquals(data.length, reader.length());
+        reader.close();
+        assertEquals(before, budget.getReserved());
+    }
+
+    @Test
+    public void testStreamOfUnknownSizeReservesTopAndTail() throws IOException {
+        StreamMemoryBudget budget = StreamMemoryBudget.getDefault();
+        long before = budget.getReserved();
+        WindowReader reader = ResourceUtils.getStreamReader(new ByteArrayInputStream(new byte[10]), null,
+                TOP_TAIL_CAPACITY, true, null);
+        assertEquals(before + 2 * TOP_TAIL_CAPACITY, budget.getReserved());
+        reader.close();
+        assertEquals(before, budget.getReserved());
+    }
+}
@@ -49,6 +49,7 @@ import uk.gov.nationalarchives.droid.core.signature.FileFormat;
 import uk.gov.nationalarchives.droid.core.signature.FileFormatCollection;
 import uk.gov.nationalarchives.droid.core.signature.FileFormatHit;
 import uk.gov.nationalarchives.droid.core.signature.droid6.FFSignatureFile;
+import uk.gov.nationalarchives.droid.core.signature.droid6.SignatureMatchingEngine;
 
 /**
  * Implementation of DroidCore which uses the droid binary signatures to identify files. 
@@ -61,6 +62,7 @@ public class BinarySignatureIdentifier implements DroidCore {
     private FFSignatureFile sigFile;
     private SignatureFileParser sigFileParser = new SignatureFileParser();
     private URI signatureFile;
+    private SignatureMatchingEngine matchingEngine = SignatureMatchingEngine.STANDARD;
     
     /**
      * Default constructor.
@@ -75,6 +77,7 @@ public class BinarySignatureIdentifier implements DroidCore {
     public void init() throws SignatureParseException {
         sigFile = sigFileParser.parseSigFile(Paths.get(signatureFile));
         sigFile.prepareForUse();
+        sigFile.setMatchingEngine(matchingEngine);
     }
     
     /**
@@ -87,6 +90,18 @@ public class BinarySignatureIdentifier implements DroidCore {
     }
 
 
+    /**
+     * Sets the engine used to match binary signatures.  Unknown engine names
+     * use the standard engine.
+     * @param matchingEngine the name of the matching engine to use.
+     */
+    public void setMatchingEngine(final String matchingEngine) {
+        this.matchingEngine = SignatureMatchingEngine.forName(matchingEngine);
+        if (sigFile != null) {
+            sigFile.setMatchingEngine(this.matchingEngine);
+        }
+    }
+
     /**
      * {@inheritDoc}
      */
@@ -224,6 +224,22 @@ public class ByteSequence extends uk.gov.nationalarchives.droid.core.signature.x
         return anchoredToEOF;
     }
 
+    /**
+     * 
+     * @return Whether the byte sequence offset is read indirectly from the file.
+     */
+    public final boolean hasIndirectOffset() {
+        return hasIndirectOffset;
+    }
+
+    /**
+     *
+     * @return Whether the byte sequence is matched backwards from the end of a file.
+     */
+    public final boolean isReverseOrder() {
+        return reverseOrder;
+    }
+
     /**
      * 
      * @return The sort order of this byte sequence.
@@ -327,6 +327,7 @@ public class FFSignatureFile extends SimpleElement {
         this.setAllSignatureFileFormats();
         this.intSigs.prepareForUse();
         intSigs.sortSignatures(new InternalSignatureComparator());
+        intSigs.buildAnchorIndex();
         buildFileExtensions();
     }
     
@@ -478,6 +479,24 @@ public class FFSignatureFile extends SimpleElement {
     }
 
     
+    /**
+     *
+     * @return The engine used to match the internal signatures against each file.
+     */
+    public SignatureMatchingEngine getMatchingEngine() {
+        return intSigs.getMatchingEngine();
+    }
+
+
+    /**
+     *
+     * @param matchingEngine The engine used to match the internal signatures against each file.
+     */
+    public void setMatchingEngine(final SignatureMatchingEngine matchingEngine) {
+        intSigs.setMatchingEngine(matchingEngine);
+    }
+
+    
     /**
      * Identify the target file using the signatures defined in this signature file.
      *
@@ -0,0 +1,293 @@
+/*
+ * Copyright (c) 2016, The National Archives <pronom@nationalarchives.gov.uk>
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following
+ * conditions are met:
+ *
+ *  * Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ *
+ *  * Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ *
+ *  * Neither the name of the The National Archives nor the
+ *    names of its contributors may be used to endorse or promote products
+ *    derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package uk.gov.nationalarchives.droid.core.signature.droid6;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import net.byteseek.io.reader.WindowReader;
+import net.byteseek.matcher.bytes.ByteMatcher;
+import net.byteseek.matcher.sequence.SequenceMatcher;
+import uk.gov.nationalarchives.droid.core.signature.ByteReader;
+
+/**
+ * A dispatch index over a list of internal signatures, keyed on the
+ * bytes found at fixed BOF and EOF offsets.
+ *
+ * <p>Most signatures begin with an anchor sequence at a fixed offset from
+ * the start or end of a file.  The first byte of such an anchor must be
+ * present at that offset for the signature to match at all, so a file only
+ * needs to be tested against the signatures whose anchor byte it actually
+ * contains.  Signatures which cannot be keyed this way (variable offsets,
+ * indirect offsets, left or right fragments before the anchor, or anchors
+ * which begin with a very broad set of bytes) are always tested.</p>
+ *
+ * <p>The index is a pure filter: it never adds a signature which would not
+ * otherwise have been tested, and preserves the order of the signatures
+ * it was built from.  It is immutable once built, so it can be shared
+ * between identification threads.</p>
+ */
+public class InternalSignatureAnchorIndex {
+
+    private static final int BYTE_VALUES = 256;
+    private static final int BYTE_MASK = 0xFF;
+
+    /**
+     * Anchors which match more bytes than this do not filter enough to be worth indexing.
+     */
+    private static final int MAX_INDEXED_BYTES = 128;
+
+    private final Logger log = LoggerFactory.getLogger(InternalSignatureAnchorIndex.class);
+
+    private final InternalSignature[] signatures;
+    private final BitSet unanchored;
+    private final long[] bofOffsets;
+    private final BitSet[][] bofCandidates;
+    private final long[] eofOffsets;
+    private final BitSet[][] eofCandidates;
+    private final VariableSequenceSearcher variableSequences;
+
+    /**
+     * Builds an index over the signatures supplied, which must already have been prepared for use.
+     *
+     * @param internalSignatures The signatures to index, in the order they should be tested.
+     */
+    public InternalSignatureAnchorIndex(final List<InternalSignature> internalSignatures) {
+        this(internalSignatures, SignatureMatchingEngine.STANDARD);
+    }
+
+    /**
+     * Builds an index over the signatures supplied, which must already have been prepared for use.
+     *
+     * @param internalSignatures The signatures to index, in the order they should be tested.
+     * @param engine The matching engine to use.  The multi-pattern engine also filters the candidate
+     *               signatures by whether their variable sequences are present in the file.
+     */
+    public InternalSignatureAnchorIndex(final List<InternalSignature> internalSignatures,
+                                        final SignatureMatchingEngine engine) {
+        this.signatures = internalSignatures.toArray(new InternalSignature[0]);
+        this.unanchored = new BitSet(signatures.length);
+        final Map<Long, BitSet[]> bofIndex = new TreeMap<>();
+        final Map<Long, BitSet[]> eofIndex = new TreeMap<>();
+        for (int sigIndex = 0; sigIndex < signatures.length; sigIndex++) {
+            if (!addToIndex(sigIndex, signatures[sigIndex], bofIndex, eofIndex)) {
+                unanchored.set(sigIndex);
+            }
+        }
+        this.bofOffsets = toOffsets(bofIndex);
+        this.bofCandidates = bofIndex.values().toArray(new BitSet[0][]);
+        this.eofOffsets = toOffsets(eofIndex);
+        this.eofCandidates = eofIndex.values().toArray(new BitSet[0][]);
+        this.variableSequences = engine == SignatureMatchingEngine.MULTI_PATTERN
+                ? new VariableSequenceSearcher(internalSignatures) : null;
+        log.debug(String.format("Signature anchor index built: %d of %d signatures anchored at %d BOF and %d EOF offsets.",
+                signatures.length - unanchored.cardinality(), signatures.length, bofOffsets.length, eofOffsets.length));
+    }
+
+    /**
+     * Runs the candidate signatures against the target file,
+     * returning the ones which match.
+     *
+     * @param targetFile The file to match the signatures against.
+     * @param maxBytesToScan The maximum bytes to scan.  If negative, scanning is unlimited.
+     * @return A list of the internal signatures which matched, in index order.
+     */
+    public List<InternalSignature> getMatchingSignatures(final ByteReader targetFile, final long maxBytesToScan) {
+        final List<InternalSignature> matchingSigs = new ArrayList<InternalSignature>();
+        final BitSet candidates = getCandidates(targetFile, maxBytesToScan);
+        if (variableSequences != null) {
+            variableSequences.removeUnmatchedSignatures(candidates, targetFile, maxBytesToScan);
+        }
+        for (int sigIndex = candidates.nextSetBit(0); sigIndex >= 0; sigIndex = candidates.nextSetBit(sigIndex + 1)) {
+            final InternalSignature internalSig = signatures[sigIndex];
+            if (internalSig.matches(targetFile, maxBytesToScan)) {
+                matchingSigs.add(internalSig);
+            }
+        }
+        return matchingSigs;
+    }
+
+    /**
+     * @return The number of signatures in the index.
+     */
+    public int getNumSignatures() {
+        return signatures.length;
+    }
+
+    /**
+     * @return The engine used to match signatures.
+     */
+    public SignatureMatchingEngine getMatchingEngine() {
+        return variableSequences == null ? SignatureMatchingEngine.STANDARD : SignatureMatchingEngine.MULTI_PATTERN;
+    }
+
+    /**
+     * @return The number of signatures which are always tested, as they have no fixed anchor to index on.
+     */
+    public int getNumUnanchoredSignatures() {
+        return unanchored.cardinality();
+    }
+
+    /**
+     * Returns the signatures which could possibly match the target file, given the
+     * bytes it has at each of the indexed offsets.
+     *
+     * @param targetFile The file to get candidate signatures for.
+     * @param maxBytesToScan The maximum bytes to scan.  If negative, scanning is unlimited.
+     * @return A bitset of the indexes of the signatures which should be tested.
+     */
+    BitSet getCandidates(final ByteReader targetFile, final long maxBytesToScan) {
+        final BitSet candidates = (BitSet) unanchored.clone();
+        final WindowReader reader = targetFile.getWindowReader();
+        final long lastBytePosition = targetFile.getNumBytes() - 1;
+        try {
+            for (int offsetIndex = 0; offsetIndex < bofOffsets.length; offsetIndex++) {
+                final long offset = bofOffsets[offsetIndex];
+                // offsets are sorted - no anchor further on can be found within the bytes we can scan.
+                if (offset > lastBytePosition || (maxBytesToScan > 0 && offset > maxBytesToScan)) {
+                    break;
+                }
+                addCandidates(candidates, bofCandidates[offsetIndex], reader.readByte(offset));
+            }
+            for (int offsetIndex = 0; offsetIndex < eofOffsets.length; offsetIndex++) {
+                final long offset = eofOffsets[offsetIndex];
+                if (offset > lastBytePosition || (maxBytesToScan > 0 && offset > maxBytesToScan)) {
+                    break;
+                }
+                addCandidates(candidates, eofCandidates[offsetIndex], reader.readByte(lastBytePosition - offset));
+            }
+        } catch (IOException e) {
+            log.debug(String.format("Could not read anchor bytes for %s - testing all signatures: %s",
+                    targetFile.getFileName(), e.getMessage()));
+            candidates.set(0, signatures.length);
+        }
+        return candidates;
+    }
+
+    private static void addCandidates(final BitSet candidates, final BitSet[] byteCandidates, final int byteValue) {
+        if (byteValue >= 0) {
+            final BitSet forByte = byteCandidates[byteValue];
+            if (forByte != null) {
+                candidates.or(forByte);
+            }
+        }
+    }
+
+    /*
+     * Adds a signature to the BOF or EOF index using the first of its byte sequences
+     * which has a fixed anchor.  Any byte sequence will do, as they must all match
+     * for the signature to match.
+     *
+     * Returns false if the signature has no byte sequences which can be indexed.
+     */
+    private static boolean addToIndex(final int sigIndex, final InternalSignature signature,
+                                      final Map<Long, BitSet[]> bofIndex, final Map<Long, BitSet[]> eofIndex) {
+        for (final ByteSequence sequence : signature.getByteSequences()) {
+            if (!sequence.hasIndirectOffset() && sequence.getNumberOfSubSequences() > 0
+                    && addToIndex(sigIndex, sequence, bofIndex, eofIndex)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static boolean addToIndex(final int sigIndex, final ByteSequence sequence,
+                                      final Map<Long, BitSet[]> bofIndex, final Map<Long, BitSet[]> eofIndex) {
+        boolean added = false;
+        final List<SubSequence> subSequences = sequence.getSubSequences();
+        if (sequence.isAnchoredToBOF() && !sequence.isReverseOrder()) {
+            final SubSequence first = subSequences.get(0);
+            added = hasFixedAnchor(first, true)
+                    && addToOffset(bofIndex, first.getMinSeqOffset(),
+                        first.getAnchorMatcher().getMatcherForPosition(0), sigIndex);
+        } else if (sequence.isAnchoredToEOF() && sequence.isReverseOrder()) {
+            final SubSequence last = subSequences.get(subSequences.size() - 1);
+            added = hasFixedAnchor(last, false)
+                    && addToOffset(eofIndex, last.getMinSeqOffset(),
+                        getLastByteMatcher(last.getAnchorMatcher()), sigIndex);
+        }
+        return added;
+    }
+
+    /*
+     * A subsequence has a fixed anchor if its anchor sequence is the first thing matched
+     * from the BOF (or EOF), at a single offset.
+     */
+    private static boolean hasFixedAnchor(final SubSequence subSequence, final boolean fromBOF) {
+        return subSequence.getAnchorMatcher() != null
+                && subSequence.getNumFragmentPositions(fromBOF) == 0
+                && subSequence.getMinSeqOffset() == subSequence.getMaxSeqOffset();
+    }
+
+    private static ByteMatcher getLastByteMatcher(final SequenceMatcher anchor) {
+        return anchor.getMatcherForPosition(anchor.length() - 1);
+    }
+
+    private static boolean addToOffset(final Map<Long, BitSet[]> index, final long offset,
+                                       final ByteMatcher anchorByte, final int sigIndex) {
+        if (anchorByte.getNumberOfMatchingBytes() > MAX_INDEXED_BYTES) {
+            return false;
+        }
+        BitSet[] byteCandidates = index.get(offset);
+        if (byteCandidates == null) {
+            byteCandidates = new BitSet[BYTE_VALUES];
+            index.put(offset, byteCandidates);
+        }
+        for (final byte value : anchorByte.getMatchingBytes()) {
+            final int byteValue = value & BYTE_MASK;
+            BitSet forByte = byteCandidates[byteValue];
+            if (forByte == null) {
+                forByte = new BitSet();
+                byteCandidates[byteValue] = forByte;
+            }
+            forByte.set(sigIndex);
+        }
+        return true;
+    }
+
+    private static long[] toOffsets(final Map<Long, BitSet[]> index) {
+        final long[] offsets = new long[index.size()];
+        int position = 0;
+        for (final Long offset : index.keySet()) {
+            offsets[position++] = offset;
+        }
+        return offsets;
+    }
+
+}
@@ -83,6 +83,8 @@ public class InternalSignatureCollection extends SimpleElement {
     
     private List<InternalSignature> intSigs = new ArrayList<InternalSignature>(DEFAULT_COLLECTION_SIZE);
     private Map<Integer, InternalSignature> sigsByID = new HashMap<Integer, InternalSignature>();
+    private InternalSignatureAnchorIndex anchorIndex;
+    private SignatureMatchingEngine matchingEngine = SignatureMatchingEngine.STANDARD;
     
     /**
      * Runs all the signatures against the target file,
@@ -95,7 +97,10 @@ public class InternalSignatureCollection extends SimpleElement {
     public List<InternalSignature> getMatchingSignatures(ByteReader targetFile, long maxBytesToScan) {
         //BNO: intSigs here represents all the available binary signatures..
         List<InternalSignature> matchingSigs = new ArrayList<InternalSignature>();
-        if (targetFile.getNumBytes() > 0) {
+        final InternalSignatureAnchorIndex index = anchorIndex;
+        if (targetFile.getNumBytes() > 0 && index != null) {
+            matchingSigs = index.getMatchingSignatures(targetFile, maxBytesToScan);
+        } else if (targetFile.getNumBytes() > 0) {
             final int stop = intSigs.size();
             for (int sigIndex = 0; sigIndex < stop; sigIndex++) {
                 final InternalSignature internalSig = intSigs.get(sigIndex);
@@ -124,6 +129,50 @@ public class InternalSignatureCollection extends SimpleElement {
         }
     }
     
+    /**
+     * Builds an index of the signatures keyed on their anchor bytes at fixed BOF and EOF offsets,
+     * so that each file is only matched against the signatures which could possibly match it.
+     * The signatures must already have been prepared for use and sorted.
+     *
+     * <p>Once built, the index is rebuilt whenever signatures are added, removed or re-sorted.</p>
+     */
+    public void buildAnchorIndex() {
+        anchorIndex = new InternalSignatureAnchorIndex(intSigs, matchingEngine);
+    }
+
+    /**
+     * Sets the engine used to match signatures once the anchor index has been built.
+     * If the index already exists, it is rebuilt for the new engine.
+     *
+     * @param matchingEngine The matching engine to use.
+     */
+    public void setMatchingEngine(final SignatureMatchingEngine matchingEngine) {
+        this.matchingEngine = matchingEngine;
+        rebuildAnchorIndex();
+    }
+
+    /**
+     *
+     * @return The engine used to match signatures.
+     */
+    public SignatureMatchingEngine getMatchingEngine() {
+        return matchingEngine;
+    }
+
+    /**
+     *
+     * @return The anchor index for this collection, or null if it has not been built.
+     */
+    public InternalSignatureAnchorIndex getAnchorIndex() {
+        return anchorIndex;
+    }
+
+    private void rebuildAnchorIndex() {
+        if (anchorIndex != null) {
+            buildAnchorIndex();
+        }
+    }
+
     private String getInvalidSignatureWarningMessage(InternalSignature sig) {
         return String.format("Removing invalid signature [id:%d]. " 
                 + "Matches formats: %s", sig.getID(), sig.getFileFormatDescriptions());
@@ -137,6 +186,7 @@ public class InternalSignatureCollection extends SimpleElement {
     public final void addInternalSignature(final InternalSignature iSig) {
         intSigs.add(iSig);
         sigsByID.put(iSig.getID(), iSig);
+        rebuildAnchorIndex();
     }
     
     
@@ -147,6 +197,7 @@ public class InternalSignatureCollection extends SimpleElement {
     public final void removeInternalSignature(final InternalSignature iSig) {
         intSigs.remove(iSig);
         sigsByID.remove(iSig.getID());
+        rebuildAnchorIndex();
     }
     
     
@@ -165,11 +216,16 @@ public class InternalSignatureCollection extends SimpleElement {
      * @param iSigs The list of signatures to add.
      */
     public final void setInternalSignatures(final List<InternalSignature> iSigs) {
+        final boolean indexed = anchorIndex != null;
+        anchorIndex = null;
         intSigs.clear();
         sigsByID.clear();
         for (InternalSignature signature : iSigs) {
             addInternalSignature(signature);
         }
+        if (indexed) {
+            buildAnchorIndex();
+        }
     }
 
     /* getters */
@@ -187,6 +243,7 @@ public class InternalSignatureCollection extends SimpleElement {
      */
     public void sortSignatures(final Comparator<InternalSignature> compareWith) {
         Collections.sort(intSigs, compareWith);
+        rebuildAnchorIndex();
     }
 
 }
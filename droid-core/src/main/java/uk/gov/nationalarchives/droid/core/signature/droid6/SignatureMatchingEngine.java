@@ -0,0 +1,78 @@
+/*
+ * Copyright (c) 2016, The National Archives <pronom@nationalarchives.gov.uk>
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following
+ * conditions are met:
+ *
+ *  * Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ *
+ *  * Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ *
+ *  * Neither the name of the The National Archives nor the
+ *    names of its contributors may be used to endorse or promote products
+ *    derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package uk.gov.nationalarchives.droid.core.signature.droid6;
+
+/**
+ * The engine used to match binary signatures against a file.
+ */
+public enum SignatureMatchingEngine {
+
+    /**
+     * Each candidate signature searches the file for its own sequences.
+     */
+    STANDARD("standard"),
+
+    /**
+     * Before any candidate signature is tested, the anchors of all sequences which can
+     * occur at a variable offset are found together in a single pass over the file.
+     * Signatures whose variable sequences are not present are not tested.
+     */
+    MULTI_PATTERN("multipattern");
+
+    private final String name;
+
+    SignatureMatchingEngine(final String name) {
+        this.name = name;
+    }
+
+    /**
+     * @return The name of the engine, as used in configuration properties.
+     */
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * Returns the engine with the given name.  Unknown or empty names give the standard engine.
+     *
+     * @param name The name of the engine, ignoring case.
+     * @return The engine with the given name, or the standard engine if there is no such engine.
+     */
+    public static SignatureMatchingEngine forName(final String name) {
+        for (final SignatureMatchingEngine engine : values()) {
+            if (engine.name.equalsIgnoreCase(name)) {
+                return engine;
+            }
+        }
+        return STANDARD;
+    }
+}
@@ -0,0 +1,320 @@
+/*
+ * Copyright (c) 2016, The National Archives <pronom@nationalarchives.gov.uk>
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following
+ * conditions are met:
+ *
+ *  * Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ *
+ *  * Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ *
+ *  * Neither the name of the The National Archives nor the
+ *    names of its contributors may be used to endorse or promote products
+ *    derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package uk.gov.nationalarchives.droid.core.signature.droid6;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import net.byteseek.io.reader.WindowReader;
+import net.byteseek.io.reader.windows.Window;
+import net.byteseek.matcher.sequence.SequenceMatcher;
+import uk.gov.nationalarchives.droid.core.signature.ByteReader;
+
+/**
+ * Finds the anchors of all the variable offset sequences in a list of
+ * internal signatures in a single pass over a file.
+ *
+ * <p>Any subsequence which is not at a fixed offset from the start or end of
+ * a file is searched for by its signature across the whole scannable part of
+ * the file.  When many signatures have such subsequences, the same bytes are
+ * searched over and over again, once for each signature.  This searcher
+ * instead hashes each anchor on two adjacent bytes, then reads the file once,
+ * verifying any anchors whose key bytes appear.  A signature which has an
+ * anchor which is not present anywhere in the file cannot match, so it does
+ * not need to be tested.</p>
+ *
+ * <p>Like the anchor index, this is a pure filter: signatures which are not
+ * removed are still matched in full by their own byte sequences.  Anchors
+ * which are shorter than two bytes, or which can begin with too many
+ * different byte pairs, are assumed to always be present.</p>
+ */
+public class VariableSequenceSearcher {
+
+    private static final int BYTE_BITS = 8;
+    private static final int BYTE_MASK = 0xFF;
+    private static final int NUM_KEYS = 1 << (BYTE_BITS * 2);
+
+    /**
+     * Anchors which can begin with more byte pairs than this are not worth searching for.
+     */
+    private static final int MAX_KEYS_PER_ANCHOR = 256;
+
+    private final Logger log = LoggerFactory.getLogger(VariableSequenceSearcher.class);
+
+    private final SequenceMatcher[] anchors;
+    private final int[] keyPositions;
+    private final BitSet unkeyed;
+    private final int[][] anchorsForKey;
+    private final int[][] anchorsForSignature;
+    private final BitSet signaturesWithAnchors;
+
+    /**
+     * Builds a searcher for the variable sequences of the signatures supplied,
+     * which must already have been prepared for use.
+     *
+     * @param internalSignatures The signatures to search for, in the order they are tested.
+     */
+    public VariableSequenceSearcher(final List<InternalSignature> internalSignatures) {
+        final List<SequenceMatcher> anchorList = new ArrayList<>();
+        final Map<String, Integer> anchorIndexes = new HashMap<>();
+        this.anchorsForSignature = new int[internalSignatures.size()][];
+        this.signaturesWithAnchors = new BitSet(internalSignatures.size());
+        for (int sigIndex = 0; sigIndex < anchorsForSignature.length; sigIndex++) {
+            final int[] sigAnchors = addAnchors(internalSignatures.get(sigIndex), anchorList, anchorIndexes);
+            if (sigAnchors.length > 0) {
+                anchorsForSignature[sigIndex] = sigAnchors;
+                signaturesWithAnchors.set(sigIndex);
+            }
+        }
+        this.anchors = anchorList.toArray(new SequenceMatcher[0]);
+        this.keyPositions = new int[anchors.length];
+        this.unkeyed = new BitSet(anchors.length);
+        this.anchorsForKey = buildKeys();
+        log.debug(String.format("Variable sequence searcher built: %d signatures have %d distinct anchors, "
+                + "%d of which are always tested.", signaturesWithAnchors.cardinality(), anchors.length,
+                unkeyed.cardinality()));
+    }
+
+    /**
+     * @return The number of distinct variable sequence anchors searched for.
+     */
+    public int getNumAnchors() {
+        return anchors.length;
+    }
+
+    /**
+     * Removes any candidate signatures which have a variable sequence anchor that does
+     * not appear in the scannable part of the target file.  The file is only read if
+     * one of the candidates has a variable sequence.
+     *
+     * @param candidates The indexes of the candidate signatures, which are cleared if they cannot match.
+     * @param targetFile The file to search.
+     * @param maxBytesToScan The maximum bytes to scan.  If negative, scanning is unlimited.
+     */
+    public void removeUnmatchedSignatures(final BitSet candidates, final ByteReader targetFile,
+                                          final long maxBytesToScan) {
+        final BitSet toCheck = (BitSet) candidates.clone();
+        toCheck.and(signaturesWithAnchors);
+        final BitSet needed = new BitSet(anchors.length);
+        for (int sigIndex = toCheck.nextSetBit(0); sigIndex >= 0; sigIndex = toCheck.nextSetBit(sigIndex + 1)) {
+            for (final int anchorIndex : anchorsForSignature[sigIndex]) {
+                needed.set(anchorIndex);
+            }
+        }
+        needed.andNot(unkeyed);
+        if (!needed.isEmpty()) {
+            final BitSet found = findAnchors(targetFile, maxBytesToScan, needed);
+            for (int sigIndex = toCheck.nextSetBit(0); sigIndex >= 0; sigIndex = toCheck.nextSetBit(sigIndex + 1)) {
+                if (!allFound(anchorsForSignature[sigIndex], found)) {
+                    candidates.clear(sigIndex);
+                }
+            }
+        }
+    }
+
+    /**
+     * Reads the target file once, up to the maximum bytes to scan, looking for the anchors needed.
+     * The search stops as soon as all of them have been found.  If the file can't be read,
+     * all the anchors are treated as found, so no signatures are filtered out.
+     *
+     * @param targetFile The file to search.
+     * @param maxBytesToScan The maximum bytes to scan.  If negative, scanning is unlimited.
+     * @param needed The indexes of the anchors to search for.
+     * @return A bitset of the indexes of the anchors found.
+     */
+    BitSet findAnchors(final ByteReader targetFile, final long maxBytesToScan, final BitSet needed) {
+        final BitSet found = new BitSet(anchors.length);
+        final long limit = getScanLimit(targetFile, maxBytesToScan);
+        final WindowReader reader = targetFile.getWindowReader();
+        int remaining = needed.cardinality();
+        int previousByte = -1;
+        long position = 0;
+        try {
+            while (position <= limit && remaining > 0) {
+                final Window window = reader.getWindow(position);
+                if (window == null) {
+                    break;
+                }
+                final long windowPosition = window.getWindowPosition();
+                final byte[] array = window.getArray();
+                final int stop = (int) Math.min(window.length() - 1, limit - windowPosition);
+                for (int arrayPos = (int) (position - windowPosition); arrayPos <= stop && remaining > 0; arrayPos++) {
+                    final int currentByte = array[arrayPos] & BYTE_MASK;
+                    final int[] keyed = previousByte < 0 ? null : anchorsForKey[(previousByte << BYTE_BITS) | currentByte];
+                    if (keyed != null) {
+                        remaining -= matchAnchors(reader, keyed, windowPosition + arrayPos - 1, limit, needed, found);
+                    }
+                    previousByte = currentByte;
+                }
+                position = windowPosition + window.length();
+            }
+        } catch (IOException e) {
+            log.debug(String.format("Could not search %s for variable sequences - testing all signatures: %s",
+                    targetFile.getFileName(), e.getMessage()));
+            found.or(needed);
+        }
+        return found;
+    }
+
+    private static long getScanLimit(final ByteReader targetFile, final long maxBytesToScan) {
+        final long lastBytePosition = targetFile.getNumBytes() - 1;
+        return maxBytesToScan > 0 && maxBytesToScan < lastBytePosition ? maxBytesToScan : lastBytePosition;
+    }
+
+    /*
+     * Verifies each needed anchor keyed on the byte pair at keyPosition, returning how many new anchors were found.
+     */
+    private int matchAnchors(final WindowReader reader, final int[] keyed, final long keyPosition, final long limit,
+                             final BitSet needed, final BitSet found) throws IOException {
+        int numFound = 0;
+        for (final int anchorIndex : keyed) {
+            if (needed.get(anchorIndex) && !found.get(anchorIndex)) {
+                final SequenceMatcher anchor = anchors[anchorIndex];
+                final long matchPosition = keyPosition - keyPositions[anchorIndex];
+                if (matchPosition >= 0 && matchPosition + anchor.length() - 1 <= limit
+                        && anchor.matches(reader, matchPosition)) {
+                    found.set(anchorIndex);
+                    numFound++;
+                }
+            }
+        }
+        return numFound;
+    }
+
+    private boolean allFound(final int[] sigAnchors, final BitSet found) {
+        for (final int anchorIndex : sigAnchors) {
+            if (!unkeyed.get(anchorIndex) && !found.get(anchorIndex)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /*
+     * Adds the anchors of every subsequence in a signature which is searched for at a variable offset,
+     * returning their indexes.  Sequences matched backwards from the end of the file are not searched
+     * for, as they are limited to the last bytes of the file rather than the first.
+     */
+    private static int[] addAnchors(final InternalSignature signature, final List<SequenceMatcher> anchorList,
+                                    final Map<String, Integer> anchorIndexes) {
+        final List<Integer> sigAnchors = new ArrayList<>();
+        for (final ByteSequence sequence : signature.getByteSequences()) {
+            if (!sequence.isReverseOrder()) {
+                final boolean fixedStart = sequence.isAnchoredToBOF() || sequence.isAnchoredToEOF();
+                final List<SubSequence> subSequences = sequence.getSubSequences();
+                for (int subIndex = fixedStart ? 1 : 0; subIndex < subSequences.size(); subIndex++) {
+                    final SequenceMatcher anchor = subSequences.get(subIndex).getAnchorMatcher();
+                    if (anchor != null) {
+                        sigAnchors.add(getAnchorIndex(anchor, anchorList, anchorIndexes));
+                    }
+                }
+            }
+        }
+        final int[] result = new int[sigAnchors.size()];
+        for (int i = 0; i < result.length; i++) {
+            result[i] = sigAnchors.get(i);
+        }
+        return result;
+    }
+
+    private static int getAnchorIndex(final SequenceMatcher anchor, final List<SequenceMatcher> anchorList,
+                                      final Map<String, Integer> anchorIndexes) {
+        final String expression = anchor.toRegularExpression(false);
+        Integer anchorIndex = anchorIndexes.get(expression);
+        if (anchorIndex == null) {
+            anchorIndex = anchorList.size();
+            anchorList.add(anchor);
+            anchorIndexes.put(expression, anchorIndex);
+        }
+        return anchorIndex;
+    }
+
+    /*
+     * Keys each anchor on the pair of adjacent bytes in it which can take the fewest values.
+     */
+    private int[][] buildKeys() {
+        final Map<Integer, List<Integer>> keys = new HashMap<>();
+        for (int anchorIndex = 0; anchorIndex < anchors.length; anchorIndex++) {
+            final SequenceMatcher anchor = anchors[anchorIndex];
+            final int keyPosition = getKeyPosition(anchor);
+            if (keyPosition < 0) {
+                unkeyed.set(anchorIndex);
+            } else {
+                keyPositions[anchorIndex] = keyPosition;
+                for (final byte first : anchor.getMatcherForPosition(keyPosition).getMatchingBytes()) {
+                    for (final byte second : anchor.getMatcherForPosition(keyPosition + 1).getMatchingBytes()) {
+                        final int key = ((first & BYTE_MASK) << BYTE_BITS) | (second & BYTE_MASK);
+                        keys.computeIfAbsent(key, k -> new ArrayList<>()).add(anchorIndex);
+                    }
+                }
+            }
+        }
+        final int[][] result = new int[NUM_KEYS][];
+        for (final Map.Entry<Integer, List<Integer>> entry : keys.entrySet()) {
+            final List<Integer> keyed = entry.getValue();
+            final int[] anchorIndexes = new int[keyed.size()];
+            for (int i = 0; i < anchorIndexes.length; i++) {
+                anchorIndexes[i] = keyed.get(i);
+            }
+            result[entry.getKey()] = anchorIndexes;
+        }
+        return result;
+    }
+
+    /*
+     * Returns the position of the most selective pair of adjacent bytes in an anchor,
+     * or -1 if the anchor has no pair selective enough to key on.
+     */
+    private static int getKeyPosition(final SequenceMatcher anchor) {
+        int keyPosition = -1;
+        int fewestKeys = MAX_KEYS_PER_ANCHOR + 1;
+        int previousCount = anchor.getMatcherForPosition(0).getNumberOfMatchingBytes();
+        for (int position = 1; position < anchor.length(); position++) {
+            final int count = anchor.getMatcherForPosition(position).getNumberOfMatchingBytes();
+            final int numKeys = previousCount * count;
+            if (numKeys < fewestKeys) {
+                fewestKeys = numKeys;
+                keyPosition = position - 1;
+            }
+            previousCount = count;
+        }
+        return keyPosition;
+    }
+
+}
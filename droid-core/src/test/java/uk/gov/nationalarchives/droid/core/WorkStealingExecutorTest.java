@@ -0,0 +1,250 @@
+/*
+ * Copyright (c) 2016, The National Archives <pronom@nationalarchives.gov.uk>
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following
+ * conditions are met:
+ *
+ *  * Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ *
+ *  * Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ *
+ *  * Neither the name of the The National Archives nor the
+ *    names of its contributors may be used to endorse or promote products
+ *    derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package uk.gov.nationalarchives.droid.core;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import uk.gov.nationalarchives.droid.core.interfaces.IdentificationExecutorFactory;
+import uk.gov.nationalarchives.droid.core.interfaces.WorkStealingExecutorService;
+
+public class WorkStealingExecutorTest {
+
+    private CountDownLatch startLatch;
+    private CountDownLatch stopLatch;
+    private WorkStealingExecutorService executor;
+
+    @Before
+    public void setup() {
+        startLatch = new CountDownLatch(2);
+        stopLatch = new CountDownLatch(1);
+        executor = new WorkStealingExecutorService(2, 3);
+    }
+
+    @After
+    public void tearDown() {
+        stopLatch.countDown();
+        executor.shutdownNow();
+    }
+
+    @Test
+    public void testSubmitterWaitsWhenPoolIsAtCapacity() throws Exception {
+        final AtomicInteger count = new AtomicInteger();
+        Thread t = new Thread() {
+            @Override
+            public void run() {
+                for (int i = 0; i < 6; i++) {
+                    executor.submit(new TestTask());
+                    count.incrementAndGet();
+                }
+            }
+        };
+        t.start();
+
+        startLatch.await();
+        waitUntilBlocked(t);
+
+        // Two tasks running and one queued; the submitter waits rather than running the fourth itself.
+        assertEquals(3, count.intValue());
+        assertEquals(3, executor.getInFlightCount());
+        assertEquals(1.0, executor.getSaturation(), 0.0);
+
+        stopLatch.countDown();
+        t.join(5000);
+        executor.shutdown();
+        assertTrue(executor.awaitTermination(5, TimeUnit.SECONDS));
+        assertEquals(6, count.intValue());
+        assertEquals(6, executor.getSubmittedCount());
+        assertEquals(0, executor.getInFlightCount());
+        assertEquals(3, executor.getPeakInFlightCount());
+        assertTrue(executor.getCapacityWaitCount() > 0);
+    }
+
+    @Test
+    public void testAwaitCapacityWaitsUntilTaskFinishes() throws Exception {
+        executor.awaitCapacity();
+        for (int i = 0; i < 3; i++) {
+            executor.submit(new TestTask());
+        }
+        startLatch.await();
+
+        final CountDownLatch capacityLatch = new CountDownLatch(1);
+        Thread t = new Thread() {
+            @Override
+            public void run() {
+                try {
+                    executor.awaitCapacity();
+                    capacityLatch.countDown();
+                } catch (InterruptedException e) {
+                    throw new RuntimeException(e);
+                }
+            }
+        };
+        t.start();
+        waitUntilBlocked(t);
+        assertEquals(1, capacityLatch.getCount());
+
+        stopLatch.countDown();
+        assertTrue(capacityLatch.await(5, TimeUnit.SECONDS));
+        assertEquals(1, executor.getCapacityWaitCount());
+    }
+
+    @Test
+    public void testTasksSubmittedFromPoolThreadsDoNotWaitForCapacity() throws Exception {
+        executor = new WorkStealingExecutorService(1, 1);
+        Future<Future<?>> outer = executor.submit(new Callable<Future<?>>() {
+            @Override
+            public Future<?> call() {
+                // The pool is at capacity while this task runs.
+                return executor.submit(new Callable<Object>() {
+                    @Override
+                    public Object call() {
+                        return "nested";
+                    }
+                });
+            }
+        });
+
+        assertEquals("nested", outer.get(5, TimeUnit.SECONDS).get(5, TimeUnit.SECONDS));
+        assertEquals(1, executor.getSubmittedCount());
+        assertEquals(1, executor.getWorkerSubmittedCount());
+        assertEquals(0, executor.getCapacityWaitCount());
+    }
+
+    @Test
+    public void testPoolRejectsTasksAfterShutdown() throws Exception {
+        executor.submit(new TestTask());
+        executor.shutdown();
+        try {
+            executor.submit(new TestTask());
+            fail("Expected RejectedExecutionException.");
+        } catch (RejectedExecutionException e) {
+
+        }
+
+        stopLatch.countDown();
+        assertTrue(executor.awaitTermination(5, TimeUnit.SECONDS));
+        assertEquals(1, executor.getSubmittedCount());
+    }
+
+    @Test
+    public void testExceptionHandling() throws Exception {
+        Future<?> result = executor.submit(new ExceptionTask());
+
+        try {
+            result.get();
+            fail("Expected ExecutionException");
+        } catch (ExecutionException e) {
+            assertEquals("An error...", e.getCause().getMessage());
+        }
+    }
+
+    @Test
+    public void testFactoryCreatesConfiguredScheduler() {
+        IdentificationExecutorFactory factory = new IdentificationExecutorFactory();
+        assertTrue(!(factory.newInstance() instanceof WorkStealingExecutorService));
+
+        factory.setScheduler("WorkStealing");
+        factory.setParallelism(3);
+        WorkStealingExecutorService workStealing = (WorkStealingExecutorService) factory.newInstance();
+        assertEquals(3, workStealing.getParallelism());
+        assertEquals(12, workStealing.getQueueCapacity());
+        workStealing.shutdown();
+
+        factory.setScheduler("Blocking");
+        assertTrue(!(factory.newInstance() instanceof WorkStealingExecutorService));
+
+        factory.setScheduler("null");
+        assertTrue(!(factory.newInstance() instanceof WorkStealingExecutorService));
+    }
+
+    @Test(timeout = 10000)
+    public void testBlockedTasksDoNotStallThePool() throws Exception {
+        WorkStealingExecutorService single = new WorkStealingExecutorService(1, 2);
+        try {
+            CountDownLatch blocked = new CountDownLatch(1);
+            Future<?> waiting = single.submit(() -> {
+                blocked.await();
+                return null;
+            });
+            Future<?> releasing = single.submit(() -> {
+                blocked.countDown();
+                return null;
+            });
+            releasing.get();
+            waiting.get();
+        } finally {
+            single.shutdown();
+        }
+    }
+
+    private static void waitUntilBlocked(Thread t) throws InterruptedException {
+        while (t.getState() != Thread.State.WAITING) {
+            Thread.sleep(10);
+        }
+    }
+
+    private final class TestTask implements Callable<Object> {
+
+        @Override
+        public Object call() {
+            try {
+                startLatch.countDown();
+                stopLatch.await();
+            } catch (InterruptedException e) {
+                throw new RuntimeException(e);
+            }
+            return null;
+        }
+    }
+
+    private final class ExceptionTask implements Callable<Object> {
+
+        @Override
+        public Object call() {
+            throw new RuntimeException("An error...");
+        }
+    }
+}
@@ -0,0 +1,128 @@
+/*
+ * Copyright (c) 2016, The National Archives <pronom@nationalarchives.gov.uk>
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following
+ * conditions are met:
+ *
+ *  * Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ *
+ *  * Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ *
+ *  * Neither the name of the The National Archives nor the
+ *    names of its contributors may be used to endorse or promote products
+ *    derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package uk.gov.nationalarchives.droid.core.signature.droid6;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+import uk.gov.nationalarchives.droid.core.BinarySignatureIdentifier;
+import uk.gov.nationalarchives.droid.core.IdentificationRequestByteReaderAdapter;
+import uk.gov.nationalarchives.droid.core.interfaces.IdentificationRequest;
+import uk.gov.nationalarchives.droid.core.interfaces.RequestIdentifier;
+import uk.gov.nationalarchives.droid.core.interfaces.resource.FileSystemIdentificationRequest;
+import uk.gov.nationalarchives.droid.core.interfaces.resource.RequestMetaData;
+import uk.gov.nationalarchives.droid.core.signature.ByteReader;
+
+/**
+ * Checks that matching through the anchor index gives exactly the same signatures,
+ * in the same order, as testing every signature against every file.
+ */
+public class InternalSignatureAnchorIndexTest {
+
+    private static final String SIGFILE = "test_sig_files/DROID_SignatureFile_V114.xml";
+    private static final String SKELETON_DIR = "test-skeletons/fmt";
+    private static final long MAX_BYTES_TO_SCAN = 65536;
+
+    private static FFSignatureFile sigFile;
+
+    @BeforeClass
+    public static void setup() throws Exception {
+        BinarySignatureIdentifier droid = new BinarySignatureIdentifier();
+        droid.setSignatureFile(SIGFILE);
+        droid.init();
+        sigFile = droid.getSigFile();
+    }
+
+    @Test
+    public void testIndexAnchorsMostSignatures() {
+        InternalSignatureAnchorIndex index = getCollection().getAnchorIndex();
+        assertNotNull(index);
+        assertEquals(sigFile.getSignatures().size(), index.getNumSignatures());
+        assertTrue(index.getNumUnanchoredSignatures() < index.getNumSignatures());
+    }
+
+    @Test
+    public void testIndexMatchesSameSignaturesAsFullScan() throws Exception {
+        final InternalSignatureAnchorIndex index = getCollection().getAnchorIndex();
+        final List<InternalSignature> allSignatures = sigFile.getSignatures();
+        for (final File file : new File(SKELETON_DIR).listFiles()) {
+            for (final long maxBytes : new long[] {-1, MAX_BYTES_TO_SCAN}) {
+                final List<InternalSignature> expected = new ArrayList<>();
+                try (IdentificationRequest<Path> request = openRequest(file.toPath())) {
+                    final ByteReader reader = new IdentificationRequestByteReaderAdapter(request);
+                    for (final InternalSignature signature : allSignatures) {
+                        if (signature.matches(reader, maxBytes)) {
+                            expected.add(signature);
+                        }
+                    }
+                    assertEquals(file.getName(), expected, index.getMatchingSignatures(reader, maxBytes));
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testIndexRebuiltWhenSignaturesRemoved() throws Exception {
+        final InternalSignatureCollection collection = getCollection();
+        final int before = collection.getAnchorIndex().getNumSignatures();
+        collection.removeInternalSignature(collection.getInternalSignatures().get(0));
+        assertEquals(before - 1, collection.getAnchorIndex().getNumSignatures());
+    }
+
+    private static InternalSignatureCollection getCollection() {
+        final InternalSignatureCollection collection = new InternalSignatureCollection();
+        // The collection isn't exposed by the signature file, so build an indexed one from its signatures.
+        collection.setInternalSignatures(sigFile.getSignatures());
+        collection.buildAnchorIndex();
+        return collection;
+    }
+
+    private static IdentificationRequest<Path> openRequest(Path path) throws Exception {
+        RequestMetaData metaData = new RequestMetaData(
+                Files.size(path), Files.getLastModifiedTime(path).toMillis(), path.getFileName().toString());
+        RequestIdentifier identifier = new RequestIdentifier(path.toUri());
+        identifier.setParentId(1L);
+        IdentificationRequest<Path> request = new FileSystemIdentificationRequest(metaData, identifier);
+        request.open(path);
+        return request;
+    }
+}
@@ -0,0 +1,123 @@
+/*
+ * Copyright (c) 2016, The National Archives <pronom@nationalarchives.gov.uk>
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following
+ * conditions are met:
+ *
+ *  * Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ *
+ *  * Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ *
+ *  * Neither the name of the The National Archives nor the
+ *    names of its contributors may be used to endorse or promote products
+ *    derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package uk.gov.nationalarchives.droid.core.signature.droid6;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import uk.gov.nationalarchives.droid.core.BinarySignatureIdentifier;
+import uk.gov.nationalarchives.droid.core.IdentificationRequestByteReaderAdapter;
+import uk.gov.nationalarchives.droid.core.interfaces.IdentificationRequest;
+import uk.gov.nationalarchives.droid.core.interfaces.RequestIdentifier;
+import uk.gov.nationalarchives.droid.core.interfaces.resource.FileSystemIdentificationRequest;
+import uk.gov.nationalarchives.droid.core.interfaces.resource.RequestMetaData;
+import uk.gov.nationalarchives.droid.core.signature.ByteReader;
+
+/**
+ * Checks that the multi-pattern engine matches exactly the same signatures as the standard engine.
+ */
+public class VariableSequenceSearcherTest {
+
+    private static final String SIGFILE = "test_sig_files/DROID_SignatureFile_V114.xml";
+    private static final String SKELETON_DIR = "test-skeletons/fmt";
+    private static final long MAX_BYTES_TO_SCAN = 65536;
+
+    private static List<InternalSignature> signatures;
+
+    @BeforeClass
+    public static void setup() throws Exception {
+        BinarySignatureIdentifier droid = new BinarySignatureIdentifier();
+        droid.setSignatureFile(SIGFILE);
+        droid.init();
+        signatures = droid.getSigFile().getSignatures();
+    }
+
+    @Test
+    public void testEngineNames() {
+        assertEquals(SignatureMatchingEngine.MULTI_PATTERN, SignatureMatchingEngine.forName("multipattern"));
+        assertEquals(SignatureMatchingEngine.MULTI_PATTERN, SignatureMatchingEngine.forName("MultiPattern"));
+        assertEquals(SignatureMatchingEngine.STANDARD, SignatureMatchingEngine.forName("standard"));
+        assertEquals(SignatureMatchingEngine.STANDARD, SignatureMatchingEngine.forName("unknown"));
+        assertEquals(SignatureMatchingEngine.STANDARD, SignatureMatchingEngine.forName(null));
+    }
+
+    @Test
+    public void testSearcherFindsVariableSequences() {
+        assertTrue(new VariableSequenceSearcher(signatures).getNumAnchors() > 0);
+    }
+
+    @Test
+    public void testMultiPatternMatchesSameSignaturesAsStandard() throws Exception {
+        final InternalSignatureAnchorIndex standard =
+                new InternalSignatureAnchorIndex(signatures, SignatureMatchingEngine.STANDARD);
+        final InternalSignatureAnchorIndex multiPattern =
+                new InternalSignatureAnchorIndex(signatures, SignatureMatchingEngine.MULTI_PATTERN);
+        assertEquals(SignatureMatchingEngine.MULTI_PATTERN, multiPattern.getMatchingEngine());
+        for (final File file : new File(SKELETON_DIR).listFiles()) {
+            for (final long maxBytes : new long[] {-1, MAX_BYTES_TO_SCAN}) {
+                try (IdentificationRequest<Path> request = openRequest(file.toPath())) {
+                    final ByteReader reader = new IdentificationRequestByteReaderAdapter(request);
+                    assertEquals(file.getName(), standard.getMatchingSignatures(reader, maxBytes),
+                            multiPattern.getMatchingSignatures(reader, maxBytes));
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testCollectionRebuildsIndexForEngine() {
+        final InternalSignatureCollection collection = new InternalSignatureCollection();
+        collection.setInternalSignatures(signatures);
+        collection.buildAnchorIndex();
+        assertEquals(SignatureMatchingEngine.STANDARD, collection.getAnchorIndex().getMatchingEngine());
+        collection.setMatchingEngine(SignatureMatchingEngine.MULTI_PATTERN);
+        assertEquals(SignatureMatchingEngine.MULTI_PATTERN, collection.getAnchorIndex().getMatchingEngine());
+    }
+
+    private static IdentificationRequest<Path> openRequest(Path path) throws Exception {
+        RequestMetaData metaData = new RequestMetaData(
+                Files.size(path), Files.getLastModifiedTime(path).toMillis(), path.getFileName().toString());
+        RequestIdentifier identifier = new RequestIdentifier(path.toUri());
+        identifier.setParentId(1L);
+        IdentificationRequest<Path> request = new FileSystemIdentificationRequest(metaData, identifier);
+        request.open(path);
+        return request;
+    }
+}
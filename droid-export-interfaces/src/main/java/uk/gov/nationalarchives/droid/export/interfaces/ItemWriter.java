@@ -47,6 +47,38 @@ public interface ItemWriter<T> {
      * @param items the items to write.
      */
     void write(List<? extends T> items);
+
+    /**
+     * Whether this writer implements format() and writeFormatted().  Items given to a writer which
+     * can't format them must be written with write() instead.
+     * @return whether this writer can format items.
+     */
+    default boolean canFormat() {
+        return false;
+    }
+
+    /**
+     * Formats an item into the rows which write() would write for it, appending them to a buffer
+     * instead of writing them.  Unlike write(), this can be called by many threads at once, so items
+     * can be formatted in parallel and their rows written together with writeFormatted().
+     * @param item the item to format.
+     * @param rows the buffer to append the rows to.
+     * @throws UnsupportedOperationException if this writer can't format items.
+     */
+    default void format(T item, StringBuilder rows) {
+        throw new UnsupportedOperationException(getClass().getName() + " can't format items.");
+    }
+
+    /**
+     * Writes rows made by format(), writing the headers first if nothing has been written yet.
+     * @param rows the rows to write.
+     * @param items the items the rows were made from, or the first of them, which the headers
+     *              are chosen for if they have not been written yet, as they would be by write().
+     * @throws UnsupportedOperationException if this writer can't format items.
+     */
+    default void writeFormatted(CharSequence rows, List<? extends T> items) {
+        throw new UnsupportedOperationException(getClass().getName() + " can't write formatted items.");
+    }
     
     /**
      * Opens a writer for writing.
@@ -37,6 +37,7 @@ import java.util.concurrent.Executors;
 import java.util.concurrent.Future;
 import java.util.concurrent.FutureTask;
 
+import uk.gov.nationalarchives.droid.core.interfaces.config.DroidGlobalConfig;
 import uk.gov.nationalarchives.droid.core.interfaces.filter.Filter;
 import uk.gov.nationalarchives.droid.export.interfaces.ExportManager;
 import uk.gov.nationalarchives.droid.export.interfaces.ExportOptions;
@@ -49,9 +50,16 @@ import uk.gov.nationalarchives.droid.profile.ProfileResourceNode;
  *
  */
 public class ExportManagerImpl implements ExportManager {
-    
+
+    /**
+     * The most profiles read at the same time by default, as each one read holds open a profile database.
+     */
+    public static final int MAX_DEFAULT_EXPORT_THREADS = 4;
+
     private ProfileContextLocator profileContextLocator;
     private ItemWriter<ProfileResourceNode> itemWriter;
+    private DroidGlobalConfig config;
+    private int exportThreads = Math.min(MAX_DEFAULT_EXPORT_THREADS, Runtime.getRuntime().availableProcessors());
     
     private ExecutorService executor = Executors.newSingleThreadExecutor();
 
@@ -73,6 +81,14 @@ public class ExportManagerImpl implements ExportManager {
         this.itemWriter = itemWriter;
     }
 
+    /**
+     * @param exportThreads the number of profiles read at the same time when several profiles are exported.
+     *                      Defaults to the number of processors, up to {@link #MAX_DEFAULT_EXPORT_THREADS}.
+     */
+    public void setExportThreads(final int exportThreads) {
+        this.exportThreads = exportThreads;
+    }
+
     @Override
     public Future<?> exportProfiles(final List<String> profileIds, final String destination, 
         final Filter filter, final ExportOptions options, final String outputEncoding, final boolean bom,
@@ -80,7 +96,10 @@ public class ExportManagerImpl implements ExportManager {
         itemWriter.setQuoteAllFields(quoteAllFields);
         itemWriter.setColumnsToWrite(columnsToWrite);
         final ExportTask exportTask = new ExportTask(destination,
-                profileIds, filter, options, outputEncoding, bom, itemWriter, profileContextLocator);
+                profileIds, filter, options, outputEncoding, bom, itemWriter, profileContextLocator, exportThreads);
+        if (config != null) {
+            exportTask.setSpoolDir(config.getTempDir());
+        }
         final FutureTask<?> task = new FutureTask<Object>(exportTask, null) {
             @Override
             public boolean cancel(final boolean mayInterruptIfRunning) {
@@ -109,6 +128,13 @@ public class ExportManagerImpl implements ExportManager {
         this.itemWriter = itemWriter;
     }
 
+    /**
+     * @param config the global config, whose temporary directory profiles are spooled to when exported
+     */
+    public void setConfig(final DroidGlobalConfig config) {
+        this.config = config;
+    }
+
     /**
      * Shuts down the executor service.
      */
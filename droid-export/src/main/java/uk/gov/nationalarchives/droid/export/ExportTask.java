@@ -36,22 +36,34 @@ import java.io.IOException;
 import java.io.OutputStream;
 import java.io.OutputStreamWriter;
 import java.io.PrintWriter;
+import java.io.Reader;
 import java.io.Writer;
+import java.nio.CharBuffer;
 import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.EnumSet;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
 
 import org.apache.commons.lang.time.StopWatch;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import uk.gov.nationalarchives.droid.core.interfaces.filter.Filter;
+import uk.gov.nationalarchives.droid.core.interfaces.hash.HashAlgorithm;
 import uk.gov.nationalarchives.droid.export.interfaces.ExportOptions;
 import uk.gov.nationalarchives.droid.export.interfaces.ItemReader;
 import uk.gov.nationalarchives.droid.export.interfaces.ItemReaderCallback;
@@ -63,8 +75,16 @@ import uk.gov.nationalarchives.droid.profile.ProfileInstanceManager;
 import uk.gov.nationalarchives.droid.profile.ProfileResourceNode;
 
 /**
- * @author rflitcroft, Brian O'Reilly
+ * Exports one or more profiles to a file or to standard out.
+ *
+ * <p>When several profiles are exported with more than one profile thread, each profile is read on its
+ * own thread, with its own connection to its profile database, and its rows are formatted on that thread.
+ * The first profile is written straight to the destination, while the others are spooled to temporary
+ * files in the spool directory, which are copied to the destination in the order the profiles were given.
+ * A profile is only opened once a thread starts to read it, so no more profiles are open at once than
+ * there are profile threads.  The spool files are deleted once the export finishes, fails or is cancelled.</p>
  *
+ * @author rflitcroft, Brian O'Reilly
  */
 public class ExportTask implements Runnable {
 
@@ -72,6 +92,11 @@ public class ExportTask implements Runnable {
     private static final int BOM_1 = 0xEF;
     private static final int BOM_2 = 0xBB;
     private static final int BOM_3 = 0xBF;
+    private static final int COPY_BUFFER_CHARS = 64 * 1024;
+    private static final long SPOOL_STOP_SECONDS = 10;
+    private static final String SPOOL_PREFIX = "droid-export-";
+    private static final String SPOOL_SUFFIX = ".csv";
+    private static final String CANCELLED = "Cancelled";
 
     private final Logger log = LoggerFactory.getLogger(getClass());
 
@@ -83,8 +108,11 @@ public class ExportTask implements Runnable {
     private final boolean bom;
     private final ItemWriter<ProfileResourceNode> itemWriter;
     private final ProfileContextLocator profileContextLocator;
+    private final int profileThreads;
+    private Path spoolDir;
 
     private volatile boolean cancelled;
+    private volatile boolean spoolingStopped;
     
 
     /**
@@ -101,6 +129,28 @@ public class ExportTask implements Runnable {
             final Filter filterOverride, final ExportOptions options,
             final String outputEncoding, final boolean bom, final ItemWriter<ProfileResourceNode> itemWriter,
             final ProfileContextLocator profileContextLocator) {
+        this(destination, profileIds, filterOverride, options, outputEncoding, bom, itemWriter,
+                profileContextLocator, 1);
+    }
+
+    /**
+     * @param destination Output file path
+     * @param profileIds ids of the profiles to export
+     * @param filterOverride the override filter
+     * @param options options for the export file format
+     * @param outputEncoding A charset encoding for the output file, or null indicates platform locale encoding
+     * @param bom Add bom to the file.
+     * @param itemWriter The writer for writing the export items
+     * @param profileContextLocator locator of the profile context
+     * @param profileThreads The number of profiles which are read at the same time
+     */
+    //CHECKSTYLE:OFF - more than 7 parameters.
+    public ExportTask(final String destination, final List<String> profileIds,
+            final Filter filterOverride, final ExportOptions options,
+            final String outputEncoding, final boolean bom, final ItemWriter<ProfileResourceNode> itemWriter,
+            final ProfileContextLocator profileContextLocator, final int profileThreads) {
+    //CHECKSTYLE:ON
+        this.profileThreads = profileThreads;
         this.destination = destination;
         this.profileIds = profileIds;
         this.filterOverride = filterOverride;
@@ -111,6 +161,15 @@ public class ExportTask implements Runnable {
         this.profileContextLocator = profileContextLocator;
     }
 
+    /**
+     * Sets the directory profiles are spooled to when several are exported at once.
+     * If it is not set, profiles are spooled to the system temporary directory.
+     * @param spoolDir The directory profiles are spooled to.
+     */
+    public void setSpoolDir(final Path spoolDir) {
+        this.spoolDir = spoolDir;
+    }
+
     /**
      * Cancels the task.
      */
@@ -191,36 +250,16 @@ public class ExportTask implements Runnable {
         itemWriter.setOptions(options);
         itemWriter.setHeaders(headerCustomisations);
         itemWriter.open(writer);
-        
-        StopWatch stopWatch = new StopWatch();
+
+        final List<ProfileExport> exports = new ArrayList<>();
+        ExecutorService spoolExecutor = null;
         try {
             for (String profileId : profileIds) {
-                stopWatch.start();
-                if (!profileContextLocator.hasProfileContext(profileId)) {
-                    final String message = String.format(PROJECT_NOT_AVAILABLE_FOR_EXPORT, profileId);
-                    log.warn(message);
-                    throw new RuntimeException(message);
-                }
-                ProfileInstance profile = profileContextLocator.getProfileInstance(profileId);
-                ProfileInstanceManager profileContext = profileContextLocator.openProfileInstanceManager(profile);
-                ItemReader<ProfileResourceNode> reader = profileContext.getNodeItemReader();
-                ItemReaderCallback<ProfileResourceNode> callback = new ItemReaderCallback<ProfileResourceNode>() {
-                    @Override
-                    public void onItem(List<? extends ProfileResourceNode> itemChunk)
-                        throws JobCancellationException {
-                        itemWriter.write(itemChunk);
-                        if (cancelled) {
-                            log.info("Export interrupted");
-                            throw new JobCancellationException("Cancelled");
-                        }
-                    }
-                };
-
-                Filter filter = filterOverride != null ? filterOverride : profile.getFilter();
-                reader.readAll(callback, filter);
-                stopWatch.stop();
-                log.info(String.format("Time for export [%s]: %s ms", profileId, stopWatch.getTime()));
-                stopWatch.reset();
+                exports.add(newProfileExport(profileId));
+            }
+            spoolExecutor = startSpooling(exports);
+            for (ProfileExport export : exports) {
+                export.writeTo();
             }
         } catch (JobCancellationException e) {
             String message = String.format("Export cancelled - deleting export destination: %s",
@@ -228,24 +267,78 @@ public class ExportTask implements Runnable {
             log.info(message);
             cancelled = true;
         } finally {
+            stopSpooling(spoolExecutor, exports);
             log.info(String.format("Closing export file: %s", destinationDescription));
             itemWriter.close();
             if (cancelled && destination != null) {
-                final Path toDelete = Paths.get(destination);
+                deleteDestination();
+            }
+        }
+    }
 
-                if (Files.exists(toDelete)) {
-                    try {
-                        Files.deleteIfExists(toDelete);
-                    } catch (final IOException ioe) {
-                        log.warn(String.format("Could not delete export file: %s. "
-                                + "Will try to delete on exit.", destination));
-                        toDelete.toFile().deleteOnExit();
-                    }
-                }
+    /*
+     * Spools every profile but the first on the profile threads, and returns their executor, or null if
+     * no profiles are spooled.  Profiles can only be spooled by an item writer which formats their rows.
+     */
+    private ExecutorService startSpooling(List<ProfileExport> exports) {
+        final int spoolThreads = itemWriter.canFormat() ? Math.min(profileThreads - 1, exports.size() - 1) : 0;
+        ExecutorService spoolExecutor = null;
+        if (spoolThreads > 0) {
+            spoolExecutor = Executors.newFixedThreadPool(spoolThreads);
+            for (ProfileExport export : exports.subList(1, exports.size())) {
+                export.spool(spoolExecutor);
             }
         }
+        return spoolExecutor;
     }
-    
+
+    private void stopSpooling(ExecutorService spoolExecutor, List<ProfileExport> exports) {
+        if (spoolExecutor != null) {
+            spoolingStopped = true;
+            spoolExecutor.shutdownNow();
+            awaitSpooling(spoolExecutor);
+        }
+        // Any profile still spooling deletes its own spool file when it stops.
+        for (ProfileExport export : exports) {
+            export.deleteSpoolFile();
+        }
+    }
+
+    private void deleteDestination() {
+        final Path toDelete = Paths.get(destination);
+
+        if (Files.exists(toDelete)) {
+            try {
+                Files.deleteIfExists(toDelete);
+            } catch (final IOException ioe) {
+                log.warn(String.format("Could not delete export file: %s. "
+                        + "Will try to delete on exit.", destination));
+                toDelete.toFile().deleteOnExit();
+            }
+        }
+    }
+
+    private ProfileExport newProfileExport(String profileId) {
+        if (!profileContextLocator.hasProfileContext(profileId)) {
+            final String message = String.format(PROJECT_NOT_AVAILABLE_FOR_EXPORT, profileId);
+            log.warn(message);
+            throw new RuntimeException(message);
+        }
+        ProfileInstance profile = profileContextLocator.getProfileInstance(profileId);
+        Filter filter = filterOverride != null ? filterOverride : profile.getFilter();
+        return new ProfileExport(profileId, profile, filter);
+    }
+
+    private void awaitSpooling(ExecutorService spoolExecutor) {
+        try {
+            if (!spoolExecutor.awaitTermination(SPOOL_STOP_SECONDS, TimeUnit.SECONDS)) {
+                log.warn("Profiles are still being spooled after the export stopped");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
     private Map<String, String> getHeaderCustomisationsFromProfiles() {
 
         // Brian O'Reilly, July 2014:
@@ -256,6 +349,7 @@ public class ExportTask implements Runnable {
         Map<String, String> map = new HashMap<String, String>();
         String hashAlgorithmHeader = "HASH";
         Set<String> algorithmsFound = new HashSet<String>();
+        Set<HashAlgorithm> additionalAlgorithms = EnumSet.noneOf(HashAlgorithm.class);
  
         for (String profileId : this.profileIds) {
             if (!this.profileContextLocator.hasProfileContext(profileId)) {
@@ -266,6 +360,7 @@ public class ExportTask implements Runnable {
             ProfileInstance profile = profileContextLocator.getProfileInstance(profileId);
             if (profile.getGenerateHash()) {
                 algorithmsFound.add(profile.getHashAlgorithm().toUpperCase());
+                addHashAlgorithms(additionalAlgorithms, profile.getAdditionalHashAlgorithms());
             }
         } 
         
@@ -275,9 +370,159 @@ public class ExportTask implements Runnable {
         //the generic "HASH" header.
         if (algorithmsFound.size() == 1) {
             hashAlgorithmHeader = algorithmsFound.iterator().next() + "_HASH";
+            additionalAlgorithms.remove(HashAlgorithm.forName(algorithmsFound.iterator().next()));
         }
         
         map.put("hash", hashAlgorithmHeader);
+
+        // Any additional hash algorithms the profiles generated are exported in their own columns.
+        map.put("additionalHashes", additionalAlgorithms.stream()
+                .map(HashAlgorithm::getName).collect(Collectors.joining(" ")));
         return map;
     }
+
+    private static void addHashAlgorithms(Set<HashAlgorithm> algorithms, String algorithmNames) {
+        if (algorithmNames != null) {
+            for (String name : algorithmNames.split("[\\s,]+")) {
+                final HashAlgorithm algorithm = HashAlgorithm.forName(name);
+                if (algorithm != null) {
+                    algorithms.add(algorithm);
+                }
+            }
+        }
+    }
+
+    /**
+     * The export of one profile, which is either written straight to the destination as it is read,
+     * or read on another thread which formats its rows into a temporary file, copied to the destination later.
+     * The profile is opened when it starts to be read.
+     */
+    private final class ProfileExport {
+
+        private final String profileId;
+        private final ProfileInstance profile;
+        private final Filter filter;
+
+        private Future<?> spooled;
+        private volatile Path spoolFile;
+        private List<? extends ProfileResourceNode> firstChunk;
+
+        ProfileExport(String profileId, ProfileInstance profile, Filter filter) {
+            this.profileId = profileId;
+            this.profile = profile;
+            this.filter = filter;
+        }
+
+        /**
+         * Reads the profile on another thread, spooling its rows to a temporary file.
+         * @param executor the executor of the profile threads which spool profiles
+         */
+        void spool(ExecutorService executor) {
+            spooled = executor.submit(() -> {
+                if (spoolingStopped) {
+                    return null;
+                }
+                spoolFile = spoolDir == null ? Files.createTempFile(SPOOL_PREFIX, SPOOL_SUFFIX)
+                        : Files.createTempFile(spoolDir, SPOOL_PREFIX, SPOOL_SUFFIX);
+                final StringBuilder rows = new StringBuilder();
+                try (Writer spoolWriter = Files.newBufferedWriter(spoolFile, StandardCharsets.UTF_8)) {
+                    export(chunk -> {
+                        if (firstChunk == null) {
+                            firstChunk = chunk;
+                        }
+                        rows.setLength(0);
+                        for (ProfileResourceNode node : chunk) {
+                            itemWriter.format(node, rows);
+                        }
+                        spoolWriter.append(rows);
+                    });
+                } finally {
+                    // If the export stopped while this profile was still spooling, the export may
+                    // have given up waiting for it, so nothing else deletes it.
+                    if (spoolingStopped) {
+                        deleteSpoolFile();
+                    }
+                }
+                return null;
+            });
+        }
+
+        /**
+         * Writes the rows of the profile to the destination: straight from the profile if it is not being
+         * spooled, or else from its spool file once it has been spooled.
+         */
+        void writeTo() throws JobCancellationException {
+            if (spooled == null) {
+                export(itemWriter::write);
+                return;
+            }
+            try {
+                spooled.get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new JobCancellationException("Interrupted");
+            } catch (ExecutionException e) {
+                if (e.getCause() instanceof JobCancellationException) {
+                    throw (JobCancellationException) e.getCause();
+                }
+                throw new RuntimeException("Could not export " + profileId + ": " + e.getCause().getMessage(),
+                        e.getCause());
+            }
+            final char[] buffer = new char[COPY_BUFFER_CHARS];
+            try (Reader spoolReader = Files.newBufferedReader(spoolFile, StandardCharsets.UTF_8)) {
+                int read;
+                while ((read = spoolReader.read(buffer)) > 0) {
+                    itemWriter.writeFormatted(CharBuffer.wrap(buffer, 0, read), firstChunk);
+                    if (cancelled) {
+                        throw new JobCancellationException(CANCELLED);
+                    }
+                }
+            } catch (IOException e) {
+                throw new RuntimeException("Could not read the spooled export of " + profileId, e);
+            }
+        }
+
+        void deleteSpoolFile() {
+            final Path toDelete = spoolFile;
+            if (toDelete != null) {
+                try {
+                    Files.deleteIfExists(toDelete);
+                } catch (IOException e) {
+                    log.warn(String.format("Could not delete export spool file: %s", toDelete), e);
+                }
+            }
+        }
+
+        private void export(ChunkConsumer consumer) throws JobCancellationException {
+            StopWatch stopWatch = new StopWatch();
+            stopWatch.start();
+            ItemReaderCallback<ProfileResourceNode> callback = new ItemReaderCallback<ProfileResourceNode>() {
+                @Override
+                public void onItem(List<? extends ProfileResourceNode> itemChunk)
+                    throws JobCancellationException {
+                    try {
+                        consumer.accept(itemChunk);
+                    } catch (IOException e) {
+                        throw new RuntimeException("Could not spool the export of " + profileId, e);
+                    }
+                    if (cancelled || spoolingStopped) {
+                        log.info("Export interrupted");
+                        throw new JobCancellationException(CANCELLED);
+                    }
+                }
+            };
+            final ProfileInstanceManager profileContext = profileContextLocator.openProfileInstanceManager(profile);
+            final ItemReader<ProfileResourceNode> reader = profileContext.getNodeItemReader();
+            reader.readAll(callback, filter);
+            stopWatch.stop();
+            log.info(String.format("Time for export [%s]: %s ms", profileId, stopWatch.getTime()));
+        }
+    }
+
+    /**
+     * Consumes a chunk of the nodes read from a profile.
+     */
+    private interface ChunkConsumer {
+        void accept(List<? extends ProfileResourceNode> chunk) throws IOException;
+    }
 }
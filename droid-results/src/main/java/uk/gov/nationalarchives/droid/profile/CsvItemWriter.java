@@ -41,12 +41,14 @@ import org.apache.commons.lang.time.FastDateFormat;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import uk.gov.nationalarchives.droid.core.interfaces.config.DroidGlobalConfig;
+import uk.gov.nationalarchives.droid.core.interfaces.hash.HashAlgorithm;
 import uk.gov.nationalarchives.droid.core.interfaces.util.DroidUrlFormat;
 import uk.gov.nationalarchives.droid.export.interfaces.ExportOptions;
 import uk.gov.nationalarchives.droid.export.interfaces.ItemWriter;
 import uk.gov.nationalarchives.droid.profile.referencedata.Format;
 
 import java.io.File;
+import java.io.IOException;
 import java.io.Writer;
 import java.net.URI;
 import java.nio.file.Paths;
@@ -86,6 +88,7 @@ public class CsvItemWriter implements ItemWriter<ProfileResourceNode> {
     private static final String HEADER_NAME_MIME_TYPE = "MIME_TYPE";
     private static final String HEADER_NAME_FORMAT_NAME = "FORMAT_NAME";
     private static final String HEADER_NAME_FORMAT_VERSION = "FORMAT_VERSION";
+    private static final String HEADER_SUFFIX_HASH = "_HASH";
 
     /**
      * Headers used in the CSV output
@@ -141,14 +144,20 @@ public class CsvItemWriter implements ItemWriter<ProfileResourceNode> {
     private static final int FORMAT_NAME_ARRAY_INDEX        = 16;
     private static final int FORMAT_VERSION_ARRAY_INDEX     = 17;
     private static final String BLANK_SPACE_DELIMITER       = " ";
+    private static final char LINE_SEPARATOR                = '\n';
 
     private final Logger log = LoggerFactory.getLogger(getClass());
 
     private CsvWriter csvWriter;
+    private Writer output;
+    private volatile CsvWriterSettings csvWriterSettings;
+    private boolean formattedRowsWritten;
+    private final ThreadLocal<RowFormatter> rowFormatters = ThreadLocal.withInitial(RowFormatter::new);
     private final FastDateFormat dateFormat = DateFormatUtils.ISO_DATETIME_FORMAT;
     private ExportOptions options = ExportOptions.ONE_ROW_PER_FILE;
     
     private String[] headers;
+    private HashAlgorithm[] additionalHashes = new HashAlgorithm[0];
     private boolean quoteAllFields;
     private final boolean[] columnsToWrite;
     private int numColumnsToWrite;
@@ -199,13 +208,7 @@ public class CsvItemWriter implements ItemWriter<ProfileResourceNode> {
         try {
             for (ProfileResourceNode node : nodes) {
                 List<String> nodeEntries = new ArrayList<>();
-                addNodeColumns(nodeEntries, node);
-                for (Format format : node.getFormatIdentifications()) {
-                    addColumn(nodeEntries, PUID_ARRAY_INDEX, format.getPuid());
-                    addColumn(nodeEntries, MIME_TYPE_ARRAY_INDEX, format.getMimeType());
-                    addColumn(nodeEntries, FORMAT_NAME_ARRAY_INDEX, format.getName());
-                    addColumn(nodeEntries, FORMAT_VERSION_ARRAY_INDEX, format.getVersion());
-                }
+                addFileColumns(nodeEntries, node);
                 csvWriter.writeRow(nodeEntries);
             }
             csvWriter.flush();
@@ -226,10 +229,7 @@ public class CsvItemWriter implements ItemWriter<ProfileResourceNode> {
                 for (Format format : node.getFormatIdentifications()) {
                     List<String> nodeEntries = new ArrayList<>();
                     addNodeColumns(nodeEntries, node);
-                    addColumn(nodeEntries, PUID_ARRAY_INDEX, format.getPuid());
-                    addColumn(nodeEntries, MIME_TYPE_ARRAY_INDEX, format.getMimeType());
-                    addColumn(nodeEntries, FORMAT_NAME_ARRAY_INDEX, format.getName());
-                    addColumn(nodeEntries, FORMAT_VERSION_ARRAY_INDEX, format.getVersion());
+                    addFormatColumns(nodeEntries, format);
                     csvWriter.writeRow(nodeEntries);
                 }
             }
@@ -240,6 +240,58 @@ public class CsvItemWriter implements ItemWriter<ProfileResourceNode> {
         }
     }
 
+    /**
+     * Formats a node into rows using a CSV writer belonging to the calling thread, so nodes can be
+     * formatted by many threads at once without building a new list for each row.
+     */
+    @Override
+    public boolean canFormat() {
+        return true;
+    }
+
+    @Override
+    public void format(ProfileResourceNode node, StringBuilder rows) {
+        final RowFormatter formatter = rowFormatters.get();
+        final List<String> row = formatter.row;
+        try {
+            if (options == ExportOptions.ONE_ROW_PER_FORMAT) {
+                for (Format format : node.getFormatIdentifications()) {
+                    row.clear();
+                    addNodeColumns(row, node);
+                    addFormatColumns(row, format);
+                    rows.append(formatter.getCsvWriter().writeRowToString(row)).append(LINE_SEPARATOR);
+                }
+            } else {
+                row.clear();
+                addFileColumns(row, node);
+                rows.append(formatter.getCsvWriter().writeRowToString(row)).append(LINE_SEPARATOR);
+            }
+        } catch (final TextWritingException e) {
+            log.error(e.getRecordCharacters(), e);
+            throw new RuntimeException(e.getMessage(), e);
+        }
+    }
+
+    @Override
+    public void writeFormatted(CharSequence rows, List<? extends ProfileResourceNode> nodes) {
+        if (!formattedRowsWritten && csvWriter.getRecordCount() == 0) {
+            if (options == ExportOptions.ONE_ROW_PER_FORMAT) {
+                csvWriter.writeHeaders(Arrays.asList(getHeadersToWrite(headers)));
+            } else {
+                writeHeadersForOneRowPerFileExport(nodes);
+            }
+            csvWriter.flush(); // the headers must reach the writer before the rows do.
+        }
+        formattedRowsWritten = true;
+        try {
+            output.append(rows);
+            output.flush();
+        } catch (IOException e) {
+            log.error("Error writing formatted rows: " + e.getMessage(), e);
+            throw new RuntimeException(e.getMessage(), e);
+        }
+    }
+
     /**
      * @param csvWriter the csvWriter to write to.
      */
@@ -249,13 +301,16 @@ public class CsvItemWriter implements ItemWriter<ProfileResourceNode> {
 
     @Override
     public void open(final Writer writer) {
-        final CsvWriterSettings csvWriterSettings = new CsvWriterSettings();
-        csvWriterSettings.setQuoteAllFields(quoteAllFields);
+        this.output = writer;
+        formattedRowsWritten = false;
+        final CsvWriterSettings settings = new CsvWriterSettings();
+        settings.setQuoteAllFields(quoteAllFields);
         CsvFormat format = new CsvFormat();
         // following Unix convention on line separators as previously
-        format.setLineSeparator("\n");
-        csvWriterSettings.setFormat(format);
-        csvWriter = new CsvWriter(writer, csvWriterSettings);
+        format.setLineSeparator(String.valueOf(LINE_SEPARATOR));
+        settings.setFormat(format);
+        csvWriter = new CsvWriter(writer, settings);
+        csvWriterSettings = settings;
         if (headers == null) {
             headers = Arrays.copyOf(HEADERS, HEADERS.length) ;
         }
@@ -365,6 +420,19 @@ public class CsvItemWriter implements ItemWriter<ProfileResourceNode> {
         if (hashHeader != null) {
             this.headers[HASH_ARRAY_INDEX] = hashHeader;
         }
+
+        // Any other hashes generated are written in their own columns after the hash column.
+        final List<HashAlgorithm> algorithms = new ArrayList<>();
+        final String additionalHashNames = headersToSet.get("additionalHashes");
+        if (additionalHashNames != null) {
+            for (String name : additionalHashNames.split(BLANK_SPACE_DELIMITER)) {
+                final HashAlgorithm algorithm = HashAlgorithm.forName(name);
+                if (algorithm != null && !algorithms.contains(algorithm)) {
+                    algorithms.add(algorithm);
+                }
+            }
+        }
+        this.additionalHashes = algorithms.toArray(new HashAlgorithm[0]);
     }
 
     @Override
@@ -416,15 +484,19 @@ public class CsvItemWriter implements ItemWriter<ProfileResourceNode> {
     }
 
     private String[] getHeadersToWrite(String[] headersToWrite) {
-        if (numColumnsToWrite < columnsToWrite.length) {
-            String[] newHeaders = new String[numColumnsToWrite];
-            int newHeaderIndex = 0;
+        if (numColumnsToWrite < columnsToWrite.length || additionalHashes.length > 0) {
+            List<String> newHeaders = new ArrayList<>(numColumnsToWrite + additionalHashes.length);
             for (int i = 0; i < columnsToWrite.length; i++) {
                 if (columnsToWrite[i]) {
-                    newHeaders[newHeaderIndex++] = headers[i];
+                    newHeaders.add(headers[i]);
+                    if (i == HASH_ARRAY_INDEX) {
+                        for (HashAlgorithm algorithm : additionalHashes) {
+                            newHeaders.add(algorithm.name() + HEADER_SUFFIX_HASH);
+                        }
+                    }
                 }
             }
-            return newHeaders;
+            return newHeaders.toArray(new String[0]);
         }
         return headersToWrite;
     }
@@ -444,13 +516,51 @@ public class CsvItemWriter implements ItemWriter<ProfileResourceNode> {
         addColumn(row, LAST_MODIFIED_ARRAY_INDEX, nullSafeDate(metaData.getLastModifiedDate(), dateFormat));
         addColumn(row, EXTENSION_MISMATCH_ARRAY_INDEX, node.getExtensionMismatch().toString());
         addColumn(row, HASH_ARRAY_INDEX, metaData.getHash());
+        if (columnsToWrite[HASH_ARRAY_INDEX]) {
+            for (HashAlgorithm algorithm : additionalHashes) {
+                row.add(metaData.getHash(algorithm));
+            }
+        }
         addColumn(row, ID_COUNT_ARRAY_INDEX, nullSafeNumber(node.getIdentificationCount()));
     }
 
+    private void addFileColumns(List<String> row, ProfileResourceNode node) {
+        addNodeColumns(row, node);
+        for (Format format : node.getFormatIdentifications()) {
+            addFormatColumns(row, format);
+        }
+    }
+
+    private void addFormatColumns(List<String> row, Format format) {
+        addColumn(row, PUID_ARRAY_INDEX, format.getPuid());
+        addColumn(row, MIME_TYPE_ARRAY_INDEX, format.getMimeType());
+        addColumn(row, FORMAT_NAME_ARRAY_INDEX, format.getName());
+        addColumn(row, FORMAT_VERSION_ARRAY_INDEX, format.getVersion());
+    }
+
     private void addColumn(List<String> row, int columnIndex, String value) {
         if (columnsToWrite[columnIndex]) {
             row.add(value);
         }
     }
+
+    /**
+     * A CSV writer which only formats rows to strings, and a row to reuse, for one thread.
+     * The CSV writer is made again if the item writer has been opened with new settings since it was made.
+     */
+    private final class RowFormatter {
+
+        private final List<String> row = new ArrayList<>();
+        private CsvWriter rowWriter;
+        private CsvWriterSettings rowWriterSettings;
+
+        private CsvWriter getCsvWriter() {
+            if (rowWriterSettings != csvWriterSettings) {
+                rowWriterSettings = csvWriterSettings;
+                rowWriter = new CsvWriter(rowWriterSettings);
+            }
+            return rowWriter;
+        }
+    }
 }
 
@@ -351,6 +351,13 @@ public class JDBCProfileDao implements ProfileDao {
         populateResultHandlerReferenceData();
     }
 
+    @Override
+    public void buildIndexes() {
+        if (this.resultHandlerDao instanceof JDBCBatchResultHandlerDao) {
+            ((JDBCBatchResultHandlerDao) this.resultHandlerDao).buildDeferredIndexes();
+        }
+    }
+
 
     private void loadIdentifications(Long parentId, final List<ProfileResourceNode> childNodes) {
         if (childNodes.size() > 0) {
@@ -32,10 +32,13 @@
 package uk.gov.nationalarchives.droid.profile;
 
 import java.util.Date;
+import java.util.EnumMap;
+import java.util.Map;
 
 import uk.gov.nationalarchives.droid.core.interfaces.IdentificationMethod;
 import uk.gov.nationalarchives.droid.core.interfaces.NodeStatus;
 import uk.gov.nationalarchives.droid.core.interfaces.ResourceType;
+import uk.gov.nationalarchives.droid.core.interfaces.hash.HashAlgorithm;
 
 /**
  * @author rflitcroft
@@ -56,6 +59,7 @@ public class NodeMetaData {
     private IdentificationMethod identificationMethod;
     private ResourceType  resourceType;
     private String hash;
+    private Map<HashAlgorithm, String> hashes;
 
     /**
      * Default constructor.
@@ -100,6 +104,7 @@ public class NodeMetaData {
         this.identificationMethod = toCopy.identificationMethod;
         this.resourceType         = toCopy.resourceType;
         this.hash                 = toCopy.hash;
+        this.hashes               = toCopy.hashes == null ? null : new EnumMap<>(toCopy.hashes);
     }
 
     /**
@@ -233,4 +238,36 @@ public class NodeMetaData {
         return hash;
     }
 
+    /**
+     * @param algorithm the algorithm the hash was calculated with
+     * @param algorithmHash the hash to set
+     */
+    public void setHash(HashAlgorithm algorithm, String algorithmHash) {
+        if (algorithmHash == null) {
+            if (hashes != null) {
+                hashes.remove(algorithm);
+            }
+        } else {
+            if (hashes == null) {
+                hashes = new EnumMap<>(HashAlgorithm.class);
+            }
+            hashes.put(algorithm, algorithmHash);
+        }
+    }
+
+    /**
+     * @param algorithm the algorithm the hash was calculated with
+     * @return the hash calculated with the algorithm, or null if it was not calculated
+     */
+    public String getHash(HashAlgorithm algorithm) {
+        return hashes == null ? null : hashes.get(algorithm);
+    }
+
+    /**
+     * @param hashes the hashes calculated for each algorithm
+     */
+    public void setHashes(Map<HashAlgorithm, String> hashes) {
+        this.hashes = hashes == null || hashes.isEmpty() ? null : new EnumMap<>(hashes);
+    }
+
 }
@@ -66,7 +66,14 @@ public class ProfileContextLocator {
     private static final String BLANK_PROFILE = "profile.template";
     private static final String SIG_PROFILE = "profile\\.\\d+\\.template";
     private static final String DEFAULT_HASH_ALGORITH = "md5";
+    private static final long DEFAULT_HASH_PARALLEL_THRESHOLD = 0;
     private static final int DEFAULT_MAX_BYTES_TO_SCAN = 65536;
+    private static final String DEFAULT_MATCHING_ENGINE = "standard";
+    private static final String DEFAULT_RESULT_STORE = "database";
+    private static final long DEFAULT_MAPPED_FILE_THRESHOLD = -1;
+    private static final String DEFAULT_EXECUTOR = "blocking";
+    private static final int DEFAULT_IO_THREADS = 0;
+    private static final int DEFAULT_READ_AHEAD_BYTES = 65536;
 
     private final Logger log = LoggerFactory.getLogger(getClass());
     private DroidGlobalConfig globalConfig;
@@ -186,7 +193,19 @@ public class ProfileContextLocator {
 
         props.setProperty("generateHash", String.valueOf(profile.getGenerateHash()));
         props.setProperty("hashAlgorithm", String.valueOf(profile.getHashAlgorithm()));
+        props.setProperty("additionalHashAlgorithms", String.valueOf(profile.getAdditionalHashAlgorithms()));
+        props.setProperty("hashParallelThreshold", String.valueOf(profile.getHashParallelThreshold()));
         props.setProperty("maxBytesToScan", String.valueOf(profile.getMaxBytesToScan()));
+        props.setProperty("matchingEngine", String.valueOf(profile.getMatchingEngine()));
+        props.setProperty("mappedFileThreshold", String.valueOf(profile.getMappedFileThreshold()));
+        props.setProperty("executor", profile.getExecutor() == null ? DEFAULT_EXECUTOR : profile.getExecutor());
+        props.setProperty("executorParallelism", String.valueOf(profile.getExecutorParallelism()));
+        props.setProperty("executorQueueCapacity", String.valueOf(profile.getExecutorQueueCapacity()));
+        props.setProperty("ioThreads", String.valueOf(profile.getIoThreads()));
+        props.setProperty("readAheadBytes", String.valueOf(profile.getReadAheadBytes()));
+        props.setProperty("bulkLoad", String.valueOf(profile.getBulkLoad()));
+        props.setProperty("databaseWriters", String.valueOf(profile.getDatabaseWriters()));
+        props.setProperty("resultStore", String.valueOf(profile.getResultStore()));
         props.setProperty("matchAllExtensions", String.valueOf(profile.getMatchAllExtensions()));
 
         String outputFilePath = profile.getOutputFilePath();
@@ -409,8 +428,7 @@ public class ProfileContextLocator {
         ProfileInstance profileInstance = new ProfileInstance(ProfileState.INITIALISING);
         profileInstance.setUuid(id);
         profileInstance.setThrottle(mergedConfig.getInt(DroidGlobalProperty.DEFAULT_THROTTLE.getName(), 0));
-        profileInstance.setHashAlgorithm(mergedConfig.getString(DroidGlobalProperty.HASH_ALGORITHM.getName(), DEFAULT_HASH_ALGORITH));
-        profileInstance.setGenerateHash(mergedConfig.getBoolean(DroidGlobalProperty.GENERATE_HASH.getName(), false));
+        setHashProperties(profileInstance, mergedConfig);
         profileInstance.setProcessTarFiles(mergedConfig.getBoolean(DroidGlobalProperty.PROCESS_TAR.getName(), true));
         profileInstance.setProcessZipFiles(mergedConfig.getBoolean(DroidGlobalProperty.PROCESS_ZIP.getName(), true));
         profileInstance.setProcessGzipFiles(mergedConfig.getBoolean(DroidGlobalProperty.PROCESS_GZIP.getName(), true));
@@ -421,7 +439,13 @@ public class ProfileContextLocator {
         profileInstance.setProcessArcFiles(mergedConfig.getBoolean(DroidGlobalProperty.PROCESS_ARC.getName(), true));
         profileInstance.setProcessWarcFiles(mergedConfig.getBoolean(DroidGlobalProperty.PROCESS_WARC.getName(), true));
         profileInstance.setMaxBytesToScan(mergedConfig.getLong(DroidGlobalProperty.MAX_BYTES_TO_SCAN.getName(), DEFAULT_MAX_BYTES_TO_SCAN));
+        profileInstance.setMatchingEngine(mergedConfig.getString(DroidGlobalProperty.MATCHING_ENGINE.getName(), DEFAULT_MATCHING_ENGINE));
+        profileInstance.setMappedFileThreshold(mergedConfig.getLong(DroidGlobalProperty.MAPPED_FILE_THRESHOLD.getName(), DEFAULT_MAPPED_FILE_THRESHOLD));
+        setExecutorProperties(profileInstance, mergedConfig);
         profileInstance.setMatchAllExtensions(mergedConfig.getBoolean(DroidGlobalProperty.EXTENSION_ALL.getName(), false));
+        profileInstance.setBulkLoad(mergedConfig.getBoolean(DroidGlobalProperty.BULK_LOAD.getName(), false));
+        profileInstance.setDatabaseWriters(mergedConfig.getInt(DroidGlobalProperty.DATABASE_WRITERS.getName(), 1));
+        profileInstance.setResultStore(mergedConfig.getString(DroidGlobalProperty.RESULT_STORE.getName(), DEFAULT_RESULT_STORE));
         profileInstance.setOutputFilePath(mergedConfig.getString(DroidGlobalProperty.OUTPUT_FILE_PATH.getName(), ""));
         profileInstance.setQuoteAllFields(mergedConfig.getBoolean(DroidGlobalProperty.QUOTE_ALL_FIELDS.getName(), true));
         profileInstance.setColumnsToWrite(mergedConfig.getString(DroidGlobalProperty.COLUMNS_TO_WRITE.getName(), ""));
@@ -431,6 +455,21 @@ public class ProfileContextLocator {
         return profileInstance;
     }
 
+    private void setHashProperties(ProfileInstance profileInstance, PropertiesConfiguration mergedConfig) {
+        profileInstance.setHashAlgorithm(mergedConfig.getString(DroidGlobalProperty.HASH_ALGORITHM.getName(), DEFAULT_HASH_ALGORITH));
+        profileInstance.setGenerateHash(mergedConfig.getBoolean(DroidGlobalProperty.GENERATE_HASH.getName(), false));
+        profileInstance.setAdditionalHashAlgorithms(mergedConfig.getString(DroidGlobalProperty.ADDITIONAL_HASH_ALGORITHMS.getName(), ""));
+        profileInstance.setHashParallelThreshold(mergedConfig.getLong(DroidGlobalProperty.HASH_PARALLEL_THRESHOLD.getName(), DEFAULT_HASH_PARALLEL_THRESHOLD));
+    }
+
+    private void setExecutorProperties(ProfileInstance profileInstance, PropertiesConfiguration mergedConfig) {
+        profileInstance.setExecutor(mergedConfig.getString(DroidGlobalProperty.EXECUTOR.getName(), DEFAULT_EXECUTOR));
+        profileInstance.setExecutorParallelism(mergedConfig.getInt(DroidGlobalProperty.EXECUTOR_PARALLELISM.getName(), 0));
+        profileInstance.setExecutorQueueCapacity(mergedConfig.getInt(DroidGlobalProperty.EXECUTOR_QUEUE_CAPACITY.getName(), 0));
+        profileInstance.setIoThreads(mergedConfig.getInt(DroidGlobalProperty.IO_THREADS.getName(), DEFAULT_IO_THREADS));
+        profileInstance.setReadAheadBytes(mergedConfig.getInt(DroidGlobalProperty.READ_AHEAD_BYTES.getName(), DEFAULT_READ_AHEAD_BYTES));
+    }
+
     private PropertiesConfiguration mergeConfigurations(PropertiesConfiguration defaults, PropertiesConfiguration overrides) {
         if (overrides != null) {
             CombinedConfiguration combined = new CombinedConfiguration();
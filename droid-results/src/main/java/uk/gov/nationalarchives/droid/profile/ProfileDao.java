@@ -80,4 +80,9 @@ public interface ProfileDao {
      */
     void initialise();
 
+    /**
+     * Commits the results saved so far, and builds any indexes which were left out while they were saved.
+     */
+    void buildIndexes();
+
 }
@@ -123,6 +123,12 @@ public class ProfileInstance {
     @XmlElement(name = "HashAlgorithm")
     private String hashAlgorithm;
 
+    @XmlElement(name = "AdditionalHashAlgorithms")
+    private String additionalHashAlgorithms;
+
+    @XmlElement(name = "HashParallelThreshold")
+    private Long hashParallelThreshold;
+
     @XmlElement(name = "ProcessTarFiles")
     private Boolean processTarFiles;
     @XmlElement(name = "ProcessZipFiles")
@@ -146,6 +152,36 @@ public class ProfileInstance {
     @XmlElement(name = "MaxBytesToScan")
     private Long maxBytesToScan;
 
+    @XmlElement(name = "MatchingEngine")
+    private String matchingEngine;
+
+    @XmlElement(name = "MappedFileThreshold")
+    private Long mappedFileThreshold;
+
+    @XmlElement(name = "Executor")
+    private String executor;
+
+    @XmlElement(name = "ExecutorParallelism")
+    private Integer executorParallelism;
+
+    @XmlElement(name = "ExecutorQueueCapacity")
+    private Integer executorQueueCapacity;
+
+    @XmlElement(name = "IoThreads")
+    private Integer ioThreads;
+
+    @XmlElement(name = "ReadAheadBytes")
+    private Integer readAheadBytes;
+
+    @XmlElement(name = "BulkLoad")
+    private Boolean bulkLoad;
+
+    @XmlElement(name = "DatabaseWriters")
+    private Integer databaseWriters;
+
+    @XmlElement(name = "ResultStore")
+    private String resultStore;
+
     @XmlElement(name = "MatchAllExtensions")
     private Boolean matchAllExtensions;
 
@@ -624,6 +660,40 @@ public class ProfileInstance {
         this.hashAlgorithm = hashAlgorithm;
     }
 
+    /**
+     *
+     * @return names of algorithms to generate hashes with as well as the hash algorithm.
+     */
+    public String getAdditionalHashAlgorithms() {
+        return additionalHashAlgorithms;
+    }
+
+    /**
+     *
+     * @param additionalHashAlgorithms Algorithms to generate hashes with as well as the hash algorithm.
+     */
+    public void setAdditionalHashAlgorithms(String additionalHashAlgorithms) {
+        this.additionalHashAlgorithms = additionalHashAlgorithms;
+    }
+
+    /**
+     *
+     * @return The bytes of a file after which each hash algorithm is generated on its own thread,
+     *         or zero or less to generate all algorithms on one thread.
+     */
+    public Long getHashParallelThreshold() {
+        return hashParallelThreshold;
+    }
+
+    /**
+     *
+     * @param hashParallelThreshold The bytes of a file after which each hash algorithm is generated
+     *         on its own thread, or zero or less to generate all algorithms on one thread.
+     */
+    public void setHashParallelThreshold(long hashParallelThreshold) {
+        this.hashParallelThreshold = hashParallelThreshold;
+    }
+
     /**
      *
      * @return Whether to process Tar files or not.
@@ -673,6 +743,178 @@ public class ProfileInstance {
     public void setMaxBytesToScan(long maxBytesToScan) {
         this.maxBytesToScan = maxBytesToScan;
     }
+
+    /**
+     *
+     * @return The name of the engine used to match binary signatures.
+     */
+    public String getMatchingEngine() {
+        return matchingEngine;
+    }
+
+    /**
+     *
+     * @param matchingEngine The name of the engine used to match binary signatures.
+     */
+    public void setMatchingEngine(String matchingEngine) {
+        this.matchingEngine = matchingEngine;
+    }
+
+    /**
+     *
+     * @return The size of file at or above which files are read through a memory mapping,
+     *         or negative meaning files are never memory mapped.
+     */
+    public Long getMappedFileThreshold() {
+        return mappedFileThreshold;
+    }
+
+    /**
+     *
+     * @param mappedFileThreshold The size of file at or above which files are read through a memory mapping,
+     *         or negative meaning files are never memory mapped.
+     */
+    public void setMappedFileThreshold(long mappedFileThreshold) {
+        this.mappedFileThreshold = mappedFileThreshold;
+    }
+
+    /**
+     *
+     * @return The name of the scheduler identification requests are run on.
+     */
+    public String getExecutor() {
+        return executor;
+    }
+
+    /**
+     *
+     * @param executor The name of the scheduler identification requests are run on.
+     */
+    public void setExecutor(String executor) {
+        this.executor = executor;
+    }
+
+    /**
+     *
+     * @return The number of threads the work-stealing scheduler uses,
+     *         or zero or less meaning the number of available processors.
+     */
+    public Integer getExecutorParallelism() {
+        return executorParallelism;
+    }
+
+    /**
+     *
+     * @param executorParallelism The number of threads the work-stealing scheduler uses,
+     *         or zero or less meaning the number of available processors.
+     */
+    public void setExecutorParallelism(int executorParallelism) {
+        this.executorParallelism = executorParallelism;
+    }
+
+    /**
+     *
+     * @return The most identification requests which can be in flight in the work-stealing scheduler,
+     *         or zero or less meaning four per thread.
+     */
+    public Integer getExecutorQueueCapacity() {
+        return executorQueueCapacity;
+    }
+
+    /**
+     *
+     * @param executorQueueCapacity The most identification requests which can be in flight
+     *         in the work-stealing scheduler, or zero or less meaning four per thread.
+     */
+    public void setExecutorQueueCapacity(int executorQueueCapacity) {
+        this.executorQueueCapacity = executorQueueCapacity;
+    }
+
+    /**
+     *
+     * @return The number of threads which read files before signatures are matched,
+     *         or zero meaning files are read on the threads which match signatures.
+     */
+    public Integer getIoThreads() {
+        return ioThreads;
+    }
+
+    /**
+     *
+     * @param ioThreads The number of threads which read files before signatures are matched,
+     *         or zero meaning files are read on the threads which match signatures.
+     */
+    public void setIoThreads(int ioThreads) {
+        this.ioThreads = ioThreads;
+    }
+
+    /**
+     *
+     * @return The number of bytes at the start and end of each file which are read before
+     *         signatures are matched.
+     */
+    public Integer getReadAheadBytes() {
+        return readAheadBytes;
+    }
+
+    /**
+     *
+     * @param readAheadBytes The number of bytes at the start and end of each file which are read
+     *         before signatures are matched.
+     */
+    public void setReadAheadBytes(int readAheadBytes) {
+        this.readAheadBytes = readAheadBytes;
+    }
+
+    /**
+     *
+     * @return Whether the profile database is filled without its secondary indexes, which are
+     *         built once the results have been saved.
+     */
+    public Boolean getBulkLoad() {
+        return bulkLoad;
+    }
+
+    /**
+     *
+     * @param bulkLoad Whether the profile database is filled without its secondary indexes, which are
+     *         built once the results have been saved.
+     */
+    public void setBulkLoad(Boolean bulkLoad) {
+        this.bulkLoad = bulkLoad;
+    }
+
+    /**
+     *
+     * @return The number of threads which save results to the profile database.
+     */
+    public Integer getDatabaseWriters() {
+        return databaseWriters;
+    }
+
+    /**
+     *
+     * @param databaseWriters The number of threads which save results to the profile database.
+     */
+    public void setDatabaseWriters(int databaseWriters) {
+        this.databaseWriters = databaseWriters;
+    }
+
+    /**
+     *
+     * @return Where the results of the profile are saved: "database" or "segments".
+     */
+    public String getResultStore() {
+        return resultStore;
+    }
+
+    /**
+     *
+     * @param resultStore Where the results of the profile are saved: "database" or "segments".
+     */
+    public void setResultStore(String resultStore) {
+        this.resultStore = resultStore;
+    }
     
     /**
      * 
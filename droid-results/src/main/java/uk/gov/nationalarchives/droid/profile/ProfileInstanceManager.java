@@ -80,6 +80,12 @@ public interface ProfileInstanceManager {
      */
     void pause();
 
+    /**
+     * Builds any indexes of the profile database which were left out while its results were saved.
+     * This is done when a run completes, and before the profile is saved.
+     */
+    void buildIndexes();
+
     /**
      * Finds all root nodes.
      * 
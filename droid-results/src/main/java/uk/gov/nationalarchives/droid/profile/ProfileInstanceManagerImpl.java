@@ -202,6 +202,11 @@ public class ProfileInstanceManagerImpl implements ProfileInstanceManager {
         }
     }
 
+    @Override
+    public void buildIndexes() {
+        profileDao.buildIndexes();
+    }
+
     /**
      * Resumes a paused profile.
      */
@@ -304,6 +309,7 @@ public class ProfileInstanceManagerImpl implements ProfileInstanceManager {
                     profileInstance.finish();
                 }
                 submissionGateway.save();
+                profileDao.buildIndexes();
                 profileWalkerDao.delete();
             }
         }
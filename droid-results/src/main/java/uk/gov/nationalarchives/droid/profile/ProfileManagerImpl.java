@@ -347,22 +347,27 @@ public class ProfileManagerImpl implements ProfileManager {
         final String outputFilePath = profile.getOutputFilePath();
         if (outputFilePath == null || outputFilePath.isEmpty()) {
             log.info("Saving profile: " + profileId + " to " + destination.toAbsolutePath().toString());
-            // freeze the database so that we can safely zip it up.
-            profileContextLocator.freezeDatabase(profileId);
             ProfileState oldState = profile.getState();
             profile.changeState(ProfileState.SAVING);
-
             try {
-                final Path output = destination != null ? destination : profile.getLoadedFrom();
-
-                profileSpecDao.saveProfile(profile, getProfileHomeDir(profile));
-
-                profileSaver.saveProfile(getProfileHomeDir(profile), output, callback);
-                profile.setLoadedFrom(output);
-                profile.setName(FilenameUtils.getBaseName(FileUtil.fileName(output)));
-                profile.onSave();
+                // build any indexes left out by a bulk load, before the database is frozen.
+                getProfileInstanceManager(profileId).buildIndexes();
+
+                // freeze the database so that we can safely zip it up.
+                profileContextLocator.freezeDatabase(profileId);
+                try {
+                    final Path output = destination != null ? destination : profile.getLoadedFrom();
+
+                    profileSpecDao.saveProfile(profile, getProfileHomeDir(profile));
+
+                    profileSaver.saveProfile(getProfileHomeDir(profile), output, callback);
+                    profile.setLoadedFrom(output);
+                    profile.setName(FilenameUtils.getBaseName(FileUtil.fileName(output)));
+                    profile.onSave();
+                } finally {
+                    profileContextLocator.thawDatabase(profileId);
+                }
             } finally {
-                profileContextLocator.thawDatabase(profileId);
                 profile.changeState(oldState);
             }
         } else {
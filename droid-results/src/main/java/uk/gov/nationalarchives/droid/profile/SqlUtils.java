@@ -50,6 +50,7 @@ import uk.gov.nationalarchives.droid.core.interfaces.filter.RestrictionFactory;
 import uk.gov.nationalarchives.droid.core.interfaces.filter.expressions.Junction;
 import uk.gov.nationalarchives.droid.core.interfaces.filter.expressions.QueryBuilder;
 import uk.gov.nationalarchives.droid.core.interfaces.filter.expressions.Restrictions;
+import uk.gov.nationalarchives.droid.core.interfaces.hash.HashAlgorithm;
 import uk.gov.nationalarchives.droid.profile.referencedata.Format;
 
 /**
@@ -74,6 +75,7 @@ public final class SqlUtils {
     private static final int PREFIX_PLUS_ONE_COL_INDEX = 15;
     private static final int URI_COL_INDEX = 17;
     private static final int FILTER_STATUS_COL_INDEX = 20;
+    private static final String HASH_COLUMN_SUFFIX = "_HASH";
 
     private static final int FORMAT_VERSION_INDEX = 4;
     private static final int FORMAT_NAME_INDEX = 3;
@@ -297,6 +299,19 @@ public final class SqlUtils {
         return results.wasNull() ? null : value;
     }
 
+    /**
+     * Sets the hash of each algorithm on the metadata of a node, from the hash column of each algorithm
+     * in a result set, such as MD5_HASH or SHA256_HASH.
+     * @param metaData The metadata of the node.
+     * @param nodeResults A result set with a column for each hash algorithm.
+     * @throws SQLException if there is problem processing the SQL result set.
+     */
+    public static void setHashes(final NodeMetaData metaData, final ResultSet nodeResults) throws SQLException {
+        for (HashAlgorithm algorithm : HashAlgorithm.values()) {
+            metaData.setHash(algorithm, getNullableString(algorithm.name() + HASH_COLUMN_SUFFIX, nodeResults));
+        }
+    }
+
     /**
      * Retrieves a string value (or null) from a given position in a ResultSet.
      * @param position Column index within ResultSet to look for a string
@@ -56,6 +56,7 @@ import uk.gov.nationalarchives.droid.profile.JDBCProfileDao;
 import uk.gov.nationalarchives.droid.profile.NodeMetaData;
 import uk.gov.nationalarchives.droid.profile.ProfileResourceNode;
 import uk.gov.nationalarchives.droid.profile.ProfileResourceNodeFilter;
+import uk.gov.nationalarchives.droid.profile.SqlUtils;
 import uk.gov.nationalarchives.droid.profile.referencedata.Format;
 import uk.gov.nationalarchives.droid.results.handlers.JDBCBatchResultHandlerDao;
 
@@ -135,6 +136,7 @@ public class JDBCSqlItemReader implements ItemReader<ProfileResourceNode> {
                 ProfileResourceNode profileResourceNode;
                 profileResourceNode = JDBCProfileDao.PROFILE_RESOURCE_NODE_ROW_MAPPER_WITH_EMPTY_FOLDER.mapRow(cursor, 0);
                 NodeMetaData metaData = profileResourceNode.getMetaData();
+                SqlUtils.setHashes(metaData, cursor);
 
                 int numberOfIdentifications =  cursor.getInt("id_count");
 
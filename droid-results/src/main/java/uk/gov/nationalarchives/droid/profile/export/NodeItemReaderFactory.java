@@ -0,0 +1,101 @@
+/*
+ * Copyright (c) 2016, The National Archives <pronom@nationalarchives.gov.uk>
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following
+ * conditions are met:
+ *
+ *  * Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ *
+ *  * Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ *
+ *  * Neither the name of the The National Archives nor the
+ *    names of its contributors may be used to endorse or promote products
+ *    derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package uk.gov.nationalarchives.droid.profile.export;
+
+import org.springframework.beans.factory.FactoryBean;
+
+import uk.gov.nationalarchives.droid.export.interfaces.ItemReader;
+import uk.gov.nationalarchives.droid.profile.ProfileResourceNode;
+import uk.gov.nationalarchives.droid.results.handlers.JDBCBatchResultHandlerDao;
+import uk.gov.nationalarchives.droid.results.handlers.SegmentResultHandlerDao;
+
+/**
+ * A class which creates an item reader for the nodes of a profile: a segment item reader if the
+ * results of the profile are saved to result segments, or a database item reader otherwise.
+ */
+public class NodeItemReaderFactory implements FactoryBean<ItemReader<ProfileResourceNode>> {
+
+    private JDBCBatchResultHandlerDao resultHandlerDao;
+    private int fetchSize;
+    private int chunkSize;
+
+    /**
+     * Creates the correct item reader for the result handler dao.
+     * @return An item reader for the nodes of the profile.
+     */
+    @Override
+    public ItemReader<ProfileResourceNode> getObject() {
+        if (resultHandlerDao instanceof SegmentResultHandlerDao) {
+            final SegmentItemReader reader = new SegmentItemReader((SegmentResultHandlerDao) resultHandlerDao);
+            reader.setChunkSize(chunkSize);
+            return reader;
+        }
+        final JDBCSqlItemReader reader = new JDBCSqlItemReader(resultHandlerDao);
+        reader.setFetchSize(fetchSize);
+        reader.setChunkSize(chunkSize);
+        return reader;
+    }
+
+    @Override
+    public Class<?> getObjectType() {
+        return ItemReader.class;
+    }
+
+    @Override
+    public boolean isSingleton() {
+        return false;
+    }
+
+    /**
+     * Set the result handler dao the nodes are read from.
+     * @param resultHandlerDao  The resultHandlerDao to set
+     */
+    public void setResultHandlerDao(JDBCBatchResultHandlerDao resultHandlerDao) {
+        this.resultHandlerDao = resultHandlerDao;
+    }
+
+    /**
+     * Set the cursor fetch size of a database item reader.
+     * @param fetchSize  The number of records to fetch each time.
+     */
+    public void setFetchSize(int fetchSize) {
+        this.fetchSize = fetchSize;
+    }
+
+    /**
+     * @param chunkSize
+     *            the number of nodes passed to the callback of readAll at a time.
+     */
+    public void setChunkSize(int chunkSize) {
+        this.chunkSize = chunkSize;
+    }
+}
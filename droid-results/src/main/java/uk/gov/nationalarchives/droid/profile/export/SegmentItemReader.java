@@ -0,0 +1,234 @@
+/*
+ * Copyright (c) 2016, The National Archives <pronom@nationalarchives.gov.uk>
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following
+ * conditions are met:
+ *
+ *  * Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ *
+ *  * Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ *
+ *  * Neither the name of the The National Archives nor the
+ *    names of its contributors may be used to endorse or promote products
+ *    derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package uk.gov.nationalarchives.droid.profile.export;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import uk.gov.nationalarchives.droid.core.interfaces.NodeStatus;
+import uk.gov.nationalarchives.droid.core.interfaces.ResourceType;
+import uk.gov.nationalarchives.droid.core.interfaces.filter.Filter;
+import uk.gov.nationalarchives.droid.export.interfaces.ItemReader;
+import uk.gov.nationalarchives.droid.export.interfaces.ItemReaderCallback;
+import uk.gov.nationalarchives.droid.export.interfaces.JobCancellationException;
+import uk.gov.nationalarchives.droid.profile.NodeMetaData;
+import uk.gov.nationalarchives.droid.profile.ProfileResourceNode;
+import uk.gov.nationalarchives.droid.profile.ProfileResourceNodeFilter;
+import uk.gov.nationalarchives.droid.profile.referencedata.Format;
+import uk.gov.nationalarchives.droid.results.handlers.SegmentResultHandlerDao;
+import uk.gov.nationalarchives.droid.results.segments.ResultEdits;
+import uk.gov.nationalarchives.droid.results.segments.ResultSegment;
+import uk.gov.nationalarchives.droid.results.segments.ResultSegmentLog;
+
+/**
+ * Reads the nodes of a profile saved to result segments, one segment at a time.
+ * <p>
+ * Nodes are read in the order they were saved, rather than ordered by uri, as the segments are never
+ * sorted.  Status changes and deletions made after a node was saved are applied as it is read, and
+ * folders with no children are given the EMPTY status, as they are by the database item reader.
+ */
+public class SegmentItemReader implements ItemReader<ProfileResourceNode> {
+
+    private final Logger log = LoggerFactory.getLogger(getClass());
+
+    private SegmentResultHandlerDao resultHandlerDao;
+    private int chunkSize;
+
+    private Iterator<Path> segmentFiles;
+    private ResultSegment.Cursor cursor;
+    private ResultEdits edits;
+    private BitSet parents;
+    private Map<String, Format> formats;
+
+    /**
+     * Default constructor.
+     */
+    public SegmentItemReader() {
+    }
+
+    /**
+     * Parameterized constructor.
+     * @param resultHandlerDao Sets the resulthandlerdao to use.
+     */
+    public SegmentItemReader(SegmentResultHandlerDao resultHandlerDao) {
+        setResultHandlerDao(resultHandlerDao);
+    }
+
+    /**
+     * Set the SegmentResultHandlerDao.
+     * @param resultHandlerDao  The resultHandlerDao to set
+     */
+    public void setResultHandlerDao(SegmentResultHandlerDao resultHandlerDao) {
+        this.resultHandlerDao = resultHandlerDao;
+    }
+
+    /**
+     * @param chunkSize
+     *            the chunkSize to set
+     */
+    public void setChunkSize(int chunkSize) {
+        this.chunkSize = chunkSize;
+    }
+
+    /**
+     * @return The next node, or null if there are no further nodes.
+     */
+    @Override
+    public ProfileResourceNode read() {
+        try {
+            ProfileResourceNode node;
+            while ((node = readNode()) != null) {
+                final long nodeId = node.getId();
+                if (!edits.isDeleted(nodeId)) {
+                    applyEdits(node, nodeId);
+                    return node;
+                }
+            }
+        } catch (IOException e) {
+            log.error("An exception occurred reading the result segments", e);
+        }
+        return null;
+    }
+
+    /**
+     *
+     * @param callback the callback with items read
+     * @param itemFilter an optional filter
+     * @throws JobCancellationException If the caller cancels the operation
+     */
+    @Override
+    public void readAll(ItemReaderCallback<ProfileResourceNode> callback, Filter itemFilter)
+        throws JobCancellationException {
+        open(itemFilter);
+        boolean filterExists = itemFilter != null && itemFilter.isEnabled();
+        ProfileResourceNodeFilter nodeFilter = new ProfileResourceNodeFilter(filterExists ? itemFilter : null);
+        try {
+            List<ProfileResourceNode> chunk = new ArrayList<>();
+            ProfileResourceNode item;
+            while ((item = read()) != null) {
+                if (nodeFilter.passesFilter(item)) {
+                    chunk.add(item);
+                    if (chunk.size() == chunkSize) {
+                        callback.onItem(chunk);
+                        chunk = new ArrayList<>();
+                    }
+                }
+            }
+            if (!chunk.isEmpty()) {
+                callback.onItem(chunk);
+            }
+        } finally {
+            close();
+        }
+    }
+
+    /**
+     * Opens this item reader for reading.  Any nodes saved but not yet written to a segment are written
+     * first, and the parent ids of all the nodes are read, so empty folders can be found.
+     *
+     * @param itemFilter
+     *            an optional filter
+     */
+    @Override
+    public void open(Filter itemFilter) {
+        resultHandlerDao.commit();
+        final ResultSegmentLog segmentLog = resultHandlerDao.getSegmentLog();
+        formats = resultHandlerDao.getPUIDFormatMap();
+        parents = new BitSet();
+        try {
+            final List<Path> files = segmentLog.getSegmentFiles();
+            for (Path file : files) {
+                for (long parentId : ResultSegment.open(file).readParentIds()) {
+                    if (parentId >= 0 && parentId <= Integer.MAX_VALUE) {
+                        parents.set((int) parentId);
+                    }
+                }
+            }
+            edits = segmentLog.readEdits();
+            segmentFiles = files.iterator();
+        } catch (IOException e) {
+            log.error("An exception occurred opening the result segments", e);
+            segmentFiles = null;
+        }
+    }
+
+    /**
+     * Closes the reader.
+     */
+    @Override
+    public void close() {
+        segmentFiles = null;
+        cursor = null;
+        parents = null;
+    }
+
+    private ProfileResourceNode readNode() throws IOException {
+        while (segmentFiles != null) {
+            if (cursor == null) {
+                if (!segmentFiles.hasNext()) {
+                    return null;
+                }
+                cursor = ResultSegment.open(segmentFiles.next()).cursor(formats);
+            }
+            final ProfileResourceNode node = cursor.next();
+            if (node != null) {
+                return node;
+            }
+            cursor = null;
+        }
+        return null;
+    }
+
+    private void applyEdits(ProfileResourceNode node, long nodeId) {
+        final NodeMetaData metaData = node.getMetaData();
+        final NodeStatus status = edits.getStatus(nodeId);
+        if (status != null) {
+            metaData.setNodeStatus(status);
+        }
+        if (metaData.getResourceType() == ResourceType.FOLDER) {
+            final boolean hasChildren = nodeId > Integer.MAX_VALUE || parents.get((int) nodeId);
+            if (!hasChildren && metaData.getNodeStatus() == NodeStatus.DONE) {
+                metaData.setNodeStatus(NodeStatus.EMPTY);
+            }
+        } else if (node.getIdentificationCount() == null) {
+            node.setZeroIdentifications();
+        }
+    }
+}
@@ -36,14 +36,21 @@ import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Date;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Locale;
 import java.util.Map;
+import java.util.Set;
 import java.util.concurrent.ArrayBlockingQueue;
 import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
 
 import javax.sql.DataSource;
 
@@ -55,8 +62,10 @@ import uk.gov.nationalarchives.droid.core.interfaces.NodeStatus;
 import uk.gov.nationalarchives.droid.core.interfaces.ResourceId;
 import uk.gov.nationalarchives.droid.core.interfaces.ResourceType;
 import uk.gov.nationalarchives.droid.core.interfaces.filter.Filter;
+import uk.gov.nationalarchives.droid.core.interfaces.hash.HashAlgorithm;
 import uk.gov.nationalarchives.droid.core.interfaces.resource.ResourceUtils;
 import uk.gov.nationalarchives.droid.profile.NodeMetaData;
+import uk.gov.nationalarchives.droid.profile.ProfileException;
 import uk.gov.nationalarchives.droid.profile.ProfileResourceNode;
 import uk.gov.nationalarchives.droid.profile.SqlUtils;
 import uk.gov.nationalarchives.droid.profile.referencedata.Format;
@@ -71,19 +80,22 @@ public class JDBCBatchResultHandlerDao implements ResultHandlerDao {
     //CHECKSTYLE:OFF  Various formatting issues with SQL Statements.  E.g. some longer than 120 lines but
     // splitting them likely to hamper rather than assist readability here.
 
-    // How many results in the batch before committing.
+    // How many results are handed to a database writer in one batch.
     public static final int BATCH_LIMIT = 100;
 
-    // A "poison-pill" node info to signal to the writing thread that
-    // it should terminate and commit any results so far.
-    private static final NodeInfo COMMIT_SO_FAR = new NodeInfo(null, false);
+    // The longest time results wait in a database writer before they are committed, when there is more than one.
+    public static final long DEFAULT_COMMIT_INTERVAL_MILLIS = 500;
+
+    // The most bytes of results a database writer holds before committing them, when there is more than one.
+    public static final long DEFAULT_COMMIT_BYTES = 1024 * 1024;
 
     private static final String INSERT_PROFILE_RESOURCE_NODE =
             "INSERT INTO PROFILE_RESOURCE_NODE " +
                     "(NODE_ID,EXTENSION_MISMATCH,FINISHED_TIMESTAMP,IDENTIFICATION_COUNT," +
                     " EXTENSION,HASH,IDENTIFICATION_METHOD,LAST_MODIFIED_DATE,NAME,NODE_STATUS," +
-                    " RESOURCE_TYPE,FILE_SIZE,PARENT_ID,PREFIX,PREFIX_PLUS_ONE,URI) " +
-                    "VALUES (?,?,?,?,?,?,?,?,?,?,?,?,?,?,?,?)";
+                    " RESOURCE_TYPE,FILE_SIZE,PARENT_ID,PREFIX,PREFIX_PLUS_ONE,URI," +
+                    " MD5_HASH,SHA1_HASH,SHA256_HASH,SHA512_HASH) " +
+                    "VALUES (?,?,?,?,?,?,?,?,?,?,?,?,?,?,?,?,?,?,?,?)";
 
     private static final String INSERT_IDENTIFICATIONS       = "INSERT INTO IDENTIFICATION (NODE_ID,PUID) VALUES ";
     private static final String INSERT_ZERO_IDENTIFICATIONS  = INSERT_IDENTIFICATIONS + "(?,'')";
@@ -133,6 +145,7 @@ public class JDBCBatchResultHandlerDao implements ResultHandlerDao {
                     + "NODE_STATUS INTEGER, RESOURCE_TYPE INTEGER NOT NULL, FILE_SIZE BIGINT, PARENT_ID BIGINT, "
                     + "PREFIX VARCHAR(255), PREFIX_PLUS_ONE VARCHAR(255), TEXT_ENCODING INTEGER, URI VARCHAR(4000) NOT NULL, "
                     + "U_EXTENSION GENERATED ALWAYS AS (UPPER(EXTENSION)), U_NAME GENERATED ALWAYS AS (UPPER(NAME)), "
+                    + "MD5_HASH VARCHAR(32), SHA1_HASH VARCHAR(40), SHA256_HASH VARCHAR(64), SHA512_HASH VARCHAR(128), "
                     + "PRIMARY KEY (NODE_ID))";
     private static final String CREATE_IDX_MIME_TYPE_ON_FORMAT = "CREATE INDEX IDX_MIME_TYPE ON FORMAT (MIME_TYPE)";
     private static final String CREATE_IDX_FORMAT_NAME_ON_FORMAT = "CREATE INDEX IDX_FORMAT_NAME ON FORMAT (U_NAME)";
@@ -150,6 +163,21 @@ public class JDBCBatchResultHandlerDao implements ResultHandlerDao {
     private static final String CREATE_IDX_PREFIX_PLUS_ONE_ON_PRN = "CREATE INDEX IDX_PREFIX_PLUS_ONE ON PROFILE_RESOURCE_NODE (PREFIX_PLUS_ONE)";
     //private static String CREATE_IDX_TEXT_ENCODING_ON_PRN = "CREATE INDEX IDX_TEXT_ENCODING ON PROFILE_RESOURCE_NODE (TEXT_ENCODING)";
     //private static String CREATE_IDX_URI_ON_PRN = "CREATE INDEX IDX_URI ON PROFILE_RESOURCE_NODE (URI)";
+
+    // The secondary indexes on PROFILE_RESOURCE_NODE which a bulk load leaves out until the run completes or the
+    // profile is saved.
+    // The primary key, and the parent id index used to browse a profile while it runs, are always kept.
+    private static final String[] DEFERRED_PRN_INDEX_NAMES = {"IDX_ID_COUNT", "IDX_PRN_EXTENSION", "IDX_PRN_ID_METHOD",
+        "IDX_PRN_LAST_MODIFIED", "IDX_PRN_NAME", "IDX_PRN_NODE_STATUS", "IDX_PRN_ID_RESOURCETYPE", "IDX_PRN_FILE_SIZE",
+        "IDX_PREFIX", "IDX_PREFIX_PLUS_ONE", };
+    private static final String[] CREATE_DEFERRED_PRN_INDEXES = {CREATE_IDX_ID_COUNT_ON_PRN, CREATE_IDX_PRN_EXT_ON_PRN,
+        CREATE_IDX_PRN_ID_METHOD_ON_PRN, CREATE_IDX_PRN_LAST_MODIFIED_ON_PRN, CREATE_IDX_PRN_NAME_ON_PRN,
+        CREATE_IDX_PRN_NODE_STATUS_ON_PRN, CREATE_IDX_ID_RESOURCE_ON_PRN, CREATE_IDX_PRN_FILE_SIZE_ON_PRN,
+        CREATE_IDX_PREFIX_ON_PRN, CREATE_IDX_PREFIX_PLUS_ONE_ON_PRN, };
+    private static final String DROP_INDEX = "DROP INDEX ";
+    private static final String PRN_TABLE = "PROFILE_RESOURCE_NODE";
+    private static final String SELECT_ANY_NODE = "SELECT NODE_ID FROM PROFILE_RESOURCE_NODE FETCH FIRST ROW ONLY";
+
     private static final String IDENTIFICATION_CONSTRAINT_1 = "ALTER TABLE IDENTIFICATION ADD CONSTRAINT FK_FH484CCWWL4E5W9QUQKE4N6RI " +
             "FOREIGN KEY (PUID) REFERENCES FORMAT";
     private static final String IDENTIFICATION_CONSTRAINT_2 = "ALTER TABLE IDENTIFICATION ADD CONSTRAINT FK_TPXMO6PPUXECKDRELN5PT5E39 " +
@@ -160,14 +188,27 @@ public class JDBCBatchResultHandlerDao implements ResultHandlerDao {
     private static final String CREATE_UCASE_FMT_NAME_COL = "ALTER TABLE FORMAT ADD COLUMN U_NAME GENERATED ALWAYS AS (UPPER(NAME))";
 
     private static final String ALTER_NAME_COLUMN_SIZE = "ALTER TABLE PROFILE_RESOURCE_NODE ALTER COLUMN NAME SET DATA TYPE VARCHAR(1000)";
+
+    private static final String CREATE_MD5_HASH_COL = "ALTER TABLE PROFILE_RESOURCE_NODE ADD COLUMN MD5_HASH VARCHAR(32)";
+    private static final String CREATE_SHA1_HASH_COL = "ALTER TABLE PROFILE_RESOURCE_NODE ADD COLUMN SHA1_HASH VARCHAR(40)";
+    private static final String CREATE_SHA256_HASH_COL = "ALTER TABLE PROFILE_RESOURCE_NODE ADD COLUMN SHA256_HASH VARCHAR(64)";
+    private static final String CREATE_SHA512_HASH_COL = "ALTER TABLE PROFILE_RESOURCE_NODE ADD COLUMN SHA512_HASH VARCHAR(128)";
     //CHECKSTYLE:ON
+    private static final String[] CREATE_UCASE_COL_STATEMENTS = {ALTER_NAME_COLUMN_SIZE, CREATE_UCASE_PRN_EXTN_COL,
+        CREATE_UCASE_PRN_NAME_COL, CREATE_UCASE_FMT_NAME_COL, };
+    private static final String[] CREATE_HASH_COL_STATEMENTS = {CREATE_MD5_HASH_COL, CREATE_SHA1_HASH_COL,
+        CREATE_SHA256_HASH_COL, CREATE_SHA512_HASH_COL, };
+
     private static final int PRN_COL_COUNT_SANS_UCASE_COLS = 17;
     private static final int PRN_COL_COUNT_WITH_UCASE_COLS = 19;
+    private static final int PRN_COL_COUNT_WITH_HASH_COLS = 23;
 
     private static boolean freshTemplate;
     private static final Object LOCKER = new Object();
 
+    // The most results waiting for each database writer in its queue, which is filled with whole batches.
     private static final int BLOCKING_QUEUE_SIZE = 256;
+    private static final int BLOCKING_QUEUE_BATCHES = Math.max(1, BLOCKING_QUEUE_SIZE / BATCH_LIMIT);
     private static final int MOST_RECENTLY_ADDED_NODE_CACHE_SIZE = 512;
     private static final int PUID_FORMAT_MAP_SIZE = 2500;
 
@@ -179,11 +220,16 @@ public class JDBCBatchResultHandlerDao implements ResultHandlerDao {
     private List<Format> formats;
     private Map<String, Format> puidFormatMap = new HashMap<String, Format>(PUID_FORMAT_MAP_SIZE);
 
-    private BlockingQueue<NodeInfo> blockingQueue = new ArrayBlockingQueue<NodeInfo>(BLOCKING_QUEUE_SIZE);
     private MostRecentlyAddedNodeCache nodeCache  = new MostRecentlyAddedNodeCache(MOST_RECENTLY_ADDED_NODE_CACHE_SIZE);
 
-    private Thread databaseWriterThread;
-    private DatabaseWriter writer;
+    private int writerCount = 1;
+    private long commitIntervalMillis = DEFAULT_COMMIT_INTERVAL_MILLIS;
+    private long commitBytes = DEFAULT_COMMIT_BYTES;
+    private final CommitStatistics commitStatistics = new CommitStatistics();
+    private volatile DatabaseWriters writers;
+
+    private boolean bulkLoad;
+    private volatile boolean indexesDeferred;
 
     /**
      * Empty bean constructor.
@@ -221,6 +267,7 @@ public class JDBCBatchResultHandlerDao implements ResultHandlerDao {
         synchronized (LOCKER) {
             if (!getIsFreshTemplate()) {
                 checkCreateUpperCaseColumns();
+                checkDeferredIndexes();
                 setUpFormatsAndDatabaseWriter();
             } else {
                 createSchemaOnFreshTemplate();
@@ -266,11 +313,11 @@ public class JDBCBatchResultHandlerDao implements ResultHandlerDao {
     // In addition, we increase the size of the NAME column in the PROFILE_RESOURCE_NODE table to 1000
     // characters (it was 255 in the previous DROID version).  This is required to accommodate the long
     // extracted names in ARC and WARC files.
+    // The same check adds a column for each hash algorithm, so that all hashes generated for a file can be stored.
     private void checkCreateUpperCaseColumns() {
 
         Connection conn = null;
         PreparedStatement loadNode = null;
-        PreparedStatement createColumn = null;
         ResultSet result = null;
         try {
             conn = datasource.getConnection();
@@ -279,27 +326,18 @@ public class JDBCBatchResultHandlerDao implements ResultHandlerDao {
             result = loadNode.executeQuery();
             int numberOfColumnsInPrnTable = result.getMetaData().getColumnCount();
             result.close();
-            int x;
 
             switch(numberOfColumnsInPrnTable) {
                 case PRN_COL_COUNT_SANS_UCASE_COLS:
-                    String[] statements =
-                    {ALTER_NAME_COLUMN_SIZE, CREATE_UCASE_PRN_EXTN_COL, CREATE_UCASE_PRN_NAME_COL,
-                        CREATE_UCASE_FMT_NAME_COL, };
-
-                    for (String s : statements) {
-                        try {
-                            createColumn = conn.prepareStatement(s);
-                            x = createColumn.executeUpdate();
-                        } catch (SQLException ex) {
-                            log.error(ex.getMessage());
-                        } finally {
-                            createColumn.close();
-                        }
-                    }
+                    executeStatements(conn, CREATE_UCASE_COL_STATEMENTS);
+                    executeStatements(conn, CREATE_HASH_COL_STATEMENTS);
                     conn.commit();
                     break;
                 case PRN_COL_COUNT_WITH_UCASE_COLS:
+                    executeStatements(conn, CREATE_HASH_COL_STATEMENTS);
+                    conn.commit();
+                    break;
+                case PRN_COL_COUNT_WITH_HASH_COLS:
                     //Do nothing - the required columns already exist in the template
                     break;
                 default:
@@ -327,6 +365,117 @@ public class JDBCBatchResultHandlerDao implements ResultHandlerDao {
         }
     }
 
+    // A bulk load drops the secondary indexes of a new, empty profile, and builds them when the run completes or
+    // the profile is saved, so pausing and resuming the run does not build them.  A bulk loaded profile which is
+    // opened again with some of those indexes missing - because it was paused, or DROID stopped before they were
+    // built - goes on deferring them.  Profiles which are not bulk loaded never drop them, so are not checked.
+    private void checkDeferredIndexes() {
+        if (!bulkLoad) {
+            return;
+        }
+        //CHECKSTYLE:OFF   Nested tries
+        try {
+            final Connection conn = datasource.getConnection();
+            try {
+                conn.setAutoCommit(false);
+                if (!hasNodes(conn)) {
+                    dropDeferredIndexes(conn);
+                    indexesDeferred = true;
+                } else {
+                    indexesDeferred = !getIndexNames(conn).containsAll(Arrays.asList(DEFERRED_PRN_INDEX_NAMES));
+                }
+                conn.commit();
+            } finally {
+                conn.close();
+            }
+        } catch (SQLException e) {
+            log.error("A database exception occurred checking the indexes of the profile.", e);
+        }
+        //CHECKSTYLE:ON
+    }
+
+    private static boolean hasNodes(Connection conn) throws SQLException {
+        final PreparedStatement anyNode = conn.prepareStatement(SELECT_ANY_NODE);
+        try {
+            final ResultSet results = anyNode.executeQuery();
+            try {
+                return results.next();
+            } finally {
+                results.close();
+            }
+        } finally {
+            anyNode.close();
+        }
+    }
+
+    private void dropDeferredIndexes(Connection conn) throws SQLException {
+        final Set<String> existing = getIndexNames(conn);
+        for (String indexName : DEFERRED_PRN_INDEX_NAMES) {
+            if (existing.contains(indexName)) {
+                final PreparedStatement dropIndex = conn.prepareStatement(DROP_INDEX + indexName);
+                try {
+                    dropIndex.executeUpdate();
+                } finally {
+                    dropIndex.close();
+                }
+            }
+        }
+    }
+
+    /*
+     * Builds any of the deferred indexes which do not exist yet.  Each index is built by Derby in one sorted
+     * pass over the rows already in the table, rather than being updated as each row is inserted.
+     */
+    private void buildMissingIndexes(Connection conn) throws SQLException {
+        final Set<String> existing = getIndexNames(conn);
+        final long start = System.currentTimeMillis();
+        int built = 0;
+        for (int i = 0; i < DEFERRED_PRN_INDEX_NAMES.length; i++) {
+            if (!existing.contains(DEFERRED_PRN_INDEX_NAMES[i])) {
+                final PreparedStatement createIndex = conn.prepareStatement(CREATE_DEFERRED_PRN_INDEXES[i]);
+                try {
+                    createIndex.executeUpdate();
+                    built++;
+                } finally {
+                    createIndex.close();
+                }
+            }
+        }
+        if (built > 0) {
+            conn.commit();
+            log.info(String.format("Built %d profile indexes in %d ms.", built, System.currentTimeMillis() - start));
+        }
+    }
+
+    private static Set<String> getIndexNames(Connection conn) throws SQLException {
+        final Set<String> indexNames = new HashSet<String>();
+        final ResultSet indexes = conn.getMetaData().getIndexInfo(null, null, PRN_TABLE, false, true);
+        try {
+            while (indexes.next()) {
+                final String indexName = indexes.getString("INDEX_NAME");
+                if (indexName != null) {
+                    indexNames.add(indexName.toUpperCase(Locale.ROOT));
+                }
+            }
+        } finally {
+            indexes.close();
+        }
+        return indexNames;
+    }
+
+    private void executeStatements(Connection conn, String[] statements) throws SQLException {
+        for (String s : statements) {
+            PreparedStatement createColumn = conn.prepareStatement(s);
+            try {
+                createColumn.executeUpdate();
+            } catch (SQLException ex) {
+                log.error(ex.getMessage());
+            } finally {
+                createColumn.close();
+            }
+        }
+    }
+
     private void setUpFormatsAndDatabaseWriter() {
         formats = loadAllFormats();
         for (final Format format : formats) {
@@ -337,8 +486,8 @@ public class JDBCBatchResultHandlerDao implements ResultHandlerDao {
         //Formats will not have been populated if this method is called from init() and this is the first run for a new
         // template (See comments under init(), scenario (ii)).  In which case, we delay creating the writer until the
         // format-puid mapping is populated om the subsequent call from initialiseForNewTemplate().
-        if (formats.size() > 0 && this.writer == null) {
-            createAndRunDatabaseWriterThread();
+        if (formats.size() > 0 && this.writers == null && isSavingToDatabase()) {
+            createAndRunDatabaseWriterThreads();
         }
 
     }
@@ -447,7 +596,7 @@ public class JDBCBatchResultHandlerDao implements ResultHandlerDao {
             synchronized (nodeCache) { // different threads can add nodes.
                 nodeCache.put(node.getId(), node);
             }
-            blockingQueue.put(new NodeInfo(node, insertNode));
+            writers.save(node, insertNode);
         } catch (InterruptedException e) {
             log.debug("Saving was interrupted while putting a new node into the queue.", e);
         }
@@ -460,12 +609,67 @@ public class JDBCBatchResultHandlerDao implements ResultHandlerDao {
         // but the children of the folder would still be processed, and would then have no parent in the database.
     }
 
+    /**
+     * Commits the results saved so far.  Any indexes which a bulk load left out are not built, so a profile
+     * which is paused and resumed goes on being bulk loaded.
+     */
     @Override
     public void commit() {
+        requestCommit();
+    }
+
+    /**
+     * Commits the results saved so far, waits until every writer has committed them, and then builds any indexes
+     * which a bulk load left out.  This is called when a profile run completes, and before a profile is saved.
+     */
+    public void buildDeferredIndexes() {
+        final CountDownLatch committed = requestCommit();
+        if (indexesDeferred && committed != null) {
+            //CHECKSTYLE:OFF   Nested tries
+            try {
+                committed.await();
+                final Connection conn = datasource.getConnection();
+                try {
+                    conn.setAutoCommit(false);
+                    buildMissingIndexes(conn);
+                    indexesDeferred = false;
+                } finally {
+                    conn.close();
+                }
+            } catch (InterruptedException e) {
+                log.debug("Interrupted while waiting for the results to be committed.", e);
+                Thread.currentThread().interrupt();
+            } catch (SQLException e) {
+                log.error("A problem occurred building the indexes of the profile.", e);
+            }
+            //CHECKSTYLE:ON
+        }
+    }
+
+    /**
+     * @return Whether some indexes were left out by a bulk load, and have not been built yet.
+     */
+    public boolean isIndexesDeferred() {
+        return indexesDeferred;
+    }
+
+    /*
+     * Asks every writer to commit, returning a latch counted down as each writer commits,
+     * or null if there are no writers yet, or if not every writer could be asked.
+     */
+    private CountDownLatch requestCommit() {
+        if (writers == null) {
+            return null; // nothing can have been saved yet.
+        }
         try {
-            blockingQueue.put(COMMIT_SO_FAR);
+            final CountDownLatch committed = writers.requestCommit();
+            if (log.isDebugEnabled()) {
+                log.debug("Database writers: " + getCommitStatistics());
+            }
+            return committed;
         } catch (InterruptedException e) {
             log.debug("Interrupted while requesting a commit.", e);
+            return null;
         }
     }
 
@@ -693,22 +897,18 @@ public class JDBCBatchResultHandlerDao implements ResultHandlerDao {
         //CHECKSTYLE:ON
     }
 
-    private void createAndRunDatabaseWriterThread() {
-        writer = new DatabaseWriter(blockingQueue, datasource, BATCH_LIMIT);
-        try {
-            writer.init();
-        } catch (SQLException e) {
-            //TODO: not a runtime exception - what to use here?
-            throw new RuntimeException("Could not initialise the database writer - fatal error.", e);
-        }
-        databaseWriterThread = new Thread(writer);
+    private void createAndRunDatabaseWriterThreads() {
+        writers = DatabaseWriters.start(datasource, Math.max(1, writerCount), commitIntervalMillis, commitBytes,
+                commitStatistics);
+    }
 
-        try {
-            databaseWriterThread.join();
-            databaseWriterThread.start();
-        } catch (InterruptedException e) {
-            e.printStackTrace();
-        }
+    /**
+     * Subclasses which save results somewhere other than the profile database return false,
+     * so no database writers are started for them.
+     * @return Whether results are saved to the profile database by database writers.
+     */
+    protected boolean isSavingToDatabase() {
+        return true;
     }
 
     /**
@@ -717,7 +917,71 @@ public class JDBCBatchResultHandlerDao implements ResultHandlerDao {
     public void cleanup() {
         //System.out.println("In cleanUp() not doing anything...");
         //System.out.println("Cleaning up JDBCBatchResultHandlerDao, calling closeResources()");
-        this.writer.closeResources();
+        if (writers != null) {
+            writers.closeResources();
+        }
+    }
+
+    /**
+     * Sets how many database writers save results, each with its own thread and connection.
+     * Each writer saves the results of a disjoint set of node ids.
+     * This must be set before the dao is initialised.
+     * @param writerCount The number of database writers.
+     */
+    public void setWriterCount(int writerCount) {
+        this.writerCount = writerCount;
+    }
+
+    /**
+     * Sets the longest time results wait in a database writer before they are committed, when there is more
+     * than one writer.  A single writer commits each batch of results as soon as it has written it.
+     * This must be set before the dao is initialised.
+     * @param commitIntervalMillis The longest time between saving a result and committing it, in milliseconds.
+     */
+    public void setCommitIntervalMillis(long commitIntervalMillis) {
+        this.commitIntervalMillis = commitIntervalMillis;
+    }
+
+    /**
+     * Sets roughly how many bytes of results a database writer holds before committing them, when there is
+     * more than one writer.  A single writer commits each batch of results as soon as it has written it.
+     * This must be set before the dao is initialised.
+     * @param commitBytes The most bytes of results to hold before committing them.
+     */
+    public void setCommitBytes(long commitBytes) {
+        this.commitBytes = commitBytes;
+    }
+
+    /**
+     * @return The number of batches of results waiting for the database writers.
+     */
+    public int getQueueDepth() {
+        return writers == null ? 0 : writers.getQueueDepth();
+    }
+
+    /**
+     * @return The statistics of the commits made by the database writers.
+     */
+    public CommitStatistics getCommitStatistics() {
+        return commitStatistics;
+    }
+
+    /**
+     * Sets whether a new profile is saved with only its primary key and parent id indexes.
+     * The other indexes on the profile resource nodes are built when the run completes or the profile is saved,
+     * which is faster than updating them as each result is saved.
+     * This must be set before the dao is initialised.
+     * @param bulkLoad Whether to build the secondary indexes when the run completes or the profile is saved.
+     */
+    public void setBulkLoad(boolean bulkLoad) {
+        this.bulkLoad = bulkLoad;
+    }
+
+    /**
+     * @return Whether a new profile is saved with only its primary key and parent id indexes.
+     */
+    public boolean isBulkLoad() {
+        return bulkLoad;
     }
 
     /**
@@ -785,11 +1049,185 @@ public class JDBCBatchResultHandlerDao implements ResultHandlerDao {
     }
 
     /**
-     * Class to run in a thread which takes from the blocking queue and batch commits
-     * to the database.
+     * Statistics of the commits made by the database writers of a profile.
+     */
+    public static final class CommitStatistics {
+
+        private static final long NANOS_PER_MILLI = 1000000;
+
+        private final LongAdder commits = new LongAdder();
+        private final LongAdder committedNodes = new LongAdder();
+        private final LongAdder committedBytes = new LongAdder();
+        private final LongAdder commitNanos = new LongAdder();
+        private final AtomicLong maxCommitNanos = new AtomicLong();
+
+        private void addCommit(int nodes, long bytes, long nanos) {
+            commits.increment();
+            committedNodes.add(nodes);
+            committedBytes.add(bytes);
+            commitNanos.add(nanos);
+            maxCommitNanos.accumulateAndGet(nanos, Math::max);
+        }
+
+        /**
+         * @return The number of commits made.
+         */
+        public long getCommitCount() {
+            return commits.sum();
+        }
+
+        /**
+         * @return The number of results inserted or updated by the commits.
+         */
+        public long getCommittedNodeCount() {
+            return committedNodes.sum();
+        }
+
+        /**
+         * @return The estimated number of bytes of results committed.
+         */
+        public long getCommittedBytes() {
+            return committedBytes.sum();
+        }
+
+        /**
+         * @return The mean time taken to execute the batched statements and commit them, in milliseconds.
+         */
+        public double getMeanCommitMillis() {
+            final long count = commits.sum();
+            return count == 0 ? 0 : (double) commitNanos.sum() / count / NANOS_PER_MILLI;
+        }
+
+        /**
+         * @return The longest time taken to execute the batched statements and commit them, in milliseconds.
+         */
+        public double getMaxCommitMillis() {
+            return (double) maxCommitNanos.get() / NANOS_PER_MILLI;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("commits:%d nodes:%d bytes:%d mean commit ms:%.2f max commit ms:%.2f",
+                    getCommitCount(), getCommittedNodeCount(), getCommittedBytes(),
+                    getMeanCommitMillis(), getMaxCommitMillis());
+        }
+    }
+
+    /**
+     * A batch of results handed to a database writer, which may also ask the writer to commit.
+     */
+    private static final class Batch {
+
+        private final List<NodeInfo> nodes;
+        private final CountDownLatch committed;
+
+        Batch(List<NodeInfo> nodes, CountDownLatch committed) {
+            this.nodes = nodes;
+            this.committed = committed;
+        }
+    }
+
+    /**
+     * The database writers of a profile, each running on its own thread with its own connection.
+     * Each writer saves a disjoint set of node ids, so a node is updated by the writer which inserted it.
+     */
+    private static final class DatabaseWriters {
+
+        private final DatabaseWriter[] writers;
+
+        private DatabaseWriters(final DatabaseWriter[] writers) {
+            this.writers = writers;
+        }
+
+        /**
+         * Initialises the database writers and starts their threads.
+         *
+         * @param datasource The datasource the writers connect to.
+         * @param writerCount The number of writers.
+         * @param commitIntervalMillis The longest time results wait in a writer before they are committed.
+         * @param commitBytes The most bytes of results a writer holds before committing them.
+         * @param statistics The statistics of the commits the writers make.
+         * @return The running database writers.
+         * @throws ProfileException If a writer could not be initialised.
+         */
+        static DatabaseWriters start(final DataSource datasource, final int writerCount,
+                                     final long commitIntervalMillis, final long commitBytes,
+                                     final CommitStatistics statistics) {
+            final DatabaseWriter[] writers = new DatabaseWriter[writerCount];
+            // A single writer commits each batch, as it always has; several writers commit in groups.
+            final boolean commitEachBatch = writers.length == 1;
+            for (int i = 0; i < writers.length; i++) {
+                writers[i] = new DatabaseWriter(datasource, BATCH_LIMIT, commitEachBatch, commitIntervalMillis,
+                        commitBytes, statistics);
+                try {
+                    writers[i].init();
+                } catch (SQLException e) {
+                    for (int j = 0; j < i; j++) {
+                        writers[j].closeResources();
+                    }
+                    throw new ProfileException("Could not initialise the database writer - fatal error.", e);
+                }
+            }
+            for (int i = 0; i < writers.length; i++) {
+                final Thread databaseWriterThread = new Thread(writers[i], "droid-database-writer-" + i);
+                databaseWriterThread.start();
+            }
+            return new DatabaseWriters(writers);
+        }
+
+        /**
+         * Adds a node to the writer which saves its node id.
+         *
+         * @param node The node to save.
+         * @param insertNode Whether the node is inserted, rather than updated.
+         * @throws InterruptedException If interrupted while waiting for room in the writer's queue.
+         */
+        void save(final ProfileResourceNode node, final boolean insertNode) throws InterruptedException {
+            writers[(int) (node.getId() % writers.length)].add(new NodeInfo(node, insertNode));
+        }
+
+        /**
+         * Asks every writer to commit.
+         *
+         * @return A latch counted down as each writer commits.
+         * @throws InterruptedException If interrupted while waiting for room in a writer's queue.
+         */
+        CountDownLatch requestCommit() throws InterruptedException {
+            final CountDownLatch committed = new CountDownLatch(writers.length);
+            for (final DatabaseWriter writer : writers) {
+                writer.requestCommit(committed);
+            }
+            return committed;
+        }
+
+        int getQueueDepth() {
+            int depth = 0;
+            for (final DatabaseWriter writer : writers) {
+                depth += writer.getQueueDepth();
+            }
+            return depth;
+        }
+
+        void closeResources() {
+            for (final DatabaseWriter writer : writers) {
+                writer.closeResources();
+            }
+        }
+    }
+
+    /**
+     * Class to run in a thread which takes batches of results from its blocking queue and commits
+     * them to the database.  A writer which commits each batch does so once it has written it.
+     * Otherwise, results are committed together once they have waited for the commit interval,
+     * or once they add up to the commit size.  Results are always committed when a commit is requested.
      */
     private static class DatabaseWriter implements Runnable {
 
+        // A rough size of the columns of a node which are not strings, and of the row overheads.
+        private static final int FIXED_NODE_BYTES = 128;
+        private static final int FIXED_IDENTIFICATION_BYTES = 32;
+
+        private static final int INSERT_NODE_FIRST_HASH_INDEX = 17;
         private static final int INSERT_NODE_URI_INDEX = 16;
         private static final int INSERT_NODE_PREFIX_PLUS_ONE_INDEX = 15;
         private static final int INSERT_NODE_PREFIX_INDEX = 14;
@@ -808,21 +1246,78 @@ public class JDBCBatchResultHandlerDao implements ResultHandlerDao {
         private static final int INSERT_NODE_ID_INDEX = 1;
 
         private final Logger log = LoggerFactory.getLogger(getClass());
-        private BlockingQueue<NodeInfo> blockingQueue;
+        private final BlockingQueue<Batch> blockingQueue = new ArrayBlockingQueue<Batch>(BLOCKING_QUEUE_BATCHES);
         private DataSource datasource;
         private Connection connection;
         private PreparedStatement insertNodeStatement;
         private PreparedStatement updateNodeStatement;
         private Map<Integer, PreparedStatement> insertIdentifications;
-        private volatile int batchCount;
         private final int batchLimit;
+        private final boolean commitEachBatch;
+        private final long commitIntervalNanos;
+        private final long commitBytes;
+        private final CommitStatistics statistics;
+
+        private List<NodeInfo> pending; // guarded by this.
+
+        // Only used by the writer thread:
+        private int uncommittedNodes;
+        private long uncommittedBytes;
+        private long firstUncommittedNanos;
+
+        DatabaseWriter(final DataSource datasource,
+                       final int batchLimit,
+                       final boolean commitEachBatch,
+                       final long commitIntervalMillis,
+                       final long commitBytes,
+                       final CommitStatistics statistics) {
+            this.datasource          = datasource;
+            this.batchLimit          = batchLimit;
+            this.commitEachBatch     = commitEachBatch;
+            this.commitIntervalNanos = TimeUnit.MILLISECONDS.toNanos(Math.max(1, commitIntervalMillis));
+            this.commitBytes         = commitBytes;
+            this.statistics          = statistics;
+            this.pending             = new ArrayList<NodeInfo>(batchLimit);
+        }
+
+        /**
+         * Adds a node to the batch being built for this writer, handing the batch to the writer once it is full.
+         *
+         * @param info The node to insert or update.
+         * @throws InterruptedException If interrupted while waiting for room in the queue.
+         */
+        void add(final NodeInfo info) throws InterruptedException {
+            List<NodeInfo> fullBatch = null;
+            synchronized (this) {
+                pending.add(info);
+                if (pending.size() >= batchLimit) {
+                    fullBatch = pending;
+                    pending = new ArrayList<NodeInfo>(batchLimit);
+                }
+            }
+            if (fullBatch != null) {
+                blockingQueue.put(new Batch(fullBatch, null));
+            }
+        }
+
+        /**
+         * Hands the batch being built to the writer, asking it to commit everything it has so far.
+         *
+         * @param committed A latch counted down once the writer has committed.
+         * @throws InterruptedException If interrupted while waiting for room in the queue.
+         */
+        void requestCommit(final CountDownLatch committed) throws InterruptedException {
+            blockingQueue.put(new Batch(takePending(), committed));
+        }
 
-        DatabaseWriter(final BlockingQueue<NodeInfo> blockingQueue,
-                       final DataSource datasource,
-                       final int batchLimit) {
-            this.blockingQueue = blockingQueue;
-            this.datasource    = datasource;
-            this.batchLimit    = batchLimit;
+        int getQueueDepth() {
+            return blockingQueue.size();
+        }
+
+        private synchronized List<NodeInfo> takePending() {
+            final List<NodeInfo> nodes = pending;
+            pending = new ArrayList<NodeInfo>(batchLimit);
+            return nodes;
         }
 
         /**
@@ -850,19 +1345,19 @@ public class JDBCBatchResultHandlerDao implements ResultHandlerDao {
             try {
                 // Loop until we're interrupted.
                 while (true) {
-                    final NodeInfo info = blockingQueue.take(); // this will block if there's nothing in the queue.
-                    if (info == COMMIT_SO_FAR) {
+                    // Wait no longer than the time left before the oldest uncommitted result must be committed:
+                    Batch batch = blockingQueue.poll(getNanosUntilCommitDue(), TimeUnit.NANOSECONDS);
+                    if (batch == null) { // nothing handed over in time - take the batch still being built.
+                        batch = new Batch(takePending(), null);
+                    }
+                    for (final NodeInfo info : batch.nodes) {
+                        write(info);
+                    }
+                    if (batch.committed != null) {
+                        commit();
+                        batch.committed.countDown();
+                    } else if (commitEachBatch || isCommitDue()) {
                         commit();
-                    } else {
-                        try {
-                            if (info.insertNode) { // are we inserting a node, or updating one already saved?
-                                batchInsertNode(info.getNode());
-                            } else {
-                                updateNodeStatus(info.getNode());
-                            }
-                        } catch (SQLException e) {
-                            log.error("A database problem occurred inserting a node: " + info.getNode(), e);
-                        }
                     }
                 }
             } catch (InterruptedException e) {
@@ -896,6 +1391,51 @@ public class JDBCBatchResultHandlerDao implements ResultHandlerDao {
             }
         }
 
+        private void write(final NodeInfo info) {
+            try {
+                if (info.insertNode) { // are we inserting a node, or updating one already saved?
+                    batchInsertNode(info.getNode());
+                } else {
+                    updateNodeStatus(info.getNode());
+                }
+            } catch (SQLException e) {
+                log.error("A database problem occurred inserting a node: " + info.getNode(), e);
+            }
+        }
+
+        private long getNanosUntilCommitDue() {
+            return uncommittedNodes == 0 ? commitIntervalNanos
+                    : firstUncommittedNanos + commitIntervalNanos - System.nanoTime();
+        }
+
+        private boolean isCommitDue() {
+            return uncommittedNodes > 0
+                    && (uncommittedBytes >= commitBytes || getNanosUntilCommitDue() <= 0);
+        }
+
+        private void addUncommitted(final long bytes) {
+            if (uncommittedNodes++ == 0) {
+                firstUncommittedNanos = System.nanoTime();
+            }
+            uncommittedBytes += bytes;
+        }
+
+        private static long estimateBytes(final ProfileResourceNode node) {
+            final NodeMetaData metadata = node.getMetaData();
+            long chars = length(node.getUri().toString()) + length(metadata.getName())
+                    + length(metadata.getExtension()) + length(node.getPrefix()) + length(node.getPrefixPlusOne());
+            for (final HashAlgorithm algorithm : HashAlgorithm.values()) {
+                chars += length(metadata.getHash(algorithm));
+            }
+            final Integer identifications = node.getIdentificationCount();
+            return FIXED_NODE_BYTES + chars * 2
+                    + (identifications == null ? 1 : Math.max(1, identifications)) * FIXED_IDENTIFICATION_BYTES;
+        }
+
+        private static int length(final String value) {
+            return value == null ? 0 : value.length();
+        }
+
         //CHECKSTYLE:OFF  Too many statements..
         private void batchInsertNode(final ProfileResourceNode node) throws SQLException {
             // insert main node:
@@ -933,6 +1473,10 @@ public class JDBCBatchResultHandlerDao implements ResultHandlerDao {
             SqlUtils.setNullableString(INSERT_NODE_PREFIX_INDEX, nodePrefix, insertNode);
             SqlUtils.setNullableString(INSERT_NODE_PREFIX_PLUS_ONE_INDEX, nodePrefixPlusOne, insertNode);
             insertNode.setString(INSERT_NODE_URI_INDEX, uri);
+            for (final HashAlgorithm algorithm : HashAlgorithm.values()) {
+                SqlUtils.setNullableString(INSERT_NODE_FIRST_HASH_INDEX + algorithm.ordinal(),
+                        metadata.getHash(algorithm), insertNode);
+            }
             insertNode.addBatch();
 
             // insert its identifications:
@@ -952,7 +1496,7 @@ public class JDBCBatchResultHandlerDao implements ResultHandlerDao {
             }
             statement.addBatch();
 
-            commitBatchIfLargeEnough();
+            addUncommitted(estimateBytes(node));
         }
         //CHECKSTYLE:ON
 
@@ -964,7 +1508,7 @@ public class JDBCBatchResultHandlerDao implements ResultHandlerDao {
                     SqlUtils.setNullableEnumAsInt(1, nm.getNodeStatus(), updateNodeStatement);
                     updateNodeStatement.setLong(2, nodeId);
                     updateNodeStatement.addBatch();
-                    commitBatchIfLargeEnough();
+                    addUncommitted(FIXED_IDENTIFICATION_BYTES);
                 } else {
                     log.error("A node was flagged for status update, but had no status metadata. Node id was: "
                             + nodeId);
@@ -975,10 +1519,12 @@ public class JDBCBatchResultHandlerDao implements ResultHandlerDao {
             }
         }
 
-        private void commitBatchIfLargeEnough() {
-            // Commit if exceeded batch limit:
-            if (batchCount++ >= batchLimit) {
-                batchCount = 0;
+        /**
+         * Commits everything batched so far.
+         */
+        public void commit() {
+            if (uncommittedNodes > 0) {
+                final long start = System.nanoTime();
                 try {
                     // Insert new nodes:
                     insertNodeStatement.executeBatch();
@@ -995,17 +1541,12 @@ public class JDBCBatchResultHandlerDao implements ResultHandlerDao {
                 } catch (SQLException e) {
                     log.error("A problem occurred attempting to batch commit nodes into the database. ", e);
                 }
+                statistics.addCommit(uncommittedNodes, uncommittedBytes, System.nanoTime() - start);
+                uncommittedNodes = 0;
+                uncommittedBytes = 0;
             }
         }
 
-        /**
-         * Commits everything batched so far.
-         */
-        public void commit() {
-            batchCount = BATCH_LIMIT;
-            commitBatchIfLargeEnough();
-        }
-
         private PreparedStatement getIdentificationStatement(final int numIdentifications) throws SQLException {
             PreparedStatement statement = insertIdentifications.get(numIdentifications);
             if (statement == null) {
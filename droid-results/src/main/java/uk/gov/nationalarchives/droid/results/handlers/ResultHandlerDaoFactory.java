@@ -49,17 +49,25 @@ import uk.gov.nationalarchives.droid.export.interfaces.ItemWriter;
  * A class which creates either a database result handler dao (using the data source),
  * or which creates as writer result handler dao (using the data source, itemwriter and writer).
  * If there is a writer set, then the writer dao is created.  If no writer is present, then
- * the database result handler dao is created.  There must always be a data source, no matter
- * which result handler dao is created.
+ * the database result handler dao is created, unless the result store is "segments", in which case
+ * a segment result handler dao is created, saving results to segment files.  There must always be a
+ * data source, no matter which result handler dao is created.
  */
 public class ResultHandlerDaoFactory implements FactoryBean<ResultHandlerDao> {
 
     private static final String CONSOLE = "stdout"; //TODO: what should this be?
+    private static final String DATABASE_STORE = "database";
+    private static final String SEGMENTS_STORE = "segments";
     private static final Logger LOG = LoggerFactory.getLogger(WriterResultHandlerDao.class);
 
     private DataSource datasource;
     private ItemWriter itemWriter;
     private Writer writer;
+    private boolean consoleOutput;
+    private boolean bulkLoad;
+    private int databaseWriters = 1;
+    private String resultStore = DATABASE_STORE;
+    private String segmentDirectory;
 
     /**
      * Empty constructor.
@@ -114,10 +122,19 @@ public class ResultHandlerDaoFactory implements FactoryBean<ResultHandlerDao> {
      */
     public ResultHandlerDao getObject() {
         final ResultHandlerDao result;
-        if (writer == null) {
-            result = new JDBCBatchResultHandlerDao(datasource);
+        if (writer == null && SEGMENTS_STORE.equalsIgnoreCase(resultStore)) {
+            result = new SegmentResultHandlerDao(segmentDirectory, datasource);
+        } else if (writer == null) {
+            final JDBCBatchResultHandlerDao jdbcDao = new JDBCBatchResultHandlerDao(datasource);
+            jdbcDao.setBulkLoad(bulkLoad);
+            jdbcDao.setWriterCount(databaseWriters);
+            result = jdbcDao;
         } else {
-            result = new WriterResultHandlerDao(itemWriter, writer, datasource);
+            final WriterResultHandlerDao writerDao = new WriterResultHandlerDao(itemWriter, writer, datasource);
+            if (consoleOutput) { // rows written to the console appear as soon as they are saved.
+                writerDao.setRowBufferChars(0);
+            }
+            result = writerDao;
         }
         result.init();
         return result;
@@ -150,6 +167,40 @@ public class ResultHandlerDaoFactory implements FactoryBean<ResultHandlerDao> {
      */
     public void setWriter(Writer writer) {
         this.writer = writer;
+        this.consoleOutput = false;
+    }
+
+    /**
+     * Sets whether a database result handler dao fills a new profile without its secondary indexes.
+     * @param bulkLoad Whether to build the secondary indexes once the results have been saved.
+     */
+    public void setBulkLoad(boolean bulkLoad) {
+        this.bulkLoad = bulkLoad;
+    }
+
+    /**
+     * Sets how many threads and connections a database result handler dao saves results with.
+     * @param databaseWriters The number of database writers.
+     */
+    public void setDatabaseWriters(int databaseWriters) {
+        this.databaseWriters = databaseWriters;
+    }
+
+    /**
+     * Sets where a result handler dao which is not writing to a file saves results:
+     * "database" for the profile database, or "segments" for a log of result segment files.
+     * @param resultStore Where results are saved.
+     */
+    public void setResultStore(String resultStore) {
+        this.resultStore = resultStore;
+    }
+
+    /**
+     * Sets the directory result segments are written to, if results are saved to segments.
+     * @param segmentDirectory The directory result segments are written to.
+     */
+    public void setSegmentDirectory(String segmentDirectory) {
+        this.segmentDirectory = segmentDirectory;
     }
 
     /**
@@ -161,7 +212,9 @@ public class ResultHandlerDaoFactory implements FactoryBean<ResultHandlerDao> {
         if (outputFilePath != null && !outputFilePath.trim().isEmpty()) {
             if (CONSOLE.equals(outputFilePath.toLowerCase())) {
                 writer = new PrintWriter(System.out);
+                consoleOutput = true;
             } else {
+                consoleOutput = false;
                 File outputFile = new File(outputFilePath);
                 try {
                     writer = new FileWriter(outputFile, false);
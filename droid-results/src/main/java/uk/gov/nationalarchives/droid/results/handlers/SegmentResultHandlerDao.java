@@ -0,0 +1,206 @@
+/*
+ * Copyright (c) 2016, The National Archives <pronom@nationalarchives.gov.uk>
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following
+ * conditions are met:
+ *
+ *  * Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ *
+ *  * Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ *
+ *  * Neither the name of the The National Archives nor the
+ *    names of its contributors may be used to endorse or promote products
+ *    derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package uk.gov.nationalarchives.droid.results.handlers;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import javax.sql.DataSource;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import uk.gov.nationalarchives.droid.core.interfaces.ResourceId;
+import uk.gov.nationalarchives.droid.profile.ProfileResourceNode;
+import uk.gov.nationalarchives.droid.results.segments.ResultSegmentLog;
+
+/**
+ * An implementation of ResultHandlerDao which appends results to a log of columnar segment files
+ * in the profile, instead of inserting them into the profile database.
+ * <p>
+ * Segments are written sequentially and never updated, so saving a profile of many millions of
+ * resources costs little more than writing them out, and the segments can be read back for export,
+ * or aggregated by PUID or extension, by reading only the columns needed.
+ * Status changes and deletions are appended to an edits log, and applied when the results are read.
+ * <p>
+ * Like the WriterResultHandlerDao, we inherit from the JDBCBatchResultHandlerDao class in order to get
+ * its database operations for initialising the db and loading lists of formats.
+ */
+public class SegmentResultHandlerDao extends JDBCBatchResultHandlerDao {
+
+    private static final Logger LOG = LoggerFactory.getLogger(SegmentResultHandlerDao.class);
+    private static final int NODE_CACHE_SIZE = 1000;
+    private static final String SEPARATOR = ": ";
+
+    private final Map<Long, ProfileResourceNode> recentNodes = new RecentNodeCache(NODE_CACHE_SIZE);
+
+    private Path segmentDirectory;
+    private ResultSegmentLog segmentLog;
+    private long nodeId;
+
+    /**
+     * Empty bean constructor.  You still need to set the segment directory and the DataSource,
+     * and then call init() before this class is ready to use.
+     */
+    public SegmentResultHandlerDao() {
+    }
+
+    /**
+     * Parameterized constructor.
+     * @param segmentDirectory The directory to write the result segments to.
+     * @param datasource The database connection to the profile for initialising new databases and loading formats.
+     */
+    public SegmentResultHandlerDao(String segmentDirectory, DataSource datasource) {
+        setSegmentDirectory(segmentDirectory);
+        setDatasource(datasource);
+    }
+
+    @Override
+    public synchronized void init() {
+        super.init();
+        try {
+            segmentLog = new ResultSegmentLog(segmentDirectory);
+            nodeId = segmentLog.getMaxNodeId();
+        } catch (IOException e) {
+            LOG.error("Could not open the result segments in " + segmentDirectory + SEPARATOR + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Results are appended to the segments, so no database writers are started.
+     * @return false
+     */
+    @Override
+    protected boolean isSavingToDatabase() {
+        return false;
+    }
+
+    @Override
+    public synchronized void save(ProfileResourceNode node, ResourceId parentId) {
+        try {
+            if (node.getId() == null) {
+                node.setId(++nodeId);
+                if (parentId != null) {
+                    node.setParentId(parentId.getId());
+                }
+                segmentLog.append(node);
+            } else { // the node was saved before: only its status can have changed.
+                segmentLog.recordStatus(node.getId(), node.getMetaData().getNodeStatus());
+            }
+            recentNodes.put(node.getId(), node);
+        } catch (IOException e) {
+            LOG.error("Could not save the result for " + node.getUri() + SEPARATOR + e.getMessage(), e);
+        }
+    }
+
+    @Override
+    public synchronized void commit() {
+        try {
+            if (segmentLog != null) {
+                segmentLog.flush();
+            }
+        } catch (IOException e) {
+            LOG.error("Could not write the result segments: " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * <b>Note:</b> This result handler only keeps the most recently saved nodes, so it returns null for
+     * older nodes.
+     * {@inheritDoc}
+     */
+    @Override
+    public synchronized ProfileResourceNode loadNode(final Long nodeIdToLoad) {
+        final ProfileResourceNode node = recentNodes.get(nodeIdToLoad);
+        return node == null ? null : new ProfileResourceNode(node);
+    }
+
+    @Override
+    public synchronized void deleteNode(final Long nodeIdToDelete) {
+        try {
+            segmentLog.recordDeletion(nodeIdToDelete);
+            recentNodes.remove(nodeIdToDelete);
+        } catch (IOException e) {
+            LOG.error("Could not delete the result with id " + nodeIdToDelete + SEPARATOR + e.getMessage(), e);
+        }
+    }
+
+    @Override
+    public synchronized void cleanup() {
+        super.cleanup();
+        try {
+            if (segmentLog != null) {
+                segmentLog.close();
+            }
+        } catch (IOException e) {
+            LOG.error("Could not close the result segments: " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * @return The log of result segments, once the dao has been initialised.
+     */
+    public synchronized ResultSegmentLog getSegmentLog() {
+        return segmentLog;
+    }
+
+    /**
+     * Sets the directory the result segments are written to.
+     * @param segmentDirectory The directory the result segments are written to.
+     */
+    public synchronized void setSegmentDirectory(String segmentDirectory) {
+        this.segmentDirectory = Paths.get(segmentDirectory);
+    }
+
+    /**
+     * Keeps the most recently saved nodes, so the status of a node can be changed if an error occurs
+     * after it was saved.
+     */
+    private static final class RecentNodeCache extends LinkedHashMap<Long, ProfileResourceNode> {
+
+        private static final float LOAD_FACTOR = 1.1f;
+        private final int capacity;
+
+        private RecentNodeCache(int capacity) {
+            super(capacity + 1, LOAD_FACTOR, false);
+            this.capacity = capacity;
+        }
+
+        @Override
+        protected boolean removeEldestEntry(final Map.Entry<Long, ProfileResourceNode> eldest) {
+            return size() > capacity;
+        }
+    }
+}
@@ -34,8 +34,11 @@ package uk.gov.nationalarchives.droid.results.handlers;
 import java.io.IOException;
 import java.io.PrintWriter;
 import java.io.Writer;
-import java.util.ArrayList;
-import java.util.List;
+import java.util.Collections;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
 
 import javax.sql.DataSource;
 
@@ -62,17 +65,44 @@ import uk.gov.nationalarchives.droid.profile.ProfileResourceNodeFilter;
  * but override the methods involved in writing out to a Writer, and those
  * which can't work if the results aren't being saved to the database
  * (e.g. loading previous results or deleting previous results).
+ * <p>
+ * Results are formatted by the threads which save them, into a buffer belonging to each thread,
+ * and a buffer is only written out to the Writer once it holds {@link #ROW_BUFFER_CHARS} characters,
+ * or when the results are committed.  Saving threads therefore only contend with each other
+ * to write whole buffers, not to format each result.  So that output still appears as results are
+ * saved, and little is lost if the process is killed, every buffer is written out at least
+ * every {@link #ROW_BUFFER_MILLIS} milliseconds while results are being saved.  Output to the
+ * console is not buffered at all: each result is written out as soon as it is saved.
+ * <p>
+ * An ItemWriter which cannot format results is given each result to write as it is saved.
+ * <p>
+ * Whichever thread's buffer is written out first, the headers are written for the first result saved,
+ * as they were when every result was written out as it was saved.
  */
 public class WriterResultHandlerDao extends JDBCBatchResultHandlerDao {
 
+    /**
+     * The number of characters of formatted results a thread buffers before writing them out.
+     */
+    public static final int ROW_BUFFER_CHARS = 32 * 1024;
+
+    /**
+     * The longest time in milliseconds that formatted results are buffered while results are being saved.
+     */
+    public static final long ROW_BUFFER_MILLIS = 1000;
+
     private static final Logger LOG = LoggerFactory.getLogger(WriterResultHandlerDao.class);
 
-    private final List<ProfileResourceNode> items = new ArrayList<>(1);
+    private final AtomicLong nodeIds = new AtomicLong();
+    private final Queue<RowBuffer> rowBuffers = new ConcurrentLinkedQueue<>();
+    private final ThreadLocal<RowBuffer> threadRowBuffer = ThreadLocal.withInitial(this::newRowBuffer);
+    private final AtomicLong lastWriteTime = new AtomicLong(System.currentTimeMillis());
+    private final AtomicReference<ProfileResourceNode> firstSavedNode = new AtomicReference<>();
 
-    private ItemWriter itemWriter;
+    private ItemWriter<ProfileResourceNode> itemWriter;
     private Writer writer;
-    private long nodeId = 1L;
-    private ProfileResourceNodeFilter filter = new ProfileResourceNodeFilter();
+    private volatile ProfileResourceNodeFilter filter = new ProfileResourceNodeFilter();
+    private volatile int rowBufferChars = ROW_BUFFER_CHARS;
 
     /**
      * Empty bean constructor.  You still need to set the Itemwriter and DataSource,
@@ -87,7 +117,7 @@ public class WriterResultHandlerDao extends JDBCBatchResultHandlerDao {
      * @param itemWriter The ItemWriter to write out results.
      * @param datasource The database connection to the profile for initialising new databases.
      */
-    public WriterResultHandlerDao(ItemWriter itemWriter, DataSource datasource) {
+    public WriterResultHandlerDao(ItemWriter<ProfileResourceNode> itemWriter, DataSource datasource) {
         this(itemWriter, null, datasource);
     }
 
@@ -97,7 +127,7 @@ public class WriterResultHandlerDao extends JDBCBatchResultHandlerDao {
      * @param writer The writer to which results are written.
      * @param datasource The database connection to the profile for initialising new databases.
      */
-    public WriterResultHandlerDao(ItemWriter itemWriter, Writer writer, DataSource datasource) {
+    public WriterResultHandlerDao(ItemWriter<ProfileResourceNode> itemWriter, Writer writer, DataSource datasource) {
         setItemWriter(itemWriter);
         setWriter(writer);
         setDatasource(datasource);
@@ -108,23 +138,42 @@ public class WriterResultHandlerDao extends JDBCBatchResultHandlerDao {
         try {
             super.init();
         } finally {
-            if (writer == null) { // If no writer is set, default to console output.
+            if (writer == null) { // If no writer is set, default to unbuffered console output.
                 writer = new PrintWriter(System.out);
+                rowBufferChars = 0;
             }
             itemWriter.open(writer);
         }
     }
 
     @Override
-    public synchronized void save(ProfileResourceNode node, ResourceId parentId) {
-        node.setId(nodeId++);
+    public void save(ProfileResourceNode node, ResourceId parentId) {
+        node.setId(nodeIds.incrementAndGet());
         if (parentId != null) {
             node.setParentId(parentId.getId());
         }
         if (filter.passesFilter(node)) { // only write the result if it passes the filter.
-            items.clear(); //TODO: we just output each result in a list of one - any value in batching them for output?
-            items.add(node);
-            itemWriter.write(items);
+            if (!itemWriter.canFormat()) {
+                synchronized (this) {
+                    itemWriter.write(Collections.singletonList(node));
+                }
+                return;
+            }
+            final RowBuffer buffer = threadRowBuffer.get();
+            firstSavedNode.compareAndSet(null, node);
+            synchronized (buffer) { // only contended if the results are being written out by another thread.
+                itemWriter.format(node, buffer.rows);
+                if (buffer.rows.length() >= rowBufferChars) {
+                    writeRows(buffer);
+                }
+            }
+            // Write out the buffers of every thread if they have been held for too long.
+            // Called without holding the lock on this thread's buffer, as commit() locks every buffer.
+            final long lastWrite = lastWriteTime.get();
+            final long now = System.currentTimeMillis();
+            if (now - lastWrite >= ROW_BUFFER_MILLIS && lastWriteTime.compareAndSet(lastWrite, now)) {
+                commit();
+            }
         }
     }
 
@@ -133,12 +182,24 @@ public class WriterResultHandlerDao extends JDBCBatchResultHandlerDao {
         this.filter = new ProfileResourceNodeFilter(filter);
     }
 
+    /**
+     * Writes out the results buffered by every thread, and flushes the Writer.
+     */
     @Override
-    public synchronized void commit() {
-        try {
-            writer.flush();
-        } catch (IOException e) {
-            LOG.error("Error flushing writer: " + e.getMessage(), e);
+    public void commit() {
+        for (RowBuffer buffer : rowBuffers) {
+            synchronized (buffer) {
+                if (buffer.rows.length() > 0) {
+                    writeRows(buffer);
+                }
+            }
+        }
+        synchronized (this) {
+            try {
+                writer.flush();
+            } catch (IOException e) {
+                LOG.error("Error flushing writer: " + e.getMessage(), e);
+            }
         }
     }
 
@@ -163,7 +224,7 @@ public class WriterResultHandlerDao extends JDBCBatchResultHandlerDao {
      * Sets the ItemWriter used to format results for output to a Writer.
      * @param itemWriter The ItemWriter used to format results for output to a Writer.
      */
-    public synchronized void setItemWriter(ItemWriter itemWriter) {
+    public synchronized void setItemWriter(ItemWriter<ProfileResourceNode> itemWriter) {
         this.itemWriter = itemWriter;
     }
 
@@ -174,4 +235,37 @@ public class WriterResultHandlerDao extends JDBCBatchResultHandlerDao {
     public synchronized void setWriter(Writer writer) {
         this.writer = writer;
     }
+
+    /**
+     * Sets how many characters of formatted results a thread buffers before writing them out.
+     * Zero writes each result out as soon as it is saved.  Defaults to {@link #ROW_BUFFER_CHARS},
+     * or to zero if no Writer is set and results are written to the console.
+     * @param rowBufferChars The number of characters of formatted results a thread buffers.
+     */
+    public void setRowBufferChars(int rowBufferChars) {
+        this.rowBufferChars = rowBufferChars;
+    }
+
+    private RowBuffer newRowBuffer() {
+        final RowBuffer buffer = new RowBuffer();
+        rowBuffers.add(buffer);
+        return buffer;
+    }
+
+    /*
+     * Called holding the lock on the buffer: buffers are always locked before the dao, never after.
+     */
+    private void writeRows(RowBuffer buffer) {
+        synchronized (this) {
+            itemWriter.writeFormatted(buffer.rows, Collections.singletonList(firstSavedNode.get()));
+        }
+        buffer.rows.setLength(0);
+    }
+
+    /**
+     * The results formatted by one thread which have not been written out yet.
+     */
+    private static final class RowBuffer {
+        private final StringBuilder rows = new StringBuilder(ROW_BUFFER_CHARS + ROW_BUFFER_CHARS / 2);
+    }
 }
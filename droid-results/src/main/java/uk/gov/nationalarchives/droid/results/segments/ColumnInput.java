@@ -0,0 +1,131 @@
+/*
+ * Copyright (c) 2016, The National Archives <pronom@nationalarchives.gov.uk>
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following
+ * conditions are met:
+ *
+ *  * Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ *
+ *  * Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ *
+ *  * Neither the name of the The National Archives nor the
+ *    names of its contributors may be used to endorse or promote products
+ *    derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package uk.gov.nationalarchives.droid.results.segments;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Reads the values of a column of a result segment, as written by a {@link ColumnOutput}.
+ */
+final class ColumnInput {
+
+    private static final int SEVEN_BITS = 0x7F;
+    private static final int MORE_BYTES = 0x80;
+    private static final int BITS_PER_BYTE = 7;
+    private static final int MAX_SHIFT = 63;
+    private static final int BYTE_MASK = 0xFF;
+
+    private final ByteBuffer buffer;
+
+    ColumnInput(ByteBuffer buffer) {
+        this.buffer = buffer;
+    }
+
+    /**
+     * @param value A zig-zag encoded value.
+     * @return The signed value.
+     */
+    static long unZigZag(long value) {
+        return (value >>> 1) ^ -(value & 1);
+    }
+
+    boolean hasRemaining() {
+        return buffer.hasRemaining();
+    }
+
+    int readByte() {
+        return buffer.get() & BYTE_MASK;
+    }
+
+    long readVarLong() throws IOException {
+        long value = 0;
+        int shift = 0;
+        int next;
+        do {
+            if (shift > MAX_SHIFT) {
+                throw new IOException("A variable length integer in a result segment is too long.");
+            }
+            next = buffer.get();
+            value |= (long) (next & SEVEN_BITS) << shift;
+            shift += BITS_PER_BYTE;
+        } while ((next & MORE_BYTES) != 0);
+        return value;
+    }
+
+    int readVarInt() throws IOException {
+        final long value = readVarLong();
+        if (value > Integer.MAX_VALUE) {
+            throw new IOException("A length or code in a result segment is too big: " + value);
+        }
+        return (int) value;
+    }
+
+    long readZigZag() throws IOException {
+        return unZigZag(readVarLong());
+    }
+
+    /**
+     * @return A value written by {@link ColumnOutput#writeNullableZigZag(Long)}.
+     * @throws IOException If the value could not be read.
+     */
+    Long readNullableZigZag() throws IOException {
+        final long value = readVarLong();
+        return value == 0 ? null : unZigZag(value - 1);
+    }
+
+    void readBytes(byte[] into, int offset, int length) {
+        buffer.get(into, offset, length);
+    }
+
+    /**
+     * @return A string written by {@link ColumnOutput#writeString(String)}.
+     * @throws IOException If the string could not be read.
+     */
+    String readString() throws IOException {
+        final int length = readVarInt();
+        if (length == 0) {
+            return null;
+        }
+        final byte[] utf8 = new byte[length - 1];
+        buffer.get(utf8);
+        return new String(utf8, StandardCharsets.UTF_8);
+    }
+
+    void skipString() throws IOException {
+        final int length = readVarInt();
+        if (length > 0) {
+            buffer.position(buffer.position() + length - 1);
+        }
+    }
+}
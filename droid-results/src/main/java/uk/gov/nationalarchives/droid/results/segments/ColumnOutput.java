@@ -0,0 +1,133 @@
+/*
+ * Copyright (c) 2016, The National Archives <pronom@nationalarchives.gov.uk>
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following
+ * conditions are met:
+ *
+ *  * Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ *
+ *  * Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ *
+ *  * Neither the name of the The National Archives nor the
+ *    names of its contributors may be used to endorse or promote products
+ *    derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package uk.gov.nationalarchives.droid.results.segments;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * A growable array of bytes which a column of a result segment is encoded into.
+ *
+ * <p>Numbers are written as unsigned variable length integers, seven bits to a byte, so small
+ * values such as deltas, codes and ordinals take a single byte.  Signed values are zig-zag
+ * encoded first, so small negative values are small too.</p>
+ */
+final class ColumnOutput {
+
+    private static final int INITIAL_SIZE = 1024;
+    private static final int SEVEN_BITS = 0x7F;
+    private static final int MORE_BYTES = 0x80;
+    private static final int BITS_PER_BYTE = 7;
+    private static final int SIGN_SHIFT = 63;
+    private static final int MAX_VAR_LONG_BYTES = 10; // 64 bits, seven at a time.
+
+    private byte[] bytes = new byte[INITIAL_SIZE];
+    private int size;
+
+    /**
+     * @param value A signed value.
+     * @return The value zig-zag encoded, so values close to zero are small unsigned values.
+     */
+    static long zigZag(long value) {
+        return (value << 1) ^ (value >> SIGN_SHIFT);
+    }
+
+    void writeByte(int value) {
+        ensureCapacity(1);
+        bytes[size++] = (byte) value;
+    }
+
+    void writeVarLong(long value) {
+        ensureCapacity(MAX_VAR_LONG_BYTES);
+        long remaining = value;
+        while ((remaining & ~SEVEN_BITS) != 0) {
+            bytes[size++] = (byte) ((remaining & SEVEN_BITS) | MORE_BYTES);
+            remaining >>>= BITS_PER_BYTE;
+        }
+        bytes[size++] = (byte) remaining;
+    }
+
+    void writeZigZag(long value) {
+        writeVarLong(zigZag(value));
+    }
+
+    /**
+     * Writes a value which may be null: zero for null, or the zig-zag encoded value plus one.
+     *
+     * @param value The value to write, or null.
+     */
+    void writeNullableZigZag(Long value) {
+        writeVarLong(value == null ? 0 : zigZag(value) + 1);
+    }
+
+    void writeBytes(byte[] source, int offset, int length) {
+        ensureCapacity(length);
+        System.arraycopy(source, offset, bytes, size, length);
+        size += length;
+    }
+
+    /**
+     * Writes a string which may be null: zero for null, or the length of its UTF-8 bytes plus one,
+     * followed by the bytes.
+     *
+     * @param value The string to write, or null.
+     */
+    void writeString(String value) {
+        if (value == null) {
+            writeVarLong(0);
+        } else {
+            final byte[] utf8 = value.getBytes(StandardCharsets.UTF_8);
+            writeVarLong(utf8.length + 1L);
+            writeBytes(utf8, 0, utf8.length);
+        }
+    }
+
+    int size() {
+        return size;
+    }
+
+    void writeTo(FileChannel channel) throws IOException {
+        final ByteBuffer buffer = ByteBuffer.wrap(bytes, 0, size);
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+    }
+
+    private void ensureCapacity(int extra) {
+        if (size + extra > bytes.length) {
+            bytes = Arrays.copyOf(bytes, Math.max(bytes.length * 2, size + extra));
+        }
+    }
+}
@@ -0,0 +1,114 @@
+/*
+ * Copyright (c) 2016, The National Archives <pronom@nationalarchives.gov.uk>
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following
+ * conditions are met:
+ *
+ *  * Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ *
+ *  * Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ *
+ *  * Neither the name of the The National Archives nor the
+ *    names of its contributors may be used to endorse or promote products
+ *    derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package uk.gov.nationalarchives.droid.results.segments;
+
+/**
+ * The number of nodes with a PUID or extension, and the total, smallest and largest of their sizes.
+ */
+public final class ResultAggregate {
+
+    private final String value;
+    private long count;
+    private long sizedCount;
+    private long totalSize;
+    private long minSize = Long.MAX_VALUE;
+    private long maxSize = Long.MIN_VALUE;
+
+    /**
+     * @param value The PUID or extension the nodes were grouped by.
+     */
+    public ResultAggregate(String value) {
+        this.value = value;
+    }
+
+    /**
+     * Adds a node to the aggregate.
+     *
+     * @param size The size of the node, or null if it has no size.
+     */
+    public void add(Long size) {
+        count++;
+        if (size != null) {
+            sizedCount++;
+            totalSize += size;
+            minSize = Math.min(minSize, size);
+            maxSize = Math.max(maxSize, size);
+        }
+    }
+
+    /**
+     * @return The PUID or extension the nodes were grouped by.
+     */
+    public String getValue() {
+        return value;
+    }
+
+    /**
+     * @return The number of nodes.
+     */
+    public long getCount() {
+        return count;
+    }
+
+    /**
+     * @return The total size of the nodes.
+     */
+    public long getTotalSize() {
+        return totalSize;
+    }
+
+    /**
+     * @return The size of the smallest node, or null if none of the nodes had a size.
+     */
+    public Long getMinSize() {
+        return sizedCount == 0 ? null : minSize;
+    }
+
+    /**
+     * @return The size of the largest node, or null if none of the nodes had a size.
+     */
+    public Long getMaxSize() {
+        return sizedCount == 0 ? null : maxSize;
+    }
+
+    /**
+     * @return The mean size of the nodes which had a size, or null if none of them had a size.
+     */
+    public Double getMeanSize() {
+        return sizedCount == 0 ? null : (double) totalSize / sizedCount;
+    }
+
+    @Override
+    public String toString() {
+        return value + " count:" + count + " total size:" + totalSize;
+    }
+}
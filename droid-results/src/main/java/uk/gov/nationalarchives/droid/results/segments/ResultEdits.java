@@ -0,0 +1,80 @@
+/*
+ * Copyright (c) 2016, The National Archives <pronom@nationalarchives.gov.uk>
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following
+ * conditions are met:
+ *
+ *  * Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ *
+ *  * Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ *
+ *  * Neither the name of the The National Archives nor the
+ *    names of its contributors may be used to endorse or promote products
+ *    derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package uk.gov.nationalarchives.droid.results.segments;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+import uk.gov.nationalarchives.droid.core.interfaces.NodeStatus;
+
+/**
+ * The changes made to nodes after they were appended to a result segment: new statuses, and deletions.
+ * Segments are never rewritten, so these are applied as the nodes are read.
+ */
+public final class ResultEdits {
+
+    private final Map<Long, NodeStatus> statuses = new HashMap<>();
+    private final Set<Long> deleted = new HashSet<>();
+
+    void setStatus(long nodeId, NodeStatus status) {
+        statuses.put(nodeId, status);
+    }
+
+    void delete(long nodeId) {
+        deleted.add(nodeId);
+    }
+
+    /**
+     * @param nodeId The id of a node.
+     * @return The latest status given to the node, or null if its status has not changed.
+     */
+    public NodeStatus getStatus(long nodeId) {
+        return statuses.get(nodeId);
+    }
+
+    /**
+     * @param nodeId The id of a node.
+     * @return Whether the node has been deleted.
+     */
+    public boolean isDeleted(long nodeId) {
+        return deleted.contains(nodeId);
+    }
+
+    /**
+     * @return Whether there are no edits.
+     */
+    public boolean isEmpty() {
+        return statuses.isEmpty() && deleted.isEmpty();
+    }
+}
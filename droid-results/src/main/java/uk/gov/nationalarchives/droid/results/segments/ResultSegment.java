@@ -0,0 +1,405 @@
+/*
+ * Copyright (c) 2016, The National Archives <pronom@nationalarchives.gov.uk>
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following
+ * conditions are met:
+ *
+ *  * Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ *
+ *  * Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ *
+ *  * Neither the name of the The National Archives nor the
+ *    names of its contributors may be used to endorse or promote products
+ *    derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package uk.gov.nationalarchives.droid.results.segments;
+
+import java.io.IOException;
+import java.net.URI;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+
+import uk.gov.nationalarchives.droid.core.interfaces.IdentificationMethod;
+import uk.gov.nationalarchives.droid.core.interfaces.NodeStatus;
+import uk.gov.nationalarchives.droid.core.interfaces.ResourceType;
+import uk.gov.nationalarchives.droid.core.interfaces.hash.HashAlgorithm;
+import uk.gov.nationalarchives.droid.profile.NodeMetaData;
+import uk.gov.nationalarchives.droid.profile.ProfileResourceNode;
+import uk.gov.nationalarchives.droid.profile.referencedata.Format;
+
+/**
+ * A result segment file, read into memory.
+ *
+ * <p>Segments are read through a channel rather than memory mapped, so the file is closed once it
+ * has been read: a mapped file stays open until the garbage collector releases the mapping, and
+ * on Windows it could not be deleted or replaced until then.  Segments are no bigger than
+ * {@link ResultSegmentLog#DEFAULT_SEGMENT_BYTES} or so, and are read one at a time.</p>
+ *
+ * <p>Nodes can be decoded one at a time with a {@link Cursor}, or single columns can be scanned
+ * without decoding the rest of the nodes - for example to find the parents of nodes, or to count
+ * and total the sizes of nodes by PUID or extension.</p>
+ */
+public final class ResultSegment {
+
+    private static final int HEADER_BYTES = 16;
+    private static final int FOLDER_CODE = ResourceType.FOLDER.ordinal() + 1;
+    private static final String SEGMENT = "The result segment ";
+    private static final String TRUNCATED = "The result segment is truncated: ";
+
+    /**
+     * A column which nodes can be aggregated by.
+     */
+    public enum GroupBy {
+        /** Group nodes by the PUIDs they were identified as, counting a node once for each PUID. */
+        PUID,
+
+        /** Group nodes by their extension. */
+        EXTENSION
+    }
+
+    private final Path file;
+    private final int nodeCount;
+    private final Map<SegmentColumn, ByteBuffer> columns = new EnumMap<>(SegmentColumn.class);
+
+    private ResultSegment(Path file, ByteBuffer contents) throws IOException {
+        this.file = file;
+        if (contents.remaining() < HEADER_BYTES || contents.getInt() != ResultSegmentBuilder.MAGIC) {
+            throw new IOException("The file is not a result segment: " + file);
+        }
+        final int version = contents.getInt();
+        if (version != ResultSegmentBuilder.VERSION) {
+            throw new IOException(SEGMENT + file + " has an unsupported version: " + version);
+        }
+        nodeCount = contents.getInt();
+        final int columnCount = contents.getInt();
+        final int[] ids = new int[columnCount];
+        final int[] lengths = new int[columnCount];
+        for (int i = 0; i < columnCount; i++) {
+            ids[i] = contents.getInt();
+            lengths[i] = contents.getInt();
+        }
+        int offset = contents.position();
+        for (int i = 0; i < columnCount; i++) {
+            if (lengths[i] < 0 || offset + lengths[i] > contents.limit()) {
+                throw new IOException(TRUNCATED + file);
+            }
+            final SegmentColumn column = SegmentColumn.forId(ids[i]);
+            if (column != null) { // columns added by later versions are ignored.
+                final ByteBuffer columnBytes = contents.duplicate();
+                columnBytes.position(offset);
+                columnBytes.limit(offset + lengths[i]);
+                columns.put(column, columnBytes.slice());
+            }
+            offset += lengths[i];
+        }
+    }
+
+    /**
+     * Reads a result segment file.
+     *
+     * @param file The segment file.
+     * @return The result segment.
+     * @throws IOException If the file could not be read, or is not a result segment.
+     */
+    public static ResultSegment open(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            final long size = channel.size();
+            if (size > Integer.MAX_VALUE) {
+                throw new IOException("The result segment is too big to read: " + file);
+            }
+            final ByteBuffer contents = ByteBuffer.allocate((int) size);
+            while (contents.hasRemaining()) {
+                if (channel.read(contents) < 0) {
+                    throw new IOException(TRUNCATED + file);
+                }
+            }
+            contents.flip();
+            return new ResultSegment(file, contents);
+        }
+    }
+
+    /**
+     * @return The segment file.
+     */
+    public Path getFile() {
+        return file;
+    }
+
+    /**
+     * @return The number of nodes in the segment.
+     */
+    public int getNodeCount() {
+        return nodeCount;
+    }
+
+    /**
+     * @return The ids of the nodes in the segment, in the order they were saved.
+     * @throws IOException If the node id column could not be read.
+     */
+    public long[] readNodeIds() throws IOException {
+        final ColumnInput nodeIds = column(SegmentColumn.NODE_ID);
+        final long[] ids = new long[nodeCount];
+        long nodeId = 0;
+        for (int i = 0; i < nodeCount; i++) {
+            nodeId += nodeIds.readZigZag();
+            ids[i] = nodeId;
+        }
+        return ids;
+    }
+
+    /**
+     * @return The parent ids of the nodes in the segment, or -1 for nodes with no parent.
+     * @throws IOException If the node id or parent id columns could not be read.
+     */
+    public long[] readParentIds() throws IOException {
+        final long[] ids = readNodeIds();
+        final ColumnInput parentIds = column(SegmentColumn.PARENT_ID);
+        for (int i = 0; i < nodeCount; i++) {
+            final Long delta = parentIds.readNullableZigZag();
+            ids[i] = delta == null ? -1 : ids[i] - delta;
+        }
+        return ids;
+    }
+
+    /**
+     * Counts the nodes of the segment which are not folders, and totals their sizes, by PUID or extension.
+     * Nodes with no PUID or no extension are counted under an empty string.
+     *
+     * @param groupBy The column to group the nodes by.
+     * @param edits The edits of the results, so nodes which were deleted are not counted.
+     * @param totals The totals to add to, keyed by PUID or extension.
+     * @throws IOException If the columns could not be read.
+     */
+    public void aggregate(GroupBy groupBy, ResultEdits edits, Map<String, ResultAggregate> totals)
+        throws IOException {
+        final boolean byPuid = groupBy == GroupBy.PUID;
+        final String[] dictionary = readDictionary(
+                byPuid ? SegmentColumn.PUID_DICTIONARY : SegmentColumn.EXTENSION_DICTIONARY);
+        final ColumnInput groups = column(byPuid ? SegmentColumn.PUIDS : SegmentColumn.EXTENSION);
+        final ColumnInput nodeIds = column(SegmentColumn.NODE_ID);
+        final ColumnInput sizes = column(SegmentColumn.SIZE);
+        final ColumnInput types = column(SegmentColumn.RESOURCE_TYPE);
+        long nodeId = 0;
+        for (int i = 0; i < nodeCount; i++) {
+            nodeId += nodeIds.readZigZag();
+            final Long size = sizes.readNullableZigZag();
+            final boolean counted = types.readByte() != FOLDER_CODE && !edits.isDeleted(nodeId);
+            final int values = byPuid ? groups.readVarInt() : 1;
+            for (int j = 0; j < values; j++) {
+                final int code = groups.readVarInt();
+                if (counted) {
+                    final String key = code == 0 ? "" : dictionary[code - 1];
+                    totals.computeIfAbsent(key, ResultAggregate::new).add(size);
+                }
+            }
+        }
+    }
+
+    /**
+     * Returns a cursor which decodes the nodes of the segment one at a time, in the order they were saved.
+     *
+     * @param formats The formats to identify nodes with, by PUID.
+     * @return A cursor over the nodes of the segment.
+     * @throws IOException If the columns of the segment could not be read.
+     */
+    public Cursor cursor(Map<String, Format> formats) throws IOException {
+        return new Cursor(formats);
+    }
+
+    private ColumnInput column(SegmentColumn column) throws IOException {
+        final ByteBuffer bytes = columns.get(column);
+        if (bytes == null) {
+            throw new IOException(SEGMENT + file + " has no " + column + " column.");
+        }
+        return new ColumnInput(bytes.duplicate());
+    }
+
+    private String[] readDictionary(SegmentColumn column) throws IOException {
+        final ColumnInput input = column(column);
+        final List<String> values = new ArrayList<>();
+        while (input.hasRemaining()) {
+            values.add(input.readString());
+        }
+        return values.toArray(new String[0]);
+    }
+
+    private static <T> T fromCode(T[] values, int code) {
+        return code == 0 || code > values.length ? null : values[code - 1];
+    }
+
+    /**
+     * Decodes the nodes of a segment one at a time.
+     */
+    public final class Cursor {
+
+        private final Map<String, Format> formats;
+        private final String[] extensionDictionary;
+        private final String[] puidDictionary;
+        private final Format[] puidFormats;
+        private final ColumnInput nodeIds;
+        private final ColumnInput parentIds;
+        private final ColumnInput uris;
+        private final ColumnInput names;
+        private final ColumnInput extensions;
+        private final ColumnInput sizes;
+        private final ColumnInput lastModified;
+        private final ColumnInput finished;
+        private final ColumnInput resourceTypes;
+        private final ColumnInput nodeStatuses;
+        private final ColumnInput methods;
+        private final ColumnInput mismatches;
+        private final ColumnInput identificationCounts;
+        private final ColumnInput puids;
+        private final ColumnInput hash;
+        private final ColumnInput hashes;
+
+        private int nodesRead;
+        private long previousNodeId;
+        private long previousModified;
+        private long previousFinished;
+        private byte[] previousUri = new byte[0];
+
+        private Cursor(Map<String, Format> formats) throws IOException {
+            this.formats = formats;
+            extensionDictionary = readDictionary(SegmentColumn.EXTENSION_DICTIONARY);
+            puidDictionary = readDictionary(SegmentColumn.PUID_DICTIONARY);
+            puidFormats = new Format[puidDictionary.length];
+            nodeIds = column(SegmentColumn.NODE_ID);
+            parentIds = column(SegmentColumn.PARENT_ID);
+            uris = column(SegmentColumn.URI);
+            names = column(SegmentColumn.NAME);
+            extensions = column(SegmentColumn.EXTENSION);
+            sizes = column(SegmentColumn.SIZE);
+            lastModified = column(SegmentColumn.LAST_MODIFIED);
+            finished = column(SegmentColumn.FINISHED);
+            resourceTypes = column(SegmentColumn.RESOURCE_TYPE);
+            nodeStatuses = column(SegmentColumn.NODE_STATUS);
+            methods = column(SegmentColumn.IDENTIFICATION_METHOD);
+            mismatches = column(SegmentColumn.EXTENSION_MISMATCH);
+            identificationCounts = column(SegmentColumn.IDENTIFICATION_COUNT);
+            puids = column(SegmentColumn.PUIDS);
+            hash = column(SegmentColumn.HASH);
+            hashes = column(SegmentColumn.HASHES);
+        }
+
+        /**
+         * @return The next node of the segment, or null if all the nodes have been read.
+         * @throws IOException If the node could not be decoded.
+         */
+        public ProfileResourceNode next() throws IOException {
+            if (nodesRead == nodeCount) {
+                return null;
+            }
+            nodesRead++;
+            final long nodeId = previousNodeId + nodeIds.readZigZag();
+            previousNodeId = nodeId;
+            final ProfileResourceNode node = new ProfileResourceNode(readUri());
+            node.setId(nodeId);
+            final Long parentDelta = parentIds.readNullableZigZag();
+            node.setParentId(parentDelta == null ? null : nodeId - parentDelta);
+
+            final NodeMetaData metaData = new NodeMetaData();
+            node.setMetaData(metaData);
+            metaData.setName(names.readString());
+            metaData.setExtension(fromCode(extensionDictionary, extensions.readVarInt()));
+            metaData.setSize(sizes.readNullableZigZag());
+            final long modifiedCode = lastModified.readVarLong();
+            if (modifiedCode != 0) {
+                previousModified += ColumnInput.unZigZag(modifiedCode - 1);
+                metaData.setLastModifiedDate(new Date(previousModified));
+            }
+            final long finishedCode = finished.readVarLong();
+            if (finishedCode != 0) {
+                previousFinished += ColumnInput.unZigZag(finishedCode - 1);
+                node.setFinished(new Date(previousFinished));
+            }
+            metaData.setResourceType(fromCode(ResourceType.values(), resourceTypes.readByte()));
+            metaData.setNodeStatus(fromCode(NodeStatus.values(), nodeStatuses.readByte()));
+            metaData.setIdentificationMethod(fromCode(IdentificationMethod.values(), methods.readByte()));
+            node.setExtensionMismatch(mismatches.readByte() != 0);
+            readIdentifications(node);
+            metaData.setHash(hash.readString());
+            readHashes(metaData);
+            return node;
+        }
+
+        private URI readUri() throws IOException {
+            final int shared = uris.readVarInt();
+            final int rest = uris.readVarInt();
+            final byte[] utf8 = new byte[shared + rest];
+            System.arraycopy(previousUri, 0, utf8, 0, shared);
+            uris.readBytes(utf8, shared, rest);
+            previousUri = utf8;
+            final String uri = new String(utf8, StandardCharsets.UTF_8);
+            try {
+                return URI.create(uri);
+            } catch (IllegalArgumentException e) {
+                throw new IOException(SEGMENT + file + " has an invalid uri: " + uri, e);
+            }
+        }
+
+        private void readIdentifications(ProfileResourceNode node) throws IOException {
+            final long identificationCode = identificationCounts.readVarLong();
+            if (identificationCode == 1) {
+                node.setZeroIdentifications();
+            }
+            final int identifications = puids.readVarInt();
+            for (int i = 0; i < identifications; i++) {
+                node.addFormatIdentification(getFormat(puids.readVarInt()));
+            }
+            if (identificationCode == 0) {
+                node.setNoFormatsIdentified();
+            }
+        }
+
+        private Format getFormat(int code) {
+            if (code == 0) {
+                return Format.NULL;
+            }
+            Format format = puidFormats[code - 1];
+            if (format == null) {
+                final String puid = puidDictionary[code - 1];
+                format = formats.get(puid);
+                if (format == null) {
+                    format = puid.isEmpty() ? Format.NULL : new Format(puid, "", "", "");
+                }
+                puidFormats[code - 1] = format;
+            }
+            return format;
+        }
+
+        private void readHashes(NodeMetaData metaData) throws IOException {
+            final long algorithms = hashes.readVarLong();
+            for (HashAlgorithm algorithm : HashAlgorithm.values()) {
+                if ((algorithms & (1L << algorithm.ordinal())) != 0) {
+                    metaData.setHash(algorithm, hashes.readString());
+                }
+            }
+        }
+    }
+}
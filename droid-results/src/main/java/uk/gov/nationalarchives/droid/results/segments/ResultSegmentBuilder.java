@@ -0,0 +1,241 @@
+/*
+ * Copyright (c) 2016, The National Archives <pronom@nationalarchives.gov.uk>
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following
+ * conditions are met:
+ *
+ *  * Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ *
+ *  * Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ *
+ *  * Neither the name of the The National Archives nor the
+ *    names of its contributors may be used to endorse or promote products
+ *    derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package uk.gov.nationalarchives.droid.results.segments;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Date;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import uk.gov.nationalarchives.droid.core.interfaces.hash.HashAlgorithm;
+import uk.gov.nationalarchives.droid.profile.NodeMetaData;
+import uk.gov.nationalarchives.droid.profile.ProfileResourceNode;
+import uk.gov.nationalarchives.droid.profile.referencedata.Format;
+
+/**
+ * Encodes nodes into the columns of a new result segment, and writes the segment to a file.
+ */
+final class ResultSegmentBuilder {
+
+    /** The first four bytes of a segment file: "DRSG". */
+    static final int MAGIC = 0x44525347;
+
+    /** The version of the segment file format. */
+    static final int VERSION = 1;
+
+    private static final int HEADER_INTS = 4;
+    private static final int INTS_PER_COLUMN = 2;
+
+    private final Map<SegmentColumn, ColumnOutput> columns = new EnumMap<>(SegmentColumn.class);
+    private final Dictionary extensions;
+    private final Dictionary puids;
+
+    private int nodeCount;
+    private long previousNodeId;
+    private long previousModified;
+    private long previousFinished;
+    private byte[] previousUri = new byte[0];
+
+    ResultSegmentBuilder() {
+        for (SegmentColumn column : SegmentColumn.values()) {
+            columns.put(column, new ColumnOutput());
+        }
+        extensions = new Dictionary(columns.get(SegmentColumn.EXTENSION_DICTIONARY));
+        puids = new Dictionary(columns.get(SegmentColumn.PUID_DICTIONARY));
+    }
+
+    /**
+     * Encodes a node into the columns of the segment.
+     *
+     * @param node The node to add, which must have an id.
+     */
+    void add(ProfileResourceNode node) {
+        final long nodeId = node.getId();
+        columns.get(SegmentColumn.NODE_ID).writeZigZag(nodeId - previousNodeId);
+        previousNodeId = nodeId;
+        final Long parentId = node.getParentId();
+        columns.get(SegmentColumn.PARENT_ID).writeNullableZigZag(parentId == null ? null : nodeId - parentId);
+        writeUri(node.getUri().toString());
+
+        final NodeMetaData metaData = node.getMetaData();
+        columns.get(SegmentColumn.NAME).writeString(metaData.getName());
+        columns.get(SegmentColumn.EXTENSION).writeVarLong(extensions.code(metaData.getExtension()));
+        columns.get(SegmentColumn.SIZE).writeNullableZigZag(metaData.getSize());
+        previousModified = writeTime(SegmentColumn.LAST_MODIFIED, metaData.getLastModifiedDate(), previousModified);
+        previousFinished = writeTime(SegmentColumn.FINISHED, node.getFinished(), previousFinished);
+        writeOrdinal(SegmentColumn.RESOURCE_TYPE, metaData.getResourceType());
+        writeOrdinal(SegmentColumn.NODE_STATUS, metaData.getNodeStatus());
+        writeOrdinal(SegmentColumn.IDENTIFICATION_METHOD, metaData.getIdentificationMethod());
+        final boolean mismatch = Boolean.TRUE.equals(node.getExtensionMismatch());
+        columns.get(SegmentColumn.EXTENSION_MISMATCH).writeByte(mismatch ? 1 : 0);
+
+        final Integer identificationCount = node.getIdentificationCount();
+        columns.get(SegmentColumn.IDENTIFICATION_COUNT).writeVarLong(
+                identificationCount == null ? 0 : identificationCount + 1L);
+        final List<Format> identifications = node.getFormatIdentifications();
+        final ColumnOutput puidColumn = columns.get(SegmentColumn.PUIDS);
+        puidColumn.writeVarLong(identifications.size());
+        for (Format format : identifications) {
+            puidColumn.writeVarLong(puids.code(format == null ? null : format.getPuid()));
+        }
+
+        columns.get(SegmentColumn.HASH).writeString(metaData.getHash());
+        writeHashes(metaData);
+        nodeCount++;
+    }
+
+    /**
+     * @return The number of nodes added to the segment.
+     */
+    int getNodeCount() {
+        return nodeCount;
+    }
+
+    /**
+     * @return The number of bytes the columns of the segment take so far.
+     */
+    long getEncodedBytes() {
+        long bytes = 0;
+        for (ColumnOutput column : columns.values()) {
+            bytes += column.size();
+        }
+        return bytes;
+    }
+
+    /**
+     * Writes the segment to a new file: a header giving the node count and the id and length of each
+     * column, followed by the columns.
+     *
+     * @param file The file to write.
+     * @throws IOException If the file could not be written.
+     */
+    void writeTo(Path file) throws IOException {
+        final ByteBuffer header = ByteBuffer.allocate(
+                Integer.BYTES * (HEADER_INTS + INTS_PER_COLUMN * columns.size()));
+        header.putInt(MAGIC).putInt(VERSION).putInt(nodeCount).putInt(columns.size());
+        for (Map.Entry<SegmentColumn, ColumnOutput> column : columns.entrySet()) {
+            header.putInt(column.getKey().getId()).putInt(column.getValue().size());
+        }
+        header.flip();
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE)) {
+            while (header.hasRemaining()) {
+                channel.write(header);
+            }
+            for (ColumnOutput column : columns.values()) {
+                column.writeTo(channel);
+            }
+            channel.force(false);
+        }
+    }
+
+    /*
+     * Uris of nodes saved one after the other mostly share a long prefix - the folder they are in,
+     * or the archive they were found in - so only the bytes which differ are written.
+     */
+    private void writeUri(String uri) {
+        final byte[] utf8 = uri.getBytes(StandardCharsets.UTF_8);
+        final int limit = Math.min(utf8.length, previousUri.length);
+        int shared = 0;
+        while (shared < limit && utf8[shared] == previousUri[shared]) {
+            shared++;
+        }
+        final ColumnOutput uriColumn = columns.get(SegmentColumn.URI);
+        uriColumn.writeVarLong(shared);
+        uriColumn.writeVarLong(utf8.length - shared);
+        uriColumn.writeBytes(utf8, shared, utf8.length - shared);
+        previousUri = utf8;
+    }
+
+    private long writeTime(SegmentColumn column, Date time, long previous) {
+        if (time == null) {
+            columns.get(column).writeVarLong(0);
+            return previous;
+        }
+        final long millis = time.getTime();
+        columns.get(column).writeVarLong(ColumnOutput.zigZag(millis - previous) + 1);
+        return millis;
+    }
+
+    private void writeOrdinal(SegmentColumn column, Enum<?> value) {
+        columns.get(column).writeByte(value == null ? 0 : value.ordinal() + 1);
+    }
+
+    private void writeHashes(NodeMetaData metaData) {
+        final ColumnOutput hashColumn = columns.get(SegmentColumn.HASHES);
+        int algorithms = 0;
+        for (HashAlgorithm algorithm : HashAlgorithm.values()) {
+            if (metaData.getHash(algorithm) != null) {
+                algorithms |= 1 << algorithm.ordinal();
+            }
+        }
+        hashColumn.writeVarLong(algorithms);
+        for (HashAlgorithm algorithm : HashAlgorithm.values()) {
+            if ((algorithms & (1 << algorithm.ordinal())) != 0) {
+                hashColumn.writeString(metaData.getHash(algorithm));
+            }
+        }
+    }
+
+    /**
+     * Gives each distinct string in a column a code, starting from one, writing each string to the
+     * dictionary column the first time it is seen.  Null strings have the code zero.
+     */
+    private static final class Dictionary {
+
+        private final Map<String, Integer> codes = new HashMap<>();
+        private final ColumnOutput dictionaryColumn;
+
+        Dictionary(ColumnOutput dictionaryColumn) {
+            this.dictionaryColumn = dictionaryColumn;
+        }
+
+        int code(String value) {
+            if (value == null) {
+                return 0;
+            }
+            Integer code = codes.get(value);
+            if (code == null) {
+                code = codes.size() + 1;
+                codes.put(value, code);
+                dictionaryColumn.writeString(value);
+            }
+            return code;
+        }
+    }
+}
@@ -0,0 +1,305 @@
+/*
+ * Copyright (c) 2016, The National Archives <pronom@nationalarchives.gov.uk>
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following
+ * conditions are met:
+ *
+ *  * Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ *
+ *  * Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ *
+ *  * Neither the name of the The National Archives nor the
+ *    names of its contributors may be used to endorse or promote products
+ *    derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package uk.gov.nationalarchives.droid.results.segments;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import uk.gov.nationalarchives.droid.core.interfaces.NodeStatus;
+import uk.gov.nationalarchives.droid.profile.ProfileResourceNode;
+
+/**
+ * An append-only log of profile results, held in a directory as a sequence of immutable, columnar
+ * segment files, and a log of the edits made to nodes once they have been written.
+ *
+ * <p>Nodes are encoded into a segment in memory as they are appended, and the segment is written to a
+ * new file once it holds {@link #DEFAULT_SEGMENT_NODES} nodes or {@link #DEFAULT_SEGMENT_BYTES} bytes,
+ * or when the log is flushed.  Segments are written to a temporary file which is then moved into place,
+ * so a segment file is either complete or absent.  Segments are never rewritten: status changes and
+ * deletions are appended to the edits log instead, and applied when the nodes are read.</p>
+ */
+public final class ResultSegmentLog implements Closeable {
+
+    /** The most nodes written to one segment. */
+    public static final int DEFAULT_SEGMENT_NODES = 65536;
+
+    /** The most encoded bytes written to one segment. */
+    public static final long DEFAULT_SEGMENT_BYTES = 16L * 1024 * 1024;
+
+    private static final String SEGMENT_PREFIX = "segment-";
+    private static final String ANY = "*";
+    private static final String SEGMENT_SUFFIX = ".seg";
+    private static final String TEMP_SUFFIX = ".tmp";
+    private static final String EDITS_FILE = "edits.log";
+    private static final int STATUS_EDIT = 1;
+    private static final int DELETE_EDIT = 2;
+
+    private final Path directory;
+    private final int maxSegmentNodes;
+    private final long maxSegmentBytes;
+
+    private ResultSegmentBuilder builder = new ResultSegmentBuilder();
+    private int nextSegmentNumber;
+    private DataOutputStream edits;
+
+    /**
+     * Opens a segment log in a directory with the default segment sizes, creating the directory if it
+     * does not exist.
+     *
+     * @param directory The directory holding the segments.
+     * @throws IOException If the directory could not be created or read.
+     */
+    public ResultSegmentLog(Path directory) throws IOException {
+        this(directory, DEFAULT_SEGMENT_NODES, DEFAULT_SEGMENT_BYTES);
+    }
+
+    /**
+     * Opens a segment log in a directory, creating the directory if it does not exist.
+     * Temporary files left by a segment which was never completed are deleted.
+     *
+     * @param directory The directory holding the segments.
+     * @param maxSegmentNodes The most nodes to write to one segment.
+     * @param maxSegmentBytes The most encoded bytes to write to one segment.
+     * @throws IOException If the directory could not be created or read.
+     */
+    public ResultSegmentLog(Path directory, int maxSegmentNodes, long maxSegmentBytes) throws IOException {
+        this.directory = directory;
+        this.maxSegmentNodes = maxSegmentNodes;
+        this.maxSegmentBytes = maxSegmentBytes;
+        Files.createDirectories(directory);
+        try (DirectoryStream<Path> temporaryFiles = Files.newDirectoryStream(directory, ANY + TEMP_SUFFIX)) {
+            for (Path file : temporaryFiles) {
+                Files.delete(file);
+            }
+        }
+        final List<Path> segments = getSegmentFiles();
+        nextSegmentNumber = segments.isEmpty() ? 1 : segmentNumber(segments.get(segments.size() - 1)) + 1;
+    }
+
+    /**
+     * @return The directory holding the segments.
+     */
+    public Path getDirectory() {
+        return directory;
+    }
+
+    /**
+     * Appends a node to the log.  The node must have an id, and ids must not be reused.
+     *
+     * @param node The node to append.
+     * @throws IOException If the node filled a segment which could not be written.
+     */
+    public synchronized void append(ProfileResourceNode node) throws IOException {
+        builder.add(node);
+        if (builder.getNodeCount() >= maxSegmentNodes || builder.getEncodedBytes() >= maxSegmentBytes) {
+            writeSegment();
+        }
+    }
+
+    /**
+     * Records a new status for a node which has already been appended.
+     *
+     * @param nodeId The id of the node.
+     * @param status The new status of the node.
+     * @throws IOException If the edit could not be written.
+     */
+    public synchronized void recordStatus(long nodeId, NodeStatus status) throws IOException {
+        final DataOutputStream out = getEdits();
+        out.writeByte(STATUS_EDIT);
+        out.writeLong(nodeId);
+        out.writeByte(status.ordinal());
+    }
+
+    /**
+     * Records that a node which has already been appended is deleted.
+     *
+     * @param nodeId The id of the node.
+     * @throws IOException If the edit could not be written.
+     */
+    public synchronized void recordDeletion(long nodeId) throws IOException {
+        final DataOutputStream out = getEdits();
+        out.writeByte(DELETE_EDIT);
+        out.writeLong(nodeId);
+        out.writeByte(0);
+    }
+
+    /**
+     * Writes any nodes appended since the last segment to a new segment, and flushes the edits log.
+     *
+     * @throws IOException If the segment or the edits could not be written.
+     */
+    public synchronized void flush() throws IOException {
+        if (builder.getNodeCount() > 0) {
+            writeSegment();
+        }
+        if (edits != null) {
+            edits.flush();
+        }
+    }
+
+    /**
+     * @return The segment files written so far, in the order they were written.
+     * @throws IOException If the directory could not be read.
+     */
+    public List<Path> getSegmentFiles() throws IOException {
+        final List<Path> segments = new ArrayList<>();
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory, SEGMENT_PREFIX + ANY + SEGMENT_SUFFIX)) {
+            for (Path file : files) {
+                segments.add(file);
+            }
+        }
+        Collections.sort(segments); // segment numbers are zero padded, so they sort by name.
+        return segments;
+    }
+
+    /**
+     * Reads the edits log.  If the last edit was only partly written, it is ignored.
+     *
+     * @return The edits made to nodes after they were appended.
+     * @throws IOException If the edits log could not be read.
+     */
+    public synchronized ResultEdits readEdits() throws IOException {
+        final ResultEdits result = new ResultEdits();
+        if (edits != null) {
+            edits.flush();
+        }
+        final Path file = directory.resolve(EDITS_FILE);
+        if (Files.exists(file)) {
+            try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file)))) {
+                readEdits(in, result);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * @return The largest node id in the segments, or zero if there are none.
+     * @throws IOException If a segment could not be read.
+     */
+    public synchronized long getMaxNodeId() throws IOException {
+        long maxNodeId = 0;
+        for (Path file : getSegmentFiles()) {
+            for (long nodeId : ResultSegment.open(file).readNodeIds()) {
+                maxNodeId = Math.max(maxNodeId, nodeId);
+            }
+        }
+        return maxNodeId;
+    }
+
+    /**
+     * Counts the nodes written to the segments which are not folders, and totals their sizes, by PUID
+     * or extension, without decoding the other columns of the nodes.  Deleted nodes are not counted.
+     * The log is flushed first, so every node appended so far is counted.
+     *
+     * @param groupBy The column to group the nodes by.
+     * @return The aggregates, keyed by PUID or extension, in order.
+     * @throws IOException If the log could not be flushed, or a segment or the edits log could not be read.
+     */
+    public synchronized Map<String, ResultAggregate> aggregate(ResultSegment.GroupBy groupBy) throws IOException {
+        flush();
+        final ResultEdits resultEdits = readEdits();
+        final Map<String, ResultAggregate> totals = new TreeMap<>();
+        for (Path file : getSegmentFiles()) {
+            ResultSegment.open(file).aggregate(groupBy, resultEdits, totals);
+        }
+        return totals;
+    }
+
+    /**
+     * Flushes the log, and closes the edits log.
+     *
+     * @throws IOException If the log could not be flushed or closed.
+     */
+    @Override
+    public synchronized void close() throws IOException {
+        flush();
+        if (edits != null) {
+            edits.close();
+            edits = null;
+        }
+    }
+
+    private void writeSegment() throws IOException {
+        final String name = String.format("%s%08d%s", SEGMENT_PREFIX, nextSegmentNumber, SEGMENT_SUFFIX);
+        final Path temporaryFile = directory.resolve(name + TEMP_SUFFIX);
+        builder.writeTo(temporaryFile);
+        Files.move(temporaryFile, directory.resolve(name), StandardCopyOption.ATOMIC_MOVE);
+        nextSegmentNumber++;
+        builder = new ResultSegmentBuilder();
+    }
+
+    private DataOutputStream getEdits() throws IOException {
+        if (edits == null) {
+            edits = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(directory.resolve(EDITS_FILE),
+                    StandardOpenOption.CREATE, StandardOpenOption.APPEND)));
+        }
+        return edits;
+    }
+
+    private static void readEdits(DataInputStream in, ResultEdits result) throws IOException {
+        final NodeStatus[] statuses = NodeStatus.values();
+        try {
+            int kind;
+            while ((kind = in.read()) != -1) {
+                final long nodeId = in.readLong();
+                final int status = in.readUnsignedByte();
+                if (kind == DELETE_EDIT) {
+                    result.delete(nodeId);
+                } else if (kind == STATUS_EDIT && status < statuses.length) {
+                    result.setStatus(nodeId, statuses[status]);
+                }
+            }
+        } catch (EOFException e) {
+            // the last edit was only partly written before the log was closed: ignore it.
+        }
+    }
+
+    private static int segmentNumber(Path segment) {
+        final String name = segment.getFileName().toString();
+        return Integer.parseInt(name.substring(SEGMENT_PREFIX.length(), name.length() - SEGMENT_SUFFIX.length()));
+    }
+}
@@ -0,0 +1,112 @@
+/*
+ * Copyright (c) 2016, The National Archives <pronom@nationalarchives.gov.uk>
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following
+ * conditions are met:
+ *
+ *  * Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ *
+ *  * Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ *
+ *  * Neither the name of the The National Archives nor the
+ *    names of its contributors may be used to endorse or promote products
+ *    derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package uk.gov.nationalarchives.droid.results.segments;
+
+/**
+ * The columns of a result segment.  Each column holds one value of every node in the segment,
+ * in the order the nodes were saved.  The ids are written to the segment files, so must not change.
+ */
+enum SegmentColumn {
+
+    /** Node ids, as zig-zag deltas from the previous node id. */
+    NODE_ID(1),
+
+    /** Parent ids, as zig-zag deltas from the node id plus one, or zero if there is no parent. */
+    PARENT_ID(2),
+
+    /** Uris, front coded: the number of bytes shared with the previous uri, then the rest of the uri. */
+    URI(3),
+
+    /** Names, as strings. */
+    NAME(4),
+
+    /** The distinct extensions in the segment. */
+    EXTENSION_DICTIONARY(5),
+
+    /** Extensions, as codes into the extension dictionary, or zero if there is no extension. */
+    EXTENSION(6),
+
+    /** Sizes, as nullable values. */
+    SIZE(7),
+
+    /** Last modified times, as zig-zag deltas from the previous time plus one, or zero if there is no time. */
+    LAST_MODIFIED(8),
+
+    /** Times the nodes were finished, encoded in the same way as the last modified times. */
+    FINISHED(9),
+
+    /** Resource types, as a byte holding the ordinal plus one, or zero if there is no type. */
+    RESOURCE_TYPE(10),
+
+    /** Node statuses, encoded in the same way as the resource types. */
+    NODE_STATUS(11),
+
+    /** Identification methods, encoded in the same way as the resource types. */
+    IDENTIFICATION_METHOD(12),
+
+    /** Whether the extension of each node mismatches its identifications, as a byte. */
+    EXTENSION_MISMATCH(13),
+
+    /** Identification counts, as the count plus one, or zero if no formats were identified. */
+    IDENTIFICATION_COUNT(14),
+
+    /** The distinct PUIDs in the segment. */
+    PUID_DICTIONARY(15),
+
+    /** Identifications, as the number of them followed by a code into the PUID dictionary for each. */
+    PUIDS(16),
+
+    /** The hash of each node, as a string. */
+    HASH(17),
+
+    /** The hashes of each node, as a bit set of the hash algorithms followed by a string for each. */
+    HASHES(18);
+
+    private final int id;
+
+    SegmentColumn(int id) {
+        this.id = id;
+    }
+
+    int getId() {
+        return id;
+    }
+
+    static SegmentColumn forId(int id) {
+        for (SegmentColumn column : values()) {
+            if (column.id == id) {
+                return column;
+            }
+        }
+        return null;
+    }
+}
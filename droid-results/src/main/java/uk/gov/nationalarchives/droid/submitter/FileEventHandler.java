@@ -45,6 +45,7 @@ import uk.gov.nationalarchives.droid.core.interfaces.IdentificationErrorType;
 import uk.gov.nationalarchives.droid.core.interfaces.IdentificationException;
 import uk.gov.nationalarchives.droid.core.interfaces.IdentificationRequest;
 import uk.gov.nationalarchives.droid.core.interfaces.RequestIdentifier;
+import uk.gov.nationalarchives.droid.core.interfaces.RequestOpener;
 import uk.gov.nationalarchives.droid.core.interfaces.ResourceId;
 import uk.gov.nationalarchives.droid.core.interfaces.ResultHandler;
 import uk.gov.nationalarchives.droid.core.interfaces.archive.IdentificationRequestFactory;
@@ -67,6 +68,7 @@ public class FileEventHandler {
     private IdentificationRequestFactory<Path> requestFactory;
 
     private SubmissionThrottle submissionThrottle;
+    private boolean readAhead;
 
     private StringBuilder uriStringBuilder = new StringBuilder(URI_STRING_BUILDER_CAPACITY);
 
@@ -124,24 +126,40 @@ public class FileEventHandler {
         IdentificationRequest<Path> request = requestFactory.newRequest(metaData, identifier);
         if (droidCore.passesIdentificationFilter(request)) {
             try {
-                request.open(file);
-                droidCore.submit(request);
-                submissionThrottle.apply();
-            } catch (IOException e) {
-                IdentificationErrorType error = Files.exists(file) ? IdentificationErrorType.ACCESS_DENIED
-                        : IdentificationErrorType.FILE_NOT_FOUND;
-                if (error.equals(IdentificationErrorType.ACCESS_DENIED)) {
-                    log.warn(String.format("Access was denied to the file: [%s]", file.toAbsolutePath().toString()));
+                if (readAhead) {
+                    droidCore.submit(request, new FileOpener(request, file));
                 } else {
-                    log.warn(String.format("File not found: [%s]", file.toAbsolutePath().toString()));
+                    request.open(file);
+                    droidCore.submit(request);
                 }
-                resultHandler.handleError(new IdentificationException(request, error, e));
+                submissionThrottle.apply();
+            } catch (IOException e) {
+                handleOpenError(request, file, e);
             } catch (InterruptedException e) {
                 log.debug("Interrupted while throttle active.", e);
             }
         }
     }
 
+    private void handleOpenError(IdentificationRequest<Path> request, Path file, IOException e) {
+        IdentificationErrorType error = Files.exists(file) ? IdentificationErrorType.ACCESS_DENIED
+                : IdentificationErrorType.FILE_NOT_FOUND;
+        if (error.equals(IdentificationErrorType.ACCESS_DENIED)) {
+            log.warn(String.format("Access was denied to the file: [%s]", file.toAbsolutePath().toString()));
+        } else {
+            log.warn(String.format("File not found: [%s]", file.toAbsolutePath().toString()));
+        }
+        resultHandler.handleError(new IdentificationException(request, error, e));
+    }
+
+    /**
+     * @param readAhead whether files are opened and read ahead by the identification engine,
+     *                  rather than being opened before they are submitted.
+     */
+    public void setReadAhead(boolean readAhead) {
+        this.readAhead = readAhead;
+    }
+
     /**
      * @return the submission throttle
      */
@@ -177,4 +195,28 @@ public class FileEventHandler {
         this.requestFactory = requestFactory;
     }
 
+    /**
+     * Opens a file request when the identification engine is ready to read it.
+     */
+    private final class FileOpener implements RequestOpener {
+
+        private final IdentificationRequest<Path> request;
+        private final Path file;
+
+        FileOpener(IdentificationRequest<Path> request, Path file) {
+            this.request = request;
+            this.file = file;
+        }
+
+        @Override
+        public void open() throws IOException {
+            request.open(file);
+        }
+
+        @Override
+        public void failed(IOException e) {
+            handleOpenError(request, file, e);
+        }
+    }
+
 }
@@ -37,6 +37,7 @@ import uk.gov.nationalarchives.droid.core.interfaces.IdentificationRequest;
 import uk.gov.nationalarchives.droid.core.interfaces.RequestIdentifier;
 import uk.gov.nationalarchives.droid.core.interfaces.archive.IdentificationRequestFactory;
 import uk.gov.nationalarchives.droid.core.interfaces.resource.FileSystemIdentificationRequest;
+import uk.gov.nationalarchives.droid.core.interfaces.resource.MappedFileIdentificationRequest;
 import uk.gov.nationalarchives.droid.core.interfaces.resource.RequestMetaData;
 
 /**
@@ -45,13 +46,27 @@ import uk.gov.nationalarchives.droid.core.interfaces.resource.RequestMetaData;
  */
 public class FileIdentificationRequestFactory implements IdentificationRequestFactory<Path> {
 
+    private long mappedFileThreshold = -1;
+
     /**
      * {@inheritDoc}
      */
     @Override
     public final IdentificationRequest<Path> newRequest(RequestMetaData metaData,
                                                         RequestIdentifier identifier) {
+        final Long size = metaData.getSize();
+        if (mappedFileThreshold >= 0 && size != null && size >= mappedFileThreshold) {
+            return new MappedFileIdentificationRequest(metaData, identifier);
+        }
         return new FileSystemIdentificationRequest(metaData, identifier);
     }
+
+    /**
+     * @param mappedFileThreshold The size of file at or above which files are read through a memory mapping,
+     *                            or negative to never memory map files.
+     */
+    public void setMappedFileThreshold(long mappedFileThreshold) {
+        this.mappedFileThreshold = mappedFileThreshold;
+    }
     
 }
@@ -36,10 +36,12 @@ import java.net.URI;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.util.List;
+import java.util.concurrent.ExecutorService;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import uk.gov.nationalarchives.droid.core.interfaces.ExecutorBackPressure;
 import uk.gov.nationalarchives.droid.core.interfaces.ResourceId;
 import uk.gov.nationalarchives.droid.profile.AbstractProfileResource;
 import uk.gov.nationalarchives.droid.profile.ProfileSpec;
@@ -64,6 +66,7 @@ public class ProfileSpecWalkerImpl implements ProfileSpecWalker {
     private FileEventHandler fileEventHandler;
     private DirectoryEventHandler directoryEventHandler;
     private ProgressMonitor progressMonitor;
+    private ExecutorBackPressure backPressure;
     
     private transient volatile boolean cancelled;
 
@@ -124,6 +127,7 @@ public class ProfileSpecWalkerImpl implements ProfileSpecWalker {
 
                     @Override
                     public ResourceId handle(final Path file, final int depth, final ProgressEntry parent) {
+                        awaitCapacity();
                         if (ProfileSpecJobCounter.PROGRESS_DEPTH_LIMIT < 0
                                 || depth <= ProfileSpecJobCounter.PROGRESS_DEPTH_LIMIT) {
                             progressMonitor.startJob(toURI(file));
@@ -161,6 +165,7 @@ public class ProfileSpecWalkerImpl implements ProfileSpecWalker {
                 walkState.setWalkStatus(WalkStatus.IN_PROGRESS);
                 fileWalker.walk();
             } else {
+                awaitCapacity();
                 progressMonitor.startJob(resource.getUri());
                 fileEventHandler.onEvent(Paths.get(resource.getUri()), null, null);
             }
@@ -188,6 +193,18 @@ public class ProfileSpecWalkerImpl implements ProfileSpecWalker {
         this.directoryEventHandler = directoryEventHandler;
     }
 
+    /**
+     * Sets the executor service identification requests are run on.  If it can apply back pressure,
+     * the walker waits for it to have capacity before submitting each file, rather than
+     * walking ahead of the identifications.
+     *
+     * @param executorService the executor service identification requests are run on.
+     */
+    public void setExecutorService(ExecutorService executorService) {
+        this.backPressure = executorService instanceof ExecutorBackPressure
+                ? (ExecutorBackPressure) executorService : null;
+    }
+
     /**
      *  To cancel Profile speck walker.
      */
@@ -217,6 +234,17 @@ public class ProfileSpecWalkerImpl implements ProfileSpecWalker {
     }
 
 
+    private void awaitCapacity() {
+        if (backPressure != null && !cancelled) {
+            try {
+                backPressure.awaitCapacity();
+            } catch (InterruptedException e) {
+                log.debug("Interrupted waiting for the identification executor to have capacity.");
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
     private URI toURI(final Path file) {
         return SubmitterUtils.toURI(file.toFile(), uriBuilder);
     }
@@ -36,16 +36,22 @@ import java.io.InputStream;
 import java.util.Collections;
 import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Future;
 import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionException;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import net.byteseek.io.reader.WindowReader;
+import net.byteseek.io.reader.windows.Window;
+
 import uk.gov.nationalarchives.droid.core.interfaces.AsynchDroid;
 import uk.gov.nationalarchives.droid.core.interfaces.DroidCore;
 import uk.gov.nationalarchives.droid.core.interfaces.IdentificationErrorType;
@@ -55,16 +61,25 @@ import uk.gov.nationalarchives.droid.core.interfaces.IdentificationRequestFilter
 import uk.gov.nationalarchives.droid.core.interfaces.IdentificationResult;
 import uk.gov.nationalarchives.droid.core.interfaces.IdentificationResultCollection;
 import uk.gov.nationalarchives.droid.core.interfaces.RequestIdentifier;
+import uk.gov.nationalarchives.droid.core.interfaces.RequestOpener;
 import uk.gov.nationalarchives.droid.core.interfaces.ResourceId;
 import uk.gov.nationalarchives.droid.core.interfaces.ResultHandler;
+import uk.gov.nationalarchives.droid.core.interfaces.archive.ArchiveExpansion;
 import uk.gov.nationalarchives.droid.core.interfaces.archive.ArchiveFormatResolver;
 import uk.gov.nationalarchives.droid.core.interfaces.archive.ArchiveHandler;
 import uk.gov.nationalarchives.droid.core.interfaces.archive.ArchiveHandlerFactory;
 import uk.gov.nationalarchives.droid.core.interfaces.archive.ContainerIdentifier;
 import uk.gov.nationalarchives.droid.core.interfaces.archive.ContainerIdentifierFactory;
+import uk.gov.nationalarchives.droid.core.interfaces.archive.ParsedContainerCache;
 import uk.gov.nationalarchives.droid.core.interfaces.control.PauseAspect;
 import uk.gov.nationalarchives.droid.core.interfaces.filter.Filter;
+import uk.gov.nationalarchives.droid.core.interfaces.hash.HashAlgorithm;
 import uk.gov.nationalarchives.droid.core.interfaces.hash.HashGenerator;
+import uk.gov.nationalarchives.droid.core.interfaces.resource.BufferPool;
+import uk.gov.nationalarchives.droid.core.interfaces.resource.CountSnapshot;
+import uk.gov.nationalarchives.droid.core.interfaces.resource.HashingWindowReader;
+import uk.gov.nationalarchives.droid.core.interfaces.resource.RequestMetaData;
+import uk.gov.nationalarchives.droid.core.interfaces.resource.StreamMemoryBudget;
 
 /**
  * Acts as a DroidCore proxy by keeping track of in-flight identification
@@ -86,12 +101,15 @@ public class SubmissionGateway implements AsynchDroid {
      */
     private static final String ARCHIVE_ERROR = "Could not process the archival format(%s): %s\t%s\t%s";
 
+    private static final int DEFAULT_READ_AHEAD_BYTES = 65536;
+
     //CHECKSTYLE:ON    
     private final Logger log = LoggerFactory.getLogger(getClass());
     private final JobCounter jobCounter = new JobCounter();
     private DroidCore droidCore;
     private ResultHandler resultHandler;
     private ExecutorService executorService;
+    private ExecutorService ioExecutorService;
     private boolean processZip;
     private boolean processTar;
     private boolean processGzip;
@@ -110,11 +128,16 @@ public class SubmissionGateway implements AsynchDroid {
     private boolean generateHash;
     private boolean matchAllExtensions;
     private long maxBytesToScan = -1;
+    private int readAheadBytes = DEFAULT_READ_AHEAD_BYTES;
     private SubmissionQueue submissionQueue;
     private ReplaySubmitter replaySubmitter;
     private PauseAspect pauseControl;
     private IdentificationRequestFilter identificationFilter; // A filter to decide whether a resource should be submitted for identification.
 
+    private final CountSnapshot bufferPoolStart = BufferPool.getDefault().snapshot();
+    private final CountSnapshot memoryBudgetStart = StreamMemoryBudget.getDefault().snapshot();
+    private final ArchiveExpansion.Statistics archiveStatistics = new ArchiveExpansion.Statistics();
+    private final CountSnapshot containerCacheStart = ParsedContainerCache.getDefault().snapshot();
     private Set<IdentificationRequest> requests = Collections.synchronizedSet(new HashSet<IdentificationRequest>());
 
     /**
@@ -173,6 +196,24 @@ public class SubmissionGateway implements AsynchDroid {
      */
     @Override
     public Future<IdentificationResultCollection> submit(final IdentificationRequest request) {
+        return submitToStages(request, null);
+    }
+
+    /**
+     * {@inheritDoc}
+     * If there is an I/O stage, the request is opened and read ahead on one of its threads.
+     */
+    @Override
+    public void submit(final IdentificationRequest request, final RequestOpener opener) {
+        if (ioExecutorService == null) {
+            AsynchDroid.super.submit(request, opener);
+        } else {
+            submitToStages(request, opener);
+        }
+    }
+
+    private Future<IdentificationResultCollection> submitToStages(final IdentificationRequest request,
+                                                                  final RequestOpener opener) {
         pauseControl.awaitUnpaused();
         jobCounter.increment();
         requests.add(request);
@@ -181,6 +222,7 @@ public class SubmissionGateway implements AsynchDroid {
         Callable<IdentificationResultCollection> callable = new Callable<IdentificationResultCollection>() {
             @Override
             public IdentificationResultCollection call() throws IOException {
+                startHashing(request);
                 droidCore.setMaxBytesToScan(maxBytesToScan);
                 IdentificationResultCollection results = droidCore.matchBinarySignatures(request);
                 return results;
@@ -188,7 +230,11 @@ public class SubmissionGateway implements AsynchDroid {
         };
 
         FutureTask<IdentificationResultCollection> task = new SubmissionFutureTask(callable, request);
-        executorService.submit(task);
+        if (ioExecutorService == null) {
+            executorService.submit(task);
+        } else {
+            ioExecutorService.execute(new IoStageTask(request, opener, task));
+        }
         return task;
     }
 
@@ -200,18 +246,71 @@ public class SubmissionGateway implements AsynchDroid {
         replaySubmitter.replay();
     }
 
+    /*
+     * If the request reads through a hashing reader, start hashing before signatures are matched,
+     * so the hash is calculated from the same windows that are read to match signatures.
+     * Hashing may already have been started by the I/O stage.
+     */
+    private void startHashing(IdentificationRequest request) {
+        if (generateHash && hashGenerator.getAlgorithm() != null
+                && request.getWindowReader() instanceof HashingWindowReader) {
+            final HashingWindowReader hashingReader = (HashingWindowReader) request.getWindowReader();
+            if (!hashingReader.isHashing()) {
+                hashingReader.startHashing(hashGenerator.newStreamingHash());
+            }
+        }
+    }
+
+    /*
+     * Reads the first and last bytes of a request into its reader's cache, which is where
+     * signatures are most often anchored.  Any error is left for the matching stage to report.
+     */
+    private void prefetch(IdentificationRequest request) {
+        final WindowReader reader = request.getWindowReader();
+        if (reader != null && readAheadBytes > 0) {
+            try {
+                final long length = reader.length();
+                final long headEnd = Math.min(length, readAheadBytes);
+                readWindows(reader, 0, headEnd);
+                readWindows(reader, Math.max(headEnd, length - readAheadBytes), length);
+            } catch (IOException e) {
+                log.debug(String.format("Could not prefetch [%s]: %s",
+                        request.getIdentifier().getUri(), e.getMessage()));
+            }
+        }
+    }
+
+    private static void readWindows(WindowReader reader, long from, long to) throws IOException {
+        long position = from;
+        while (position < to) {
+            final Window window = reader.getWindow(position);
+            if (window == null) {
+                break;
+            }
+            position = window.getNextWindowPosition();
+        }
+    }
+
     private void generateHash(IdentificationRequest request) throws IOException {
         if (generateHash) {
             try {
-                InputStream in = request.getSourceInputStream();
-                try {
-                    String hash = hashGenerator.hash(in);
-                    request.getRequestMetaData().setHash(hash);
-                } finally {
-                    if (in != null) {
-                        in.close();
+                if (hashGenerator.getAlgorithm() == null) {
+                    // The generator can only hash whole streams.
+                    try (InputStream in = request.getSourceInputStream()) {
+                        request.getRequestMetaData().setHash(hashGenerator.hash(in));
                     }
+                    return;
+                }
+                final WindowReader reader = request.getWindowReader();
+                final HashingWindowReader hashingReader = reader instanceof HashingWindowReader
+                        ? (HashingWindowReader) reader : new HashingWindowReader(reader);
+                if (!hashingReader.isHashing()) {
+                    hashingReader.startHashing(hashGenerator.newStreamingHash());
                 }
+                final Map<HashAlgorithm, String> hashes = hashingReader.finishHashing();
+                final RequestMetaData metaData = request.getRequestMetaData();
+                metaData.setHash(hashes.get(hashGenerator.getAlgorithm()));
+                metaData.setHashes(hashes);
                 //CHECKSTYLE:OFF - generating a hash can't prejudice any other results
             } catch (Exception e) {
                 log.error(e.getMessage(), e);
@@ -433,6 +532,32 @@ public class SubmissionGateway implements AsynchDroid {
         this.executorService = executorService;
     }
 
+    /**
+     * Sets the executor service which reads the start and end of each request before handing it on
+     * to the executor service which matches signatures.  Slow reads, such as from network storage,
+     * then wait on their own threads, leaving the matching threads free to work on files already read.
+     *
+     * <p>Neither hand-off is rejected or dropped; both push back on the thread handing off.  When every
+     * I/O thread is busy, the submitting thread does the I/O itself.  When the matching executor is full,
+     * the I/O thread waits for it (the work-stealing scheduler) or matches the request itself (the blocking
+     * scheduler).  So a full matching executor slows the I/O threads, which in turn slows the profile walker,
+     * and the number of files opened ahead of matching stays bounded by the size of the two pools.</p>
+     *
+     * @param ioExecutorService the executor service for the I/O stage, or null to do the I/O on the
+     *                          threads which match signatures.
+     */
+    public void setIoExecutorService(ExecutorService ioExecutorService) {
+        this.ioExecutorService = ioExecutorService;
+    }
+
+    /**
+     * @param readAheadBytes the number of bytes at the start and end of each request which the
+     *                       I/O stage reads before it is matched, or zero to read none.
+     */
+    public void setReadAheadBytes(int readAheadBytes) {
+        this.readAheadBytes = readAheadBytes;
+    }
+
     /**
      * @param processZip set whether to process Zip files
      */
@@ -560,10 +685,23 @@ public class SubmissionGateway implements AsynchDroid {
      * @throws IOException if temp files could not be deleted.
      */
     public void close() throws IOException {
+        if (ioExecutorService != null) {
+            ioExecutorService.shutdownNow();
+        }
         executorService.shutdownNow();
         for (IdentificationRequest request : requests) {
             request.close();
         }
+        final BufferPool bufferPool = BufferPool.getDefault();
+        log.info(String.format("Window buffer pool statistics: %s (shared pool: %s)",
+                bufferPool.snapshot().since(bufferPoolStart), bufferPool));
+        final StreamMemoryBudget memoryBudget = StreamMemoryBudget.getDefault();
+        log.info(String.format("Stream memory budget statistics: %s (shared budget: %s)",
+                memoryBudget.snapshot().since(memoryBudgetStart), memoryBudget));
+        log.info("Archive expansion statistics: " + archiveStatistics);
+        final ParsedContainerCache containerCache = ParsedContainerCache.getDefault();
+        log.info(String.format("Parsed container statistics: %s (shared cache: %s)",
+                containerCache.snapshot().since(containerCacheStart), containerCache));
     }
 
     /**
@@ -585,6 +723,11 @@ public class SubmissionGateway implements AsynchDroid {
         identificationFilter = new IdentificationRequestFilter(filter);
     }
 
+    @Override
+    public ArchiveExpansion.Statistics getArchiveStatistics() {
+        return archiveStatistics;
+    }
+
     @Override
     public boolean passesIdentificationFilter(IdentificationRequest request) {
         return identificationFilter == null || identificationFilter.passesFilter(request);
@@ -599,6 +742,45 @@ public class SubmissionGateway implements AsynchDroid {
         this.matchAllExtensions = matchAllExtensions;
     }
 
+    /**
+     * Opens a request if it has not been opened yet, reads its start and end, then hands it on to be matched.
+     * Handing on may block, or run the match on this thread, until the matching executor has capacity.
+     */
+    private final class IoStageTask implements Runnable {
+
+        private final IdentificationRequest request;
+        private final RequestOpener opener;
+        private final FutureTask<IdentificationResultCollection> matchingTask;
+
+        IoStageTask(IdentificationRequest request, RequestOpener opener,
+                    FutureTask<IdentificationResultCollection> matchingTask) {
+            this.request = request;
+            this.opener = opener;
+            this.matchingTask = matchingTask;
+        }
+
+        @Override
+        public void run() {
+            if (opener != null) {
+                try {
+                    opener.open();
+                } catch (IOException e) {
+                    opener.failed(e);
+                    matchingTask.cancel(false);
+                    return;
+                }
+            }
+            startHashing(request);
+            prefetch(request);
+            try {
+                executorService.execute(matchingTask);
+            } catch (RejectedExecutionException e) {
+                // The gateway is closing, so the request will never be matched.
+                matchingTask.cancel(false);
+            }
+        }
+    }
+
     private final class SubmissionFutureTask extends FutureTask<IdentificationResultCollection> {
 
         private IdentificationRequest request;
@@ -612,8 +794,12 @@ public class SubmissionGateway implements AsynchDroid {
         protected void done() {
             boolean jobCountDecremented = false;
             try {
-                generateHash(request);
+                if (!isCancelled()) {
+                    generateHash(request);
+                }
                 IdentificationResultCollection results = get();
+                // Container identification and archive expansion share the containers they parse until the request is closed:
+                ParsedContainerCache.getDefault().attach(request);
                 IdentificationResultCollection containerResults = handleContainer(request, results);
                 if (containerResults == null) {
                     // no container results - process the normal results.
@@ -644,7 +830,7 @@ public class SubmissionGateway implements AsynchDroid {
                 log.error(cause.getStackTrace().toString(), cause);
                 resultHandler.handleError(new IdentificationException(
                         request, IdentificationErrorType.OTHER, cause));
-            } catch (InterruptedException e) {
+            } catch (InterruptedException | CancellationException e) {
                 log.debug(e.getMessage(), e);
             } catch (IOException e) {
                 resultHandler.handleError(new IdentificationException(
@@ -659,6 +845,12 @@ public class SubmissionGateway implements AsynchDroid {
 
         private void closeRequest() {
             requests.remove(request);
+            try {
+                ParsedContainerCache.getDefault().release(request);
+            } catch (IOException e) {
+                log.error(String.format("Error closing containers parsed for request [%s]",
+                        request.getIdentifier().getUri()), e);
+            }
             try {
                 request.close();
             } catch (IOException e) {
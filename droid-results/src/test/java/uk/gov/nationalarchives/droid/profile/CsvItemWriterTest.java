@@ -44,6 +44,7 @@ import uk.gov.nationalarchives.droid.core.interfaces.NodeStatus;
 import uk.gov.nationalarchives.droid.core.interfaces.ResourceType;
 import uk.gov.nationalarchives.droid.core.interfaces.config.DroidGlobalConfig;
 import uk.gov.nationalarchives.droid.core.interfaces.config.DroidGlobalProperty;
+import uk.gov.nationalarchives.droid.core.interfaces.hash.HashAlgorithm;
 import uk.gov.nationalarchives.droid.export.interfaces.ExportOptions;
 import uk.gov.nationalarchives.droid.profile.referencedata.Format;
 
@@ -54,7 +55,10 @@ import java.io.Writer;
 import java.net.URI;
 import java.net.URISyntaxException;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 import static org.junit.Assert.assertEquals;
 import static org.mockito.Mockito.mock;
@@ -422,6 +426,64 @@ public class CsvItemWriterTest {
         }
     }
 
+    @Test
+    public void testFormattedRowsAreTheSameAsWrittenRows() throws IOException {
+        for (ExportOptions options : ExportOptions.values()) {
+            List<ProfileResourceNode> nodes = new ArrayList<>();
+            for (int i = 1; i <= 3; i++) {
+                ProfileResourceNode node = buildProfileResourceNode(i, (long) i);
+                node.addFormatIdentification(buildFormat(i));
+                if (i == 2) {
+                    node.addFormatIdentification(buildFormat(i + 10));
+                }
+                nodes.add(node);
+            }
+            itemWriter.setOptions(options);
+
+            final String written;
+            try (final Writer writer = new StringWriter()) {
+                itemWriter.open(writer);
+                itemWriter.write(nodes.subList(0, 1));
+                itemWriter.write(nodes.subList(1, 3));
+                written = writer.toString();
+            }
+
+            try (final Writer writer = new StringWriter()) {
+                itemWriter.open(writer);
+                StringBuilder rows = new StringBuilder();
+                itemWriter.format(nodes.get(0), rows);
+                itemWriter.writeFormatted(rows, nodes.subList(0, 1));
+                rows.setLength(0);
+                itemWriter.format(nodes.get(1), rows);
+                itemWriter.format(nodes.get(2), rows);
+                itemWriter.writeFormatted(rows, nodes.subList(1, 3));
+                assertEquals(written, writer.toString());
+            }
+        }
+    }
+
+    @Test
+    public void testAdditionalHashesAreWrittenAfterTheHash() throws IOException {
+        try (final Writer writer = new StringWriter()) {
+            Map<String, String> headers = new HashMap<>();
+            headers.put("hash", "MD5_HASH");
+            headers.put("additionalHashes", "sha256 unknown sha1");
+            itemWriter.setHeaders(headers);
+            itemWriter.setColumnsToWrite("ID HASH PUID");
+            ProfileResourceNode node = buildProfileResourceNode(1, 1001L);
+            node.setId(1L);
+            node.getMetaData().setHash(HashAlgorithm.SHA256, "256");
+            node.getMetaData().setHash(HashAlgorithm.SHA1, "1");
+            node.addFormatIdentification(buildFormat(1));
+            itemWriter.open(writer);
+            itemWriter.write(Collections.singletonList(node));
+
+            final String[] lines = writer.toString().split(LINE_SEPARATOR);
+            assertEquals(toCsvRow(new String[] {"ID", "MD5_HASH", "SHA256_HASH", "SHA1_HASH", "PUID"}), lines[0]);
+            assertEquals(toCsvRow(new String[] {"1", "11111111111111111111111111111111", "256", "1", "fmt/1"}), lines[1]);
+        }
+    }
+
     private static boolean isNotWindows() {
         return !SystemUtils.IS_OS_WINDOWS;
     }
@@ -164,6 +164,8 @@ public class ProfileManagerImplTest {
         ProfileInstance profileInstance = new ProfileInstance(ProfileState.STOPPED);
         profileInstance.setUuid("profileName");
         when(profileContextLocator.getProfileInstance("profileName")).thenReturn(profileInstance);
+        ProfileInstanceManager profileInstanceManager = mock(ProfileInstanceManager.class);
+        when(profileContextLocator.openProfileInstanceManager(profileInstance)).thenReturn(profileInstanceManager);
         
         profileManager.setProfileDiskAction(profileDiskAction);
         
@@ -176,6 +178,7 @@ public class ProfileManagerImplTest {
         
         profileManager.save("profileName", destination, callback);
         
+        verify(profileInstanceManager).buildIndexes();
         verify(profileSpecDao).saveProfile(profileInstance, Paths.get("profiles/profileName"));
         verify(profileDiskAction).saveProfile(
                 Paths.get("profiles/profileName"), destination, callback);
@@ -0,0 +1,280 @@
+/*
+ * Copyright (c) 2016, The National Archives <pronom@nationalarchives.gov.uk>
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following
+ * conditions are met:
+ *
+ *  * Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ *
+ *  * Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ *
+ *  * Neither the name of the The National Archives nor the
+ *    names of its contributors may be used to endorse or promote products
+ *    derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package uk.gov.nationalarchives.droid.results.handlers;
+
+import java.net.URI;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import com.zaxxer.hikari.HikariConfig;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import uk.gov.nationalarchives.droid.core.interfaces.NodeStatus;
+import uk.gov.nationalarchives.droid.core.interfaces.ResourceType;
+import uk.gov.nationalarchives.droid.profile.ProfileResourceNode;
+import uk.gov.nationalarchives.droid.profile.datasource.DerbyPooledDataSource;
+
+/**
+ * Saves results to an in-memory Derby profile database.
+ */
+public class JDBCBatchResultHandlerDaoTest {
+
+    private static final String[] DEFERRED_INDEXES = {"IDX_ID_COUNT", "IDX_PRN_EXTENSION", "IDX_PRN_ID_METHOD",
+        "IDX_PRN_LAST_MODIFIED", "IDX_PRN_NAME", "IDX_PRN_NODE_STATUS", "IDX_PRN_ID_RESOURCETYPE",
+        "IDX_PRN_FILE_SIZE", "IDX_PREFIX", "IDX_PREFIX_PLUS_ONE", };
+    private static final String PARENT_INDEX = "IDX_PARENT_ID";
+    private static final long WAIT_MILLIS = 10000;
+    private static final long NEVER_MILLIS = 600000;
+
+    private static final AtomicInteger DATABASES = new AtomicInteger();
+
+    private DerbyPooledDataSource datasource;
+    private final List<JDBCBatchResultHandlerDao> daos = new ArrayList<JDBCBatchResultHandlerDao>();
+    private int nodeCount;
+
+    @Before
+    public void setup() throws SQLException {
+        final String url = "jdbc:derby:memory:results" + DATABASES.incrementAndGet();
+        DriverManager.getConnection(url + ";create=true").close();
+        final HikariConfig config = new HikariConfig();
+        config.setDriverClassName("org.apache.derby.jdbc.EmbeddedDriver");
+        config.setJdbcUrl(url);
+        config.setAutoCommit(false);
+        datasource = new DerbyPooledDataSource(config);
+
+        JDBCBatchResultHandlerDao.setIsFreshTemplate(true);
+        try {
+            new JDBCBatchResultHandlerDao(datasource).init();
+        } finally {
+            JDBCBatchResultHandlerDao.setIsFreshTemplate(false);
+        }
+        try (Connection conn = datasource.getConnection();
+             PreparedStatement insertFormat = conn.prepareStatement("INSERT INTO FORMAT (PUID) VALUES ('')")) {
+            insertFormat.executeUpdate();
+            conn.commit();
+        }
+    }
+
+    @After
+    public void tearDown() {
+        for (JDBCBatchResultHandlerDao dao : daos) {
+            dao.cleanup();
+        }
+        datasource.close();
+    }
+
+    @Test
+    public void testSingleWriterCommitsEachBatch() throws Exception {
+        JDBCBatchResultHandlerDao dao = open(false);
+        save(dao, JDBCBatchResultHandlerDao.BATCH_LIMIT);
+        awaitNodes(JDBCBatchResultHandlerDao.BATCH_LIMIT); // without being asked to commit.
+    }
+
+    @Test
+    public void testSeveralWritersSaveEveryNode() throws Exception {
+        JDBCBatchResultHandlerDao dao = open(false, 4);
+        List<ProfileResourceNode> nodes = save(dao, 1000);
+        for (ProfileResourceNode node : nodes.subList(0, 10)) {
+            node.getMetaData().setNodeStatus(NodeStatus.ERROR);
+            dao.save(node, null); // updated by the writer which inserted it.
+        }
+        dao.commit();
+        awaitNodes(1000);
+        assertEquals(1000, count("SELECT COUNT(*) FROM IDENTIFICATION"));
+        assertEquals(10, count("SELECT COUNT(*) FROM PROFILE_RESOURCE_NODE WHERE NODE_STATUS = "
+                + NodeStatus.ERROR.ordinal()));
+    }
+
+    @Test
+    public void testCommitFlushesEveryWriter() throws Exception {
+        JDBCBatchResultHandlerDao dao = open(false, 4);
+        save(dao, 10); // less than a batch for each writer, which would not be committed for a long time.
+        dao.commit();
+        awaitNodes(10);
+    }
+
+    @Test
+    public void testSeveralWritersCommitBeforeIndexesAreBuilt() throws Exception {
+        JDBCBatchResultHandlerDao dao = open(true, 4);
+        save(dao, 250);
+        dao.buildDeferredIndexes();
+        assertEquals(250, countNodes());
+        assertIndexes(true);
+    }
+
+    @Test
+    public void testProfilesWhichAreNotBulkLoadedKeepTheirIndexes() throws Exception {
+        JDBCBatchResultHandlerDao dao = open(false);
+        assertFalse(dao.isIndexesDeferred());
+        assertIndexes(true);
+
+        save(dao, 10);
+        dao.buildDeferredIndexes();
+        assertEquals(10, countNodes());
+        assertIndexes(true);
+    }
+
+    @Test
+    public void testBulkLoadBuildsIndexesWhenTheRunCompletes() throws Exception {
+        JDBCBatchResultHandlerDao dao = open(true);
+        assertTrue(dao.isIndexesDeferred());
+        assertIndexes(false);
+
+        save(dao, 250);
+        dao.buildDeferredIndexes();
+        assertFalse(dao.isIndexesDeferred());
+        assertEquals(250, countNodes());
+        assertIndexes(true);
+    }
+
+    @Test
+    public void testPausingDoesNotBuildIndexes() throws Exception {
+        JDBCBatchResultHandlerDao dao = open(true);
+        save(dao, 150);
+        dao.commit();
+        awaitNodes(150);
+        assertTrue(dao.isIndexesDeferred());
+        assertIndexes(false);
+
+        save(dao, 50); // resumed
+        dao.buildDeferredIndexes();
+        assertEquals(200, countNodes());
+        assertIndexes(true);
+    }
+
+    @Test
+    public void testReopenedBulkLoadGoesOnDeferringIndexes() throws Exception {
+        JDBCBatchResultHandlerDao dao = open(true);
+        save(dao, 20);
+        dao.commit();
+        awaitNodes(20);
+
+        JDBCBatchResultHandlerDao reopened = open(true);
+        assertTrue(reopened.isIndexesDeferred());
+        assertIndexes(false);
+
+        save(reopened, 20);
+        reopened.buildDeferredIndexes();
+        assertEquals(40, countNodes());
+        assertIndexes(true);
+
+        assertFalse(open(true).isIndexesDeferred());
+    }
+
+    private JDBCBatchResultHandlerDao open(boolean bulkLoad) {
+        return open(bulkLoad, 1);
+    }
+
+    /*
+     * Results are only committed by a single writer's full batches, or when they are asked to be,
+     * so the tests do not depend on how long they take.
+     */
+    private JDBCBatchResultHandlerDao open(boolean bulkLoad, int writers) {
+        JDBCBatchResultHandlerDao dao = new JDBCBatchResultHandlerDao(datasource);
+        dao.setBulkLoad(bulkLoad);
+        dao.setWriterCount(writers);
+        dao.setCommitIntervalMillis(NEVER_MILLIS);
+        dao.setCommitBytes(Long.MAX_VALUE);
+        dao.init();
+        daos.add(dao);
+        return dao;
+    }
+
+    private List<ProfileResourceNode> save(JDBCBatchResultHandlerDao dao, int count) {
+        final List<ProfileResourceNode> nodes = new ArrayList<ProfileResourceNode>(count);
+        for (int i = 0; i < count; i++) {
+            final String name = "file" + nodeCount++ + ".txt";
+            ProfileResourceNode node = new ProfileResourceNode(URI.create("file:/" + name));
+            node.getMetaData().setName(name);
+            node.getMetaData().setExtension("txt");
+            node.getMetaData().setResourceType(ResourceType.FILE);
+            node.getMetaData().setNodeStatus(NodeStatus.DONE);
+            node.getMetaData().setSize((long) i);
+            dao.save(node, null);
+            nodes.add(node);
+        }
+        return nodes;
+    }
+
+    private void awaitNodes(int count) throws Exception {
+        final long deadline = System.currentTimeMillis() + WAIT_MILLIS;
+        while (countNodes() < count && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        assertEquals(count, countNodes());
+    }
+
+    private int countNodes() throws SQLException {
+        return count("SELECT COUNT(*) FROM PROFILE_RESOURCE_NODE");
+    }
+
+    private int count(String query) throws SQLException {
+        try (Connection conn = datasource.getConnection();
+             PreparedStatement count = conn.prepareStatement(query);
+             ResultSet results = count.executeQuery()) {
+            results.next();
+            return results.getInt(1);
+        }
+    }
+
+    private void assertIndexes(boolean built) throws SQLException {
+        final Set<String> indexNames = new HashSet<String>();
+        try (Connection conn = datasource.getConnection();
+             ResultSet indexes = conn.getMetaData().getIndexInfo(null, null, "PROFILE_RESOURCE_NODE", false, true)) {
+            while (indexes.next()) {
+                final String indexName = indexes.getString("INDEX_NAME");
+                if (indexName != null) {
+                    indexNames.add(indexName.toUpperCase(Locale.ROOT));
+                }
+            }
+        }
+        assertTrue(indexNames.contains(PARENT_INDEX));
+        for (String indexName : DEFERRED_INDEXES) {
+            assertEquals(indexName, built, indexNames.contains(indexName));
+        }
+    }
+}
@@ -0,0 +1,197 @@
+/*
+ * Copyright (c) 2016, The National Archives <pronom@nationalarchives.gov.uk>
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following
+ * conditions are met:
+ *
+ *  * Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ *
+ *  * Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ *
+ *  * Neither the name of the The National Archives nor the
+ *    names of its contributors may be used to endorse or promote products
+ *    derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package uk.gov.nationalarchives.droid.results.segments;
+
+import java.net.URI;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import uk.gov.nationalarchives.droid.core.interfaces.IdentificationMethod;
+import uk.gov.nationalarchives.droid.core.interfaces.NodeStatus;
+import uk.gov.nationalarchives.droid.core.interfaces.ResourceType;
+import uk.gov.nationalarchives.droid.core.interfaces.hash.HashAlgorithm;
+import uk.gov.nationalarchives.droid.profile.NodeMetaData;
+import uk.gov.nationalarchives.droid.profile.ProfileResourceNode;
+import uk.gov.nationalarchives.droid.profile.referencedata.Format;
+
+public class ResultSegmentLogTest {
+
+    private static final Format TEXT = new Format("x-fmt/111", "text/plain", "Plain Text File", "");
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    private Path directory;
+
+    @Before
+    public void setup() throws Exception {
+        directory = temporaryFolder.newFolder("results").toPath();
+    }
+
+    @Test
+    public void testNodesAreReadBackAcrossSegments() throws Exception {
+        try (ResultSegmentLog log = new ResultSegmentLog(directory, 2, ResultSegmentLog.DEFAULT_SEGMENT_BYTES)) {
+            log.append(newFolder(1L));
+            for (long nodeId = 2; nodeId <= 5; nodeId++) {
+                log.append(newFile(nodeId, nodeId * 100, nodeId % 2 == 0 ? TEXT : Format.NULL));
+            }
+        }
+
+        try (ResultSegmentLog log = new ResultSegmentLog(directory)) {
+            final List<Path> segments = log.getSegmentFiles();
+            assertEquals(3, segments.size());
+            assertEquals(5, log.getMaxNodeId());
+
+            final ResultSegment.Cursor cursor = ResultSegment.open(segments.get(0))
+                    .cursor(Collections.singletonMap(TEXT.getPuid(), TEXT));
+            final ProfileResourceNode folder = cursor.next();
+            assertEquals(Long.valueOf(1), folder.getId());
+            assertNull(folder.getParentId());
+            assertEquals(ResourceType.FOLDER, folder.getMetaData().getResourceType());
+
+            final ProfileResourceNode file = cursor.next();
+            final NodeMetaData metaData = file.getMetaData();
+            assertEquals(Long.valueOf(2), file.getId());
+            assertEquals(Long.valueOf(1), file.getParentId());
+            assertEquals(URI.create("file:/data/file2.txt"), file.getUri());
+            assertEquals("file2.txt", metaData.getName());
+            assertEquals("txt", metaData.getExtension());
+            assertEquals(Long.valueOf(200), metaData.getSize());
+            assertEquals(new Date(2000L), metaData.getLastModifiedDate());
+            assertEquals(NodeStatus.DONE, metaData.getNodeStatus());
+            assertEquals(IdentificationMethod.BINARY_SIGNATURE, metaData.getIdentificationMethod());
+            assertEquals(Integer.valueOf(1), file.getIdentificationCount());
+            assertEquals(TEXT, file.getFormatIdentifications().get(0));
+            assertEquals("sha256-2", metaData.getHash(HashAlgorithm.SHA256));
+            assertNull(cursor.next());
+        }
+    }
+
+    @Test
+    public void testSegmentIsReadWithoutKeepingTheFile() throws Exception {
+        try (ResultSegmentLog log = new ResultSegmentLog(directory)) {
+            log.append(newFile(1L, 100, TEXT));
+        }
+
+        final Path segmentFile = new ResultSegmentLog(directory).getSegmentFiles().get(0);
+        final ResultSegment segment = ResultSegment.open(segmentFile);
+        Files.delete(segmentFile);
+
+        final ProfileResourceNode file = segment.cursor(Collections.singletonMap(TEXT.getPuid(), TEXT)).next();
+        assertEquals(Long.valueOf(1), file.getId());
+        assertEquals(Long.valueOf(100), file.getMetaData().getSize());
+    }
+
+    @Test
+    public void testEditsAreReadBack() throws Exception {
+        try (ResultSegmentLog log = new ResultSegmentLog(directory)) {
+            log.append(newFile(1L, 100, TEXT));
+            log.append(newFile(2L, 200, TEXT));
+            log.recordStatus(1L, NodeStatus.ERROR);
+            log.recordDeletion(2L);
+        }
+
+        final ResultEdits edits = new ResultSegmentLog(directory).readEdits();
+        assertEquals(NodeStatus.ERROR, edits.getStatus(1L));
+        assertFalse(edits.isDeleted(1L));
+        assertNull(edits.getStatus(2L));
+        assertTrue(edits.isDeleted(2L));
+    }
+
+    @Test
+    public void testAggregateCountsFilesWhichAreNotDeleted() throws Exception {
+        try (ResultSegmentLog log = new ResultSegmentLog(directory)) {
+            log.append(newFolder(1L));
+            log.append(newFile(2L, 100, TEXT));
+            log.append(newFile(3L, 300, TEXT));
+            log.append(newFile(4L, 1000, Format.NULL));
+            log.append(newFile(5L, 5000, TEXT));
+            log.recordDeletion(5L);
+
+            final Map<String, ResultAggregate> byPuid = log.aggregate(ResultSegment.GroupBy.PUID);
+            assertEquals(2, byPuid.size());
+            final ResultAggregate text = byPuid.get(TEXT.getPuid());
+            assertEquals(2, text.getCount());
+            assertEquals(400, text.getTotalSize());
+            assertEquals(Long.valueOf(100), text.getMinSize());
+            assertEquals(Long.valueOf(300), text.getMaxSize());
+            assertEquals(1, byPuid.get("").getCount());
+
+            final Map<String, ResultAggregate> byExtension = log.aggregate(ResultSegment.GroupBy.EXTENSION);
+            assertEquals(1, byExtension.size());
+            assertEquals(3, byExtension.get("txt").getCount());
+        }
+    }
+
+    private static ProfileResourceNode newFolder(long nodeId) {
+        final ProfileResourceNode node = new ProfileResourceNode(URI.create("file:/data/"));
+        node.setId(nodeId);
+        final NodeMetaData metaData = node.getMetaData();
+        metaData.setName("data");
+        metaData.setResourceType(ResourceType.FOLDER);
+        metaData.setNodeStatus(NodeStatus.DONE);
+        node.addFormatIdentification(Format.NULL);
+        return node;
+    }
+
+    private static ProfileResourceNode newFile(long nodeId, long size, Format format) {
+        final ProfileResourceNode node = new ProfileResourceNode(URI.create("file:/data/file" + nodeId + ".txt"));
+        node.setId(nodeId);
+        node.setParentId(1L);
+        final NodeMetaData metaData = node.getMetaData();
+        metaData.setName("file" + nodeId + ".txt");
+        metaData.setExtension("txt");
+        metaData.setSize(size);
+        metaData.setLastModifiedDate(new Date(nodeId * 1000));
+        metaData.setResourceType(ResourceType.FILE);
+        metaData.setNodeStatus(NodeStatus.DONE);
+        metaData.setIdentificationMethod(IdentificationMethod.BINARY_SIGNATURE);
+        metaData.setHash(HashAlgorithm.SHA256, "sha256-" + nodeId);
+        node.setZeroIdentifications();
+        node.addFormatIdentification(format);
+        return node;
+    }
+}
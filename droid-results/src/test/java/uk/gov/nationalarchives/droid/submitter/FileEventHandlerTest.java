@@ -41,9 +41,11 @@ import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertTrue;
 
 import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
 
 import static org.mockito.Mockito.doThrow;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
@@ -56,6 +58,7 @@ import uk.gov.nationalarchives.droid.core.interfaces.AsynchDroid;
 import uk.gov.nationalarchives.droid.core.interfaces.IdentificationException;
 import uk.gov.nationalarchives.droid.core.interfaces.IdentificationRequest;
 import uk.gov.nationalarchives.droid.core.interfaces.RequestIdentifier;
+import uk.gov.nationalarchives.droid.core.interfaces.RequestOpener;
 import uk.gov.nationalarchives.droid.core.interfaces.ResourceId;
 import uk.gov.nationalarchives.droid.core.interfaces.ResultHandler;
 import uk.gov.nationalarchives.droid.core.interfaces.archive.IdentificationRequestFactory;
@@ -128,6 +131,25 @@ public class FileEventHandlerTest {
         verify(throttle).apply();
     }
 
+    @Test
+    public void testReadAheadSubmitsFileToBeOpenedByDroid() throws Exception {
+
+        SubmissionThrottle throttle = mock(SubmissionThrottle.class);
+        fileEventHandler.setSubmissionThrottle(throttle);
+        fileEventHandler.setReadAhead(true);
+
+        final Path file = Paths.get("test_sig_files/DROID 5  Architecture.doc");
+        fileEventHandler.onEvent(file, new ResourceId(1L, ""), null);
+
+        ArgumentCaptor<RequestOpener> openerCaptor = ArgumentCaptor.forClass(RequestOpener.class);
+        verify(identificationEngine).submit(eq(request), openerCaptor.capture());
+        verify(request, never()).open(any(Path.class));
+        verify(throttle).apply();
+
+        openerCaptor.getValue().open();
+        verify(request).open(file);
+    }
+
     @Test
     public void testNonexistentFileSubmitsErrorToResultHandler() throws IOException {
         
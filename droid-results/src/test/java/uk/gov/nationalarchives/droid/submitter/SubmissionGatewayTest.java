@@ -31,22 +31,31 @@
  */
 package uk.gov.nationalarchives.droid.submitter;
 
+import java.io.IOException;
 import java.net.URI;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.Enumeration;
 import java.util.List;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.Executors;
 import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
 import java.util.zip.ZipEntry;
 import java.util.zip.ZipFile;
 
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.doThrow;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
@@ -54,10 +63,14 @@ import static org.mockito.Mockito.when;
 import org.junit.Test;
 import org.mockito.ArgumentCaptor;
 
+import net.byteseek.io.reader.WindowReader;
+
 import uk.gov.nationalarchives.droid.core.BinarySignatureIdentifier;
+import uk.gov.nationalarchives.droid.core.interfaces.DroidCore;
 import uk.gov.nationalarchives.droid.core.interfaces.IdentificationRequest;
 import uk.gov.nationalarchives.droid.core.interfaces.IdentificationResultCollection;
 import uk.gov.nationalarchives.droid.core.interfaces.RequestIdentifier;
+import uk.gov.nationalarchives.droid.core.interfaces.RequestOpener;
 import uk.gov.nationalarchives.droid.core.interfaces.ResultHandler;
 import uk.gov.nationalarchives.droid.core.interfaces.archive.ArchiveFormatResolver;
 import uk.gov.nationalarchives.droid.core.interfaces.archive.ArchiveHandlerFactory;
@@ -166,6 +179,82 @@ public class SubmissionGatewayTest {
         assertEquals(1, allResults.size());
     }
 
+    @Test
+    public void testIoStageReadsStartAndEndOfFileBeforeMatching() throws Exception {
+        final List<String> events = Collections.synchronizedList(new ArrayList<>());
+
+        WindowReader reader = mock(WindowReader.class);
+        when(reader.length()).thenReturn(100000L);
+        when(reader.getWindow(anyLong())).thenAnswer(invocation -> {
+            events.add("read " + invocation.getArgument(0) + " on " + Thread.currentThread().getName());
+            return null;
+        });
+        IdentificationRequest request = mock(IdentificationRequest.class);
+        when(request.getWindowReader()).thenReturn(reader);
+        when(request.getIdentifier()).thenReturn(new RequestIdentifier(URI.create("file:/test")));
+
+        DroidCore droid = mock(DroidCore.class);
+        when(droid.matchBinarySignatures(request)).thenAnswer(invocation -> {
+            events.add("match on " + Thread.currentThread().getName());
+            return new IdentificationResultCollection(request);
+        });
+
+        SubmissionGateway submissionGateway = new SubmissionGateway();
+        submissionGateway.setSubmissionQueue(mock(SubmissionQueue.class));
+        submissionGateway.setDroidCore(droid);
+        submissionGateway.setPauseAspect(new PauseAspect());
+        submissionGateway.setResultHandler(mock(ResultHandler.class));
+        submissionGateway.setExecutorService(
+                Executors.newSingleThreadExecutor(r -> new Thread(r, "core-thread-test")));
+        submissionGateway.setIoExecutorService(
+                Executors.newSingleThreadExecutor(r -> new Thread(r, "io-thread-test")));
+        submissionGateway.setReadAheadBytes(1000);
+
+        submissionGateway.submit(request).get(10, TimeUnit.SECONDS);
+        submissionGateway.close();
+
+        assertEquals(Arrays.asList("read 0 on io-thread-test", "read 99000 on io-thread-test",
+                "match on core-thread-test"), events);
+    }
+
+    @Test
+    public void testIoStageOpensRequestsSubmittedBeforeTheyAreOpened() throws Exception {
+        DroidCore droid = mock(DroidCore.class);
+        SubmissionGateway submissionGateway = new SubmissionGateway();
+        submissionGateway.setSubmissionQueue(mock(SubmissionQueue.class));
+        submissionGateway.setDroidCore(droid);
+        submissionGateway.setPauseAspect(new PauseAspect());
+        submissionGateway.setResultHandler(mock(ResultHandler.class));
+        submissionGateway.setExecutorService(Executors.newSingleThreadExecutor());
+        submissionGateway.setIoExecutorService(
+                Executors.newSingleThreadExecutor(r -> new Thread(r, "io-thread-test")));
+
+        IdentificationRequest opened = mock(IdentificationRequest.class);
+        when(opened.getIdentifier()).thenReturn(new RequestIdentifier(URI.create("file:/opened")));
+        IdentificationResultCollection results = new IdentificationResultCollection(opened);
+        when(droid.matchBinarySignatures(opened)).thenReturn(results);
+        RequestOpener openerOk = mock(RequestOpener.class);
+        final List<String> openedOn = Collections.synchronizedList(new ArrayList<>());
+        doAnswer(invocation -> openedOn.add(Thread.currentThread().getName())).when(openerOk).open();
+
+        IdentificationRequest missing = mock(IdentificationRequest.class);
+        when(missing.getIdentifier()).thenReturn(new RequestIdentifier(URI.create("file:/missing")));
+        RequestOpener openerFails = mock(RequestOpener.class);
+        IOException notFound = new IOException("not found");
+        doThrow(notFound).when(openerFails).open();
+
+        submissionGateway.submit(opened, openerOk);
+        submissionGateway.submit(missing, openerFails);
+        submissionGateway.awaitFinished();
+        submissionGateway.close();
+
+        assertEquals(Arrays.asList("io-thread-test"), openedOn);
+        verify(droid).matchBinarySignatures(opened);
+        verify(openerFails).failed(notFound);
+        verify(droid, never()).matchBinarySignatures(missing);
+        verify(missing).close();
+    }
+
     @Test
     public void testResultAvailableWhenIdentificationFailed() throws InterruptedException {
 